@@ -111,6 +111,7 @@ enum {
     OPT_ANGLE,
     OPT_NO_VD_SYSTEM_DECORATIONS,
     OPT_NO_VD_DESTROY_CONTENT,
+    OPT_MINIMIZED_MAX_FPS,
 };
 
 struct sc_option {
@@ -529,6 +530,15 @@ static const struct sc_option options[] = {
         .text = "Limit the frame rate of screen capture (officially supported "
                 "since Android 10, but may work on earlier versions).",
     },
+    {
+        .longopt_id = OPT_MINIMIZED_MAX_FPS,
+        .longopt = "minimized-max-fps",
+        .argdesc = "value",
+        .text = "Limit the frame rate of screen capture while the window is "
+                "minimized, and restore the --max-fps value when it is "
+                "restored.\n"
+                "Default is 0 (no change when minimized).",
+    },
     {
         .longopt_id = OPT_MOUSE,
         .longopt = "mouse",
@@ -1065,6 +1075,11 @@ static const struct sc_shortcut shortcuts[] = {
         .shortcuts = { "MOD+Shift+r" },
         .text = "Reset video capture/encoding",
     },
+    {
+        .shortcuts = { "MOD+Shift+s" },
+        .text = "Save the replay buffer (if enabled on the server) to "
+                "scrcpy-replay-*.mp4 in the current directory",
+    },
     {
         .shortcuts = { "MOD+g" },
         .text = "Resize window to 1:1 (pixel-perfect)",
@@ -1583,6 +1598,19 @@ parse_max_size(const char *s, uint16_t *max_size) {
     return true;
 }
 
+static bool
+parse_minimized_max_fps(const char *s, uint16_t *max_fps) {
+    long value;
+    bool ok = parse_integer_arg(s, &value, false, 0, 1000,
+                                "minimized max fps");
+    if (!ok) {
+        return false;
+    }
+
+    *max_fps = (uint16_t) value;
+    return true;
+}
+
 static bool
 parse_buffering_time(const char *s, sc_tick *tick) {
     long value;
@@ -2326,6 +2354,12 @@ parse_args_with_getopt(struct scrcpy_cli_args *args, int argc, char *argv[],
             case OPT_MAX_FPS:
                 opts->max_fps = optarg;
                 break;
+            case OPT_MINIMIZED_MAX_FPS:
+                if (!parse_minimized_max_fps(optarg,
+                                             &opts->minimized_max_fps)) {
+                    return false;
+                }
+                break;
             case 'm':
                 if (!parse_max_size(optarg, &opts->max_size)) {
                     return false;
@@ -3153,6 +3187,11 @@ parse_args_with_getopt(struct scrcpy_cli_args *args, int argc, char *argv[],
             LOGE("Cannot start an Android app if control is disabled");
             return false;
         }
+        if (opts->minimized_max_fps) {
+            LOGE("Cannot change the max fps when minimized if control is "
+                 "disabled");
+            return false;
+        }
     }
 
 # ifdef _WIN32
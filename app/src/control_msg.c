@@ -72,6 +72,15 @@ write_position(uint8_t *buf, const struct sc_position *position) {
     sc_write16be(&buf[10], position->screen_size.height);
 }
 
+// Write a float as IEEE 754 binary32, big-endian
+static void
+write_float(uint8_t *buf, float value) {
+    static_assert(sizeof(float) == 4, "Unexpected float size");
+    uint32_t bits;
+    memcpy(&bits, &value, 4);
+    sc_write32be(buf, bits);
+}
+
 // Write truncated string, and return the size
 static size_t
 write_string_payload(uint8_t *payload, const char *utf8, size_t max_len) {
@@ -124,7 +133,8 @@ sc_control_msg_serialize(const struct sc_control_msg *msg, uint8_t *buf) {
             sc_write16be(&buf[22], pressure);
             sc_write32be(&buf[24], msg->inject_touch_event.action_button);
             sc_write32be(&buf[28], msg->inject_touch_event.buttons);
-            return 32;
+            sc_write32be(&buf[32], msg->inject_touch_event.timestamp);
+            return 36;
         case SC_CONTROL_MSG_TYPE_INJECT_SCROLL_EVENT:
             write_position(&buf[1], &msg->inject_scroll_event.position);
             int16_t hscroll =
@@ -178,12 +188,28 @@ sc_control_msg_serialize(const struct sc_control_msg *msg, uint8_t *buf) {
             size_t len = write_string_tiny(&buf[1], msg->start_app.name, 255);
             return 1 + len;
         }
+        case SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER: {
+            size_t len =
+                write_string_tiny(&buf[1], msg->save_replay_buffer.path, 255);
+            return 1 + len;
+        }
+        case SC_CONTROL_MSG_TYPE_SET_MAX_FPS:
+            write_float(&buf[1], msg->set_max_fps.max_fps);
+            return 5;
+        case SC_CONTROL_MSG_TYPE_SET_INPUT_STREAM:
+            buf[1] = msg->set_input_stream.stream_id;
+            return 2;
+        case SC_CONTROL_MSG_TYPE_SET_MAIN_VIDEO:
+            buf[1] = msg->set_main_video.on;
+            return 2;
         case SC_CONTROL_MSG_TYPE_EXPAND_NOTIFICATION_PANEL:
         case SC_CONTROL_MSG_TYPE_EXPAND_SETTINGS_PANEL:
         case SC_CONTROL_MSG_TYPE_COLLAPSE_PANELS:
         case SC_CONTROL_MSG_TYPE_ROTATE_DEVICE:
         case SC_CONTROL_MSG_TYPE_OPEN_HARD_KEYBOARD_SETTINGS:
         case SC_CONTROL_MSG_TYPE_RESET_VIDEO:
+        case SC_CONTROL_MSG_TYPE_REQUEST_KEY_FRAME:
+        case SC_CONTROL_MSG_TYPE_GET_FRAME_LATENCY:
             // no additional data
             return 1;
         default:
@@ -314,6 +340,31 @@ sc_control_msg_log(const struct sc_control_msg *msg) {
         case SC_CONTROL_MSG_TYPE_RESET_VIDEO:
             LOG_CMSG("reset video");
             break;
+        case SC_CONTROL_MSG_TYPE_REQUEST_KEY_FRAME:
+            LOG_CMSG("request key frame");
+            break;
+        case SC_CONTROL_MSG_TYPE_GET_FRAME_LATENCY:
+            LOG_CMSG("get frame latency");
+            break;
+        case SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER:
+            if (msg->save_replay_buffer.path
+                    && *msg->save_replay_buffer.path) {
+                LOG_CMSG("save replay buffer \"%s\"",
+                         msg->save_replay_buffer.path);
+            } else {
+                LOG_CMSG("save replay buffer to client");
+            }
+            break;
+        case SC_CONTROL_MSG_TYPE_SET_MAX_FPS:
+            LOG_CMSG("set max fps %g", (double) msg->set_max_fps.max_fps);
+            break;
+        case SC_CONTROL_MSG_TYPE_SET_INPUT_STREAM:
+            LOG_CMSG("set input stream %" PRIu8,
+                     msg->set_input_stream.stream_id);
+            break;
+        case SC_CONTROL_MSG_TYPE_SET_MAIN_VIDEO:
+            LOG_CMSG("main video %s", msg->set_main_video.on ? "on" : "off");
+            break;
         default:
             LOG_CMSG("unknown type: %u", (unsigned) msg->type);
             break;
@@ -342,6 +393,9 @@ sc_control_msg_destroy(struct sc_control_msg *msg) {
         case SC_CONTROL_MSG_TYPE_START_APP:
             free(msg->start_app.name);
             break;
+        case SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER:
+            free(msg->save_replay_buffer.path);
+            break;
         default:
             // do nothing
             break;
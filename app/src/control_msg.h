@@ -43,6 +43,12 @@ enum sc_control_msg_type {
     SC_CONTROL_MSG_TYPE_OPEN_HARD_KEYBOARD_SETTINGS,
     SC_CONTROL_MSG_TYPE_START_APP,
     SC_CONTROL_MSG_TYPE_RESET_VIDEO,
+    SC_CONTROL_MSG_TYPE_REQUEST_KEY_FRAME,
+    SC_CONTROL_MSG_TYPE_GET_FRAME_LATENCY,
+    SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER,
+    SC_CONTROL_MSG_TYPE_SET_MAX_FPS,
+    SC_CONTROL_MSG_TYPE_SET_INPUT_STREAM,
+    SC_CONTROL_MSG_TYPE_SET_MAIN_VIDEO,
 };
 
 enum sc_copy_key {
@@ -70,6 +76,9 @@ struct sc_control_msg {
             uint64_t pointer_id;
             struct sc_position position;
             float pressure;
+            // Event time, in milliseconds (only the differences between
+            // events are meaningful, it may wrap)
+            uint32_t timestamp;
         } inject_touch_event;
         struct {
             struct sc_position position;
@@ -111,6 +120,20 @@ struct sc_control_msg {
         struct {
             char *name;
         } start_app;
+        struct {
+            // owned, to be freed by free()
+            // NULL or empty to receive the replay buffer on the control socket
+            char *path;
+        } save_replay_buffer;
+        struct {
+            float max_fps; // 0 for no limit
+        } set_max_fps;
+        struct {
+            uint8_t stream_id; // 0 for the main video stream
+        } set_input_stream;
+        struct {
+            bool on; // only if there is a thumbnail stream
+        } set_main_video;
     };
 };
 
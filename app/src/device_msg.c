@@ -1,5 +1,6 @@
 #include "device_msg.h"
 
+#include <inttypes.h>
 #include <stdint.h>
 #include <stdlib.h>
 #include <string.h>
@@ -7,6 +8,14 @@
 #include "util/binary.h"
 #include "util/log.h"
 
+static void
+read_latency(const uint8_t *buf, struct sc_device_msg_latency *latency) {
+    latency->count = sc_read32be(buf);
+    latency->p50 = sc_read32be(&buf[4]);
+    latency->p99 = sc_read32be(&buf[8]);
+    latency->max = sc_read32be(&buf[12]);
+}
+
 ssize_t
 sc_device_msg_deserialize(const uint8_t *buf, size_t len,
                           struct sc_device_msg *msg) {
@@ -71,6 +80,128 @@ sc_device_msg_deserialize(const uint8_t *buf, size_t len,
 
             return 5 + size;
         }
+        case DEVICE_MSG_TYPE_VIDEO_BIT_RATE: {
+            if (len < 5) {
+                return 0; // no complete message
+            }
+            msg->video_bit_rate.bit_rate = sc_read32be(&buf[1]);
+            return 5;
+        }
+        case DEVICE_MSG_TYPE_IDLE: {
+            if (len < 2) {
+                return 0; // no complete message
+            }
+            msg->idle.idle = buf[1];
+            return 2;
+        }
+        case DEVICE_MSG_TYPE_ENCODER_PROBE: {
+            if (len < 3) {
+                // at least type + selected + count
+                return 0; // no complete message
+            }
+            uint8_t count = buf[2];
+            if (count > DEVICE_MSG_ENCODER_PROBE_MAX_RESULTS) {
+                LOGW("Too many encoder probe results: %" PRIu8, count);
+                return -1;
+            }
+            size_t index = 3;
+            for (uint8_t i = 0; i < count; ++i) {
+                if (len < index + 1) {
+                    return 0; // no complete message
+                }
+                size_t name_len = buf[index];
+                // name length + name + ok + latency + frame time + frame size
+                size_t result_len = 1 + name_len + 1 + 4 + 4 + 4;
+                if (len - index < result_len) {
+                    return 0; // no complete message
+                }
+                struct sc_device_msg_encoder_probe_result *result =
+                    &msg->encoder_probe.results[i];
+                memcpy(result->name, &buf[index + 1], name_len);
+                result->name[name_len] = '\0';
+                const uint8_t *values = &buf[index + 1 + name_len];
+                result->ok = values[0];
+                result->latency_us = sc_read32be(&values[1]);
+                result->frame_time_us = sc_read32be(&values[5]);
+                result->frame_size = sc_read32be(&values[9]);
+                index += result_len;
+            }
+            msg->encoder_probe.selected = buf[1];
+            msg->encoder_probe.count = count;
+            return index;
+        }
+        case DEVICE_MSG_TYPE_METRICS: {
+            if (len < 6) {
+                // at least interval + counter count
+                return 0; // no complete message
+            }
+            uint8_t counter_count = buf[5];
+            if (counter_count > DEVICE_MSG_METRICS_MAX_COUNTERS) {
+                LOGW("Too many metrics counters: %" PRIu8, counter_count);
+                return -1;
+            }
+            size_t latency_count_index = 6 + 8 * counter_count;
+            if (len < latency_count_index + 1) {
+                return 0; // no complete message
+            }
+            uint8_t latency_count = buf[latency_count_index];
+            if (latency_count > DEVICE_MSG_METRICS_MAX_LATENCIES) {
+                LOGW("Too many metrics latencies: %" PRIu8, latency_count);
+                return -1;
+            }
+            size_t size = latency_count_index + 1 + 16 * latency_count;
+            if (len < size) {
+                return 0; // no complete message
+            }
+
+            msg->metrics.interval_ms = sc_read32be(&buf[1]);
+            msg->metrics.counter_count = counter_count;
+            for (uint8_t i = 0; i < counter_count; ++i) {
+                msg->metrics.counters[i] = sc_read64be(&buf[6 + 8 * i]);
+            }
+            msg->metrics.latency_count = latency_count;
+            for (uint8_t i = 0; i < latency_count; ++i) {
+                read_latency(&buf[latency_count_index + 1 + 16 * i],
+                             &msg->metrics.latencies[i]);
+            }
+            return size;
+        }
+        case DEVICE_MSG_TYPE_FRAME_LATENCY: {
+            if (len < 49) {
+                return 0; // no complete message
+            }
+            read_latency(&buf[1], &msg->frame_latency.capture_to_dequeue);
+            read_latency(&buf[17], &msg->frame_latency.dequeue_to_write);
+            read_latency(&buf[33], &msg->frame_latency.capture_to_write);
+            return 49;
+        }
+        case DEVICE_MSG_TYPE_REPLAY_DATA: {
+            if (len < 5) {
+                // at least type + size
+                return 0; // no complete message
+            }
+            size_t size = sc_read32be(&buf[1]);
+            if (size > DEVICE_MSG_MAX_SIZE - 5) {
+                LOGW("Replay data chunk too large: %" SC_PRIsizet, size);
+                return -1;
+            }
+            if (size > len - 5) {
+                return 0; // no complete message
+            }
+            uint8_t *data = NULL;
+            if (size) {
+                data = malloc(size);
+                if (!data) {
+                    LOG_OOM();
+                    return -1;
+                }
+                memcpy(data, &buf[5], size);
+            }
+
+            msg->replay_data.size = size;
+            msg->replay_data.data = data;
+            return 5 + size;
+        }
         default:
             LOGW("Unknown device message type: %d", (int) msg->type);
             return -1; // error, we cannot recover
@@ -86,6 +217,9 @@ sc_device_msg_destroy(struct sc_device_msg *msg) {
         case DEVICE_MSG_TYPE_UHID_OUTPUT:
             free(msg->uhid_output.data);
             break;
+        case DEVICE_MSG_TYPE_REPLAY_DATA:
+            free(msg->replay_data.data);
+            break;
         default:
             // nothing to do
             break;
@@ -11,10 +11,55 @@
 // type: 1 byte; length: 4 bytes
 #define DEVICE_MSG_TEXT_MAX_LENGTH (DEVICE_MSG_MAX_SIZE - 5)
 
+#define DEVICE_MSG_METRICS_MAX_COUNTERS 16
+#define DEVICE_MSG_METRICS_MAX_LATENCIES 8
+
+#define DEVICE_MSG_ENCODER_PROBE_MAX_RESULTS 16
+#define DEVICE_MSG_ENCODER_NAME_MAX_LENGTH 255
+#define DEVICE_MSG_ENCODER_PROBE_NONE 0xFF
+
 enum sc_device_msg_type {
     DEVICE_MSG_TYPE_CLIPBOARD,
     DEVICE_MSG_TYPE_ACK_CLIPBOARD,
     DEVICE_MSG_TYPE_UHID_OUTPUT,
+    DEVICE_MSG_TYPE_VIDEO_BIT_RATE,
+    DEVICE_MSG_TYPE_METRICS,
+    DEVICE_MSG_TYPE_FRAME_LATENCY,
+    DEVICE_MSG_TYPE_REPLAY_DATA,
+    DEVICE_MSG_TYPE_IDLE,
+    DEVICE_MSG_TYPE_ENCODER_PROBE,
+};
+
+// Must match the values in Metrics.java
+enum sc_device_msg_metrics_counter {
+    DEVICE_MSG_METRICS_COUNTER_VIDEO_FRAMES,
+    DEVICE_MSG_METRICS_COUNTER_VIDEO_BYTES,
+    DEVICE_MSG_METRICS_COUNTER_AUDIO_BYTES,
+    DEVICE_MSG_METRICS_COUNTER_DEVICE_MESSAGES_DROPPED,
+    DEVICE_MSG_METRICS_COUNTER_AUDIO_INPUT_QUEUE_MAX,
+    DEVICE_MSG_METRICS_COUNTER_AUDIO_OUTPUT_QUEUE_MAX,
+};
+
+enum sc_device_msg_metrics_latency {
+    DEVICE_MSG_METRICS_LATENCY_VIDEO_DEQUEUE_TO_WRITE,
+    DEVICE_MSG_METRICS_LATENCY_INJECTION,
+    DEVICE_MSG_METRICS_LATENCY_VIDEO_RESET_TO_FIRST_FRAME,
+};
+
+struct sc_device_msg_latency {
+    uint32_t count;
+    // in microseconds
+    uint32_t p50;
+    uint32_t p99;
+    uint32_t max;
+};
+
+struct sc_device_msg_encoder_probe_result {
+    char name[DEVICE_MSG_ENCODER_NAME_MAX_LENGTH + 1];
+    bool ok;
+    uint32_t latency_us;
+    uint32_t frame_time_us;
+    uint32_t frame_size;
 };
 
 struct sc_device_msg {
@@ -31,6 +76,37 @@ struct sc_device_msg {
             uint16_t size;
             uint8_t *data; // owned, to be freed by free()
         } uhid_output;
+        struct {
+            uint32_t bit_rate;
+        } video_bit_rate;
+        struct {
+            uint32_t interval_ms;
+            uint8_t counter_count;
+            uint64_t counters[DEVICE_MSG_METRICS_MAX_COUNTERS];
+            uint8_t latency_count;
+            struct sc_device_msg_latency
+                latencies[DEVICE_MSG_METRICS_MAX_LATENCIES];
+        } metrics;
+        struct {
+            struct sc_device_msg_latency capture_to_dequeue;
+            struct sc_device_msg_latency dequeue_to_write;
+            struct sc_device_msg_latency capture_to_write;
+        } frame_latency;
+        struct {
+            // chunk of the replay buffer file, an empty chunk marks the end
+            uint32_t size;
+            uint8_t *data; // owned, to be freed by free()
+        } replay_data;
+        struct {
+            bool idle;
+        } idle;
+        struct {
+            // index of the selected encoder, or DEVICE_MSG_ENCODER_PROBE_NONE
+            uint8_t selected;
+            uint8_t count;
+            struct sc_device_msg_encoder_probe_result
+                results[DEVICE_MSG_ENCODER_PROBE_MAX_RESULTS];
+        } encoder_probe;
     };
 };
 
@@ -388,6 +388,7 @@ struct sc_mouse_click_event {
     enum sc_mouse_button button;
     uint64_t pointer_id;
     uint8_t buttons_state; // bitwise-OR of sc_mouse_button values
+    uint32_t timestamp; // in milliseconds, in the SDL_GetTicks() time base
 };
 
 struct sc_mouse_scroll_event {
@@ -403,6 +404,7 @@ struct sc_mouse_motion_event {
     int32_t xrel;
     int32_t yrel;
     uint8_t buttons_state; // bitwise-OR of sc_mouse_button values
+    uint32_t timestamp; // in milliseconds, in the SDL_GetTicks() time base
 };
 
 struct sc_touch_event {
@@ -410,6 +412,7 @@ struct sc_touch_event {
     enum sc_touch_action action;
     uint64_t pointer_id;
     float pressure;
+    uint32_t timestamp; // in milliseconds, in the SDL_GetTicks() time base
 };
 
 // As documented in <https://wiki.libsdl.org/SDL2/SDL_JoystickID>:
@@ -284,6 +284,20 @@ open_hard_keyboard_settings(struct sc_input_manager *im) {
     }
 }
 
+static void
+save_replay_buffer(struct sc_input_manager *im) {
+    assert(im->controller);
+
+    struct sc_control_msg msg;
+    msg.type = SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER;
+    // No path: the replay buffer is sent to the client
+    msg.save_replay_buffer.path = NULL;
+
+    if (!sc_controller_push_msg(im->controller, &msg)) {
+        LOGW("Could not request saving the replay buffer");
+    }
+}
+
 static void
 reset_video(struct sc_input_manager *im) {
     assert(im->controller);
@@ -329,7 +343,7 @@ sc_input_manager_process_text_input(struct sc_input_manager *im,
 static bool
 simulate_virtual_finger(struct sc_input_manager *im,
                         enum android_motionevent_action action,
-                        struct sc_point point) {
+                        struct sc_point point, uint32_t timestamp) {
     bool up = action == AMOTION_EVENT_ACTION_UP;
 
     struct sc_control_msg msg;
@@ -341,6 +355,7 @@ simulate_virtual_finger(struct sc_input_manager *im,
     msg.inject_touch_event.pressure = up ? 0.0f : 1.0f;
     msg.inject_touch_event.action_button = 0;
     msg.inject_touch_event.buttons = 0;
+    msg.inject_touch_event.timestamp = timestamp;
 
     if (!sc_controller_push_msg(im->controller, &msg)) {
         LOGW("Could not request 'inject virtual finger event'");
@@ -410,7 +425,11 @@ sc_input_manager_process_key(struct sc_input_manager *im,
                 }
                 return;
             case SDLK_s:
-                if (im->kp && !shift && !repeat && !paused) {
+                if (shift) {
+                    if (control && !repeat && down) {
+                        save_replay_buffer(im);
+                    }
+                } else if (im->kp && !repeat && !paused) {
                     action_app_switch(im, action);
                 }
                 return;
@@ -640,6 +659,7 @@ sc_input_manager_process_mouse_motion(struct sc_input_manager *im,
         .xrel = event->xrel,
         .yrel = event->yrel,
         .buttons_state = im->mouse_buttons_state,
+        .timestamp = event->timestamp,
     };
 
     assert(im->mp->ops->process_mouse_motion);
@@ -656,7 +676,8 @@ sc_input_manager_process_mouse_motion(struct sc_input_manager *im,
         struct sc_point vfinger = inverse_point(mouse, im->screen->frame_size,
                                                 im->vfinger_invert_x,
                                                 im->vfinger_invert_y);
-        simulate_virtual_finger(im, AMOTION_EVENT_ACTION_MOVE, vfinger);
+        simulate_virtual_finger(im, AMOTION_EVENT_ACTION_MOVE, vfinger,
+                                event->timestamp);
     }
 }
 
@@ -685,6 +706,7 @@ sc_input_manager_process_touch(struct sc_input_manager *im,
         .action = sc_touch_action_from_sdl(event->type),
         .pointer_id = event->fingerId,
         .pressure = event->pressure,
+        .timestamp = event->timestamp,
     };
 
     im->mp->ops->process_touch(im->mp, &evt);
@@ -818,6 +840,7 @@ sc_input_manager_process_mouse_button(struct sc_input_manager *im,
         .pointer_id = use_finger ? SC_POINTER_ID_GENERIC_FINGER
                                  : SC_POINTER_ID_MOUSE,
         .buttons_state = im->mouse_buttons_state,
+        .timestamp = event->timestamp,
     };
 
     assert(im->mp->ops->process_mouse_click);
@@ -869,7 +892,7 @@ sc_input_manager_process_mouse_button(struct sc_input_manager *im,
         enum android_motionevent_action action = down
                                                ? AMOTION_EVENT_ACTION_DOWN
                                                : AMOTION_EVENT_ACTION_UP;
-        if (!simulate_virtual_finger(im, action, vfinger)) {
+        if (!simulate_virtual_finger(im, action, vfinger, event->timestamp)) {
             return;
         }
         im->vfinger_down = down;
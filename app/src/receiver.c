@@ -3,6 +3,7 @@
 #include <assert.h>
 #include <inttypes.h>
 #include <stdint.h>
+#include <time.h>
 #include <SDL2/SDL_clipboard.h>
 
 #include "device_msg.h"
@@ -29,6 +30,8 @@ sc_receiver_init(struct sc_receiver *receiver, sc_socket control_socket,
     receiver->control_socket = control_socket;
     receiver->acksync = NULL;
     receiver->uhid_devices = NULL;
+    receiver->replay_file = NULL;
+    receiver->replay_error = false;
 
     assert(cbs && cbs->on_ended);
     receiver->cbs = cbs;
@@ -39,6 +42,10 @@ sc_receiver_init(struct sc_receiver *receiver, sc_socket control_socket,
 
 void
 sc_receiver_destroy(struct sc_receiver *receiver) {
+    if (receiver->replay_file) {
+        LOGW("Replay buffer incomplete: %s", receiver->replay_filename);
+        fclose(receiver->replay_file);
+    }
     sc_mutex_destroy(&receiver->mutex);
 }
 
@@ -74,6 +81,145 @@ task_uhid_output(void *userdata) {
     free(data);
 }
 
+static uint64_t
+get_metrics_counter(const struct sc_device_msg *msg, unsigned index) {
+    // Older or newer servers may send a different number of counters
+    return index < msg->metrics.counter_count ? msg->metrics.counters[index]
+                                              : 0;
+}
+
+static void
+log_metrics(const struct sc_device_msg *msg) {
+    uint32_t interval_ms = msg->metrics.interval_ms;
+    if (!interval_ms) {
+        return;
+    }
+
+    uint64_t frames =
+        get_metrics_counter(msg, DEVICE_MSG_METRICS_COUNTER_VIDEO_FRAMES);
+    uint64_t video_bytes =
+        get_metrics_counter(msg, DEVICE_MSG_METRICS_COUNTER_VIDEO_BYTES);
+    uint64_t audio_bytes =
+        get_metrics_counter(msg, DEVICE_MSG_METRICS_COUNTER_AUDIO_BYTES);
+    LOGD("Metrics: %.1f fps, video %" PRIu64 " B/s, audio %" PRIu64 " B/s, "
+         "audio queues %" PRIu64 "/%" PRIu64 ", dropped messages %" PRIu64,
+         frames * 1000.0 / interval_ms, video_bytes * 1000 / interval_ms,
+         audio_bytes * 1000 / interval_ms,
+         get_metrics_counter(msg,
+                             DEVICE_MSG_METRICS_COUNTER_AUDIO_INPUT_QUEUE_MAX),
+         get_metrics_counter(msg,
+                            DEVICE_MSG_METRICS_COUNTER_AUDIO_OUTPUT_QUEUE_MAX),
+         get_metrics_counter(msg,
+                        DEVICE_MSG_METRICS_COUNTER_DEVICE_MESSAGES_DROPPED));
+
+    static const char *const latency_names[] = {
+        [DEVICE_MSG_METRICS_LATENCY_VIDEO_DEQUEUE_TO_WRITE] = "video write",
+        [DEVICE_MSG_METRICS_LATENCY_INJECTION] = "injection",
+        [DEVICE_MSG_METRICS_LATENCY_VIDEO_RESET_TO_FIRST_FRAME] =
+            "video reset to first frame",
+    };
+    for (uint8_t i = 0; i < msg->metrics.latency_count; ++i) {
+        const struct sc_device_msg_latency *latency =
+            &msg->metrics.latencies[i];
+        if (!latency->count) {
+            continue;
+        }
+        const char *name = i < ARRAY_LEN(latency_names) ? latency_names[i]
+                                                        : "unknown";
+        LOGD("Metrics: %s latency (%" PRIu32 " samples): p50=%" PRIu32 "us "
+             "p99=%" PRIu32 "us max=%" PRIu32 "us", name, latency->count,
+             latency->p50, latency->p99, latency->max);
+    }
+}
+
+static void
+log_frame_latency(const char *name,
+                  const struct sc_device_msg_latency *latency) {
+    LOGI("Frame latency, %s (%" PRIu32 " frames): p50=%" PRIu32 "us "
+         "p99=%" PRIu32 "us max=%" PRIu32 "us", name, latency->count,
+         latency->p50, latency->p99, latency->max);
+}
+
+static void
+log_encoder_probe(const struct sc_device_msg *msg) {
+    uint8_t selected = msg->encoder_probe.selected;
+    LOGI("Video encoder probe:");
+    for (uint8_t i = 0; i < msg->encoder_probe.count; ++i) {
+        const struct sc_device_msg_encoder_probe_result *result =
+            &msg->encoder_probe.results[i];
+        const char *mark = i == selected ? " (selected)" : "";
+        if (!result->ok) {
+            LOGI("    %s: failed%s", result->name, mark);
+            continue;
+        }
+        double fps = result->frame_time_us
+                   ? 1000000.0 / result->frame_time_us : 0;
+        LOGI("    %s: latency=%" PRIu32 "us, %.1f fps, frame size=%" PRIu32
+             " B%s", result->name, result->latency_us, fps,
+             result->frame_size, mark);
+    }
+    if (selected == DEVICE_MSG_ENCODER_PROBE_NONE) {
+        LOGW("No video encoder could be probed, using the default encoder");
+    }
+}
+
+static void
+process_replay_data(struct sc_receiver *receiver,
+                    const struct sc_device_msg *msg) {
+    if (!msg->replay_data.size) {
+        // End of the replay buffer
+        bool error = receiver->replay_error;
+        receiver->replay_error = false;
+        if (!receiver->replay_file) {
+            if (!error) {
+                LOGW("No replay buffer received from the device");
+            }
+            return;
+        }
+
+        int r = fclose(receiver->replay_file);
+        receiver->replay_file = NULL;
+        if (r || error) {
+            LOGE("Could not write replay buffer: %s",
+                 receiver->replay_filename);
+            return;
+        }
+        LOGI("Replay buffer saved to %s", receiver->replay_filename);
+        return;
+    }
+
+    if (receiver->replay_error) {
+        return;
+    }
+
+    if (!receiver->replay_file) {
+        time_t now = time(NULL);
+        struct tm *tm = localtime(&now);
+        size_t len = tm ? strftime(receiver->replay_filename,
+                                   sizeof(receiver->replay_filename),
+                                   "scrcpy-replay-%Y%m%d-%H%M%S.mp4", tm)
+                        : 0;
+        if (!len) {
+            strcpy(receiver->replay_filename, "scrcpy-replay.mp4");
+        }
+
+        receiver->replay_file = fopen(receiver->replay_filename, "wb");
+        if (!receiver->replay_file) {
+            LOGE("Could not open replay buffer file: %s",
+                 receiver->replay_filename);
+            receiver->replay_error = true;
+            return;
+        }
+    }
+
+    size_t w = fwrite(msg->replay_data.data, 1, msg->replay_data.size,
+                      receiver->replay_file);
+    if (w != msg->replay_data.size) {
+        // Reported on the end marker
+        receiver->replay_error = true;
+    }
+}
+
 static void
 process_msg(struct sc_receiver *receiver, struct sc_device_msg *msg) {
     switch (msg->type) {
@@ -150,6 +296,36 @@ process_msg(struct sc_receiver *receiver, struct sc_device_msg *msg) {
                 return;
             }
 
+            break;
+        case DEVICE_MSG_TYPE_VIDEO_BIT_RATE:
+            LOGI("Video bit rate: %" PRIu32 " bps",
+                 msg->video_bit_rate.bit_rate);
+            // No allocation to free in the msg
+            break;
+        case DEVICE_MSG_TYPE_METRICS:
+            log_metrics(msg);
+            // No allocation to free in the msg
+            break;
+        case DEVICE_MSG_TYPE_FRAME_LATENCY:
+            log_frame_latency("capture to dequeue",
+                              &msg->frame_latency.capture_to_dequeue);
+            log_frame_latency("dequeue to write",
+                              &msg->frame_latency.dequeue_to_write);
+            log_frame_latency("capture to write",
+                              &msg->frame_latency.capture_to_write);
+            // No allocation to free in the msg
+            break;
+        case DEVICE_MSG_TYPE_IDLE:
+            LOGI("Device video %s", msg->idle.idle ? "idle" : "active");
+            // No allocation to free in the msg
+            break;
+        case DEVICE_MSG_TYPE_ENCODER_PROBE:
+            log_encoder_probe(msg);
+            // No allocation to free in the msg
+            break;
+        case DEVICE_MSG_TYPE_REPLAY_DATA:
+            process_replay_data(receiver, msg);
+            sc_device_msg_destroy(msg);
             break;
     }
 }
@@ -4,6 +4,7 @@
 #include "common.h"
 
 #include <stdbool.h>
+#include <stdio.h>
 
 #include "uhid/uhid_output.h"
 #include "util/acksync.h"
@@ -20,6 +21,11 @@ struct sc_receiver {
     struct sc_acksync *acksync;
     struct sc_uhid_devices *uhid_devices;
 
+    // Replay buffer being received (accessed only from the receiver thread)
+    FILE *replay_file;
+    char replay_filename[64];
+    bool replay_error; // drop the chunks until the end marker
+
     const struct sc_receiver_callbacks *cbs;
     void *cbs_userdata;
 };
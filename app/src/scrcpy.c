@@ -1,6 +1,7 @@
 #include "scrcpy.h"
 
 #include <stdio.h>
+#include <stdlib.h>
 #include <string.h>
 #include <unistd.h>
 #include <libavformat/avformat.h>
@@ -811,6 +812,9 @@ aoa_complete:
             .mipmaps = options->mipmaps,
             .fullscreen = options->fullscreen,
             .start_fps_counter = options->start_fps_counter,
+            .minimized_max_fps = options->minimized_max_fps,
+            // Already validated by the server
+            .max_fps = options->max_fps ? strtof(options->max_fps, NULL) : 0,
         };
 
         if (!sc_screen_init(&s->screen, &screen_params)) {
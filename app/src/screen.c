@@ -343,6 +343,12 @@ sc_screen_init(struct sc_screen *screen,
     screen->req.fullscreen = params->fullscreen;
     screen->req.start_fps_counter = params->start_fps_counter;
 
+    // Only meaningful with a controller
+    assert(!params->minimized_max_fps || params->controller);
+    screen->minimized_max_fps = params->minimized_max_fps;
+    screen->max_fps = params->max_fps;
+    screen->max_fps_throttled = false;
+
     bool ok = sc_frame_buffer_init(&screen->fb);
     if (!ok) {
         return false;
@@ -798,6 +804,20 @@ sc_screen_resize_to_pixel_perfect(struct sc_screen *screen) {
                                             content_size.height);
 }
 
+static void
+sc_screen_request_max_fps(struct sc_screen *screen, float max_fps) {
+    struct sc_controller *controller = screen->im.controller;
+    assert(controller);
+
+    struct sc_control_msg msg;
+    msg.type = SC_CONTROL_MSG_TYPE_SET_MAX_FPS;
+    msg.set_max_fps.max_fps = max_fps;
+
+    if (!sc_controller_push_msg(controller, &msg)) {
+        LOGW("Could not request max fps %g", (double) max_fps);
+    }
+}
+
 bool
 sc_screen_handle_event(struct sc_screen *screen, const SDL_Event *event) {
     switch (event->type) {
@@ -841,9 +861,20 @@ sc_screen_handle_event(struct sc_screen *screen, const SDL_Event *event) {
                     screen->maximized = true;
                     break;
                 case SDL_WINDOWEVENT_MINIMIZED:
+                    if (screen->minimized_max_fps
+                            && !screen->max_fps_throttled) {
+                        // Nobody is watching, throttle the capture
+                        sc_screen_request_max_fps(screen,
+                                                  screen->minimized_max_fps);
+                        screen->max_fps_throttled = true;
+                    }
                     screen->minimized = true;
                     break;
                 case SDL_WINDOWEVENT_RESTORED:
+                    if (screen->max_fps_throttled) {
+                        sc_screen_request_max_fps(screen, screen->max_fps);
+                        screen->max_fps_throttled = false;
+                    }
                     if (screen->fullscreen) {
                         // On Windows, in maximized+fullscreen, disabling
                         // fullscreen mode unexpectedly triggers the "restored"
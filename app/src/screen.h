@@ -67,6 +67,11 @@ struct sc_screen {
 
     bool paused;
     AVFrame *resume_frame;
+
+    // max fps requested while the window is minimized (0 to not change it)
+    uint16_t minimized_max_fps;
+    float max_fps; // max fps to restore (0 for no limit)
+    bool max_fps_throttled; // minimized_max_fps has been requested
 };
 
 struct sc_screen_params {
@@ -98,6 +103,9 @@ struct sc_screen_params {
 
     bool fullscreen;
     bool start_fps_counter;
+
+    uint16_t minimized_max_fps; // 0 to not change the max fps when minimized
+    float max_fps; // initial max fps, 0 for no limit
 };
 
 // initialize screen, create window, renderer and texture (window is hidden)
@@ -93,12 +93,13 @@ static void test_serialize_inject_touch_event(void) {
             .pressure = 1.0f,
             .action_button = AMOTION_EVENT_BUTTON_PRIMARY,
             .buttons = AMOTION_EVENT_BUTTON_PRIMARY,
+            .timestamp = 0x01020304,
         },
     };
 
     uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
     size_t size = sc_control_msg_serialize(&msg, buf);
-    assert(size == 32);
+    assert(size == 36);
 
     const uint8_t expected[] = {
         SC_CONTROL_MSG_TYPE_INJECT_TOUCH_EVENT,
@@ -109,6 +110,7 @@ static void test_serialize_inject_touch_event(void) {
         0xff, 0xff, // pressure
         0x00, 0x00, 0x00, 0x01, // AMOTION_EVENT_BUTTON_PRIMARY (action button)
         0x00, 0x00, 0x00, 0x01, // AMOTION_EVENT_BUTTON_PRIMARY (buttons)
+        0x01, 0x02, 0x03, 0x04, // timestamp
     };
     assert(!memcmp(buf, expected, sizeof(expected)));
 }
@@ -426,6 +428,133 @@ static void test_serialize_reset_video(void) {
     assert(!memcmp(buf, expected, sizeof(expected)));
 }
 
+static void test_serialize_request_key_frame(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_REQUEST_KEY_FRAME,
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 1);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_REQUEST_KEY_FRAME,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_get_frame_latency(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_GET_FRAME_LATENCY,
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 1);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_GET_FRAME_LATENCY,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_save_replay_buffer(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER,
+        .save_replay_buffer = {
+            .path = "/sdcard/replay.mp4",
+        },
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 20);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER,
+        18, // path length
+        '/', 's', 'd', 'c', 'a', 'r', 'd', '/', 'r', 'e', 'p', 'l', 'a', 'y',
+        '.', 'm', 'p', '4',
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_save_replay_buffer_to_client(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER,
+        .save_replay_buffer = {
+            .path = NULL,
+        },
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 2);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_SAVE_REPLAY_BUFFER,
+        0, // empty path
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_max_fps(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_SET_MAX_FPS,
+        .set_max_fps = {
+            .max_fps = 7.5f,
+        },
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 5);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_SET_MAX_FPS,
+        0x40, 0xf0, 0x00, 0x00, // 7.5
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_input_stream(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_SET_INPUT_STREAM,
+        .set_input_stream = {
+            .stream_id = 2,
+        },
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 2);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_SET_INPUT_STREAM,
+        0x02,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
+static void test_serialize_set_main_video(void) {
+    struct sc_control_msg msg = {
+        .type = SC_CONTROL_MSG_TYPE_SET_MAIN_VIDEO,
+        .set_main_video = {
+            .on = true,
+        },
+    };
+
+    uint8_t buf[SC_CONTROL_MSG_MAX_SIZE];
+    size_t size = sc_control_msg_serialize(&msg, buf);
+    assert(size == 2);
+
+    const uint8_t expected[] = {
+        SC_CONTROL_MSG_TYPE_SET_MAIN_VIDEO,
+        0x01,
+    };
+    assert(!memcmp(buf, expected, sizeof(expected)));
+}
+
 int main(int argc, char *argv[]) {
     (void) argc;
     (void) argv;
@@ -449,5 +578,12 @@ int main(int argc, char *argv[]) {
     test_serialize_uhid_destroy();
     test_serialize_open_hard_keyboard();
     test_serialize_reset_video();
+    test_serialize_request_key_frame();
+    test_serialize_get_frame_latency();
+    test_serialize_save_replay_buffer();
+    test_serialize_save_replay_buffer_to_client();
+    test_serialize_set_max_fps();
+    test_serialize_set_input_stream();
+    test_serialize_set_main_video();
     return 0;
 }
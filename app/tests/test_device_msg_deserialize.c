@@ -83,6 +83,183 @@ static void test_deserialize_uhid_output(void) {
     sc_device_msg_destroy(&msg);
 }
 
+static void test_deserialize_video_bit_rate(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_VIDEO_BIT_RATE,
+        0x00, 0x3d, 0x09, 0x00, // 4000000
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 5);
+
+    assert(msg.type == DEVICE_MSG_TYPE_VIDEO_BIT_RATE);
+    assert(msg.video_bit_rate.bit_rate == 4000000);
+}
+
+static void test_deserialize_idle(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_IDLE,
+        0x01,
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 2);
+
+    assert(msg.type == DEVICE_MSG_TYPE_IDLE);
+    assert(msg.idle.idle);
+}
+
+static void test_deserialize_encoder_probe(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_ENCODER_PROBE,
+        0x01, // selected
+        0x02, // 2 results
+        0x03, 'a', 'b', 'c', // name
+        0x00, // failed
+        0x00, 0x00, 0x00, 0x00,
+        0x00, 0x00, 0x00, 0x00,
+        0x00, 0x00, 0x00, 0x00,
+        0x02, 'h', 'w', // name
+        0x01, // ok
+        0x00, 0x00, 0x27, 0x10, // latency: 10000us
+        0x00, 0x00, 0x0F, 0xA0, // frame time: 4000us
+        0x00, 0x00, 0x4E, 0x20, // frame size: 20000
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == sizeof(input));
+
+    assert(msg.type == DEVICE_MSG_TYPE_ENCODER_PROBE);
+    assert(msg.encoder_probe.selected == 1);
+    assert(msg.encoder_probe.count == 2);
+    assert(!strcmp(msg.encoder_probe.results[0].name, "abc"));
+    assert(!msg.encoder_probe.results[0].ok);
+    assert(!strcmp(msg.encoder_probe.results[1].name, "hw"));
+    assert(msg.encoder_probe.results[1].ok);
+    assert(msg.encoder_probe.results[1].latency_us == 10000);
+    assert(msg.encoder_probe.results[1].frame_time_us == 4000);
+    assert(msg.encoder_probe.results[1].frame_size == 20000);
+
+    // incomplete message
+    r = sc_device_msg_deserialize(input, sizeof(input) - 1, &msg);
+    assert(r == 0);
+}
+
+static void test_deserialize_metrics(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_METRICS,
+        0x00, 0x00, 0x03, 0xE8, // interval: 1000ms
+        0x02, // 2 counters
+        0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x3C, // 60
+        0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, // 1 << 32
+        0x01, // 1 latency
+        0x00, 0x00, 0x00, 0x3C, // count: 60
+        0x00, 0x00, 0x03, 0xFF, // p50: 1023
+        0x00, 0x00, 0x07, 0xFF, // p99: 2047
+        0x00, 0x00, 0x05, 0xDC, // max: 1500
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == sizeof(input));
+
+    assert(msg.type == DEVICE_MSG_TYPE_METRICS);
+    assert(msg.metrics.interval_ms == 1000);
+    assert(msg.metrics.counter_count == 2);
+    assert(msg.metrics.counters[0] == 60);
+    assert(msg.metrics.counters[1] == UINT64_C(1) << 32);
+    assert(msg.metrics.latency_count == 1);
+    assert(msg.metrics.latencies[0].count == 60);
+    assert(msg.metrics.latencies[0].p50 == 1023);
+    assert(msg.metrics.latencies[0].p99 == 2047);
+    assert(msg.metrics.latencies[0].max == 1500);
+
+    // incomplete message
+    r = sc_device_msg_deserialize(input, sizeof(input) - 1, &msg);
+    assert(r == 0);
+}
+
+static void test_deserialize_frame_latency(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_FRAME_LATENCY,
+        // capture to dequeue
+        0x00, 0x00, 0x00, 0x78, // count: 120
+        0x00, 0x00, 0x1F, 0x40, // p50: 8000
+        0x00, 0x00, 0x2E, 0xE0, // p99: 12000
+        0x00, 0x00, 0x3A, 0x98, // max: 15000
+        // dequeue to write
+        0x00, 0x00, 0x00, 0x78, // count: 120
+        0x00, 0x00, 0x01, 0xF4, // p50: 500
+        0x00, 0x00, 0x07, 0xD0, // p99: 2000
+        0x00, 0x00, 0x0B, 0xB8, // max: 3000
+        // capture to write
+        0x00, 0x00, 0x00, 0x78, // count: 120
+        0x00, 0x00, 0x21, 0x34, // p50: 8500
+        0x00, 0x00, 0x36, 0xB0, // p99: 14000
+        0x00, 0x00, 0x46, 0x50, // max: 18000
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 49);
+
+    assert(msg.type == DEVICE_MSG_TYPE_FRAME_LATENCY);
+    assert(msg.frame_latency.capture_to_dequeue.count == 120);
+    assert(msg.frame_latency.capture_to_dequeue.p50 == 8000);
+    assert(msg.frame_latency.capture_to_dequeue.p99 == 12000);
+    assert(msg.frame_latency.capture_to_dequeue.max == 15000);
+    assert(msg.frame_latency.dequeue_to_write.p50 == 500);
+    assert(msg.frame_latency.dequeue_to_write.max == 3000);
+    assert(msg.frame_latency.capture_to_write.p99 == 14000);
+    assert(msg.frame_latency.capture_to_write.max == 18000);
+}
+
+static void test_deserialize_replay_data(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_REPLAY_DATA,
+        0x00, 0x00, 0x00, 0x03, // size
+        0x01, 0x02, 0x03,
+        // end marker
+        DEVICE_MSG_TYPE_REPLAY_DATA,
+        0x00, 0x00, 0x00, 0x00, // size
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 8);
+
+    assert(msg.type == DEVICE_MSG_TYPE_REPLAY_DATA);
+    assert(msg.replay_data.size == 3);
+
+    unsigned char expected[] = {1, 2, 3};
+    assert(!memcmp(msg.replay_data.data, expected, sizeof(expected)));
+
+    sc_device_msg_destroy(&msg);
+
+    r = sc_device_msg_deserialize(&input[8], sizeof(input) - 8, &msg);
+    assert(r == 5);
+
+    assert(msg.type == DEVICE_MSG_TYPE_REPLAY_DATA);
+    assert(msg.replay_data.size == 0);
+
+    sc_device_msg_destroy(&msg);
+}
+
+static void test_deserialize_replay_data_incomplete(void) {
+    const uint8_t input[] = {
+        DEVICE_MSG_TYPE_REPLAY_DATA,
+        0x00, 0x00, 0x00, 0x03, // size
+        0x01, 0x02,
+    };
+
+    struct sc_device_msg msg;
+    ssize_t r = sc_device_msg_deserialize(input, sizeof(input), &msg);
+    assert(r == 0); // not available yet
+}
+
 int main(int argc, char *argv[]) {
     (void) argc;
     (void) argv;
@@ -91,5 +268,12 @@ int main(int argc, char *argv[]) {
     test_deserialize_clipboard_big();
     test_deserialize_ack_set_clipboard();
     test_deserialize_uhid_output();
+    test_deserialize_video_bit_rate();
+    test_deserialize_idle();
+    test_deserialize_encoder_probe();
+    test_deserialize_metrics();
+    test_deserialize_frame_latency();
+    test_deserialize_replay_data();
+    test_deserialize_replay_data_incomplete();
     return 0;
 }
@@ -5,17 +5,21 @@ import com.genymobile.scrcpy.audio.AudioSource;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.NewDisplay;
 import com.genymobile.scrcpy.device.Orientation;
+import com.genymobile.scrcpy.device.SendQueuePolicy;
 import com.genymobile.scrcpy.device.Size;
 import com.genymobile.scrcpy.util.CodecOption;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.video.CameraAspectRatio;
 import com.genymobile.scrcpy.video.CameraFacing;
+import com.genymobile.scrcpy.video.EncoderProbeObjective;
 import com.genymobile.scrcpy.video.VideoCodec;
 import com.genymobile.scrcpy.video.VideoSource;
 
 import android.graphics.Rect;
 import android.util.Pair;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 
@@ -32,6 +36,8 @@ public class Options {
     private AudioSource audioSource = AudioSource.OUTPUT;
     private boolean audioDup;
     private int videoBitRate = 8000000;
+    private int minVideoBitRate; // 0 to disable adaptive bit rate
+    private int maxVideoBitRate; // 0 to use videoBitRate
     private int audioBitRate = 128000;
     private float maxFps;
     private float angle;
@@ -52,14 +58,41 @@ public class Options {
     private List<CodecOption> audioCodecOptions;
 
     private String videoEncoder;
+    private EncoderProbeObjective videoEncoderProbe; // null to use the default encoder
     private String audioEncoder;
     private boolean powerOffScreenOnClose;
     private boolean clipboardAutosync = true;
     private boolean downsizeOnError = true;
+    private int videoSendQueueSize; // 0 to write packets synchronously from the encoder thread
+    private SendQueuePolicy videoSendQueuePolicy = SendQueuePolicy.BLOCK;
+    private int metricsInterval; // in milliseconds, 0 to disable metrics
+    private int videoFrameTraceSize; // number of frames in the trace window, 0 to disable frame tracing
+    private int videoIdleTimeout; // in milliseconds, 0 to always repeat the last frame
+    private int videoIdleKeepalive; // in milliseconds, 0 to send no frame while idle
+    private int videoThumbnailSize; // max size of the thumbnail stream, 0 to disable
+    private float videoThumbnailMaxFps = 10;
+    private int videoThumbnailBitRate = 250_000;
+    private boolean videoMainEnabled = true; // initial state, may be changed at runtime if there is a thumbnail stream
+    private int audioRawBatchDelay; // in milliseconds, 0 to disable raw audio batching
+    private int maxViewers; // additional read-only clients, 0 to disable
+    private int viewerQueueSize = 16; // in packets
+    private int gopCacheSize = 8 * 1024 * 1024; // in bytes
+    private int resumeTimeout; // in milliseconds, 0 to stop when the client disconnects
+    private String recordFile; // path on the device, null to not record
+    private int recordSegmentDuration; // in milliseconds, 0 for a single file
+    private long recordSegmentSize; // in bytes, 0 for a single file
+    private boolean recordPreallocate = true;
+    private int recordFsyncInterval; // in milliseconds, 0 to only sync finalized segments
+    private boolean recordOnly; // record without streaming to a client
+    private int replayBufferDuration; // in milliseconds, 0 to disable
+    private int replayBufferSize = 32 * 1024 * 1024; // in bytes
+    private int recordTimeLimit; // in milliseconds, 0 for no limit
     private boolean cleanup = true;
     private boolean powerOn = true;
 
     private NewDisplay newDisplay;
+    // Additional displays captured to separate video streams: (displayId, null) or (Device.DISPLAY_ID_NONE, newDisplay)
+    private List<Pair<Integer, NewDisplay>> extraDisplays = Collections.emptyList();
     private boolean vdDestroyContent = true;
     private boolean vdSystemDecorations = true;
 
@@ -71,6 +104,7 @@ public class Options {
     private boolean listCameras;
     private boolean listCameraSizes;
     private boolean listApps;
+    private boolean capabilityCache = true; // reuse the device capabilities stored by a previous server instance
 
     // Options not used by the scrcpy client, but useful to use scrcpy-server directly
     private boolean sendDeviceMeta = true; // send device name and size
@@ -122,6 +156,14 @@ public class Options {
         return videoBitRate;
     }
 
+    public int getMinVideoBitRate() {
+        return minVideoBitRate;
+    }
+
+    public int getMaxVideoBitRate() {
+        return maxVideoBitRate != 0 ? maxVideoBitRate : videoBitRate;
+    }
+
     public int getAudioBitRate() {
         return audioBitRate;
     }
@@ -198,6 +240,10 @@ public class Options {
         return videoEncoder;
     }
 
+    public EncoderProbeObjective getVideoEncoderProbe() {
+        return videoEncoderProbe;
+    }
+
     public String getAudioEncoder() {
         return audioEncoder;
     }
@@ -214,6 +260,102 @@ public class Options {
         return downsizeOnError;
     }
 
+    public int getVideoSendQueueSize() {
+        return videoSendQueueSize;
+    }
+
+    public SendQueuePolicy getVideoSendQueuePolicy() {
+        return videoSendQueuePolicy;
+    }
+
+    public int getVideoFrameTraceSize() {
+        return videoFrameTraceSize;
+    }
+
+    public int getVideoIdleTimeout() {
+        return videoIdleTimeout;
+    }
+
+    public int getVideoIdleKeepalive() {
+        return videoIdleKeepalive;
+    }
+
+    public int getVideoThumbnailSize() {
+        return videoThumbnailSize;
+    }
+
+    public float getVideoThumbnailMaxFps() {
+        return videoThumbnailMaxFps;
+    }
+
+    public int getVideoThumbnailBitRate() {
+        return videoThumbnailBitRate;
+    }
+
+    public boolean getVideoMainEnabled() {
+        return videoMainEnabled;
+    }
+
+    public int getAudioRawBatchDelay() {
+        return audioRawBatchDelay;
+    }
+
+    public int getMaxViewers() {
+        return maxViewers;
+    }
+
+    public int getViewerQueueSize() {
+        return viewerQueueSize;
+    }
+
+    public int getGopCacheSize() {
+        return gopCacheSize;
+    }
+
+    public int getResumeTimeout() {
+        return resumeTimeout;
+    }
+
+    public String getRecordFile() {
+        return recordFile;
+    }
+
+    public int getRecordSegmentDuration() {
+        return recordSegmentDuration;
+    }
+
+    public long getRecordSegmentSize() {
+        return recordSegmentSize;
+    }
+
+    public boolean getRecordPreallocate() {
+        return recordPreallocate;
+    }
+
+    public int getRecordFsyncInterval() {
+        return recordFsyncInterval;
+    }
+
+    public boolean getRecordOnly() {
+        return recordOnly;
+    }
+
+    public int getRecordTimeLimit() {
+        return recordTimeLimit;
+    }
+
+    public int getReplayBufferDuration() {
+        return replayBufferDuration;
+    }
+
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    public int getMetricsInterval() {
+        return metricsInterval;
+    }
+
     public boolean getCleanup() {
         return cleanup;
     }
@@ -226,6 +368,10 @@ public class Options {
         return newDisplay;
     }
 
+    public List<Pair<Integer, NewDisplay>> getExtraDisplays() {
+        return extraDisplays;
+    }
+
     public Orientation getCaptureOrientation() {
         return captureOrientation;
     }
@@ -266,6 +412,10 @@ public class Options {
         return listApps;
     }
 
+    public boolean getCapabilityCache() {
+        return capabilityCache;
+    }
+
     public boolean getSendDeviceMeta() {
         return sendDeviceMeta;
     }
@@ -282,6 +432,41 @@ public class Options {
         return sendCodecMeta;
     }
 
+    /**
+     * Create the options of an additional video stream, capturing another display.
+     * <p>
+     * Only the video encoding settings of the main stream are copied, all the other options keep their default value: the crop and the capture
+     * orientation are relative to the main display, and the recording, the replay buffer, the additional viewers, the thumbnail and the encoder
+     * probe only concern the main video stream.
+     */
+    public Options forExtraDisplay(Pair<Integer, NewDisplay> extraDisplay) {
+        Options options = new Options();
+
+        options.displayId = extraDisplay.first;
+        options.newDisplay = extraDisplay.second;
+        options.vdDestroyContent = vdDestroyContent;
+        options.vdSystemDecorations = vdSystemDecorations;
+        options.maxSize = maxSize;
+
+        options.videoCodec = videoCodec;
+        options.videoBitRate = videoBitRate;
+        options.minVideoBitRate = minVideoBitRate;
+        options.maxVideoBitRate = maxVideoBitRate;
+        options.maxFps = maxFps;
+        options.videoCodecOptions = videoCodecOptions;
+        options.videoEncoder = videoEncoder;
+        options.downsizeOnError = downsizeOnError;
+        options.videoSendQueueSize = videoSendQueueSize;
+        options.videoSendQueuePolicy = videoSendQueuePolicy;
+        options.videoFrameTraceSize = videoFrameTraceSize;
+        options.videoIdleTimeout = videoIdleTimeout;
+        options.videoIdleKeepalive = videoIdleKeepalive;
+
+        options.sendFrameMeta = sendFrameMeta;
+        options.sendCodecMeta = sendCodecMeta;
+        return options;
+    }
+
     @SuppressWarnings("MethodLength")
     public static Options parse(String... args) {
         if (args.length < 1) {
@@ -358,6 +543,12 @@ public class Options {
                 case "video_bit_rate":
                     options.videoBitRate = Integer.parseInt(value);
                     break;
+                case "video_bit_rate_min":
+                    options.minVideoBitRate = Integer.parseInt(value);
+                    break;
+                case "video_bit_rate_max":
+                    options.maxVideoBitRate = Integer.parseInt(value);
+                    break;
                 case "audio_bit_rate":
                     options.audioBitRate = Integer.parseInt(value);
                     break;
@@ -404,6 +595,15 @@ public class Options {
                         options.videoEncoder = value;
                     }
                     break;
+                case "video_encoder_probe":
+                    if (!value.isEmpty()) {
+                        EncoderProbeObjective objective = EncoderProbeObjective.findByName(value);
+                        if (objective == null) {
+                            throw new IllegalArgumentException("Video encoder probe objective " + value + " not supported");
+                        }
+                        options.videoEncoderProbe = objective;
+                    }
+                    break;
                 case "audio_encoder":
                     if (!value.isEmpty()) {
                         options.audioEncoder = value;
@@ -417,6 +617,141 @@ public class Options {
                 case "downsize_on_error":
                     options.downsizeOnError = Boolean.parseBoolean(value);
                     break;
+                case "video_send_queue_size":
+                    options.videoSendQueueSize = Integer.parseInt(value);
+                    if (options.videoSendQueueSize < 0) {
+                        throw new IllegalArgumentException("Invalid video send queue size: " + options.videoSendQueueSize);
+                    }
+                    break;
+                case "video_send_queue_policy":
+                    SendQueuePolicy sendQueuePolicy = SendQueuePolicy.findByName(value);
+                    if (sendQueuePolicy == null) {
+                        throw new IllegalArgumentException("Video send queue policy " + value + " not supported");
+                    }
+                    options.videoSendQueuePolicy = sendQueuePolicy;
+                    break;
+                case "video_frame_trace":
+                    options.videoFrameTraceSize = Integer.parseInt(value);
+                    if (options.videoFrameTraceSize < 0) {
+                        throw new IllegalArgumentException("Invalid video frame trace size: " + options.videoFrameTraceSize);
+                    }
+                    break;
+                case "video_idle_timeout":
+                    options.videoIdleTimeout = Integer.parseInt(value);
+                    if (options.videoIdleTimeout < 0) {
+                        throw new IllegalArgumentException("Invalid video idle timeout: " + options.videoIdleTimeout);
+                    }
+                    break;
+                case "video_idle_keepalive":
+                    options.videoIdleKeepalive = Integer.parseInt(value);
+                    if (options.videoIdleKeepalive < 0) {
+                        throw new IllegalArgumentException("Invalid video idle keepalive interval: " + options.videoIdleKeepalive);
+                    }
+                    break;
+                case "video_thumbnail_size":
+                    options.videoThumbnailSize = Integer.parseInt(value) & ~7; // multiple of 8
+                    if (options.videoThumbnailSize < 0) {
+                        throw new IllegalArgumentException("Invalid video thumbnail size: " + options.videoThumbnailSize);
+                    }
+                    break;
+                case "video_thumbnail_fps":
+                    options.videoThumbnailMaxFps = parseFloat("video_thumbnail_fps", value);
+                    if (!(options.videoThumbnailMaxFps >= 0)) {
+                        throw new IllegalArgumentException("Invalid video thumbnail fps: " + options.videoThumbnailMaxFps);
+                    }
+                    break;
+                case "video_thumbnail_bit_rate":
+                    options.videoThumbnailBitRate = Integer.parseInt(value);
+                    if (options.videoThumbnailBitRate <= 0) {
+                        throw new IllegalArgumentException("Invalid video thumbnail bit rate: " + options.videoThumbnailBitRate);
+                    }
+                    break;
+                case "video_main":
+                    options.videoMainEnabled = Boolean.parseBoolean(value);
+                    break;
+                case "audio_raw_batch_delay":
+                    options.audioRawBatchDelay = Integer.parseInt(value);
+                    if (options.audioRawBatchDelay < 0) {
+                        throw new IllegalArgumentException("Invalid raw audio batch delay: " + options.audioRawBatchDelay);
+                    }
+                    break;
+                case "max_viewers":
+                    options.maxViewers = Integer.parseInt(value);
+                    if (options.maxViewers < 0) {
+                        throw new IllegalArgumentException("Invalid max viewers: " + options.maxViewers);
+                    }
+                    break;
+                case "viewer_queue_size":
+                    options.viewerQueueSize = Integer.parseInt(value);
+                    if (options.viewerQueueSize < 2) {
+                        throw new IllegalArgumentException("Invalid viewer queue size: " + options.viewerQueueSize);
+                    }
+                    break;
+                case "gop_cache_size":
+                    options.gopCacheSize = Integer.parseInt(value);
+                    if (options.gopCacheSize <= 0) {
+                        throw new IllegalArgumentException("Invalid GOP cache size: " + options.gopCacheSize);
+                    }
+                    break;
+                case "resume_timeout":
+                    options.resumeTimeout = Integer.parseInt(value);
+                    if (options.resumeTimeout < 0) {
+                        throw new IllegalArgumentException("Invalid resume timeout: " + options.resumeTimeout);
+                    }
+                    break;
+                case "record_file":
+                    if (!value.isEmpty()) {
+                        options.recordFile = value;
+                    }
+                    break;
+                case "record_segment_duration":
+                    options.recordSegmentDuration = Integer.parseInt(value);
+                    if (options.recordSegmentDuration < 0) {
+                        throw new IllegalArgumentException("Invalid record segment duration: " + options.recordSegmentDuration);
+                    }
+                    break;
+                case "record_segment_size":
+                    options.recordSegmentSize = Long.parseLong(value);
+                    if (options.recordSegmentSize < 0) {
+                        throw new IllegalArgumentException("Invalid record segment size: " + options.recordSegmentSize);
+                    }
+                    break;
+                case "record_preallocate":
+                    options.recordPreallocate = Boolean.parseBoolean(value);
+                    break;
+                case "record_fsync_interval":
+                    options.recordFsyncInterval = Integer.parseInt(value);
+                    if (options.recordFsyncInterval < 0) {
+                        throw new IllegalArgumentException("Invalid record fsync interval: " + options.recordFsyncInterval);
+                    }
+                    break;
+                case "record_only":
+                    options.recordOnly = Boolean.parseBoolean(value);
+                    break;
+                case "record_time_limit":
+                    options.recordTimeLimit = Integer.parseInt(value);
+                    if (options.recordTimeLimit < 0) {
+                        throw new IllegalArgumentException("Invalid record time limit: " + options.recordTimeLimit);
+                    }
+                    break;
+                case "replay_buffer_duration":
+                    options.replayBufferDuration = Integer.parseInt(value);
+                    if (options.replayBufferDuration < 0) {
+                        throw new IllegalArgumentException("Invalid replay buffer duration: " + options.replayBufferDuration);
+                    }
+                    break;
+                case "replay_buffer_size":
+                    options.replayBufferSize = Integer.parseInt(value);
+                    if (options.replayBufferSize <= 0) {
+                        throw new IllegalArgumentException("Invalid replay buffer size: " + options.replayBufferSize);
+                    }
+                    break;
+                case "metrics_interval":
+                    options.metricsInterval = Integer.parseInt(value);
+                    if (options.metricsInterval < 0) {
+                        throw new IllegalArgumentException("Invalid metrics interval: " + options.metricsInterval);
+                    }
+                    break;
                 case "cleanup":
                     options.cleanup = Boolean.parseBoolean(value);
                     break;
@@ -438,6 +773,9 @@ public class Options {
                 case "list_apps":
                     options.listApps = Boolean.parseBoolean(value);
                     break;
+                case "capability_cache":
+                    options.capabilityCache = Boolean.parseBoolean(value);
+                    break;
                 case "camera_id":
                     if (!value.isEmpty()) {
                         options.cameraId = value;
@@ -471,6 +809,11 @@ public class Options {
                 case "new_display":
                     options.newDisplay = parseNewDisplay(value);
                     break;
+                case "extra_displays":
+                    if (!value.isEmpty()) {
+                        options.extraDisplays = parseExtraDisplays(value);
+                    }
+                    break;
                 case "vd_destroy_content":
                     options.vdDestroyContent = Boolean.parseBoolean(value);
                     break;
@@ -509,11 +852,50 @@ public class Options {
             }
         }
 
+        if (options.minVideoBitRate < 0 || (options.minVideoBitRate > 0 && options.minVideoBitRate > options.getMaxVideoBitRate())) {
+            throw new IllegalArgumentException("Invalid video bit rate bounds: " + options.minVideoBitRate + " to " + options.getMaxVideoBitRate());
+        }
+
+        if (options.recordOnly) {
+            if (options.recordFile == null) {
+                throw new IllegalArgumentException("Record-only mode requires a record file");
+            }
+            // No main client connection (additional viewers may still connect)
+            options.control = false;
+            options.resumeTimeout = 0;
+        }
+
         if (options.newDisplay != null) {
             assert options.displayId == 0 : "Must not set both displayId and newDisplay";
             options.displayId = Device.DISPLAY_ID_NONE;
         }
 
+        if (options.videoEncoderProbe != null && options.videoEncoder != null) {
+            throw new IllegalArgumentException("Could not probe the video encoders if an encoder is requested explicitly");
+        }
+
+        if (options.videoThumbnailSize > 0) {
+            if (!options.video) {
+                throw new IllegalArgumentException("The thumbnail stream requires video");
+            }
+            if (options.recordOnly || options.resumeTimeout > 0) {
+                // The thumbnail stream is only sent to the main client connection, which must not be resumed
+                throw new IllegalArgumentException("The thumbnail stream is not supported with record_only or resume_timeout");
+            }
+        } else if (!options.videoMainEnabled) {
+            throw new IllegalArgumentException("The main video stream may only be disabled if there is a thumbnail stream");
+        }
+
+        if (!options.extraDisplays.isEmpty()) {
+            if (!options.video) {
+                throw new IllegalArgumentException("Extra displays require video");
+            }
+            if (options.recordOnly || options.resumeTimeout > 0) {
+                // The extra streams are only sent to the main client connection, which must not be resumed
+                throw new IllegalArgumentException("Extra displays are not supported with record_only or resume_timeout");
+            }
+        }
+
         return options;
     }
 
@@ -574,6 +956,27 @@ public class Options {
         }
     }
 
+    private static List<Pair<Integer, NewDisplay>> parseExtraDisplays(String extraDisplays) {
+        // Comma-separated list of:
+        //  - "<displayId>"
+        //  - "new" or "new:<new display>" (see parseNewDisplay())
+        List<Pair<Integer, NewDisplay>> result = new ArrayList<>();
+        for (String token : extraDisplays.split(",")) {
+            if (token.equals("new")) {
+                result.add(Pair.create(Device.DISPLAY_ID_NONE, new NewDisplay()));
+            } else if (token.startsWith("new:")) {
+                result.add(Pair.create(Device.DISPLAY_ID_NONE, parseNewDisplay(token.substring(4))));
+            } else {
+                int displayId = Integer.parseInt(token);
+                if (displayId < 0) {
+                    throw new IllegalArgumentException("Invalid extra display id: " + displayId);
+                }
+                result.add(Pair.create(displayId, null));
+            }
+        }
+        return result;
+    }
+
     private static NewDisplay parseNewDisplay(String newDisplay) {
         // Possible inputs:
         //  - "" (empty string)
@@ -9,12 +9,25 @@ import com.genymobile.scrcpy.audio.AudioRawRecorder;
 import com.genymobile.scrcpy.audio.AudioSource;
 import com.genymobile.scrcpy.control.ControlChannel;
 import com.genymobile.scrcpy.control.Controller;
+import com.genymobile.scrcpy.control.DeviceMessageSender;
 import com.genymobile.scrcpy.device.ConfigurationException;
+import com.genymobile.scrcpy.device.ConnectionParams;
 import com.genymobile.scrcpy.device.DesktopConnection;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.NewDisplay;
+import com.genymobile.scrcpy.device.ResumableSession;
+import com.genymobile.scrcpy.device.ResumableSink;
+import com.genymobile.scrcpy.device.StreamBroadcaster;
+import com.genymobile.scrcpy.device.StreamOutput;
 import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.device.ViewerServer;
+import com.genymobile.scrcpy.metrics.Metrics;
+import com.genymobile.scrcpy.metrics.MetricsReporter;
 import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.record.Recorder;
+import com.genymobile.scrcpy.record.ReplayBuffer;
+import com.genymobile.scrcpy.util.CapabilityCache;
+import com.genymobile.scrcpy.util.Codec;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
 import com.genymobile.scrcpy.video.CameraCapture;
@@ -22,11 +35,16 @@ import com.genymobile.scrcpy.video.NewDisplayCapture;
 import com.genymobile.scrcpy.video.ScreenCapture;
 import com.genymobile.scrcpy.video.SurfaceCapture;
 import com.genymobile.scrcpy.video.SurfaceEncoder;
+import com.genymobile.scrcpy.video.ThumbnailEncoder;
 import com.genymobile.scrcpy.video.VideoSource;
+import com.genymobile.scrcpy.video.VirtualDisplayListener;
 
 import android.os.Build;
+import android.os.SystemClock;
+import android.util.Pair;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -59,10 +77,22 @@ public final class Server {
             }
         }
 
-        synchronized void await() {
+        /**
+         * Wait for all the processors to complete (or for a fatal error), for up to {@code timeoutMs} (0 to wait indefinitely).
+         */
+        synchronized void await(long timeoutMs) {
+            long deadline = timeoutMs > 0 ? SystemClock.uptimeMillis() + timeoutMs : 0;
             try {
                 while (running > 0 && !fatalError) {
-                    wait();
+                    if (deadline == 0) {
+                        wait();
+                    } else {
+                        long remaining = deadline - SystemClock.uptimeMillis();
+                        if (remaining <= 0) {
+                            return;
+                        }
+                        wait(remaining);
+                    }
                 }
             } catch (InterruptedException e) {
                 // ignore
@@ -74,13 +104,39 @@ public final class Server {
         // not instantiable
     }
 
+    private static Streamer.WriteListener createBytesCounter(int counter) {
+        return (pts, size, writeDurationNs) -> Metrics.add(counter, size);
+    }
+
+    private static SurfaceEncoder createExtraVideoStream(Options options, FileDescriptor fd, Controller controller) {
+        StreamOutput output = new StreamOutput(options.getVideoCodec());
+        output.setClient(new Streamer(fd, options.getVideoCodec(), options.getSendCodecMeta(), options.getSendFrameMeta()));
+
+        int displayId = options.getDisplayId();
+        VirtualDisplayListener vdListener = controller != null ? controller.addStream(displayId) : null;
+        SurfaceCapture capture;
+        if (options.getNewDisplay() != null) {
+            capture = new NewDisplayCapture(vdListener, options);
+        } else {
+            capture = new ScreenCapture(vdListener, options);
+        }
+
+        // The device messages do not identify the stream, so only the main encoder sends them
+        return new SurfaceEncoder(capture, output, null, options);
+    }
+
     private static void scrcpy(Options options) throws IOException, ConfigurationException {
         if (Build.VERSION.SDK_INT < AndroidVersions.API_31_ANDROID_12 && options.getVideoSource() == VideoSource.CAMERA) {
             Ln.e("Camera mirroring is not supported before Android 12");
             throw new ConfigurationException("Camera mirroring is not supported");
         }
 
-        if (Build.VERSION.SDK_INT < AndroidVersions.API_29_ANDROID_10 && options.getNewDisplay() != null) {
+        List<Pair<Integer, NewDisplay>> extraDisplays = options.getExtraDisplays();
+        boolean newDisplayRequested = options.getNewDisplay() != null;
+        for (Pair<Integer, NewDisplay> extraDisplay : extraDisplays) {
+            newDisplayRequested |= extraDisplay.second != null;
+        }
+        if (Build.VERSION.SDK_INT < AndroidVersions.API_29_ANDROID_10 && newDisplayRequested) {
             Ln.e("New virtual display is not supported before Android 10");
             throw new ConfigurationException("New virtual display is not supported");
         }
@@ -97,23 +153,82 @@ public final class Server {
         boolean video = options.getVideo();
         boolean audio = options.getAudio();
         boolean sendDummyByte = options.getSendDummyByte();
+        // In record-only mode, no client connects (the control channel is disabled by the options)
+        boolean streamToClient = !options.getRecordOnly();
 
         Workarounds.apply();
 
         List<AsyncProcessor> asyncProcessors = new ArrayList<>();
-
-        DesktopConnection connection = DesktopConnection.open(scid, tunnelForward, video, audio, control, sendDummyByte);
+        MetricsReporter metricsReporter = null;
+        ViewerServer viewerServer = null;
+        ResumableSession session = null;
+        Recorder recorder = null;
+
+        // The thumbnail stream, if any, is the first extra video stream
+        boolean thumbnail = options.getVideoThumbnailSize() > 0;
+        int extraVideoCount = (thumbnail ? 1 : 0) + extraDisplays.size();
+        ConnectionParams connectionParams = new ConnectionParams(scid, tunnelForward)
+                .setVideo(streamToClient && video)
+                .setAudio(streamToClient && audio)
+                .setControl(control)
+                .setExtraVideoCount(extraVideoCount)
+                .setSendDummyByte(sendDummyByte);
+        DesktopConnection connection = DesktopConnection.open(connectionParams);
         try {
-            if (options.getSendDeviceMeta()) {
+            if (streamToClient && options.getSendDeviceMeta()) {
                 connection.sendDeviceMeta(Device.getDeviceName());
             }
 
+            if (options.getResumeTimeout() > 0) {
+                String deviceName = options.getSendDeviceMeta() ? Device.getDeviceName() : null;
+                // The extra video streams are not resumable
+                ConnectionParams resumeParams = new ConnectionParams(scid, tunnelForward)
+                        .setVideo(video)
+                        .setAudio(audio)
+                        .setControl(control)
+                        .setSendDummyByte(sendDummyByte)
+                        .setTimeoutMs(options.getResumeTimeout());
+                session = new ResumableSession(resumeParams, deviceName);
+                session.setConnection(connection);
+            }
+
+            String recordFile = options.getRecordFile();
+            boolean recordAudio = false;
+            if (recordFile != null) {
+                // Raw audio is not encoded, so it cannot be muxed
+                recordAudio = audio && options.getAudioCodec() != AudioCodec.RAW;
+                if (audio && !recordAudio) {
+                    Ln.w("Raw audio cannot be recorded");
+                }
+                if (video || recordAudio) {
+                    recorder = new Recorder(options, video, recordAudio);
+                } else if (!streamToClient) {
+                    throw new ConfigurationException("Nothing to record");
+                }
+            }
+
             Controller controller = null;
+            StreamBroadcaster videoBroadcaster = null;
+            StreamBroadcaster audioBroadcaster = null;
+            int maxViewers = options.getMaxViewers();
 
             if (control) {
                 ControlChannel controlChannel = connection.getControlChannel();
+                if (session != null) {
+                    controlChannel.setResumableSession(session);
+                    session.setControlChannel(controlChannel);
+                }
                 controller = new Controller(controlChannel, cleanUp, options);
                 asyncProcessors.add(controller);
+
+                int metricsInterval = options.getMetricsInterval();
+                if (metricsInterval > 0) {
+                    // Enable recording before any encoder thread is started
+                    Metrics.enable();
+                    metricsReporter = new MetricsReporter(controller.getSender(), metricsInterval);
+                }
+            } else if (options.getMetricsInterval() > 0) {
+                Ln.w("Metrics are disabled: they require the control channel");
             }
 
             if (audio) {
@@ -126,19 +241,60 @@ public final class Server {
                     audioCapture = new AudioPlaybackCapture(options.getAudioDup());
                 }
 
-                Streamer audioStreamer = new Streamer(connection.getAudioFd(), audioCodec, options.getSendCodecMeta(), options.getSendFrameMeta());
+                StreamOutput audioOutput = new StreamOutput(audioCodec);
+                if (maxViewers > 0) {
+                    audioBroadcaster = new StreamBroadcaster(audioCodec, options.getSendCodecMeta(), options.getSendFrameMeta(),
+                            options.getViewerQueueSize(), options.getGopCacheSize(), "audio");
+                    audioOutput.addSink(audioBroadcaster);
+                }
+                if (recordAudio) {
+                    audioOutput.addSink(recorder.createSink(Codec.Type.AUDIO));
+                }
+                FileDescriptor audioFd = connection.getAudioFd();
+                if (audioFd != null) {
+                    Streamer audioStreamer = new Streamer(audioFd, audioCodec, options.getSendCodecMeta(), options.getSendFrameMeta());
+                    // Only for the main stream, so that the bytes forwarded to the viewers are not counted twice
+                    audioStreamer.addWriteListener(createBytesCounter(Metrics.COUNTER_AUDIO_BYTES));
+                    if (session != null) {
+                        ResumableSink audioSink = new ResumableSink(audioStreamer, session, options.getGopCacheSize());
+                        session.setAudioSink(audioSink);
+                        audioOutput.setClient(audioSink);
+                    } else {
+                        audioOutput.setClient(audioStreamer);
+                    }
+                }
                 AsyncProcessor audioRecorder;
                 if (audioCodec == AudioCodec.RAW) {
-                    audioRecorder = new AudioRawRecorder(audioCapture, audioStreamer);
+                    audioRecorder = new AudioRawRecorder(audioCapture, audioOutput, options);
                 } else {
-                    audioRecorder = new AudioEncoder(audioCapture, audioStreamer, options);
+                    audioRecorder = new AudioEncoder(audioCapture, audioOutput, options);
                 }
                 asyncProcessors.add(audioRecorder);
             }
 
             if (video) {
-                Streamer videoStreamer = new Streamer(connection.getVideoFd(), options.getVideoCodec(), options.getSendCodecMeta(),
-                        options.getSendFrameMeta());
+                StreamOutput videoOutput = new StreamOutput(options.getVideoCodec());
+                if (maxViewers > 0) {
+                    videoBroadcaster = new StreamBroadcaster(options.getVideoCodec(), options.getSendCodecMeta(), options.getSendFrameMeta(),
+                            options.getViewerQueueSize(), options.getGopCacheSize(), "video");
+                    videoOutput.addSink(videoBroadcaster);
+                }
+                if (recorder != null) {
+                    videoOutput.addSink(recorder.createSink(Codec.Type.VIDEO));
+                }
+                ResumableSink videoSink = null;
+                FileDescriptor videoFd = connection.getVideoFd();
+                if (videoFd != null) {
+                    Streamer videoStreamer = new Streamer(videoFd, options.getVideoCodec(), options.getSendCodecMeta(), options.getSendFrameMeta());
+                    videoStreamer.addWriteListener(createBytesCounter(Metrics.COUNTER_VIDEO_BYTES));
+                    if (session != null) {
+                        videoSink = new ResumableSink(videoStreamer, session, options.getGopCacheSize());
+                        session.setVideoSink(videoSink);
+                        videoOutput.setClient(videoSink);
+                    } else {
+                        videoOutput.setClient(videoStreamer);
+                    }
+                }
                 SurfaceCapture surfaceCapture;
                 if (options.getVideoSource() == VideoSource.DISPLAY) {
                     NewDisplay newDisplay = options.getNewDisplay();
@@ -151,22 +307,70 @@ public final class Server {
                 } else {
                     surfaceCapture = new CameraCapture(options);
                 }
-                SurfaceEncoder surfaceEncoder = new SurfaceEncoder(surfaceCapture, videoStreamer, options);
+                DeviceMessageSender deviceMessageSender = controller != null ? controller.getSender() : null;
+                SurfaceEncoder surfaceEncoder = new SurfaceEncoder(surfaceCapture, videoOutput, deviceMessageSender, options);
                 asyncProcessors.add(surfaceEncoder);
 
+                if (videoSink != null) {
+                    videoSink.setKeyFrameRequester(surfaceEncoder::requestKeyFrame);
+                }
+                if (videoBroadcaster != null) {
+                    videoBroadcaster.setKeyFrameRequester(surfaceEncoder::requestKeyFrame);
+                }
+                if (recorder != null) {
+                    recorder.setKeyFrameRequester(surfaceEncoder::requestKeyFrame);
+                }
+
+                if (options.getReplayBufferDuration() > 0) {
+                    if (controller != null) {
+                        ReplayBuffer replayBuffer = new ReplayBuffer(options.getReplayBufferDuration() * 1000L, options.getReplayBufferSize());
+                        surfaceEncoder.setReplayBuffer(replayBuffer);
+                        controller.setReplayBuffer(replayBuffer);
+                    } else {
+                        Ln.w("Replay buffer disabled: it requires the control channel");
+                    }
+                }
+
                 if (controller != null) {
                     controller.setSurfaceCapture(surfaceCapture);
+                    controller.setSurfaceEncoder(surfaceEncoder);
+                }
+
+                int extraVideoIndex = 0;
+                if (thumbnail) {
+                    Streamer thumbnailStreamer = new Streamer(connection.getExtraVideoFd(extraVideoIndex++), options.getVideoCodec(),
+                            options.getSendCodecMeta(), options.getSendFrameMeta());
+                    ThumbnailEncoder thumbnailEncoder = new ThumbnailEncoder(thumbnailStreamer, options);
+                    surfaceEncoder.setThumbnailEncoder(thumbnailEncoder);
+                }
+
+                for (Pair<Integer, NewDisplay> extraDisplay : extraDisplays) {
+                    asyncProcessors.add(createExtraVideoStream(options.forExtraDisplay(extraDisplay), connection.getExtraVideoFd(extraVideoIndex++),
+                            controller));
                 }
             }
 
+            if (recorder != null) {
+                // Once all the sinks are registered
+                recorder.start();
+            }
+
             Completion completion = new Completion(asyncProcessors.size());
             for (AsyncProcessor asyncProcessor : asyncProcessors) {
                 asyncProcessor.start((fatalError) -> {
                     completion.addCompleted(fatalError);
                 });
             }
+            if (metricsReporter != null) {
+                metricsReporter.start();
+            }
+            if (videoBroadcaster != null || audioBroadcaster != null) {
+                String deviceName = options.getSendDeviceMeta() ? Device.getDeviceName() : null;
+                viewerServer = new ViewerServer(scid, videoBroadcaster, audioBroadcaster, maxViewers, sendDummyByte, deviceName);
+                viewerServer.start();
+            }
 
-            completion.await();
+            completion.await(options.getRecordTimeLimit());
         } finally {
             if (cleanUp != null) {
                 cleanUp.interrupt();
@@ -174,6 +378,15 @@ public final class Server {
             for (AsyncProcessor asyncProcessor : asyncProcessors) {
                 asyncProcessor.stop();
             }
+            if (metricsReporter != null) {
+                metricsReporter.stop();
+            }
+            if (viewerServer != null) {
+                viewerServer.stop();
+            }
+            if (session != null) {
+                session.stop();
+            }
 
             OpenGLRunner.quit(); // quit the OpenGL thread, if any
 
@@ -186,12 +399,26 @@ public final class Server {
                 for (AsyncProcessor asyncProcessor : asyncProcessors) {
                     asyncProcessor.join();
                 }
+                if (metricsReporter != null) {
+                    metricsReporter.join();
+                }
+                if (viewerServer != null) {
+                    viewerServer.join();
+                }
                 OpenGLRunner.join();
             } catch (InterruptedException e) {
                 // ignore
             }
 
+            if (recorder != null) {
+                // All the encoders are stopped, finalize the file
+                recorder.stop();
+            }
+
             connection.close();
+            if (session != null) {
+                session.close();
+            }
         }
     }
 
@@ -222,6 +449,10 @@ public final class Server {
 
         Ln.i("Device: [" + Build.MANUFACTURER + "] " + Build.BRAND + " " + Build.MODEL + " (Android " + Build.VERSION.RELEASE + ")");
 
+        if (options.getCapabilityCache()) {
+            CapabilityCache.enable();
+        }
+
         if (options.getList()) {
             if (options.getCleanup()) {
                 CleanUp.unlinkSelf();
@@ -4,7 +4,9 @@ import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.AsyncProcessor;
 import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.device.ConfigurationException;
-import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.device.StreamOutput;
+import com.genymobile.scrcpy.metrics.Metrics;
+import com.genymobile.scrcpy.util.CapabilityCache;
 import com.genymobile.scrcpy.util.Codec;
 import com.genymobile.scrcpy.util.CodecOption;
 import com.genymobile.scrcpy.util.CodecUtils;
@@ -23,42 +25,23 @@ import android.os.Looper;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
 
 public final class AudioEncoder implements AsyncProcessor {
 
-    private static class InputTask {
-        private final int index;
-
-        InputTask(int index) {
-            this.index = index;
-        }
-    }
-
-    private static class OutputTask {
-        private final int index;
-        private final MediaCodec.BufferInfo bufferInfo;
-
-        OutputTask(int index, MediaCodec.BufferInfo bufferInfo) {
-            this.index = index;
-            this.bufferInfo = bufferInfo;
-        }
-    }
-
     private static final int SAMPLE_RATE = AudioConfig.SAMPLE_RATE;
     private static final int CHANNELS = AudioConfig.CHANNELS;
 
     private final AudioCapture capture;
-    private final Streamer streamer;
+    private final StreamOutput output;
     private final int bitRate;
     private final List<CodecOption> codecOptions;
     private final String encoderName;
 
     // Capacity of 64 is in practice "infinite" (it is limited by the number of available MediaCodec buffers, typically 4).
     // So many pending tasks would lead to an unacceptable delay anyway.
-    private final BlockingQueue<InputTask> inputTasks = new ArrayBlockingQueue<>(64);
-    private final BlockingQueue<OutputTask> outputTasks = new ArrayBlockingQueue<>(64);
+    // Each queue has a single producer (the MediaCodec callback thread) and a single consumer (the input or output thread).
+    private final CodecBufferQueue inputTasks = new CodecBufferQueue(64);
+    private final CodecBufferQueue outputTasks = new CodecBufferQueue(64);
 
     private Thread thread;
     private HandlerThread mediaCodecThread;
@@ -68,9 +51,9 @@ public final class AudioEncoder implements AsyncProcessor {
 
     private boolean ended;
 
-    public AudioEncoder(AudioCapture capture, Streamer streamer, Options options) {
+    public AudioEncoder(AudioCapture capture, StreamOutput output, Options options) {
         this.capture = capture;
-        this.streamer = streamer;
+        this.output = output;
         this.bitRate = options.getAudioBitRate();
         this.codecOptions = options.getAudioCodecOptions();
         this.encoderName = options.getAudioEncoder();
@@ -100,27 +83,30 @@ public final class AudioEncoder implements AsyncProcessor {
         final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
 
         while (!Thread.currentThread().isInterrupted()) {
-            InputTask task = inputTasks.take();
-            ByteBuffer buffer = mediaCodec.getInputBuffer(task.index);
+            int index = inputTasks.take();
+            ByteBuffer buffer = mediaCodec.getInputBuffer(index);
             int r = capture.read(buffer, bufferInfo);
             if (r <= 0) {
                 throw new IOException("Could not read audio: " + r);
             }
 
-            mediaCodec.queueInputBuffer(task.index, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+            mediaCodec.queueInputBuffer(index, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
         }
     }
 
     private void outputThread(MediaCodec mediaCodec) throws IOException, InterruptedException {
-        streamer.writeAudioHeader();
+        final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+        output.writeAudioHeader();
 
         while (!Thread.currentThread().isInterrupted()) {
-            OutputTask task = outputTasks.take();
-            ByteBuffer buffer = mediaCodec.getOutputBuffer(task.index);
+            int index = outputTasks.take();
+            bufferInfo.set(outputTasks.getOffset(), outputTasks.getSize(), outputTasks.getPts(), outputTasks.getFlags());
+            ByteBuffer buffer = mediaCodec.getOutputBuffer(index);
             try {
-                streamer.writePacket(buffer, task.bufferInfo);
+                output.writePacket(buffer, bufferInfo);
             } finally {
-                mediaCodec.releaseOutputBuffer(task.index, false);
+                mediaCodec.releaseOutputBuffer(index, false);
             }
         }
     }
@@ -181,7 +167,7 @@ public final class AudioEncoder implements AsyncProcessor {
     private void encode() throws IOException, ConfigurationException, AudioCaptureException {
         if (Build.VERSION.SDK_INT < AndroidVersions.API_30_ANDROID_11) {
             Ln.w("Audio disabled: it is not supported before Android 11");
-            streamer.writeDisableStream(false);
+            output.writeDisableStream(false);
             return;
         }
 
@@ -191,7 +177,7 @@ public final class AudioEncoder implements AsyncProcessor {
         try {
             capture.checkCompatibility(); // throws an AudioCaptureException on error
 
-            Codec codec = streamer.getCodec();
+            Codec codec = output.getCodec();
             mediaCodec = createMediaCodec(codec, encoderName);
 
             mediaCodecThread = new HandlerThread("media-codec");
@@ -237,11 +223,11 @@ public final class AudioEncoder implements AsyncProcessor {
             waitEnded();
         } catch (ConfigurationException e) {
             // Notify the error to make scrcpy exit
-            streamer.writeDisableStream(true);
+            output.writeDisableStream(true);
             throw e;
         } catch (Throwable e) {
             // Notify the client that the audio could not be captured
-            streamer.writeDisableStream(false);
+            output.writeDisableStream(false);
             throw e;
         } finally {
             // Cleanup everything (either at the end or on error at any step of the initialization)
@@ -288,15 +274,27 @@ public final class AudioEncoder implements AsyncProcessor {
     private static MediaCodec createMediaCodec(Codec codec, String encoderName) throws IOException, ConfigurationException {
         if (encoderName != null) {
             Ln.d("Creating audio encoder by name: '" + encoderName + "'");
+            // The cached encoders avoid creating an encoder of the wrong type
+            String cachedMimeType = CapabilityCache.getEncoderMimeType(encoderName);
             try {
+                if (cachedMimeType != null) {
+                    checkEncoderType(codec, encoderName, cachedMimeType);
+                }
                 MediaCodec mediaCodec = MediaCodec.createByCodecName(encoderName);
-                String mimeType = Codec.getMimeType(mediaCodec);
-                if (!codec.getMimeType().equals(mimeType)) {
-                    Ln.e("Audio encoder type for \"" + encoderName + "\" (" + mimeType + ") does not match codec type (" + codec.getMimeType() + ")");
-                    throw new ConfigurationException("Incorrect encoder type: " + encoderName);
+                if (cachedMimeType == null) {
+                    try {
+                        checkEncoderType(codec, encoderName, Codec.getMimeType(mediaCodec));
+                    } catch (ConfigurationException e) {
+                        mediaCodec.release();
+                        throw e;
+                    }
                 }
                 return mediaCodec;
             } catch (IllegalArgumentException e) {
+                if (cachedMimeType != null) {
+                    // The cached encoders are stale
+                    CapabilityCache.invalidateEncoders();
+                }
                 Ln.e("Audio encoder '" + encoderName + "' for " + codec.getName() + " not found\n" + LogUtils.buildAudioEncoderListMessage());
                 throw new ConfigurationException("Unknown encoder: " + encoderName);
             } catch (IOException e) {
@@ -306,7 +304,7 @@ public final class AudioEncoder implements AsyncProcessor {
         }
 
         try {
-            MediaCodec mediaCodec = MediaCodec.createEncoderByType(codec.getMimeType());
+            MediaCodec mediaCodec = CodecUtils.createDefaultEncoder(codec.getMimeType());
             Ln.d("Using audio encoder: '" + mediaCodec.getName() + "'");
             return mediaCodec;
         } catch (IOException | IllegalArgumentException e) {
@@ -315,12 +313,20 @@ public final class AudioEncoder implements AsyncProcessor {
         }
     }
 
+    private static void checkEncoderType(Codec codec, String encoderName, String mimeType) throws ConfigurationException {
+        if (!codec.getMimeType().equals(mimeType)) {
+            Ln.e("Audio encoder type for \"" + encoderName + "\" (" + mimeType + ") does not match codec type (" + codec.getMimeType() + ")");
+            throw new ConfigurationException("Incorrect encoder type: " + encoderName);
+        }
+    }
+
     private final class EncoderCallback extends MediaCodec.Callback {
         @TargetApi(AndroidVersions.API_24_ANDROID_7_0)
         @Override
         public void onInputBufferAvailable(MediaCodec codec, int index) {
             try {
-                inputTasks.put(new InputTask(index));
+                inputTasks.put(index);
+                Metrics.max(Metrics.COUNTER_AUDIO_INPUT_QUEUE_MAX, inputTasks.size());
             } catch (InterruptedException e) {
                 end();
             }
@@ -329,7 +335,8 @@ public final class AudioEncoder implements AsyncProcessor {
         @Override
         public void onOutputBufferAvailable(MediaCodec codec, int index, MediaCodec.BufferInfo bufferInfo) {
             try {
-                outputTasks.put(new OutputTask(index, bufferInfo));
+                outputTasks.put(index, bufferInfo.offset, bufferInfo.size, bufferInfo.presentationTimeUs, bufferInfo.flags);
+                Metrics.max(Metrics.COUNTER_AUDIO_OUTPUT_QUEUE_MAX, outputTasks.size());
             } catch (InterruptedException e) {
                 end();
             }
@@ -343,7 +350,8 @@ public final class AudioEncoder implements AsyncProcessor {
 
         @Override
         public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
-            // ignore
+            // Called before the first output buffer is available
+            output.onOutputFormatChanged(format);
         }
     }
 }
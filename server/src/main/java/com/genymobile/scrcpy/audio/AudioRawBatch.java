@@ -0,0 +1,89 @@
+package com.genymobile.scrcpy.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Group consecutive raw PCM chunks into a single packet, to write fewer (and larger) packets to the socket.
+ * <p>
+ * The batch is ready when adding another chunk would delay its first sample by more than the max delay. A chunk which is not contiguous with
+ * the previous one (there is a gap in the capture) may not be appended: the current batch must be written first, since a packet only has the
+ * timestamp of its first sample.
+ * <p>
+ * The direct buffer is allocated once and reused for all the batches.
+ */
+final class AudioRawBatch {
+
+    private static final int BYTES_PER_FRAME = AudioConfig.CHANNELS * AudioConfig.BYTES_PER_SAMPLE;
+    private static final long MAX_READ_DURATION_US = durationUs(AudioConfig.MAX_READ_SIZE);
+
+    private final ByteBuffer buffer;
+    private final long maxDelayUs;
+
+    private long pts;
+    private long nextPts;
+
+    AudioRawBatch(long maxDelayUs) {
+        assert maxDelayUs > 0;
+        this.maxDelayUs = maxDelayUs;
+        // The first chunk, plus as many chunks as the max delay allows
+        int maxChunks = 1 + (int) Math.min(maxDelayUs / MAX_READ_DURATION_US, 64);
+        buffer = ByteBuffer.allocateDirect(maxChunks * AudioConfig.MAX_READ_SIZE);
+    }
+
+    static long durationUs(int bytes) {
+        return bytes / BYTES_PER_FRAME * 1_000_000L / AudioConfig.SAMPLE_RATE;
+    }
+
+    boolean isEmpty() {
+        return buffer.position() == 0;
+    }
+
+    /**
+     * Indicate whether a chunk captured at {@code chunkPts} may be appended to the current batch.
+     */
+    boolean canAppend(long chunkPts, int chunkSize) {
+        if (isEmpty()) {
+            return true;
+        }
+        if (buffer.remaining() < chunkSize) {
+            return false;
+        }
+        // Tolerate the timestamp jitter, but not a gap of one chunk or more
+        return Math.abs(chunkPts - nextPts) < MAX_READ_DURATION_US;
+    }
+
+    /**
+     * Copy the chunk (from its position to its limit) into the batch.
+     *
+     * @return {@code true} if the batch is ready to be written
+     */
+    boolean append(ByteBuffer chunk, long chunkPts) {
+        assert canAppend(chunkPts, chunk.remaining());
+        if (isEmpty()) {
+            pts = chunkPts;
+            nextPts = chunkPts;
+        }
+        long chunkDurationUs = durationUs(chunk.remaining());
+        nextPts += chunkDurationUs;
+        buffer.put(chunk);
+
+        // The first sample is delayed by the batch duration: write the batch now if one more chunk (of the same size) would reach the max delay
+        return nextPts + chunkDurationUs - pts >= maxDelayUs || buffer.remaining() < AudioConfig.MAX_READ_SIZE;
+    }
+
+    /**
+     * Return the batch data, ready to be written (the caller must call {@link #reset()} once written).
+     */
+    ByteBuffer getBuffer() {
+        buffer.flip();
+        return buffer;
+    }
+
+    long getPts() {
+        return pts;
+    }
+
+    void reset() {
+        buffer.clear();
+    }
+}
@@ -2,7 +2,8 @@ package com.genymobile.scrcpy.audio;
 
 import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.AsyncProcessor;
-import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.Options;
+import com.genymobile.scrcpy.device.StreamOutput;
 import com.genymobile.scrcpy.util.IO;
 import com.genymobile.scrcpy.util.Ln;
 
@@ -15,35 +16,38 @@ import java.nio.ByteBuffer;
 public final class AudioRawRecorder implements AsyncProcessor {
 
     private final AudioCapture capture;
-    private final Streamer streamer;
+    private final StreamOutput output;
+    private final int batchDelay; // in milliseconds, 0 to write each chunk separately
 
     private Thread thread;
 
-    public AudioRawRecorder(AudioCapture capture, Streamer streamer) {
+    public AudioRawRecorder(AudioCapture capture, StreamOutput output, Options options) {
         this.capture = capture;
-        this.streamer = streamer;
+        this.output = output;
+        this.batchDelay = options.getAudioRawBatchDelay();
     }
 
     private void record() throws IOException, AudioCaptureException {
         if (Build.VERSION.SDK_INT < AndroidVersions.API_30_ANDROID_11) {
             Ln.w("Audio disabled: it is not supported before Android 11");
-            streamer.writeDisableStream(false);
+            output.writeDisableStream(false);
             return;
         }
 
         final ByteBuffer buffer = ByteBuffer.allocateDirect(AudioConfig.MAX_READ_SIZE);
         final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+        final AudioRawBatch batch = batchDelay > 0 ? new AudioRawBatch(batchDelay * 1000L) : null;
 
         try {
             try {
                 capture.start();
             } catch (Throwable t) {
                 // Notify the client that the audio could not be captured
-                streamer.writeDisableStream(false);
+                output.writeDisableStream(false);
                 throw t;
             }
 
-            streamer.writeAudioHeader();
+            output.writeAudioHeader();
             while (!Thread.currentThread().isInterrupted()) {
                 buffer.position(0);
                 int r = capture.read(buffer, bufferInfo);
@@ -52,7 +56,18 @@ public final class AudioRawRecorder implements AsyncProcessor {
                 }
                 buffer.limit(r);
 
-                streamer.writePacket(buffer, bufferInfo);
+                if (batch == null) {
+                    output.writePacket(buffer, bufferInfo);
+                    continue;
+                }
+
+                long pts = bufferInfo.presentationTimeUs;
+                if (!batch.canAppend(pts, r)) {
+                    writeBatch(batch);
+                }
+                if (batch.append(buffer, pts)) {
+                    writeBatch(batch);
+                }
             }
         } catch (IOException e) {
             // Broken pipe is expected on close, because the socket is closed by the client
@@ -64,6 +79,11 @@ public final class AudioRawRecorder implements AsyncProcessor {
         }
     }
 
+    private void writeBatch(AudioRawBatch batch) throws IOException {
+        output.writePacket(batch.getBuffer(), batch.getPts(), false, false);
+        batch.reset();
+    }
+
     @Override
     public void start(TerminationListener listener) {
         thread = new Thread(() -> {
@@ -0,0 +1,135 @@
+package com.genymobile.scrcpy.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer queue of MediaCodec buffer indices, along with their {@link android.media.MediaCodec.BufferInfo} fields.
+ * <p>
+ * The values are stored in preallocated primitive arrays, so that passing a buffer from the MediaCodec callback thread to the input or output
+ * thread neither allocates nor locks. The consumer only parks when the queue is empty.
+ */
+final class CodecBufferQueue {
+
+    private final int mask;
+    private final int[] indices;
+    private final int[] offsets;
+    private final int[] sizes;
+    private final long[] ptsArray;
+    private final int[] flagsArray;
+
+    // Number of items consumed, written only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Number of items produced, written only by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+
+    // Fields of the last item taken, accessed only by the consumer
+    private int offset;
+    private int size;
+    private long pts;
+    private int flags;
+
+    CodecBufferQueue(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+        }
+        mask = capacity - 1;
+        indices = new int[capacity];
+        offsets = new int[capacity];
+        sizes = new int[capacity];
+        ptsArray = new long[capacity];
+        flagsArray = new int[capacity];
+    }
+
+    /**
+     * Add a buffer to the queue (must only be called from the producer thread).
+     * <p>
+     * The queue is expected to never be full (its capacity is larger than the number of MediaCodec buffers), but if it is, this method waits.
+     */
+    void put(int index, int offset, int size, long pts, int flags) throws InterruptedException {
+        long t = tail.get();
+        while (t - head.get() > mask) {
+            LockSupport.parkNanos(this, 100_000);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
+        int i = (int) t & mask;
+        indices[i] = index;
+        offsets[i] = offset;
+        sizes[i] = size;
+        ptsArray[i] = pts;
+        flagsArray[i] = flags;
+
+        // Volatile write: publish the item, and order it before the read of waitingConsumer
+        tail.set(t + 1);
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    void put(int index) throws InterruptedException {
+        put(index, 0, 0, 0, 0);
+    }
+
+    /**
+     * Take the next buffer from the queue, waiting if necessary (must only be called from the consumer thread).
+     * <p>
+     * The other fields of the item are available from the getters until the next call.
+     *
+     * @return the buffer index
+     */
+    int take() throws InterruptedException {
+        long h = head.get();
+        if (tail.get() == h) {
+            waitingConsumer = Thread.currentThread();
+            try {
+                // Volatile read after the volatile write of waitingConsumer, so that a concurrent put() cannot be missed
+                while (tail.get() == h) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waitingConsumer = null;
+            }
+        }
+
+        int i = (int) h & mask;
+        int index = indices[i];
+        offset = offsets[i];
+        size = sizes[i];
+        pts = ptsArray[i];
+        flags = flagsArray[i];
+
+        // The slot may be reused by the producer once head is incremented
+        head.lazySet(h + 1);
+        return index;
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    long getPts() {
+        return pts;
+    }
+
+    int getFlags() {
+        return flags;
+    }
+}
@@ -1,24 +1,131 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.device.ResumableSession;
+
 import android.net.LocalSocket;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 
 public final class ControlChannel {
 
-    private final ControlMessageReader reader;
-    private final DeviceMessageWriter writer;
+    private ControlMessageReader reader;
+    private DeviceMessageWriter writer;
+
+    // Resumable session state (guarded by this)
+    private ResumableSession session;
+    private int generation;
+    private IOException disconnectionError; // non-null while the client is disconnected
 
     public ControlChannel(LocalSocket controlSocket) throws IOException {
         reader = new ControlMessageReader(controlSocket.getInputStream());
         writer = new DeviceMessageWriter(controlSocket.getOutputStream());
     }
 
+    /**
+     * Wait for the client to reconnect instead of failing on disconnection.
+     */
+    public synchronized void setResumableSession(ResumableSession session) {
+        this.session = session;
+    }
+
     public ControlMessage recv() throws IOException {
-        return reader.read();
+        while (true) {
+            ControlMessageReader currentReader = waitConnected();
+            try {
+                return currentReader.read();
+            } catch (IOException e) {
+                if (!onDisconnected(currentReader, e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    public boolean hasPendingInput() throws IOException {
+        ControlMessageReader currentReader;
+        synchronized (this) {
+            if (disconnectionError != null) {
+                return false;
+            }
+            currentReader = reader;
+        }
+        return currentReader.hasPendingInput();
     }
 
     public void send(DeviceMessage msg) throws IOException {
-        writer.write(msg);
+        ControlMessageReader currentReader;
+        DeviceMessageWriter currentWriter;
+        synchronized (this) {
+            if (disconnectionError != null && session != null && !session.isExpired()) {
+                // The client is disconnected, drop the message
+                return;
+            }
+            currentReader = reader;
+            currentWriter = writer;
+        }
+        try {
+            currentWriter.write(msg);
+        } catch (IOException e) {
+            if (!onDisconnected(currentReader, e)) {
+                throw e;
+            }
+        }
+    }
+
+    private synchronized ControlMessageReader waitConnected() throws IOException {
+        try {
+            while (disconnectionError != null) {
+                if (session.isExpired()) {
+                    throw disconnectionError;
+                }
+                wait();
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        return reader;
+    }
+
+    /**
+     * Handle an I/O error on the given reader connection.
+     *
+     * @return {@code true} if the error is handled by the resumable session (the client may reconnect)
+     */
+    private boolean onDisconnected(ControlMessageReader failedReader, IOException e) {
+        int failedGeneration;
+        synchronized (this) {
+            if (session == null) {
+                return false;
+            }
+            if (failedReader != reader) {
+                // Error on a previous connection, the channel has already been resumed
+                return true;
+            }
+            if (disconnectionError == null) {
+                disconnectionError = e;
+            }
+            failedGeneration = generation;
+        }
+        session.onDisconnected(failedGeneration);
+        return true;
+    }
+
+    /**
+     * Resume on a new client connection.
+     */
+    public synchronized void resume(ControlChannel channel, int newGeneration) {
+        reader = channel.reader;
+        writer = channel.writer;
+        generation = newGeneration;
+        disconnectionError = null;
+        notifyAll();
+    }
+
+    /**
+     * Notify that the client has not reconnected in time.
+     */
+    public synchronized void onSessionExpired() {
+        notifyAll();
     }
 }
@@ -1,6 +1,8 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.device.Point;
 import com.genymobile.scrcpy.device.Position;
+import com.genymobile.scrcpy.device.Size;
 
 /**
  * Union of all supported event types, identified by their {@code type}.
@@ -25,6 +27,12 @@ public final class ControlMessage {
     public static final int TYPE_OPEN_HARD_KEYBOARD_SETTINGS = 15;
     public static final int TYPE_START_APP = 16;
     public static final int TYPE_RESET_VIDEO = 17;
+    public static final int TYPE_REQUEST_KEY_FRAME = 18;
+    public static final int TYPE_GET_FRAME_LATENCY = 19;
+    public static final int TYPE_SAVE_REPLAY_BUFFER = 20;
+    public static final int TYPE_SET_MAX_FPS = 21;
+    public static final int TYPE_SET_INPUT_STREAM = 22;
+    public static final int TYPE_SET_MAIN_VIDEO = 23;
 
     public static final long SEQUENCE_INVALID = 0;
 
@@ -41,7 +49,12 @@ public final class ControlMessage {
     private int buttons; // MotionEvent.BUTTON_*
     private long pointerId;
     private float pressure;
-    private Position position;
+    private int timestamp; // client event time, in milliseconds (only the differences are meaningful, it may wrap)
+    // Raw position values (a Position is only created on demand, see getPosition())
+    private int x;
+    private int y;
+    private int screenWidth;
+    private int screenHeight;
     private float hScroll;
     private float vScroll;
     private int copyKey;
@@ -53,119 +66,238 @@ public final class ControlMessage {
     private boolean on;
     private int vendorId;
     private int productId;
+    private float maxFps;
+    private int streamId;
 
     private ControlMessage() {
     }
 
+    /**
+     * Create an instance to be filled (and refilled) by the {@code set*()} methods.
+     */
+    static ControlMessage createMutable() {
+        return new ControlMessage();
+    }
+
     public static ControlMessage createInjectKeycode(int action, int keycode, int repeat, int metaState) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_KEYCODE;
-        msg.action = action;
-        msg.keycode = keycode;
-        msg.repeat = repeat;
-        msg.metaState = metaState;
+        msg.setInjectKeycode(action, keycode, repeat, metaState);
         return msg;
     }
 
     public static ControlMessage createInjectText(String text) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_TEXT;
-        msg.text = text;
+        msg.setInjectText(text);
         return msg;
     }
 
     public static ControlMessage createInjectTouchEvent(int action, long pointerId, Position position, float pressure, int actionButton,
-            int buttons) {
+            int buttons, int timestamp) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_TOUCH_EVENT;
-        msg.action = action;
-        msg.pointerId = pointerId;
-        msg.pressure = pressure;
-        msg.position = position;
-        msg.actionButton = actionButton;
-        msg.buttons = buttons;
+        msg.setInjectTouchEvent(action, pointerId, pressure, actionButton, buttons, timestamp);
+        msg.setPosition(position);
         return msg;
     }
 
     public static ControlMessage createInjectScrollEvent(Position position, float hScroll, float vScroll, int buttons) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_INJECT_SCROLL_EVENT;
-        msg.position = position;
-        msg.hScroll = hScroll;
-        msg.vScroll = vScroll;
-        msg.buttons = buttons;
+        msg.setInjectScrollEvent(hScroll, vScroll, buttons);
+        msg.setPosition(position);
         return msg;
     }
 
     public static ControlMessage createBackOrScreenOn(int action) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_BACK_OR_SCREEN_ON;
-        msg.action = action;
+        msg.setBackOrScreenOn(action);
         return msg;
     }
 
     public static ControlMessage createGetClipboard(int copyKey) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_GET_CLIPBOARD;
-        msg.copyKey = copyKey;
+        msg.setGetClipboard(copyKey);
         return msg;
     }
 
     public static ControlMessage createSetClipboard(long sequence, String text, boolean paste) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_SET_CLIPBOARD;
-        msg.sequence = sequence;
-        msg.text = text;
-        msg.paste = paste;
+        msg.setSetClipboard(sequence, text, paste);
         return msg;
     }
 
     public static ControlMessage createSetDisplayPower(boolean on) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_SET_DISPLAY_POWER;
-        msg.on = on;
+        msg.setSetDisplayPower(on);
         return msg;
     }
 
     public static ControlMessage createEmpty(int type) {
         ControlMessage msg = new ControlMessage();
-        msg.type = type;
+        msg.setEmpty(type);
         return msg;
     }
 
     public static ControlMessage createUhidCreate(int id, int vendorId, int productId, String name, byte[] reportDesc) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_UHID_CREATE;
-        msg.id = id;
-        msg.vendorId = vendorId;
-        msg.productId = productId;
-        msg.text = name;
-        msg.data = reportDesc;
+        msg.setUhidCreate(id, vendorId, productId, name, reportDesc);
         return msg;
     }
 
     public static ControlMessage createUhidInput(int id, byte[] data) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_UHID_INPUT;
-        msg.id = id;
-        msg.data = data;
+        msg.setUhidInput(id, data);
         return msg;
     }
 
     public static ControlMessage createUhidDestroy(int id) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_UHID_DESTROY;
-        msg.id = id;
+        msg.setUhidDestroy(id);
         return msg;
     }
 
     public static ControlMessage createStartApp(String name) {
         ControlMessage msg = new ControlMessage();
-        msg.type = TYPE_START_APP;
-        msg.text = name;
+        msg.setStartApp(name);
+        return msg;
+    }
+
+    public static ControlMessage createSaveReplayBuffer(String path) {
+        ControlMessage msg = new ControlMessage();
+        msg.setSaveReplayBuffer(path);
+        return msg;
+    }
+
+    public static ControlMessage createSetMaxFps(float maxFps) {
+        ControlMessage msg = new ControlMessage();
+        msg.setSetMaxFps(maxFps);
+        return msg;
+    }
+
+    public static ControlMessage createSetInputStream(int streamId) {
+        ControlMessage msg = new ControlMessage();
+        msg.setSetInputStream(streamId);
+        return msg;
+    }
+
+    public static ControlMessage createSetMainVideo(boolean on) {
+        ControlMessage msg = new ControlMessage();
+        msg.setSetMainVideo(on);
         return msg;
     }
 
+    void setInjectKeycode(int action, int keycode, int repeat, int metaState) {
+        this.type = TYPE_INJECT_KEYCODE;
+        this.action = action;
+        this.keycode = keycode;
+        this.repeat = repeat;
+        this.metaState = metaState;
+    }
+
+    void setInjectText(String text) {
+        this.type = TYPE_INJECT_TEXT;
+        this.text = text;
+    }
+
+    void setInjectTouchEvent(int action, long pointerId, float pressure, int actionButton, int buttons, int timestamp) {
+        this.type = TYPE_INJECT_TOUCH_EVENT;
+        this.action = action;
+        this.pointerId = pointerId;
+        this.pressure = pressure;
+        this.actionButton = actionButton;
+        this.buttons = buttons;
+        this.timestamp = timestamp;
+    }
+
+    void setInjectScrollEvent(float hScroll, float vScroll, int buttons) {
+        this.type = TYPE_INJECT_SCROLL_EVENT;
+        this.hScroll = hScroll;
+        this.vScroll = vScroll;
+        this.buttons = buttons;
+    }
+
+    private void setPosition(Position position) {
+        Point point = position.getPoint();
+        Size screenSize = position.getScreenSize();
+        setPosition(point.getX(), point.getY(), screenSize.getWidth(), screenSize.getHeight());
+    }
+
+    void setPosition(int x, int y, int screenWidth, int screenHeight) {
+        this.x = x;
+        this.y = y;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+    }
+
+    void setBackOrScreenOn(int action) {
+        this.type = TYPE_BACK_OR_SCREEN_ON;
+        this.action = action;
+    }
+
+    void setGetClipboard(int copyKey) {
+        this.type = TYPE_GET_CLIPBOARD;
+        this.copyKey = copyKey;
+    }
+
+    void setSetClipboard(long sequence, String text, boolean paste) {
+        this.type = TYPE_SET_CLIPBOARD;
+        this.sequence = sequence;
+        this.text = text;
+        this.paste = paste;
+    }
+
+    void setSetDisplayPower(boolean on) {
+        this.type = TYPE_SET_DISPLAY_POWER;
+        this.on = on;
+    }
+
+    void setEmpty(int type) {
+        this.type = type;
+    }
+
+    void setUhidCreate(int id, int vendorId, int productId, String name, byte[] reportDesc) {
+        this.type = TYPE_UHID_CREATE;
+        this.id = id;
+        this.vendorId = vendorId;
+        this.productId = productId;
+        this.text = name;
+        this.data = reportDesc;
+    }
+
+    void setUhidInput(int id, byte[] data) {
+        this.type = TYPE_UHID_INPUT;
+        this.id = id;
+        this.data = data;
+    }
+
+    void setUhidDestroy(int id) {
+        this.type = TYPE_UHID_DESTROY;
+        this.id = id;
+    }
+
+    void setStartApp(String name) {
+        this.type = TYPE_START_APP;
+        this.text = name;
+    }
+
+    void setSaveReplayBuffer(String path) {
+        this.type = TYPE_SAVE_REPLAY_BUFFER;
+        this.text = path; // empty to send the replay buffer to the client
+    }
+
+    void setSetMaxFps(float maxFps) {
+        this.type = TYPE_SET_MAX_FPS;
+        this.maxFps = maxFps; // 0 for no limit
+    }
+
+    void setSetInputStream(int streamId) {
+        this.type = TYPE_SET_INPUT_STREAM;
+        this.streamId = streamId; // 0 for the main stream, i for the extra stream i
+    }
+
+    void setSetMainVideo(boolean on) {
+        this.type = TYPE_SET_MAIN_VIDEO;
+        this.on = on;
+    }
+
     public int getType() {
         return type;
     }
@@ -202,8 +334,31 @@ public final class ControlMessage {
         return pressure;
     }
 
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Return a new {@link Position} instance (the injection path uses the raw values instead, to not allocate on every event).
+     */
     public Position getPosition() {
-        return position;
+        return new Position(x, y, screenWidth, screenHeight);
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
     }
 
     public float getHScroll() {
@@ -249,4 +404,12 @@ public final class ControlMessage {
     public int getProductId() {
         return productId;
     }
+
+    public float getMaxFps() {
+        return maxFps;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
 }
@@ -1,14 +1,20 @@
 package com.genymobile.scrcpy.control;
 
-import com.genymobile.scrcpy.device.Position;
 import com.genymobile.scrcpy.util.Binary;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
+/**
+ * Parse control messages from a stream.
+ * <p>
+ * To avoid allocations on the hot path (touch and scroll events are received at high rate), the reader parses from a reusable buffer and
+ * recycles one {@link ControlMessage} instance per type. Therefore, a message returned by {@link #read()} is only valid until the next call to
+ * {@link #read()}.
+ */
 public class ControlMessageReader {
 
     private static final int MESSAGE_MAX_SIZE = 1 << 18; // 256k
@@ -16,14 +22,23 @@ public class ControlMessageReader {
     public static final int CLIPBOARD_TEXT_MAX_LENGTH = MESSAGE_MAX_SIZE - 14; // type: 1 byte; sequence: 8 bytes; paste flag: 1 byte; length: 4 bytes
     public static final int INJECT_TEXT_MAX_LENGTH = 300;
 
-    private final DataInputStream dis;
+    private final InputStream inputStream;
+    // Always in "read mode": the bytes between position and limit are received but not parsed yet
+    private final ByteBuffer buffer = ByteBuffer.allocate(MESSAGE_MAX_SIZE);
+    // Indexed by message type
+    private final ControlMessage[] messages = new ControlMessage[256];
+
+    // Reused for UHID input messages, which are typically all the same size for a given device
+    private byte[] uhidInputData;
 
     public ControlMessageReader(InputStream rawInputStream) {
-        dis = new DataInputStream(new BufferedInputStream(rawInputStream));
+        inputStream = rawInputStream;
+        buffer.limit(0);
     }
 
     public ControlMessage read() throws IOException {
-        int type = dis.readUnsignedByte();
+        require(1);
+        int type = buffer.get() & 0xFF;
         switch (type) {
             case ControlMessage.TYPE_INJECT_KEYCODE:
                 return parseInjectKeycode();
@@ -47,7 +62,11 @@ public class ControlMessageReader {
             case ControlMessage.TYPE_ROTATE_DEVICE:
             case ControlMessage.TYPE_OPEN_HARD_KEYBOARD_SETTINGS:
             case ControlMessage.TYPE_RESET_VIDEO:
-                return ControlMessage.createEmpty(type);
+            case ControlMessage.TYPE_REQUEST_KEY_FRAME:
+            case ControlMessage.TYPE_GET_FRAME_LATENCY:
+                ControlMessage msg = obtain(type);
+                msg.setEmpty(type);
+                return msg;
             case ControlMessage.TYPE_UHID_CREATE:
                 return parseUhidCreate();
             case ControlMessage.TYPE_UHID_INPUT:
@@ -56,32 +75,90 @@ public class ControlMessageReader {
                 return parseUhidDestroy();
             case ControlMessage.TYPE_START_APP:
                 return parseStartApp();
+            case ControlMessage.TYPE_SAVE_REPLAY_BUFFER:
+                return parseSaveReplayBuffer();
+            case ControlMessage.TYPE_SET_MAX_FPS:
+                return parseSetMaxFps();
+            case ControlMessage.TYPE_SET_INPUT_STREAM:
+                return parseSetInputStream();
+            case ControlMessage.TYPE_SET_MAIN_VIDEO:
+                return parseSetMainVideo();
             default:
                 throw new ControlProtocolException("Unknown event type: " + type);
         }
     }
 
+    /**
+     * Indicate whether some input is already available, so that the next call to {@link #read()} is not expected to wait for the client.
+     */
+    public boolean hasPendingInput() throws IOException {
+        return buffer.hasRemaining() || inputStream.available() > 0;
+    }
+
+    /**
+     * Make sure that at least {@code size} bytes are available in the buffer, reading from the input stream if necessary.
+     */
+    private void require(int size) throws IOException {
+        if (buffer.remaining() >= size) {
+            return;
+        }
+
+        if (size > buffer.capacity()) {
+            throw new ControlProtocolException("Message too big: " + size);
+        }
+
+        buffer.compact();
+        try {
+            while (buffer.position() < size) {
+                int r = inputStream.read(buffer.array(), buffer.position(), buffer.remaining());
+                if (r == -1) {
+                    throw new EOFException("Unexpected end of stream");
+                }
+                buffer.position(buffer.position() + r);
+            }
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private ControlMessage obtain(int type) {
+        ControlMessage msg = messages[type];
+        if (msg == null) {
+            msg = ControlMessage.createMutable();
+            messages[type] = msg;
+        }
+        return msg;
+    }
+
     private ControlMessage parseInjectKeycode() throws IOException {
-        int action = dis.readUnsignedByte();
-        int keycode = dis.readInt();
-        int repeat = dis.readInt();
-        int metaState = dis.readInt();
-        return ControlMessage.createInjectKeycode(action, keycode, repeat, metaState);
+        require(13);
+        int action = buffer.get() & 0xFF;
+        int keycode = buffer.getInt();
+        int repeat = buffer.getInt();
+        int metaState = buffer.getInt();
+        ControlMessage msg = obtain(ControlMessage.TYPE_INJECT_KEYCODE);
+        msg.setInjectKeycode(action, keycode, repeat, metaState);
+        return msg;
     }
 
     private int parseBufferLength(int sizeBytes) throws IOException {
         assert sizeBytes > 0 && sizeBytes <= 4;
+        require(sizeBytes);
         int value = 0;
         for (int i = 0; i < sizeBytes; ++i) {
-            value = (value << 8) | dis.readUnsignedByte();
+            value = (value << 8) | (buffer.get() & 0xFF);
         }
         return value;
     }
 
     private String parseString(int sizeBytes) throws IOException {
         assert sizeBytes > 0 && sizeBytes <= 4;
-        byte[] data = parseByteArray(sizeBytes);
-        return new String(data, StandardCharsets.UTF_8);
+        int len = parseBufferLength(sizeBytes);
+        require(len);
+        int position = buffer.position();
+        String s = new String(buffer.array(), position, len, StandardCharsets.UTF_8);
+        buffer.position(position + len);
+        return s;
     }
 
     private String parseString() throws IOException {
@@ -90,86 +167,160 @@ public class ControlMessageReader {
 
     private byte[] parseByteArray(int sizeBytes) throws IOException {
         int len = parseBufferLength(sizeBytes);
+        require(len);
         byte[] data = new byte[len];
-        dis.readFully(data);
+        buffer.get(data);
         return data;
     }
 
     private ControlMessage parseInjectText() throws IOException {
         String text = parseString();
-        return ControlMessage.createInjectText(text);
+        ControlMessage msg = obtain(ControlMessage.TYPE_INJECT_TEXT);
+        msg.setInjectText(text);
+        return msg;
     }
 
     private ControlMessage parseInjectTouchEvent() throws IOException {
-        int action = dis.readUnsignedByte();
-        long pointerId = dis.readLong();
-        Position position = parsePosition();
-        float pressure = Binary.u16FixedPointToFloat(dis.readShort());
-        int actionButton = dis.readInt();
-        int buttons = dis.readInt();
-        return ControlMessage.createInjectTouchEvent(action, pointerId, position, pressure, actionButton, buttons);
+        require(35);
+        int action = buffer.get() & 0xFF;
+        long pointerId = buffer.getLong();
+        ControlMessage msg = obtain(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+        parsePosition(msg);
+        float pressure = Binary.u16FixedPointToFloat(buffer.getShort());
+        int actionButton = buffer.getInt();
+        int buttons = buffer.getInt();
+        int timestamp = buffer.getInt();
+        msg.setInjectTouchEvent(action, pointerId, pressure, actionButton, buttons, timestamp);
+        return msg;
     }
 
     private ControlMessage parseInjectScrollEvent() throws IOException {
-        Position position = parsePosition();
-        float hScroll = Binary.i16FixedPointToFloat(dis.readShort());
-        float vScroll = Binary.i16FixedPointToFloat(dis.readShort());
-        int buttons = dis.readInt();
-        return ControlMessage.createInjectScrollEvent(position, hScroll, vScroll, buttons);
+        require(20);
+        ControlMessage msg = obtain(ControlMessage.TYPE_INJECT_SCROLL_EVENT);
+        parsePosition(msg);
+        float hScroll = Binary.i16FixedPointToFloat(buffer.getShort());
+        float vScroll = Binary.i16FixedPointToFloat(buffer.getShort());
+        int buttons = buffer.getInt();
+        msg.setInjectScrollEvent(hScroll, vScroll, buttons);
+        return msg;
     }
 
     private ControlMessage parseBackOrScreenOnEvent() throws IOException {
-        int action = dis.readUnsignedByte();
-        return ControlMessage.createBackOrScreenOn(action);
+        require(1);
+        int action = buffer.get() & 0xFF;
+        ControlMessage msg = obtain(ControlMessage.TYPE_BACK_OR_SCREEN_ON);
+        msg.setBackOrScreenOn(action);
+        return msg;
     }
 
     private ControlMessage parseGetClipboard() throws IOException {
-        int copyKey = dis.readUnsignedByte();
-        return ControlMessage.createGetClipboard(copyKey);
+        require(1);
+        int copyKey = buffer.get() & 0xFF;
+        ControlMessage msg = obtain(ControlMessage.TYPE_GET_CLIPBOARD);
+        msg.setGetClipboard(copyKey);
+        return msg;
     }
 
     private ControlMessage parseSetClipboard() throws IOException {
-        long sequence = dis.readLong();
-        boolean paste = dis.readByte() != 0;
+        require(9);
+        long sequence = buffer.getLong();
+        boolean paste = buffer.get() != 0;
         String text = parseString();
-        return ControlMessage.createSetClipboard(sequence, text, paste);
+        ControlMessage msg = obtain(ControlMessage.TYPE_SET_CLIPBOARD);
+        msg.setSetClipboard(sequence, text, paste);
+        return msg;
     }
 
     private ControlMessage parseSetDisplayPower() throws IOException {
-        boolean on = dis.readBoolean();
-        return ControlMessage.createSetDisplayPower(on);
+        require(1);
+        boolean on = buffer.get() != 0;
+        ControlMessage msg = obtain(ControlMessage.TYPE_SET_DISPLAY_POWER);
+        msg.setSetDisplayPower(on);
+        return msg;
     }
 
     private ControlMessage parseUhidCreate() throws IOException {
-        int id = dis.readUnsignedShort();
-        int vendorId = dis.readUnsignedShort();
-        int productId = dis.readUnsignedShort();
+        require(6);
+        int id = buffer.getShort() & 0xFFFF;
+        int vendorId = buffer.getShort() & 0xFFFF;
+        int productId = buffer.getShort() & 0xFFFF;
         String name = parseString(1);
         byte[] data = parseByteArray(2);
-        return ControlMessage.createUhidCreate(id, vendorId, productId, name, data);
+        ControlMessage msg = obtain(ControlMessage.TYPE_UHID_CREATE);
+        msg.setUhidCreate(id, vendorId, productId, name, data);
+        return msg;
     }
 
     private ControlMessage parseUhidInput() throws IOException {
-        int id = dis.readUnsignedShort();
-        byte[] data = parseByteArray(2);
-        return ControlMessage.createUhidInput(id, data);
+        require(2);
+        int id = buffer.getShort() & 0xFFFF;
+        int len = parseBufferLength(2);
+        require(len);
+        if (uhidInputData == null || uhidInputData.length != len) {
+            uhidInputData = new byte[len];
+        }
+        buffer.get(uhidInputData);
+        ControlMessage msg = obtain(ControlMessage.TYPE_UHID_INPUT);
+        msg.setUhidInput(id, uhidInputData);
+        return msg;
     }
 
     private ControlMessage parseUhidDestroy() throws IOException {
-        int id = dis.readUnsignedShort();
-        return ControlMessage.createUhidDestroy(id);
+        require(2);
+        int id = buffer.getShort() & 0xFFFF;
+        ControlMessage msg = obtain(ControlMessage.TYPE_UHID_DESTROY);
+        msg.setUhidDestroy(id);
+        return msg;
     }
 
     private ControlMessage parseStartApp() throws IOException {
         String name = parseString(1);
-        return ControlMessage.createStartApp(name);
+        ControlMessage msg = obtain(ControlMessage.TYPE_START_APP);
+        msg.setStartApp(name);
+        return msg;
+    }
+
+    private ControlMessage parseSaveReplayBuffer() throws IOException {
+        String path = parseString(1);
+        ControlMessage msg = obtain(ControlMessage.TYPE_SAVE_REPLAY_BUFFER);
+        msg.setSaveReplayBuffer(path);
+        return msg;
+    }
+
+    private ControlMessage parseSetMaxFps() throws IOException {
+        require(4);
+        float maxFps = buffer.getFloat();
+        if (!(maxFps >= 0)) {
+            // Also reject NaN
+            throw new ControlProtocolException("Invalid max fps: " + maxFps);
+        }
+        ControlMessage msg = obtain(ControlMessage.TYPE_SET_MAX_FPS);
+        msg.setSetMaxFps(maxFps);
+        return msg;
+    }
+
+    private ControlMessage parseSetInputStream() throws IOException {
+        require(1);
+        int streamId = buffer.get() & 0xFF;
+        ControlMessage msg = obtain(ControlMessage.TYPE_SET_INPUT_STREAM);
+        msg.setSetInputStream(streamId);
+        return msg;
+    }
+
+    private ControlMessage parseSetMainVideo() throws IOException {
+        require(1);
+        boolean on = buffer.get() != 0;
+        ControlMessage msg = obtain(ControlMessage.TYPE_SET_MAIN_VIDEO);
+        msg.setSetMainVideo(on);
+        return msg;
     }
 
-    private Position parsePosition() throws IOException {
-        int x = dis.readInt();
-        int y = dis.readInt();
-        int screenWidth = dis.readUnsignedShort();
-        int screenHeight = dis.readUnsignedShort();
-        return new Position(x, y, screenWidth, screenHeight);
+    private void parsePosition(ControlMessage msg) {
+        // The caller must have required the bytes
+        int x = buffer.getInt();
+        int y = buffer.getInt();
+        int screenWidth = buffer.getShort() & 0xFFFF;
+        int screenHeight = buffer.getShort() & 0xFFFF;
+        msg.setPosition(x, y, screenWidth, screenHeight);
     }
 }
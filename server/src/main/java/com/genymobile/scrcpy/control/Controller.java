@@ -7,11 +7,15 @@ import com.genymobile.scrcpy.Options;
 import com.genymobile.scrcpy.device.Device;
 import com.genymobile.scrcpy.device.DeviceApp;
 import com.genymobile.scrcpy.device.Point;
-import com.genymobile.scrcpy.device.Position;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.metrics.Metrics;
+import com.genymobile.scrcpy.record.ReplayBuffer;
+import com.genymobile.scrcpy.record.ReplayWriter;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
+import com.genymobile.scrcpy.video.FrameLatency;
 import com.genymobile.scrcpy.video.SurfaceCapture;
+import com.genymobile.scrcpy.video.SurfaceEncoder;
 import com.genymobile.scrcpy.video.VirtualDisplayListener;
 import com.genymobile.scrcpy.wrappers.ClipboardManager;
 import com.genymobile.scrcpy.wrappers.InputManager;
@@ -27,7 +31,11 @@ import android.view.KeyCharacterMap;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -51,6 +59,10 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
      *
      * If a new separate virtual display is created (using --new-display), then displayId == Device.DISPLAY_ID_NONE. In that case, all events are
      * sent to the virtual display id.
+     *
+     * With extra_displays, each stream has its own pair of ids (a DisplayTarget). Input events are sent to the target selected by the last
+     * SET_INPUT_STREAM message (the main stream by default). The pointers state is shared, so the target only changes once all the pointers
+     * and buttons are released.
      */
 
     private static final class DisplayData {
@@ -63,13 +75,38 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         }
     }
 
+    private final class DisplayTarget implements VirtualDisplayListener {
+        private final int displayId;
+        private final AtomicReference<DisplayData> displayData = new AtomicReference<>();
+
+        private DisplayTarget(int displayId) {
+            this.displayId = displayId;
+        }
+
+        @Override
+        public void onNewVirtualDisplay(int virtualDisplayId, PositionMapper positionMapper) {
+            DisplayData data = new DisplayData(virtualDisplayId, positionMapper);
+            DisplayData old = displayData.getAndSet(data);
+            if (old == null) {
+                // The very first time the target is notified of a new virtual display
+                synchronized (displayDataAvailable) {
+                    displayDataAvailable.notifyAll();
+                }
+            }
+        }
+    }
+
     private static final int DEFAULT_DEVICE_ID = 0;
 
     // control_msg.h values of the pointerId field in inject_touch_event message
     private static final int POINTER_ID_MOUSE = -1;
 
+    private static final int REPLAY_DATA_CHUNK_SIZE = 1 << 16; // 64k
+
     private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor();
     private ExecutorService startAppExecutor;
+    // Muxing and transferring the replay buffer may take some time (the thread is only created on the first request)
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor();
 
     private Thread thread;
 
@@ -87,18 +124,33 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
 
     private final AtomicBoolean isSettingClipboard = new AtomicBoolean();
 
-    private final AtomicReference<DisplayData> displayData = new AtomicReference<>();
+    private final DisplayTarget mainTarget;
+    private final List<DisplayTarget> extraTargets = new ArrayList<>();
+    // The target of input events, selected by SET_INPUT_STREAM
+    private volatile DisplayTarget inputTarget;
+    // The target selected while a pointer was down, applied once all the pointers are up
+    private DisplayTarget pendingInputTarget;
     private final Object displayDataAvailable = new Object(); // condition variable
 
     private long lastTouchDown;
+    private long lastTouchEventTime; // the coalesced touch moves must not be injected before the previous touch event
     private final PointersState pointersState = new PointersState();
     private final MotionEvent.PointerProperties[] pointerProperties = new MotionEvent.PointerProperties[PointersState.MAX_POINTERS];
     private final MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[PointersState.MAX_POINTERS];
 
+    private final InputCoalescer inputCoalescer = new InputCoalescer();
+    // Stored to avoid allocating on every flush
+    private final InputCoalescer.TouchInjector touchInjector = this::injectTouchMoves;
+    private final InputCoalescer.ScrollInjector scrollInjector = this::injectScroll;
+
     private boolean keepDisplayPowerOff;
 
     // Used for resetting video encoding on RESET_VIDEO message
     private SurfaceCapture surfaceCapture;
+    // Used for requesting a key frame on REQUEST_KEY_FRAME message
+    private SurfaceEncoder surfaceEncoder;
+    // Used for saving the replay buffer on SAVE_REPLAY_BUFFER message
+    private ReplayBuffer replayBuffer;
 
     public Controller(ControlChannel controlChannel, CleanUp cleanUp, Options options) {
         this.displayId = options.getDisplayId();
@@ -106,6 +158,8 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         this.cleanUp = cleanUp;
         this.clipboardAutosync = options.getClipboardAutosync();
         this.powerOn = options.getPowerOn();
+        mainTarget = new DisplayTarget(displayId);
+        inputTarget = mainTarget;
         initPointers();
         sender = new DeviceMessageSender(controlChannel);
 
@@ -140,20 +194,39 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
 
     @Override
     public void onNewVirtualDisplay(int virtualDisplayId, PositionMapper positionMapper) {
-        DisplayData data = new DisplayData(virtualDisplayId, positionMapper);
-        DisplayData old = this.displayData.getAndSet(data);
-        if (old == null) {
-            // The very first time the Controller is notified of a new virtual display
-            synchronized (displayDataAvailable) {
-                displayDataAvailable.notify();
-            }
-        }
+        mainTarget.onNewVirtualDisplay(virtualDisplayId, positionMapper);
+    }
+
+    /**
+     * Register an extra video stream, so that input events may be routed to its display.
+     * <p>
+     * Must be called before the controller is started. The extra streams are numbered from 1, in the order of registration.
+     *
+     * @param displayId the mirrored display id, or {@link Device#DISPLAY_ID_NONE} for a new virtual display
+     * @return the listener to pass to the capture of the stream
+     */
+    public VirtualDisplayListener addStream(int displayId) {
+        DisplayTarget target = new DisplayTarget(displayId);
+        extraTargets.add(target);
+        return target;
+    }
+
+    public DeviceMessageSender getSender() {
+        return sender;
     }
 
     public void setSurfaceCapture(SurfaceCapture surfaceCapture) {
         this.surfaceCapture = surfaceCapture;
     }
 
+    public void setSurfaceEncoder(SurfaceEncoder surfaceEncoder) {
+        this.surfaceEncoder = surfaceEncoder;
+    }
+
+    public void setReplayBuffer(ReplayBuffer replayBuffer) {
+        this.replayBuffer = replayBuffer;
+    }
+
     private UhidManager getUhidManager() {
         if (uhidManager == null) {
             uhidManager = new UhidManager(sender);
@@ -220,6 +293,8 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         if (thread != null) {
             thread.interrupt();
         }
+        // Unblock a pending transfer of the replay buffer
+        replayExecutor.shutdownNow();
         sender.stop();
     }
 
@@ -240,6 +315,68 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             return false;
         }
 
+        while (supportsInputEvents && InputCoalescer.isCoalescable(msg)) {
+            long start = Metrics.isEnabled() ? System.nanoTime() : 0;
+            try {
+                msg = coalesceEvents(msg);
+            } catch (IOException e) {
+                // this is expected on close
+                return false;
+            }
+            if (start != 0) {
+                Metrics.recordLatency(Metrics.LATENCY_INJECTION, System.nanoTime() - start);
+            }
+            if (msg == null) {
+                return true;
+            }
+        }
+
+        if (!Metrics.isEnabled() || !isInjection(msg.getType())) {
+            return handleMessage(msg);
+        }
+
+        long start = System.nanoTime();
+        boolean alive = handleMessage(msg);
+        Metrics.recordLatency(Metrics.LATENCY_INJECTION, System.nanoTime() - start);
+        return alive;
+    }
+
+    private static boolean isInjection(int type) {
+        switch (type) {
+            case ControlMessage.TYPE_INJECT_KEYCODE:
+            case ControlMessage.TYPE_INJECT_TEXT:
+            case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
+            case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
+            case ControlMessage.TYPE_BACK_OR_SCREEN_ON:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Merge the move and scroll events already received, then inject the result.
+     *
+     * @param msg the first coalescable message
+     * @return the next message which could not be merged (to be handled by the caller), or {@code null} if there is none
+     */
+    private ControlMessage coalesceEvents(ControlMessage msg) throws IOException {
+        boolean added = inputCoalescer.add(msg, SystemClock.uptimeMillis());
+        assert added : "The first message must always be added";
+        try {
+            while (!inputCoalescer.isFull() && controlChannel.hasPendingInput()) {
+                ControlMessage next = controlChannel.recv();
+                if (!InputCoalescer.isCoalescable(next) || !inputCoalescer.add(next, SystemClock.uptimeMillis())) {
+                    return next;
+                }
+            }
+            return null;
+        } finally {
+            inputCoalescer.flush(touchInjector, scrollInjector);
+        }
+    }
+
+    private boolean handleMessage(ControlMessage msg) throws IOException {
         switch (msg.getType()) {
             case ControlMessage.TYPE_INJECT_KEYCODE:
                 if (supportsInputEvents) {
@@ -253,12 +390,14 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
                 break;
             case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
                 if (supportsInputEvents) {
-                    injectTouch(msg.getAction(), msg.getPointerId(), msg.getPosition(), msg.getPressure(), msg.getActionButton(), msg.getButtons());
+                    injectTouch(msg.getAction(), msg.getPointerId(), msg.getX(), msg.getY(), msg.getScreenWidth(), msg.getScreenHeight(),
+                            msg.getPressure(), msg.getActionButton(), msg.getButtons());
                 }
                 break;
             case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
                 if (supportsInputEvents) {
-                    injectScroll(msg.getPosition(), msg.getHScroll(), msg.getVScroll(), msg.getButtons());
+                    injectScroll(msg.getX(), msg.getY(), msg.getScreenWidth(), msg.getScreenHeight(), msg.getHScroll(), msg.getVScroll(),
+                            msg.getButtons());
                 }
                 break;
             case ControlMessage.TYPE_BACK_OR_SCREEN_ON:
@@ -307,6 +446,26 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             case ControlMessage.TYPE_RESET_VIDEO:
                 resetVideo();
                 break;
+            case ControlMessage.TYPE_REQUEST_KEY_FRAME:
+                requestKeyFrame();
+                break;
+            case ControlMessage.TYPE_GET_FRAME_LATENCY:
+                sendFrameLatency();
+                break;
+            case ControlMessage.TYPE_SAVE_REPLAY_BUFFER:
+                saveReplayBufferAsync(msg.getText());
+                break;
+            case ControlMessage.TYPE_SET_MAX_FPS:
+                setMaxFps(msg.getMaxFps());
+                break;
+            case ControlMessage.TYPE_SET_INPUT_STREAM:
+                setInputStream(msg.getStreamId());
+                break;
+            case ControlMessage.TYPE_SET_MAIN_VIDEO:
+                if (surfaceEncoder != null) {
+                    surfaceEncoder.setMainVideoEnabled(msg.getOn());
+                }
+                break;
             default:
                 // do nothing
         }
@@ -351,21 +510,20 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         return successCount;
     }
 
-    private Pair<Point, Integer> getEventPointAndDisplayId(Position position) {
-        // it hides the field on purpose, to read it with atomic access
-        @SuppressWarnings("checkstyle:HiddenField")
-        DisplayData displayData = this.displayData.get();
+    private Pair<Point, Integer> getEventPointAndDisplayId(int x, int y, int screenWidth, int screenHeight) {
+        DisplayTarget target = inputTarget;
+        DisplayData displayData = target.displayData.get();
         // In scrcpy, displayData should never be null (a touch event can only be generated from the client when a video frame is present).
         // However, it is possible to send events without video playback when using scrcpy-server alone (except for virtual displays).
-        assert displayData != null || displayId != Device.DISPLAY_ID_NONE : "Cannot receive a positional event without a display";
+        assert displayData != null || target.displayId != Device.DISPLAY_ID_NONE : "Cannot receive a positional event without a display";
 
         Point point;
         int targetDisplayId;
         if (displayData != null) {
-            point = displayData.positionMapper.map(position);
+            point = displayData.positionMapper.map(x, y, screenWidth, screenHeight);
             if (point == null) {
                 if (Ln.isEnabled(Ln.Level.VERBOSE)) {
-                    Size eventSize = position.getScreenSize();
+                    Size eventSize = new Size(screenWidth, screenHeight);
                     Size currentSize = displayData.positionMapper.getVideoSize();
                     Ln.v("Ignore positional event generated for size " + eventSize + " (current size is " + currentSize + ")");
                 }
@@ -374,17 +532,18 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             targetDisplayId = displayData.virtualDisplayId;
         } else {
             // No display, use the raw coordinates
-            point = position.getPoint();
-            targetDisplayId = displayId;
+            point = new Point(x, y);
+            targetDisplayId = target.displayId;
         }
 
         return Pair.create(point, targetDisplayId);
     }
 
-    private boolean injectTouch(int action, long pointerId, Position position, float pressure, int actionButton, int buttons) {
+    private boolean injectTouch(int action, long pointerId, int x, int y, int screenWidth, int screenHeight, float pressure, int actionButton,
+            int buttons) {
         long now = SystemClock.uptimeMillis();
 
-        Pair<Point, Integer> pair = getEventPointAndDisplayId(position);
+        Pair<Point, Integer> pair = getEventPointAndDisplayId(x, y, screenWidth, screenHeight);
         if (pair == null) {
             return false;
         }
@@ -397,27 +556,15 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             Ln.w("Too many pointers for touch event");
             return false;
         }
-        Pointer pointer = pointersState.get(pointerIndex);
-        pointer.setPoint(point);
-        pointer.setPressure(pressure);
-
-        int source;
-        boolean activeSecondaryButtons = ((actionButton | buttons) & ~MotionEvent.BUTTON_PRIMARY) != 0;
-        if (pointerId == POINTER_ID_MOUSE && (action == MotionEvent.ACTION_HOVER_MOVE || activeSecondaryButtons)) {
-            // real mouse event, or event incompatible with a finger
-            pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_MOUSE;
-            source = InputDevice.SOURCE_MOUSE;
-            pointer.setUp(buttons == 0);
-        } else {
-            // POINTER_ID_GENERIC_FINGER, POINTER_ID_VIRTUAL_FINGER or real touch from device
-            pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_FINGER;
-            source = InputDevice.SOURCE_TOUCHSCREEN;
+        int source = updatePointer(pointerIndex, action, pointerId, point, pressure, actionButton, buttons);
+        if (source != InputDevice.SOURCE_MOUSE) {
             // Buttons must not be set for touch events
             buttons = 0;
-            pointer.setUp(action == MotionEvent.ACTION_UP);
         }
 
         int pointerCount = pointersState.update(pointerProperties, pointerCoords);
+        applyPendingInputTarget();
+        lastTouchEventTime = now;
         if (pointerCount == 1) {
             if (action == MotionEvent.ACTION_DOWN) {
                 lastTouchDown = now;
@@ -492,10 +639,124 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         return Device.injectEvent(event, targetDisplayId, Device.INJECT_MODE_ASYNC);
     }
 
-    private boolean injectScroll(Position position, float hScroll, float vScroll, int buttons) {
+    /**
+     * Update the state of the pointer at {@code pointerIndex} for a new touch event.
+     *
+     * @return the source of the event to inject ({@link InputDevice#SOURCE_MOUSE} or {@link InputDevice#SOURCE_TOUCHSCREEN})
+     */
+    private int updatePointer(int pointerIndex, int action, long pointerId, Point point, float pressure, int actionButton, int buttons) {
+        Pointer pointer = pointersState.get(pointerIndex);
+        pointer.setPoint(point);
+        pointer.setPressure(pressure);
+
+        boolean activeSecondaryButtons = ((actionButton | buttons) & ~MotionEvent.BUTTON_PRIMARY) != 0;
+        if (pointerId == POINTER_ID_MOUSE && (action == MotionEvent.ACTION_HOVER_MOVE || activeSecondaryButtons)) {
+            // real mouse event, or event incompatible with a finger
+            pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_MOUSE;
+            pointer.setUp(buttons == 0);
+            return InputDevice.SOURCE_MOUSE;
+        }
+
+        // POINTER_ID_GENERIC_FINGER, POINTER_ID_VIRTUAL_FINGER or real touch from device
+        pointerProperties[pointerIndex].toolType = MotionEvent.TOOL_TYPE_FINGER;
+        pointer.setUp(action == MotionEvent.ACTION_UP);
+        return InputDevice.SOURCE_TOUCHSCREEN;
+    }
+
+    /**
+     * Inject consecutive move samples, batching them into as few events as possible.
+     * <p>
+     * Consecutive samples which would produce compatible events (same action, source, buttons, display and pointers) are merged into a single
+     * {@link MotionEvent}: the previous samples are kept as historical samples (see {@link MotionEvent#addBatch(long, MotionEvent.PointerCoords[],
+     * int)}), so that apps still receive the full sample stream, with a single injection.
+     */
+    private void injectTouchMoves(TouchMoveBatch batch) {
+        batch.resolveEventTimes(lastTouchEventTime);
+        lastTouchEventTime = batch.getEventTime(batch.size() - 1);
+
+        MotionEvent event = null;
+        int eventDisplayId = 0;
+        boolean ok = true;
+
+        for (int i = 0; i < batch.size(); ++i) {
+            int action = batch.getAction(i);
+            long pointerId = batch.getPointerId(i);
+
+            Pair<Point, Integer> pair = getEventPointAndDisplayId(batch.getX(i), batch.getY(i), batch.getScreenWidth(i), batch.getScreenHeight(i));
+            if (pair == null) {
+                continue;
+            }
+
+            Point point = pair.first;
+            int targetDisplayId = pair.second;
+
+            int pointerIndex = pointersState.getPointerIndex(pointerId);
+            if (pointerIndex == -1) {
+                Ln.w("Too many pointers for touch event");
+                continue;
+            }
+
+            int buttons = batch.getButtons(i);
+            int source = updatePointer(pointerIndex, action, pointerId, point, batch.getPressure(i), batch.getActionButton(i), buttons);
+            if (source != InputDevice.SOURCE_MOUSE) {
+                // Buttons must not be set for touch events
+                buttons = 0;
+            }
+
+            int pointerCount = pointersState.update(pointerProperties, pointerCoords);
+            applyPendingInputTarget();
+            long eventTime = batch.getEventTime(i);
+
+            if (event != null && eventDisplayId == targetDisplayId && canAddBatch(event, action, source, buttons, pointerCount)) {
+                event.addBatch(eventTime, pointerCoords, 0);
+            } else {
+                if (event != null) {
+                    ok &= injectAndRecycle(event, eventDisplayId);
+                }
+                event = MotionEvent.obtain(lastTouchDown, eventTime, action, pointerCount, pointerProperties, pointerCoords, 0, buttons, 1f, 1f,
+                        DEFAULT_DEVICE_ID, 0, source, 0);
+                eventDisplayId = targetDisplayId;
+            }
+        }
+
+        if (event != null) {
+            ok &= injectAndRecycle(event, eventDisplayId);
+        }
+
+        if (!ok) {
+            Ln.w("Could not inject touch move event");
+        }
+    }
+
+    /**
+     * Indicate whether the current {@link #pointerProperties} and {@link #pointerCoords} may be added as a new sample to {@code event}.
+     */
+    private boolean canAddBatch(MotionEvent event, int action, int source, int buttons, int pointerCount) {
+        if (event.getAction() != action || event.getSource() != source || event.getButtonState() != buttons
+                || event.getPointerCount() != pointerCount) {
+            return false;
+        }
+
+        for (int i = 0; i < pointerCount; ++i) {
+            MotionEvent.PointerProperties props = pointerProperties[i];
+            if (event.getPointerId(i) != props.id || event.getToolType(i) != props.toolType) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean injectAndRecycle(MotionEvent event, int displayId) {
+        // The event is copied by the injection, it can be recycled immediately
+        boolean ok = Device.injectEvent(event, displayId, Device.INJECT_MODE_ASYNC);
+        event.recycle();
+        return ok;
+    }
+
+    private boolean injectScroll(int x, int y, int screenWidth, int screenHeight, float hScroll, float vScroll, int buttons) {
         long now = SystemClock.uptimeMillis();
 
-        Pair<Point, Integer> pair = getEventPointAndDisplayId(position);
+        Pair<Point, Integer> pair = getEventPointAndDisplayId(x, y, screenWidth, screenHeight);
         if (pair == null) {
             return false;
         }
@@ -602,13 +863,14 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
     }
 
     private int getActionDisplayId() {
-        if (displayId != Device.DISPLAY_ID_NONE) {
+        DisplayTarget target = inputTarget;
+        if (target.displayId != Device.DISPLAY_ID_NONE) {
             // Real screen mirrored, use the source display id
-            return displayId;
+            return target.displayId;
         }
 
         // Virtual display created by --new-display, use the virtualDisplayId
-        DisplayData data = displayData.get();
+        DisplayData data = target.displayData.get();
         if (data == null) {
             // If no virtual display id is initialized yet, use the main display id
             return 0;
@@ -670,14 +932,15 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
     }
 
     private int getStartAppDisplayId() {
-        if (displayId != Device.DISPLAY_ID_NONE) {
-            return displayId;
+        DisplayTarget target = inputTarget;
+        if (target.displayId != Device.DISPLAY_ID_NONE) {
+            return target.displayId;
         }
 
         // Mirroring a new virtual display id (using --new-display-id feature)
         try {
             // Wait for at most 1 second until a virtual display id is known
-            DisplayData data = waitDisplayData(1000);
+            DisplayData data = waitDisplayData(target, 1000);
             if (data != null) {
                 return data.virtualDisplayId;
             }
@@ -689,18 +952,18 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
         return Device.DISPLAY_ID_NONE;
     }
 
-    private DisplayData waitDisplayData(long timeoutMillis) throws InterruptedException {
+    private DisplayData waitDisplayData(DisplayTarget target, long timeoutMillis) throws InterruptedException {
         long deadline = System.currentTimeMillis() + timeoutMillis;
 
         synchronized (displayDataAvailable) {
-            DisplayData data = displayData.get();
+            DisplayData data = target.displayData.get();
             while (data == null) {
                 long timeout = deadline - System.currentTimeMillis();
                 if (timeout < 0) {
                     return null;
                 }
                 displayDataAvailable.wait(timeout);
-                data = displayData.get();
+                data = target.displayData.get();
             }
 
             return data;
@@ -728,4 +991,108 @@ public class Controller implements AsyncProcessor, VirtualDisplayListener {
             surfaceCapture.requestInvalidate();
         }
     }
+
+    private void requestKeyFrame() {
+        if (surfaceEncoder != null) {
+            Ln.d("Video key frame requested");
+            surfaceEncoder.requestKeyFrame();
+        }
+    }
+
+    private void sendFrameLatency() {
+        FrameLatency latency = surfaceEncoder != null ? surfaceEncoder.getFrameLatency() : null;
+        if (latency == null) {
+            Ln.w("Frame latency requested, but frame tracing is disabled");
+            // Reply anyway, so that the client does not wait forever
+            latency = FrameLatency.EMPTY;
+        }
+        sender.send(DeviceMessage.createFrameLatency(latency));
+    }
+
+    private void setMaxFps(float maxFps) {
+        if (surfaceEncoder != null) {
+            surfaceEncoder.setMaxFps(maxFps);
+        }
+    }
+
+    private void setInputStream(int streamId) {
+        DisplayTarget target;
+        if (streamId == 0) {
+            target = mainTarget;
+        } else if (streamId <= extraTargets.size()) {
+            target = extraTargets.get(streamId - 1);
+            if (!Device.supportsInputEvents(target.displayId)) {
+                Ln.w("Input events are not supported for stream " + streamId);
+                return;
+            }
+        } else {
+            Ln.w("Invalid input stream: " + streamId);
+            return;
+        }
+
+        if (pointersState.isEmpty()) {
+            inputTarget = target;
+            pendingInputTarget = null;
+        } else {
+            // Switching now would send the release of the pressed pointers to another display
+            Ln.d("Input stream " + streamId + " selected, waiting for the pointers to be released");
+            pendingInputTarget = target;
+        }
+    }
+
+    private void applyPendingInputTarget() {
+        if (pendingInputTarget != null && pointersState.isEmpty()) {
+            inputTarget = pendingInputTarget;
+            pendingInputTarget = null;
+        }
+    }
+
+    private void saveReplayBufferAsync(String path) {
+        replayExecutor.submit(() -> {
+            try {
+                saveReplayBuffer(path);
+            } catch (IOException e) {
+                Ln.e("Could not save the replay buffer", e);
+            } catch (InterruptedException e) {
+                // stopped
+            }
+        });
+    }
+
+    private void saveReplayBuffer(String path) throws IOException, InterruptedException {
+        boolean toClient = path.isEmpty();
+        ReplayBuffer.Snapshot snapshot = replayBuffer != null ? replayBuffer.snapshot() : null;
+        if (snapshot == null) {
+            Ln.w(replayBuffer == null ? "Replay buffer requested, but it is disabled" : "Replay buffer empty");
+            if (toClient) {
+                // Reply anyway, so that the client does not wait forever
+                sender.sendBlocking(DeviceMessage.createReplayData(new byte[0]));
+            }
+            return;
+        }
+
+        if (!toClient) {
+            ReplayWriter.write(snapshot, path);
+            return;
+        }
+
+        // The device messages are small, so mux to a temporary file and send it in chunks
+        File file = File.createTempFile("scrcpy-replay", ".mp4", new File("/data/local/tmp"));
+        try {
+            ReplayWriter.write(snapshot, file.getPath());
+            try (FileInputStream in = new FileInputStream(file)) {
+                byte[] chunk = new byte[REPLAY_DATA_CHUNK_SIZE];
+                int r;
+                while ((r = in.read(chunk)) != -1) {
+                    sender.sendBlocking(DeviceMessage.createReplayData(Arrays.copyOf(chunk, r)));
+                }
+            }
+        } finally {
+            // The end marker is sent even on error, so that the client closes its file
+            sender.sendBlocking(DeviceMessage.createReplayData(new byte[0]));
+            if (!file.delete()) {
+                Ln.w("Could not delete " + file);
+            }
+        }
+    }
 }
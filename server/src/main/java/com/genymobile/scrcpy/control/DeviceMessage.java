@@ -1,16 +1,34 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.metrics.MetricsSnapshot;
+import com.genymobile.scrcpy.video.EncoderProbeResult;
+import com.genymobile.scrcpy.video.FrameLatency;
+
+import java.util.List;
+
 public final class DeviceMessage {
 
     public static final int TYPE_CLIPBOARD = 0;
     public static final int TYPE_ACK_CLIPBOARD = 1;
     public static final int TYPE_UHID_OUTPUT = 2;
+    public static final int TYPE_VIDEO_BIT_RATE = 3;
+    public static final int TYPE_METRICS = 4;
+    public static final int TYPE_FRAME_LATENCY = 5;
+    public static final int TYPE_REPLAY_DATA = 6;
+    public static final int TYPE_IDLE = 7;
+    public static final int TYPE_ENCODER_PROBE = 8;
 
     private int type;
     private String text;
     private long sequence;
     private int id;
     private byte[] data;
+    private int bitRate;
+    private MetricsSnapshot metrics;
+    private FrameLatency frameLatency;
+    private boolean idle;
+    private List<EncoderProbeResult> encoderProbeResults;
+    private int selectedEncoder;
 
     private DeviceMessage() {
     }
@@ -37,6 +55,58 @@ public final class DeviceMessage {
         return event;
     }
 
+    public static DeviceMessage createVideoBitRate(int bitRate) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_VIDEO_BIT_RATE;
+        event.bitRate = bitRate;
+        return event;
+    }
+
+    public static DeviceMessage createMetrics(MetricsSnapshot metrics) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_METRICS;
+        event.metrics = metrics;
+        return event;
+    }
+
+    public static DeviceMessage createFrameLatency(FrameLatency frameLatency) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_FRAME_LATENCY;
+        event.frameLatency = frameLatency;
+        return event;
+    }
+
+    /**
+     * Create a chunk of the replay buffer file (an empty chunk marks the end).
+     */
+    public static DeviceMessage createReplayData(byte[] data) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_REPLAY_DATA;
+        event.data = data;
+        return event;
+    }
+
+    public static DeviceMessage createIdle(boolean idle) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_IDLE;
+        event.idle = idle;
+        return event;
+    }
+
+    /**
+     * Create the report of an encoder probe.
+     *
+     * @param results the results of all the probed encoders
+     * @param selectedEncoder the index of the selected encoder in {@code results}, or -1 if none
+     */
+    public static DeviceMessage createEncoderProbe(List<EncoderProbeResult> results, int selectedEncoder) {
+        DeviceMessage event = new DeviceMessage();
+        event.type = TYPE_ENCODER_PROBE;
+        event.encoderProbeResults = results;
+        event.selectedEncoder = selectedEncoder;
+        return event;
+    }
+
     public int getType() {
         return type;
     }
@@ -56,4 +126,28 @@ public final class DeviceMessage {
     public byte[] getData() {
         return data;
     }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    public MetricsSnapshot getMetrics() {
+        return metrics;
+    }
+
+    public FrameLatency getFrameLatency() {
+        return frameLatency;
+    }
+
+    public boolean isIdle() {
+        return idle;
+    }
+
+    public List<EncoderProbeResult> getEncoderProbeResults() {
+        return encoderProbeResults;
+    }
+
+    public int getSelectedEncoder() {
+        return selectedEncoder;
+    }
 }
@@ -1,5 +1,6 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.metrics.Metrics;
 import com.genymobile.scrcpy.util.Ln;
 
 import java.io.IOException;
@@ -20,9 +21,17 @@ public final class DeviceMessageSender {
     public void send(DeviceMessage msg) {
         if (!queue.offer(msg)) {
             Ln.w("Device message dropped: " + msg.getType());
+            Metrics.increment(Metrics.COUNTER_DEVICE_MESSAGES_DROPPED);
         }
     }
 
+    /**
+     * Send a message which must not be dropped, waiting for space in the queue if necessary.
+     */
+    public void sendBlocking(DeviceMessage msg) throws InterruptedException {
+        queue.put(msg);
+    }
+
     private void loop() throws IOException, InterruptedException {
         while (!Thread.currentThread().isInterrupted()) {
             DeviceMessage msg = queue.take();
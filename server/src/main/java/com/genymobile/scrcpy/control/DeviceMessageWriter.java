@@ -1,17 +1,24 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.metrics.LatencySummary;
+import com.genymobile.scrcpy.metrics.MetricsSnapshot;
 import com.genymobile.scrcpy.util.StringUtils;
+import com.genymobile.scrcpy.video.EncoderProbeResult;
+import com.genymobile.scrcpy.video.FrameLatency;
 
 import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 public class DeviceMessageWriter {
 
     private static final int MESSAGE_MAX_SIZE = 1 << 18; // 256k
     public static final int CLIPBOARD_TEXT_MAX_LENGTH = MESSAGE_MAX_SIZE - 5; // type: 1 byte; length: 4 bytes
+    public static final int ENCODER_PROBE_MAX_RESULTS = 16;
+    public static final int ENCODER_NAME_MAX_LENGTH = 255; // length: 1 byte
 
     private final DataOutputStream dos;
 
@@ -39,9 +46,76 @@ public class DeviceMessageWriter {
                 dos.writeShort(data.length);
                 dos.write(data);
                 break;
+            case DeviceMessage.TYPE_VIDEO_BIT_RATE:
+                dos.writeInt(msg.getBitRate());
+                break;
+            case DeviceMessage.TYPE_METRICS:
+                writeMetrics(msg.getMetrics());
+                break;
+            case DeviceMessage.TYPE_FRAME_LATENCY:
+                FrameLatency frameLatency = msg.getFrameLatency();
+                writeLatency(frameLatency.getCaptureToDequeue());
+                writeLatency(frameLatency.getDequeueToWrite());
+                writeLatency(frameLatency.getCaptureToWrite());
+                break;
+            case DeviceMessage.TYPE_REPLAY_DATA:
+                byte[] replayData = msg.getData();
+                dos.writeInt(replayData.length);
+                dos.write(replayData);
+                break;
+            case DeviceMessage.TYPE_IDLE:
+                dos.writeBoolean(msg.isIdle());
+                break;
+            case DeviceMessage.TYPE_ENCODER_PROBE:
+                writeEncoderProbe(msg.getEncoderProbeResults(), msg.getSelectedEncoder());
+                break;
             default:
                 throw new ControlProtocolException("Unknown event type: " + type);
         }
         dos.flush();
     }
+
+    private void writeMetrics(MetricsSnapshot metrics) throws IOException {
+        dos.writeInt(metrics.getIntervalMs());
+        long[] counters = metrics.getCounters();
+        dos.writeByte(counters.length);
+        for (long counter : counters) {
+            dos.writeLong(counter);
+        }
+        LatencySummary[] latencies = metrics.getLatencies();
+        dos.writeByte(latencies.length);
+        for (LatencySummary latency : latencies) {
+            writeLatency(latency);
+        }
+    }
+
+    private void writeEncoderProbe(List<EncoderProbeResult> results, int selectedEncoder) throws IOException {
+        int count = Math.min(results.size(), ENCODER_PROBE_MAX_RESULTS);
+        // 0xFF if no encoder is selected (or if it is not reported)
+        dos.writeByte(selectedEncoder >= 0 && selectedEncoder < count ? selectedEncoder : 0xFF);
+        dos.writeByte(count);
+        for (int i = 0; i < count; ++i) {
+            EncoderProbeResult result = results.get(i);
+            byte[] name = result.getName().getBytes(StandardCharsets.UTF_8);
+            int len = StringUtils.getUtf8TruncationIndex(name, ENCODER_NAME_MAX_LENGTH);
+            dos.writeByte(len);
+            dos.write(name, 0, len);
+            dos.writeBoolean(result.isOk());
+            dos.writeInt(toUnsignedInt(result.getLatencyUs()));
+            dos.writeInt(toUnsignedInt(result.getFrameTimeUs()));
+            dos.writeInt(toUnsignedInt(result.getFrameSize()));
+        }
+    }
+
+    private void writeLatency(LatencySummary latency) throws IOException {
+        dos.writeInt(toUnsignedInt(latency.getCount()));
+        dos.writeInt(toUnsignedInt(latency.getP50Us()));
+        dos.writeInt(toUnsignedInt(latency.getP99Us()));
+        dos.writeInt(toUnsignedInt(latency.getMaxUs()));
+    }
+
+    private static int toUnsignedInt(long value) {
+        // Saturate to the max value of a uint32
+        return (int) Math.min(value, 0xFFFFFFFFL);
+    }
 }
@@ -0,0 +1,158 @@
+package com.genymobile.scrcpy.control;
+
+import android.view.MotionEvent;
+
+/**
+ * Merge redundant touch move and scroll events received faster than they can be injected.
+ * <p>
+ * Only "move" events (which describe a state, not a transition) are coalesced: touch moves received within one input frame are collected into a
+ * {@link TouchMoveBatch}, to be injected as a single event carrying historical samples, and scroll deltas are accumulated. The events are never
+ * delayed to wait for more samples: only the messages already received are merged. Any other event (including DOWN and UP transitions)
+ * cannot be merged: the pending events must be flushed before it is handled, so that the order of transitions is preserved.
+ */
+final class InputCoalescer {
+
+    interface TouchInjector {
+        void injectTouchMoves(TouchMoveBatch batch);
+    }
+
+    interface ScrollInjector {
+        void injectScroll(int x, int y, int screenWidth, int screenHeight, float hScroll, float vScroll, int buttons);
+    }
+
+    // Bound the number of messages merged before flushing, to bound the latency
+    static final int MAX_COALESCED_MESSAGES = 64;
+
+    // Only the touch moves generated within one input frame (at 60 Hz) on the client are injected as a single event
+    static final int FRAME_WINDOW_MS = 16;
+
+    // Pending touch moves, in the order they were received
+    private final TouchMoveBatch moves = new TouchMoveBatch(MAX_COALESCED_MESSAGES);
+
+    // Pending scroll
+    private boolean scrollPending;
+    private int scrollX;
+    private int scrollY;
+    private int scrollScreenWidth;
+    private int scrollScreenHeight;
+    private float hScroll;
+    private float vScroll;
+    private int scrollButtons;
+
+    private int messageCount;
+
+    static boolean isCoalescable(ControlMessage msg) {
+        switch (msg.getType()) {
+            case ControlMessage.TYPE_INJECT_TOUCH_EVENT:
+                int action = msg.getAction();
+                return action == MotionEvent.ACTION_MOVE || action == MotionEvent.ACTION_HOVER_MOVE;
+            case ControlMessage.TYPE_INJECT_SCROLL_EVENT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    boolean isEmpty() {
+        return messageCount == 0;
+    }
+
+    boolean isFull() {
+        return messageCount >= MAX_COALESCED_MESSAGES;
+    }
+
+    /**
+     * Add a coalescable message to the pending events.
+     * <p>
+     * The message values are copied, so the message may be recycled afterwards.
+     *
+     * @param msg       a message for which {@link #isCoalescable(ControlMessage)} returns {@code true}
+     * @param eventTime the time the message was received, in the {@link android.os.SystemClock#uptimeMillis()} time base
+     * @return {@code true} if the message has been merged, {@code false} if the pending events must be flushed first
+     */
+    boolean add(ControlMessage msg, long eventTime) {
+        assert isCoalescable(msg);
+        if (isFull()) {
+            return false;
+        }
+
+        boolean added = msg.getType() == ControlMessage.TYPE_INJECT_TOUCH_EVENT ? addTouchMove(msg, eventTime) : addScroll(msg);
+        if (added) {
+            ++messageCount;
+        }
+        return added;
+    }
+
+    private boolean addTouchMove(ControlMessage msg, long eventTime) {
+        if (scrollPending) {
+            // Do not reorder touch and scroll events
+            return false;
+        }
+
+        int timestamp = msg.getTimestamp();
+        if (moves.size() > 0 && timestamp - moves.getTimestamp(0) >= FRAME_WINDOW_MS) {
+            // The sample belongs to the next input frame (the client timestamps are used, the messages may be received in bursts)
+            return false;
+        }
+
+        long pointerId = msg.getPointerId();
+        int action = msg.getAction();
+        int last = moves.lastIndexOf(pointerId);
+        if (last != -1 && moves.getAction(last) != action) {
+            // A pointer switched between ACTION_MOVE and ACTION_HOVER_MOVE, this is a transition
+            return false;
+        }
+
+        if (last == moves.size() - 1 && last != -1 && moves.getTimestamp(last) == timestamp) {
+            // A sample with the same timestamp as the previous one would give a zero time delta to the velocity trackers, keep the latest
+            moves.removeLast();
+        }
+
+        moves.add(action, pointerId, msg.getX(), msg.getY(), msg.getScreenWidth(), msg.getScreenHeight(), msg.getPressure(), msg.getActionButton(),
+                msg.getButtons(), timestamp, eventTime);
+        return true;
+    }
+
+    private boolean addScroll(ControlMessage msg) {
+        if (moves.size() > 0) {
+            // Do not reorder touch and scroll events
+            return false;
+        }
+
+        if (scrollPending) {
+            if (scrollButtons != msg.getButtons()) {
+                return false;
+            }
+            hScroll += msg.getHScroll();
+            vScroll += msg.getVScroll();
+        } else {
+            scrollPending = true;
+            scrollButtons = msg.getButtons();
+            hScroll = msg.getHScroll();
+            vScroll = msg.getVScroll();
+        }
+        // Keep the last position
+        scrollX = msg.getX();
+        scrollY = msg.getY();
+        scrollScreenWidth = msg.getScreenWidth();
+        scrollScreenHeight = msg.getScreenHeight();
+        return true;
+    }
+
+    /**
+     * Inject all the pending events, then reset the state.
+     */
+    void flush(TouchInjector touchInjector, ScrollInjector scrollInjector) {
+        if (moves.size() > 0) {
+            touchInjector.injectTouchMoves(moves);
+            moves.clear();
+        }
+
+        if (scrollPending) {
+            scrollInjector.injectScroll(scrollX, scrollY, scrollScreenWidth, scrollScreenHeight, hScroll, vScroll, scrollButtons);
+            scrollPending = false;
+        }
+
+        messageCount = 0;
+    }
+}
@@ -42,6 +42,13 @@ public class PointersState {
         return -1;
     }
 
+    /**
+     * Indicate whether no pointer is down (and no mouse button is pressed).
+     */
+    public boolean isEmpty() {
+        return pointers.isEmpty();
+    }
+
     public Pointer get(int index) {
         return pointers.get(index);
     }
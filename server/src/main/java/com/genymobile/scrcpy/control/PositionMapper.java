@@ -1,7 +1,6 @@
 package com.genymobile.scrcpy.control;
 
 import com.genymobile.scrcpy.device.Point;
-import com.genymobile.scrcpy.device.Position;
 import com.genymobile.scrcpy.device.Size;
 import com.genymobile.scrcpy.util.AffineMatrix;
 
@@ -31,18 +30,16 @@ public final class PositionMapper {
         return videoSize;
     }
 
-    public Point map(Position position) {
-        Size clientVideoSize = position.getScreenSize();
-        if (!videoSize.equals(clientVideoSize)) {
+    public Point map(int x, int y, int screenWidth, int screenHeight) {
+        if (videoSize.getWidth() != screenWidth || videoSize.getHeight() != screenHeight) {
             // The client sends a click relative to a video with wrong dimensions,
             // the device may have been rotated since the event was generated, so ignore the event
             return null;
         }
 
-        Point point = position.getPoint();
         if (videoToDeviceMatrix != null) {
-            point = videoToDeviceMatrix.apply(point);
+            return videoToDeviceMatrix.apply(x, y);
         }
-        return point;
+        return new Point(x, y);
     }
 }
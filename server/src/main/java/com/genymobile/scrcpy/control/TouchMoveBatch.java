@@ -0,0 +1,150 @@
+package com.genymobile.scrcpy.control;
+
+/**
+ * Consecutive touch move samples (possibly for several pointers), in the order they were received.
+ * <p>
+ * They are meant to be injected as a single {@link android.view.MotionEvent} carrying historical samples, so that apps still receive all the
+ * intermediate coordinates (for velocity tracking) without one injection per sample.
+ */
+final class TouchMoveBatch {
+
+    private final int[] actions;
+    private final long[] pointerIds;
+    // Raw positions, to not allocate a Position per sample
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] screenWidths;
+    private final int[] screenHeights;
+    private final float[] pressures;
+    private final int[] actionButtons;
+    private final int[] buttons;
+    private final int[] timestamps; // client event times
+    private final long[] eventTimes; // receive times, until resolveEventTimes() is called
+    private int size;
+
+    TouchMoveBatch(int capacity) {
+        actions = new int[capacity];
+        pointerIds = new long[capacity];
+        xs = new int[capacity];
+        ys = new int[capacity];
+        screenWidths = new int[capacity];
+        screenHeights = new int[capacity];
+        pressures = new float[capacity];
+        actionButtons = new int[capacity];
+        buttons = new int[capacity];
+        timestamps = new int[capacity];
+        eventTimes = new long[capacity];
+    }
+
+    boolean isFull() {
+        return size == actions.length;
+    }
+
+    void add(int action, long pointerId, int x, int y, int screenWidth, int screenHeight, float pressure, int actionButton, int buttons,
+            int timestamp, long eventTime) {
+        assert !isFull();
+        actions[size] = action;
+        pointerIds[size] = pointerId;
+        xs[size] = x;
+        ys[size] = y;
+        screenWidths[size] = screenWidth;
+        screenHeights[size] = screenHeight;
+        pressures[size] = pressure;
+        actionButtons[size] = actionButton;
+        this.buttons[size] = buttons;
+        timestamps[size] = timestamp;
+        eventTimes[size] = eventTime;
+        ++size;
+    }
+
+    void removeLast() {
+        assert size > 0;
+        --size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Replace the receive times by the client event times, so that the samples keep their original spacing even if they have been received in a
+     * burst.
+     * <p>
+     * The last sample keeps its receive time, the previous ones are placed before it according to the client timestamps. The event times never go
+     * backwards, nor before {@code minEventTime}.
+     *
+     * @param minEventTime the time of the last event injected before this batch
+     */
+    void resolveEventTimes(long minEventTime) {
+        int last = size - 1;
+        long lastEventTime = eventTimes[last];
+        long previous = minEventTime;
+        for (int i = 0; i < size; ++i) {
+            // The subtraction of the 32-bit timestamps is correct even if they wrapped
+            long eventTime = lastEventTime - (timestamps[last] - timestamps[i]);
+            eventTime = Math.min(Math.max(eventTime, previous), lastEventTime);
+            eventTimes[i] = eventTime;
+            previous = eventTime;
+        }
+    }
+
+    /**
+     * Return the index of the last sample for the given pointer, or -1 if there is none.
+     */
+    int lastIndexOf(long pointerId) {
+        for (int i = size - 1; i >= 0; --i) {
+            if (pointerIds[i] == pointerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getAction(int index) {
+        return actions[index];
+    }
+
+    long getPointerId(int index) {
+        return pointerIds[index];
+    }
+
+    int getX(int index) {
+        return xs[index];
+    }
+
+    int getY(int index) {
+        return ys[index];
+    }
+
+    int getScreenWidth(int index) {
+        return screenWidths[index];
+    }
+
+    int getScreenHeight(int index) {
+        return screenHeights[index];
+    }
+
+    float getPressure(int index) {
+        return pressures[index];
+    }
+
+    int getActionButton(int index) {
+        return actionButtons[index];
+    }
+
+    int getButtons(int index) {
+        return buttons[index];
+    }
+
+    int getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    long getEventTime(int index) {
+        return eventTimes[index];
+    }
+}
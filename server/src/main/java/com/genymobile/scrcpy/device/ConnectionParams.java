@@ -0,0 +1,89 @@
+package com.genymobile.scrcpy.device;
+
+/**
+ * The sockets to open for a {@link DesktopConnection}, in the order the client expects them.
+ */
+public final class ConnectionParams {
+
+    private final int scid;
+    private final boolean tunnelForward;
+    private boolean video;
+    private boolean audio;
+    private boolean control;
+    private int extraVideoCount;
+    private boolean sendDummyByte;
+    private int timeoutMs; // 0 to wait indefinitely
+
+    public ConnectionParams(int scid, boolean tunnelForward) {
+        this.scid = scid;
+        this.tunnelForward = tunnelForward;
+    }
+
+    public ConnectionParams setVideo(boolean video) {
+        this.video = video;
+        return this;
+    }
+
+    public ConnectionParams setAudio(boolean audio) {
+        this.audio = audio;
+        return this;
+    }
+
+    public ConnectionParams setControl(boolean control) {
+        this.control = control;
+        return this;
+    }
+
+    /**
+     * Set the number of additional video sockets, opened after the control socket.
+     */
+    public ConnectionParams setExtraVideoCount(int extraVideoCount) {
+        this.extraVideoCount = extraVideoCount;
+        return this;
+    }
+
+    public ConnectionParams setSendDummyByte(boolean sendDummyByte) {
+        this.sendDummyByte = sendDummyByte;
+        return this;
+    }
+
+    /**
+     * Fail if the client does not connect (or is not reachable) within {@code timeoutMs} (0 to wait indefinitely).
+     */
+    public ConnectionParams setTimeoutMs(int timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    public int getScid() {
+        return scid;
+    }
+
+    public boolean isTunnelForward() {
+        return tunnelForward;
+    }
+
+    public boolean getVideo() {
+        return video;
+    }
+
+    public boolean getAudio() {
+        return audio;
+    }
+
+    public boolean getControl() {
+        return control;
+    }
+
+    public int getExtraVideoCount() {
+        return extraVideoCount;
+    }
+
+    public boolean getSendDummyByte() {
+        return sendDummyByte;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+}
@@ -7,6 +7,11 @@ import com.genymobile.scrcpy.util.StringUtils;
 import android.net.LocalServerSocket;
 import android.net.LocalSocket;
 import android.net.LocalSocketAddress;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
 
 import java.io.Closeable;
 import java.io.FileDescriptor;
@@ -19,6 +24,8 @@ public final class DesktopConnection implements Closeable {
 
     private static final String SOCKET_NAME_PREFIX = "scrcpy";
 
+    private static final int CONNECT_RETRY_DELAY_MS = 100;
+
     private final LocalSocket videoSocket;
     private final FileDescriptor videoFd;
 
@@ -28,10 +35,15 @@ public final class DesktopConnection implements Closeable {
     private final LocalSocket controlSocket;
     private final ControlChannel controlChannel;
 
-    private DesktopConnection(LocalSocket videoSocket, LocalSocket audioSocket, LocalSocket controlSocket) throws IOException {
+    // Video streams of the extra displays, opened after the control socket
+    private final LocalSocket[] extraVideoSockets;
+
+    private DesktopConnection(LocalSocket videoSocket, LocalSocket audioSocket, LocalSocket controlSocket, LocalSocket[] extraVideoSockets)
+            throws IOException {
         this.videoSocket = videoSocket;
         this.audioSocket = audioSocket;
         this.controlSocket = controlSocket;
+        this.extraVideoSockets = extraVideoSockets;
 
         videoFd = videoSocket != null ? videoSocket.getFileDescriptor() : null;
         audioFd = audioSocket != null ? audioSocket.getFileDescriptor() : null;
@@ -44,7 +56,45 @@ public final class DesktopConnection implements Closeable {
         return localSocket;
     }
 
-    private static String getSocketName(int scid) {
+    private static LocalSocket connect(String abstractName, long deadline) throws IOException {
+        while (true) {
+            try {
+                return connect(abstractName);
+            } catch (IOException e) {
+                if (deadline == 0 || SystemClock.uptimeMillis() >= deadline) {
+                    throw e;
+                }
+                // The client is not listening yet
+                SystemClock.sleep(CONNECT_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private static LocalSocket accept(LocalServerSocket serverSocket, long deadline) throws IOException {
+        if (deadline != 0) {
+            StructPollfd pollfd = new StructPollfd();
+            pollfd.fd = serverSocket.getFileDescriptor();
+            pollfd.events = (short) OsConstants.POLLIN;
+            StructPollfd[] pollfds = {pollfd};
+
+            while (pollfd.revents == 0) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timeout waiting for a connection");
+                }
+                try {
+                    Os.poll(pollfds, (int) remaining);
+                } catch (ErrnoException e) {
+                    if (e.errno != OsConstants.EINTR) {
+                        throw new IOException(e);
+                    }
+                }
+            }
+        }
+        return serverSocket.accept();
+    }
+
+    static String getSocketName(int scid) {
         if (scid == -1) {
             // If no SCID is set, use "scrcpy" to simplify using scrcpy-server alone
             return SOCKET_NAME_PREFIX;
@@ -53,18 +103,25 @@ public final class DesktopConnection implements Closeable {
         return SOCKET_NAME_PREFIX + String.format("_%08x", scid);
     }
 
-    public static DesktopConnection open(int scid, boolean tunnelForward, boolean video, boolean audio, boolean control, boolean sendDummyByte)
-            throws IOException {
-        String socketName = getSocketName(scid);
+    public static DesktopConnection open(ConnectionParams params) throws IOException {
+        String socketName = getSocketName(params.getScid());
+        int timeoutMs = params.getTimeoutMs();
+        long deadline = timeoutMs > 0 ? SystemClock.uptimeMillis() + timeoutMs : 0;
+        boolean video = params.getVideo();
+        boolean audio = params.getAudio();
+        boolean control = params.getControl();
+        int extraVideoCount = params.getExtraVideoCount();
+        boolean sendDummyByte = params.getSendDummyByte();
 
         LocalSocket videoSocket = null;
         LocalSocket audioSocket = null;
         LocalSocket controlSocket = null;
+        LocalSocket[] extraVideoSockets = new LocalSocket[extraVideoCount];
         try {
-            if (tunnelForward) {
+            if (params.isTunnelForward()) {
                 try (LocalServerSocket localServerSocket = new LocalServerSocket(socketName)) {
                     if (video) {
-                        videoSocket = localServerSocket.accept();
+                        videoSocket = accept(localServerSocket, deadline);
                         if (sendDummyByte) {
                             // send one byte so the client may read() to detect a connection error
                             videoSocket.getOutputStream().write(0);
@@ -72,7 +129,7 @@ public final class DesktopConnection implements Closeable {
                         }
                     }
                     if (audio) {
-                        audioSocket = localServerSocket.accept();
+                        audioSocket = accept(localServerSocket, deadline);
                         if (sendDummyByte) {
                             // send one byte so the client may read() to detect a connection error
                             audioSocket.getOutputStream().write(0);
@@ -80,23 +137,30 @@ public final class DesktopConnection implements Closeable {
                         }
                     }
                     if (control) {
-                        controlSocket = localServerSocket.accept();
+                        controlSocket = accept(localServerSocket, deadline);
                         if (sendDummyByte) {
                             // send one byte so the client may read() to detect a connection error
                             controlSocket.getOutputStream().write(0);
                             sendDummyByte = false;
                         }
                     }
+                    // Extra video streams require the main video stream, so the dummy byte has already been sent
+                    for (int i = 0; i < extraVideoCount; ++i) {
+                        extraVideoSockets[i] = accept(localServerSocket, deadline);
+                    }
                 }
             } else {
                 if (video) {
-                    videoSocket = connect(socketName);
+                    videoSocket = connect(socketName, deadline);
                 }
                 if (audio) {
-                    audioSocket = connect(socketName);
+                    audioSocket = connect(socketName, deadline);
                 }
                 if (control) {
-                    controlSocket = connect(socketName);
+                    controlSocket = connect(socketName, deadline);
+                }
+                for (int i = 0; i < extraVideoCount; ++i) {
+                    extraVideoSockets[i] = connect(socketName, deadline);
                 }
             }
         } catch (IOException | RuntimeException e) {
@@ -109,10 +173,15 @@ public final class DesktopConnection implements Closeable {
             if (controlSocket != null) {
                 controlSocket.close();
             }
+            for (LocalSocket socket : extraVideoSockets) {
+                if (socket != null) {
+                    socket.close();
+                }
+            }
             throw e;
         }
 
-        return new DesktopConnection(videoSocket, audioSocket, controlSocket);
+        return new DesktopConnection(videoSocket, audioSocket, controlSocket, extraVideoSockets);
     }
 
     private LocalSocket getFirstSocket() {
@@ -138,6 +207,10 @@ public final class DesktopConnection implements Closeable {
             controlSocket.shutdownInput();
             controlSocket.shutdownOutput();
         }
+        for (LocalSocket socket : extraVideoSockets) {
+            socket.shutdownInput();
+            socket.shutdownOutput();
+        }
     }
 
     public void close() throws IOException {
@@ -150,9 +223,17 @@ public final class DesktopConnection implements Closeable {
         if (controlSocket != null) {
             controlSocket.close();
         }
+        for (LocalSocket socket : extraVideoSockets) {
+            socket.close();
+        }
     }
 
     public void sendDeviceMeta(String deviceName) throws IOException {
+        FileDescriptor fd = getFirstSocket().getFileDescriptor();
+        writeDeviceMeta(fd, deviceName);
+    }
+
+    static void writeDeviceMeta(FileDescriptor fd, String deviceName) throws IOException {
         byte[] buffer = new byte[DEVICE_NAME_FIELD_LENGTH];
 
         byte[] deviceNameBytes = deviceName.getBytes(StandardCharsets.UTF_8);
@@ -160,7 +241,6 @@ public final class DesktopConnection implements Closeable {
         System.arraycopy(deviceNameBytes, 0, buffer, 0, len);
         // byte[] are always 0-initialized in java, no need to set '\0' explicitly
 
-        FileDescriptor fd = getFirstSocket().getFileDescriptor();
         IO.writeFully(fd, buffer, 0, buffer.length);
     }
 
@@ -172,6 +252,10 @@ public final class DesktopConnection implements Closeable {
         return audioFd;
     }
 
+    public FileDescriptor getExtraVideoFd(int index) {
+        return extraVideoSockets[index].getFileDescriptor();
+    }
+
     public ControlChannel getControlChannel() {
         return controlChannel;
     }
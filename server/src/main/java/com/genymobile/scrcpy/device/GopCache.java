@@ -0,0 +1,238 @@
+package com.genymobile.scrcpy.device;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Cache of the last codec config packet and of the packets since the last key frame (the current GOP).
+ * <p>
+ * A client joining the stream may be primed immediately from a {@link Snapshot} of the cache, without waiting for the next key frame.
+ * <p>
+ * The packets are copied into a single direct buffer, which grows (up to the max size) but is never shrunk, so that caching does not allocate
+ * once the buffer is large enough. If the current GOP does not fit, the cache is invalid until the next key frame.
+ */
+public final class GopCache {
+
+    public interface PacketConsumer {
+        void accept(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException;
+    }
+
+    private static final int INITIAL_CAPACITY = 1 << 18; // 256k
+    private static final int INITIAL_PACKET_CAPACITY = 64;
+
+    private final int maxSize;
+    private final boolean video;
+
+    private ByteBuffer config; // null if no config packet has been received
+    private long configPts;
+
+    // Packets of the current GOP, stored contiguously in data
+    private ByteBuffer data;
+    private int[] sizes = new int[INITIAL_PACKET_CAPACITY];
+    private long[] ptsArray = new long[INITIAL_PACKET_CAPACITY];
+    private boolean[] keyFrames = new boolean[INITIAL_PACKET_CAPACITY];
+    private int count;
+    private int dataSize;
+
+    // The current GOP is valid if it starts with a sync point and fits in the cache
+    private boolean valid;
+
+    /**
+     * @param maxSize the max size of the packets of the current GOP, in bytes
+     * @param video {@code false} if every packet is a sync point (audio)
+     */
+    public GopCache(int maxSize, boolean video) {
+        assert maxSize > 0;
+        this.maxSize = maxSize;
+        this.video = video;
+    }
+
+    /**
+     * Cache a copy of the packet (from its position to its limit), leaving the buffer position unchanged.
+     */
+    public void add(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+        if (config) {
+            cacheConfig(buffer, pts);
+            // The next packets belong to a new codec session
+            invalidate();
+            return;
+        }
+
+        boolean syncPoint = keyFrame || !video;
+        if (syncPoint) {
+            // Start a new GOP
+            count = 0;
+            dataSize = 0;
+            valid = true;
+        } else if (!valid) {
+            return;
+        }
+
+        int size = buffer.remaining();
+        if (dataSize + size > maxSize) {
+            invalidate();
+            return;
+        }
+
+        ensureCapacity(dataSize + size);
+        ensurePacketCapacity(count + 1);
+
+        int position = buffer.position();
+        data.limit(dataSize + size);
+        data.position(dataSize);
+        data.put(buffer);
+        buffer.position(position);
+
+        sizes[count] = size;
+        ptsArray[count] = pts;
+        keyFrames[count] = keyFrame;
+        ++count;
+        dataSize += size;
+    }
+
+    private void cacheConfig(ByteBuffer buffer, long pts) {
+        int size = buffer.remaining();
+        if (config == null || config.capacity() < size) {
+            config = ByteBuffer.allocateDirect(size);
+        }
+        config.clear();
+        int position = buffer.position();
+        config.put(buffer);
+        buffer.position(position);
+        config.flip();
+        configPts = pts;
+    }
+
+    private void invalidate() {
+        count = 0;
+        dataSize = 0;
+        valid = false;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (data != null && data.capacity() >= capacity) {
+            return;
+        }
+
+        int newCapacity = Math.min(maxSize, Math.max(INITIAL_CAPACITY, capacity * 2));
+        ByteBuffer newData = ByteBuffer.allocateDirect(newCapacity);
+        if (data != null) {
+            data.limit(dataSize);
+            data.position(0);
+            newData.put(data);
+        }
+        data = newData;
+    }
+
+    private void ensurePacketCapacity(int packetCapacity) {
+        if (sizes.length < packetCapacity) {
+            int newLength = sizes.length * 2;
+            sizes = Arrays.copyOf(sizes, newLength);
+            ptsArray = Arrays.copyOf(ptsArray, newLength);
+            keyFrames = Arrays.copyOf(keyFrames, newLength);
+        }
+    }
+
+    /**
+     * Return the last config packet (to be consumed before the next call to {@link #add(ByteBuffer, long, boolean, boolean)}), or {@code null}.
+     */
+    public ByteBuffer getConfig() {
+        if (config != null) {
+            config.rewind();
+        }
+        return config;
+    }
+
+    public long getConfigPts() {
+        return configPts;
+    }
+
+    /**
+     * Indicate whether a client could be primed from the cache.
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Copy the cached packets (the config packet, if any, then the current GOP).
+     *
+     * @return the snapshot, or {@code null} if the cache is not valid
+     */
+    public Snapshot snapshot() {
+        if (!valid) {
+            return null;
+        }
+
+        // Copy from a duplicate, so that the position of the shared config buffer is never changed
+        ByteBuffer configData = null;
+        if (config != null) {
+            configData = config.duplicate();
+            configData.rewind();
+        }
+        int configSize = configData != null ? configData.remaining() : 0;
+        ByteBuffer copy = ByteBuffer.allocateDirect(configSize + dataSize);
+        if (configData != null) {
+            copy.put(configData);
+        }
+        data.limit(dataSize);
+        data.position(0);
+        copy.put(data);
+
+        return new Snapshot(copy, configSize, configPts, Arrays.copyOf(sizes, count), Arrays.copyOf(ptsArray, count),
+                Arrays.copyOf(keyFrames, count));
+    }
+
+    /**
+     * Immutable copy of the cached packets.
+     */
+    public static final class Snapshot {
+        private final ByteBuffer data;
+        private final int configSize; // 0 if there is no config packet
+        private final long configPts;
+        private final int[] sizes;
+        private final long[] ptsArray;
+        private final boolean[] keyFrames;
+
+        private Snapshot(ByteBuffer data, int configSize, long configPts, int[] sizes, long[] ptsArray, boolean[] keyFrames) {
+            this.data = data;
+            this.configSize = configSize;
+            this.configPts = configPts;
+            this.sizes = sizes;
+            this.ptsArray = ptsArray;
+            this.keyFrames = keyFrames;
+        }
+
+        /**
+         * Return the number of packets, including the config packet.
+         */
+        public int getPacketCount() {
+            return sizes.length + (configSize > 0 ? 1 : 0);
+        }
+
+        public int getSize() {
+            return data.capacity();
+        }
+
+        /**
+         * Pass all the packets to the consumer, in order (must not be called concurrently).
+         */
+        public void replay(PacketConsumer consumer) throws IOException {
+            int offset = 0;
+            if (configSize > 0) {
+                data.limit(configSize);
+                data.position(0);
+                consumer.accept(data, configPts, true, false);
+                offset = configSize;
+            }
+
+            for (int i = 0; i < sizes.length; ++i) {
+                data.limit(offset + sizes[i]);
+                data.position(offset);
+                consumer.accept(data, ptsArray[i], false, keyFrames[i]);
+                offset += sizes[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Write packets to a {@link PacketSink} from a separate thread.
+ * <p>
+ * Packets are copied to a bounded ring of pooled direct buffers, so that the producer may release its codec buffer immediately, without waiting
+ * for the socket.
+ */
+public final class PacketSender {
+
+    public interface DropListener {
+        /**
+         * Called (on the producer thread) when the queue is full and the sender starts dropping packets until the next key frame.
+         */
+        void onDropStarted();
+    }
+
+    private static final int MIN_BUFFER_SIZE = 1 << 16; // 64k
+
+    private final PacketSink sink;
+    private final SendQueuePolicy policy;
+    private final String name;
+
+    // Ring of pending packets: [head, head + count)
+    private final ByteBuffer[] buffers;
+    private final long[] ptsArray;
+    private final boolean[] configArray;
+    private final boolean[] keyFrameArray;
+    private int head;
+    private int count;
+
+    private boolean waitingKeyFrame;
+    private boolean stopped;
+    private IOException error;
+
+    private DropListener dropListener;
+    private GopCache.Snapshot initialPackets;
+
+    private Thread thread;
+
+    public PacketSender(PacketSink sink, int capacity, SendQueuePolicy policy, String name) {
+        assert capacity > 0;
+        this.sink = sink;
+        this.policy = policy;
+        this.name = name;
+        buffers = new ByteBuffer[capacity];
+        ptsArray = new long[capacity];
+        configArray = new boolean[capacity];
+        keyFrameArray = new boolean[capacity];
+    }
+
+    public void setDropListener(DropListener dropListener) {
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Set packets to write before the queued packets, to prime a new client (must be called before {@link #start()}).
+     */
+    public void setInitialPackets(GopCache.Snapshot initialPackets) {
+        this.initialPackets = initialPackets;
+    }
+
+    /**
+     * Queue a copy of the packet (the codec buffer may be released as soon as this method returns).
+     * <p>
+     * Depending on the policy, this method may block while the queue is full, or drop the packet.
+     *
+     * @throws IOException if a previous packet could not be written
+     */
+    public void offer(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
+        boolean config = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+        boolean keyFrame = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        offer(codecBuffer, bufferInfo.presentationTimeUs, config, keyFrame);
+    }
+
+    /**
+     * Queue a copy of the packet (from its position to its limit).
+     *
+     * @see #offer(ByteBuffer, MediaCodec.BufferInfo)
+     */
+    public void offer(ByteBuffer codecBuffer, long pts, boolean config, boolean keyFrame) throws IOException {
+        // A key frame (or a config packet) is never dropped: it is necessary to recover
+        boolean droppable = !config && !keyFrame && policy != SendQueuePolicy.BLOCK;
+
+        int index;
+        boolean dropStarted = false;
+        synchronized (this) {
+            if (error != null) {
+                throw error;
+            }
+
+            if (waitingKeyFrame && droppable) {
+                return;
+            }
+            waitingKeyFrame = false;
+
+            if (count == buffers.length) {
+                if (droppable) {
+                    waitingKeyFrame = true;
+                    dropStarted = true;
+                } else {
+                    boolean notFull = waitNotFull();
+                    if (error != null) {
+                        throw error;
+                    }
+                    if (!notFull || stopped) {
+                        // Interrupted or stopped: the queue may still be full, so the slot at head + count is the one being written by the
+                        // sender thread, drop the packet
+                        return;
+                    }
+                }
+            }
+
+            // The slot at head + count is not accessed by the sender thread until count is incremented
+            index = (head + count) % buffers.length;
+        }
+
+        if (dropStarted) {
+            Ln.v(name + ": queue full, dropping packets until the next key frame");
+            if (dropListener != null) {
+                dropListener.onDropStarted();
+            }
+            return;
+        }
+
+        int size = codecBuffer.remaining();
+        ByteBuffer buffer = buffers[index];
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(MIN_BUFFER_SIZE, size + size / 2));
+            buffers[index] = buffer;
+        }
+        buffer.clear();
+        buffer.put(codecBuffer);
+        buffer.flip();
+
+        ptsArray[index] = pts;
+        configArray[index] = config;
+        keyFrameArray[index] = keyFrame;
+
+        synchronized (this) {
+            ++count;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Return the number of packets that can be queued without blocking or dropping.
+     * <p>
+     * Since the sender thread only removes packets, the result is a lower bound for the producer.
+     */
+    public synchronized int remainingCapacity() {
+        return buffers.length - count;
+    }
+
+    /**
+     * @throws IOException if a previous packet could not be written
+     */
+    public synchronized void checkError() throws IOException {
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * @return {@code false} if the wait has been interrupted
+     */
+    private boolean waitNotFull() {
+        try {
+            while (count == buffers.length && error == null && !stopped) {
+                wait();
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized int waitPacket() throws InterruptedException {
+        while (count == 0) {
+            wait();
+        }
+        return head;
+    }
+
+    private synchronized void releasePacket() {
+        head = (head + 1) % buffers.length;
+        --count;
+        notifyAll();
+    }
+
+    private void loop() throws IOException, InterruptedException {
+        if (initialPackets != null) {
+            initialPackets.replay(sink::writePacket);
+            initialPackets = null;
+        }
+
+        while (!Thread.currentThread().isInterrupted()) {
+            int index = waitPacket();
+            sink.writePacket(buffers[index], ptsArray[index], configArray[index], keyFrameArray[index]);
+            releasePacket();
+        }
+    }
+
+    public void start() {
+        thread = new Thread(() -> {
+            try {
+                loop();
+            } catch (IOException e) {
+                synchronized (this) {
+                    // Report the error to the producer on the next packet
+                    error = e;
+                    notifyAll();
+                }
+            } catch (InterruptedException e) {
+                // this is expected on close
+            } finally {
+                Ln.d(name + " sender stopped");
+            }
+        }, name + "-send");
+        thread.start();
+    }
+
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            notifyAll();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void join() throws InterruptedException {
+        if (thread != null) {
+            thread.join();
+        }
+    }
+}
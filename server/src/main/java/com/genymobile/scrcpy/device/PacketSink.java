@@ -0,0 +1,36 @@
+package com.genymobile.scrcpy.device;
+
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A destination of the packets of an encoder (the client socket, the viewers, the recorder...), registered on its {@link StreamOutput}.
+ * <p>
+ * A sink must not retain the packet buffer after the call (it is released to the codec), but it may change its position and limit.
+ */
+public interface PacketSink {
+    void writeAudioHeader() throws IOException;
+
+    void writeVideoHeader(Size videoSize) throws IOException;
+
+    /**
+     * Notify the new video size after the encoder has been reset (the header is not written again).
+     */
+    void onVideoSizeChanged(Size videoSize);
+
+    /**
+     * Notify the output format of the encoder (called before the first packet, and whenever the encoder is reset).
+     */
+    void onOutputFormatChanged(MediaFormat format);
+
+    void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException;
+
+    /**
+     * Notify that the stream will not produce any packet.
+     *
+     * @param error {@code true} if the stream is disabled because of a configuration error
+     */
+    void writeDisableStream(boolean error) throws IOException;
+}
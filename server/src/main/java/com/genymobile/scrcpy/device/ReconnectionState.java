@@ -0,0 +1,58 @@
+package com.genymobile.scrcpy.device;
+
+/**
+ * Connection state of a {@link ResumableSession}.
+ * <p>
+ * Each client connection is identified by a generation, incremented on each reconnection: a disconnection reported for a previous connection
+ * (a late error) is ignored, and so is any disconnection reported while a reconnection is in progress.
+ */
+final class ReconnectionState {
+
+    private int generation;
+    private boolean reconnecting;
+    private boolean expired;
+    private boolean stopped;
+
+    /**
+     * Notify that the connection of the given generation is broken.
+     *
+     * @return {@code true} if a reconnection must be started
+     */
+    synchronized boolean onDisconnected(int connectionGeneration) {
+        if (connectionGeneration != generation || reconnecting || expired || stopped) {
+            return false;
+        }
+        reconnecting = true;
+        return true;
+    }
+
+    /**
+     * Notify that a new client connection is accepted.
+     *
+     * @return the generation of the new connection, or -1 if the session is stopped
+     */
+    synchronized int onReconnected() {
+        assert reconnecting;
+        if (stopped) {
+            return -1;
+        }
+        reconnecting = false;
+        return ++generation;
+    }
+
+    /**
+     * Notify that no client reconnected in time.
+     */
+    synchronized void expire() {
+        expired = true;
+        reconnecting = false;
+    }
+
+    synchronized boolean isExpired() {
+        return expired;
+    }
+
+    synchronized void stop() {
+        stopped = true;
+    }
+}
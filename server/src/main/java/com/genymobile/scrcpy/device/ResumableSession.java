@@ -0,0 +1,165 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.control.ControlChannel;
+import com.genymobile.scrcpy.util.Ln;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keep the capture and the encoders alive when the client disconnects, and resume streaming to a new client connecting within a grace period.
+ * <p>
+ * On disconnection, the {@link ResumableSink}s drop their packets and the {@link ControlChannel} blocks until the client reconnects (on the same
+ * socket name). Then the streams are resumed from the GOP cache (or from the next key frame). If no client reconnects in time, the session
+ * expires: the components fail with their disconnection error, which stops the server as if the session were not resumable.
+ */
+public final class ResumableSession {
+
+    private final ConnectionParams params;
+    private final String deviceName; // null to not send the device meta
+    private final int timeoutMs;
+
+    private ResumableSink videoSink;
+    private ResumableSink audioSink;
+    private ControlChannel controlChannel;
+
+    private DesktopConnection connection;
+    // Connections opened on reconnection, closed on stop (the initial connection is owned by the caller)
+    private final List<DesktopConnection> connections = new ArrayList<>();
+
+    private final ReconnectionState state = new ReconnectionState();
+
+    /**
+     * @param params     the sockets to open on reconnection, with the grace period as timeout
+     * @param deviceName the device name to send on reconnection, or {@code null}
+     */
+    public ResumableSession(ConnectionParams params, String deviceName) {
+        assert params.getTimeoutMs() > 0;
+        this.params = params;
+        this.deviceName = deviceName;
+        this.timeoutMs = params.getTimeoutMs();
+    }
+
+    public synchronized void setConnection(DesktopConnection connection) {
+        this.connection = connection;
+    }
+
+    public void setVideoSink(ResumableSink videoSink) {
+        this.videoSink = videoSink;
+    }
+
+    public void setAudioSink(ResumableSink audioSink) {
+        this.audioSink = audioSink;
+    }
+
+    public void setControlChannel(ControlChannel controlChannel) {
+        this.controlChannel = controlChannel;
+    }
+
+    public boolean isExpired() {
+        return state.isExpired();
+    }
+
+    /**
+     * Notify that the connection of the given generation is broken (may be called from any thread, several times).
+     */
+    public void onDisconnected(int connectionGeneration) {
+        DesktopConnection brokenConnection;
+        synchronized (this) {
+            if (!state.onDisconnected(connectionGeneration)) {
+                return;
+            }
+            brokenConnection = connection;
+        }
+
+        Ln.i("Client disconnected, waiting " + timeoutMs + " ms for a reconnection...");
+        // Shutdown all the sockets, so that all the components notice the disconnection
+        shutdownQuietly(brokenConnection);
+
+        Thread thread = new Thread(this::reconnect, "reconnect");
+        thread.start();
+    }
+
+    private void reconnect() {
+        DesktopConnection newConnection;
+        try {
+            newConnection = DesktopConnection.open(params);
+        } catch (IOException e) {
+            Ln.w("Client not reconnected: " + e.getMessage());
+            expire();
+            return;
+        }
+
+        int newGeneration;
+        synchronized (this) {
+            connections.add(newConnection);
+            newGeneration = state.onReconnected();
+            if (newGeneration == -1) {
+                // Stopped
+                shutdownQuietly(newConnection);
+                return;
+            }
+            connection = newConnection;
+        }
+
+        try {
+            if (deviceName != null) {
+                newConnection.sendDeviceMeta(deviceName);
+            }
+            if (videoSink != null) {
+                videoSink.resume(newConnection.getVideoFd(), newGeneration);
+            }
+            if (audioSink != null) {
+                audioSink.resume(newConnection.getAudioFd(), newGeneration);
+            }
+            if (controlChannel != null) {
+                controlChannel.resume(newConnection.getControlChannel(), newGeneration);
+            }
+            Ln.i("Client reconnected");
+        } catch (IOException e) {
+            Ln.w("Could not resume the session: " + e.getMessage());
+            onDisconnected(newGeneration);
+        }
+    }
+
+    private void expire() {
+        state.expire();
+        if (controlChannel != null) {
+            // Wake up the controller
+            controlChannel.onSessionExpired();
+        }
+    }
+
+    private static void shutdownQuietly(DesktopConnection connection) {
+        try {
+            connection.shutdown();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public void stop() {
+        List<DesktopConnection> list;
+        synchronized (this) {
+            state.stop();
+            list = new ArrayList<>(connections);
+        }
+        for (DesktopConnection c : list) {
+            shutdownQuietly(c);
+        }
+    }
+
+    /**
+     * Close the connections opened on reconnection (to be called once all the components are stopped).
+     */
+    public synchronized void close() {
+        for (DesktopConnection c : connections) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
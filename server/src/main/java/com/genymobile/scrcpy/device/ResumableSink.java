@@ -0,0 +1,144 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Codec;
+
+import android.media.MediaFormat;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Write the packets to the client through a {@link Streamer}, and keep streaming if the client disconnects, until it reconnects or the
+ * {@link ResumableSession} expires.
+ * <p>
+ * The state is guarded by this, since the stream is resumed from the reconnection thread.
+ */
+public final class ResumableSink implements PacketSink {
+
+    private final Streamer streamer;
+    private final ResumableSession session;
+    private final ResumableStream resumableStream;
+
+    private Streamer.KeyFrameRequester keyFrameRequester;
+    private Size videoSize; // written again on resume
+    private int disableCode = -1; // -1 if the stream is not disabled
+
+    private final ResumableStream.Output resumeOutput = new ResumableStream.Output() {
+        @Override
+        public void writeHeader() throws IOException {
+            if (streamer.getCodec().getType() == Codec.Type.VIDEO) {
+                streamer.writeVideoHeader(videoSize);
+            } else {
+                streamer.writeAudioHeader();
+            }
+        }
+
+        @Override
+        public void writeCachedPacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
+            // Do not alter the cached config packet (the streamer strips some config packets in place)
+            streamer.writePacket(config ? buffer.duplicate() : buffer, pts, config, keyFrame);
+        }
+
+        @Override
+        public void requestKeyFrame() {
+            if (keyFrameRequester != null) {
+                keyFrameRequester.requestKeyFrame();
+            }
+        }
+    };
+
+    /**
+     * @param gopCacheSize the max size of the GOP cache used to prime the client on reconnection, in bytes
+     */
+    public ResumableSink(Streamer streamer, ResumableSession session, int gopCacheSize) {
+        this.streamer = streamer;
+        this.session = session;
+        resumableStream = new ResumableStream(gopCacheSize, streamer.getCodec().getType() == Codec.Type.VIDEO);
+    }
+
+    Streamer getStreamer() {
+        return streamer;
+    }
+
+    /**
+     * Set the component to request a key frame from when the stream must restart from a key frame.
+     */
+    public void setKeyFrameRequester(Streamer.KeyFrameRequester keyFrameRequester) {
+        this.keyFrameRequester = keyFrameRequester;
+    }
+
+    @Override
+    public synchronized void writeAudioHeader() throws IOException {
+        streamer.writeAudioHeader();
+    }
+
+    @Override
+    public synchronized void writeVideoHeader(Size videoSize) throws IOException {
+        this.videoSize = videoSize;
+        streamer.writeVideoHeader(videoSize);
+    }
+
+    @Override
+    public synchronized void onVideoSizeChanged(Size videoSize) {
+        this.videoSize = videoSize;
+    }
+
+    @Override
+    public void onOutputFormatChanged(MediaFormat format) {
+        // Nothing to do
+    }
+
+    @Override
+    public synchronized void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
+        if (!resumableStream.prepareWrite(buffer, pts, config, keyFrame, session.isExpired())) {
+            // The client is disconnected, or is waiting for a key frame
+            return;
+        }
+
+        try {
+            streamer.writePacket(buffer, pts, config, keyFrame);
+        } catch (IOException e) {
+            disconnect(e);
+        }
+    }
+
+    @Override
+    public synchronized void writeDisableStream(boolean error) throws IOException {
+        disableCode = error ? 1 : 0;
+        if (!resumableStream.isDisconnected()) {
+            // Otherwise, it is written on resume
+            streamer.writeDisableStream(error);
+        }
+    }
+
+    /**
+     * Resume the stream to a new client connection (called from the reconnection thread).
+     * <p>
+     * The header and the cached packets are written immediately, so that the client gets the current frame even if the encoder produces no new
+     * packet (for example on a static screen).
+     */
+    synchronized void resume(FileDescriptor newFd, int newGeneration) throws IOException {
+        streamer.setFd(newFd);
+
+        if (disableCode != -1) {
+            // No more packets will be written, reply immediately
+            streamer.writeDisableStream(disableCode == 1);
+            return;
+        }
+
+        try {
+            resumableStream.resume(newGeneration, resumeOutput);
+        } catch (IOException e) {
+            disconnect(e);
+        } catch (RuntimeException e) {
+            // A corrupted cache must not kill the encoder thread, drop the new connection
+            disconnect(new IOException("Could not replay the cached packets", e));
+        }
+    }
+
+    private void disconnect(IOException e) {
+        int generation = resumableStream.disconnect(e);
+        session.onDisconnected(generation);
+    }
+}
@@ -0,0 +1,98 @@
+package com.genymobile.scrcpy.device;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * State of a stream of a {@link ResumableSession}: the packets cached to prime a reconnecting client, and whether the client is connected.
+ * <p>
+ * It does not perform any I/O by itself and is not thread-safe: the caller ({@link ResumableSink}) serializes the calls.
+ */
+final class ResumableStream {
+
+    interface Output {
+        void writeHeader() throws IOException;
+
+        void writeCachedPacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException;
+
+        void requestKeyFrame();
+    }
+
+    private final GopCache gopCache;
+    private final boolean video;
+
+    private int generation;
+    private IOException disconnectionError; // non-null while the client is disconnected
+    private boolean waitingSyncPoint;
+
+    ResumableStream(int gopCacheSize, boolean video) {
+        gopCache = new GopCache(gopCacheSize, video);
+        this.video = video;
+    }
+
+    /**
+     * Cache the packet, and indicate whether it must be written to the client.
+     *
+     * @param expired {@code true} if the session expired
+     * @return {@code true} if the packet must be written, {@code false} if the client is disconnected or is waiting for a sync point
+     * @throws IOException the disconnection error, if the client is disconnected and the session expired
+     */
+    boolean prepareWrite(ByteBuffer buffer, long pts, boolean config, boolean keyFrame, boolean expired) throws IOException {
+        gopCache.add(buffer, pts, config, keyFrame);
+
+        if (disconnectionError != null) {
+            if (expired) {
+                throw disconnectionError;
+            }
+            return false;
+        }
+
+        if (waitingSyncPoint && !config) {
+            if (!keyFrame && video) {
+                return false;
+            }
+            waitingSyncPoint = false;
+        }
+        return true;
+    }
+
+    /**
+     * Mark the client as disconnected.
+     *
+     * @return the generation of the broken connection
+     */
+    int disconnect(IOException error) {
+        disconnectionError = error;
+        return generation;
+    }
+
+    boolean isDisconnected() {
+        return disconnectionError != null;
+    }
+
+    /**
+     * Resume the stream to a new connection: write the header, then the cached packets (or only the config packet, and wait for the next key
+     * frame if the cache is not valid).
+     * <p>
+     * On error, the caller must {@link #disconnect(IOException)} the new connection.
+     */
+    void resume(int newGeneration, Output output) throws IOException {
+        generation = newGeneration;
+        disconnectionError = null;
+
+        output.writeHeader();
+
+        GopCache.Snapshot snapshot = gopCache.snapshot();
+        if (snapshot != null) {
+            snapshot.replay(output::writeCachedPacket);
+            waitingSyncPoint = false;
+        } else {
+            ByteBuffer config = gopCache.getConfig();
+            if (config != null) {
+                output.writeCachedPacket(config, gopCache.getConfigPts(), true, false);
+            }
+            waitingSyncPoint = true;
+            output.requestKeyFrame();
+        }
+    }
+}
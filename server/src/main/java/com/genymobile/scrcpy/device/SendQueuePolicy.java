@@ -0,0 +1,29 @@
+package com.genymobile.scrcpy.device;
+
+/**
+ * Behavior of a {@link PacketSender} when its queue is full.
+ */
+public enum SendQueuePolicy {
+    // Block the producer until a slot is available
+    BLOCK("block"),
+    // Drop the packets until the next key frame
+    DROP("drop"),
+    // Drop the packets until the next key frame, and request a key frame immediately
+    SYNC("sync");
+
+    private final String name;
+
+    SendQueuePolicy(String name) {
+        this.name = name;
+    }
+
+    public static SendQueuePolicy findByName(String name) {
+        for (SendQueuePolicy policy : SendQueuePolicy.values()) {
+            if (name.equals(policy.name)) {
+                return policy;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,425 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Codec;
+import com.genymobile.scrcpy.util.IO;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaFormat;
+import android.net.LocalSocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forward the packets of a stream to additional viewers.
+ * <p>
+ * Each viewer has its own {@link PacketSender}, so that a slow viewer never blocks the encoder nor the other viewers: when its queue is full,
+ * its packets are dropped until the next key frame.
+ * <p>
+ * On join, a viewer is primed immediately from the {@link GopCache} (the last codec config packet and the packets since the last key frame). If
+ * the cache is not valid (or after packets have been dropped), the viewer receives the last config packet, then the stream starting from the
+ * next key frame, which is requested from the encoder.
+ * <p>
+ * The sockets of the dropped viewers are shut down immediately, but the viewers are released on a cleanup thread, so that the encoder never
+ * waits for a sender thread to terminate.
+ */
+public final class StreamBroadcaster implements PacketSink {
+
+    private static final class Viewer {
+        private final LocalSocket socket;
+        private final Streamer streamer;
+        private PacketSender sender; // null until the stream header is written
+        private boolean needsConfig = true;
+        private boolean waitingSyncPoint = true;
+
+        Viewer(LocalSocket socket, Streamer streamer) {
+            this.socket = socket;
+            this.streamer = streamer;
+        }
+
+        void shutdown() {
+            if (sender != null) {
+                sender.stop();
+            }
+            try {
+                // Unblock any pending write
+                socket.shutdownOutput();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        void close() throws InterruptedException {
+            // Never close the socket while the sender thread may still write to its file descriptor
+            if (sender != null) {
+                sender.join();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private final Codec codec;
+    private final boolean sendCodecMeta;
+    private final boolean sendFrameMeta;
+    private final int queueSize;
+    private final String name;
+
+    private Streamer.KeyFrameRequester keyFrameRequester;
+
+    // Viewers receiving packets
+    private final List<Viewer> viewers = new ArrayList<>();
+    // Viewers waiting for the stream header
+    private final List<Viewer> pendingViewers = new ArrayList<>();
+    // All the viewers not released yet, to release them on stop
+    private final List<Viewer> allViewers = new ArrayList<>();
+
+    private boolean headerWritten;
+    private Size videoSize;
+    private int disableCode = -1; // -1 if the stream is not disabled
+    private boolean stopped;
+
+    private final GopCache gopCache;
+
+    private int nextViewerId;
+
+    private final ExecutorService cleanupExecutor = Executors.newSingleThreadExecutor();
+
+    public StreamBroadcaster(Codec codec, boolean sendCodecMeta, boolean sendFrameMeta, int queueSize, int gopCacheSize, String name) {
+        assert queueSize > 1; // a config packet and a key frame must fit in the queue
+        assert gopCacheSize > 0;
+        this.codec = codec;
+        this.sendCodecMeta = sendCodecMeta;
+        this.sendFrameMeta = sendFrameMeta;
+        this.queueSize = queueSize;
+        this.name = name;
+        gopCache = new GopCache(gopCacheSize, codec.getType() == Codec.Type.VIDEO);
+    }
+
+    public void setKeyFrameRequester(Streamer.KeyFrameRequester keyFrameRequester) {
+        this.keyFrameRequester = keyFrameRequester;
+    }
+
+    public synchronized int getViewerCount() {
+        return viewers.size() + pendingViewers.size();
+    }
+
+    private boolean isVideo() {
+        return codec.getType() == Codec.Type.VIDEO;
+    }
+
+    /**
+     * Add a viewer (the socket is owned by the broadcaster, and closed once the viewer is dropped, or on {@link #join()}).
+     */
+    public void addViewer(LocalSocket socket) throws IOException {
+        Viewer viewer = new Viewer(socket, new Streamer(socket.getFileDescriptor(), codec, sendCodecMeta, sendFrameMeta));
+        int code;
+        Size size;
+        synchronized (this) {
+            if (stopped) {
+                closeQuietly(socket);
+                return;
+            }
+            allViewers.add(viewer);
+            code = disableCode;
+            if (code == -1 && !headerWritten) {
+                // The viewer will be started once the header is known
+                pendingViewers.add(viewer);
+                return;
+            }
+            size = videoSize;
+        }
+
+        // The socket I/O is performed without holding the lock, so that a slow viewer never blocks the encoder
+        if (code != -1) {
+            // The viewer socket is kept open (the client would stop on EOF)
+            try {
+                viewer.streamer.writeDisableStream(code == 1);
+            } catch (IOException e) {
+                releaseViewer(viewer);
+                throw e;
+            }
+            return;
+        }
+
+        startViewer(viewer, size);
+    }
+
+    /**
+     * Write the stream header to the viewer, then start forwarding the stream to it.
+     */
+    private void startViewer(Viewer viewer, Size size) throws IOException {
+        // Write the header before starting the sender, to never write concurrently to the socket
+        try {
+            if (isVideo()) {
+                viewer.streamer.writeVideoHeader(size);
+            } else {
+                viewer.streamer.writeAudioHeader();
+            }
+        } catch (IOException e) {
+            releaseViewer(viewer);
+            throw e;
+        }
+
+        boolean started = false;
+        boolean primed = false;
+        synchronized (this) {
+            if (!stopped && disableCode == -1) {
+                viewer.sender = new PacketSender(viewer.streamer, queueSize, SendQueuePolicy.BLOCK, name + "-viewer" + nextViewerId++);
+
+                // The snapshot is taken with the lock held, so the next forwarded packet immediately follows the cached ones
+                GopCache.Snapshot snapshot = gopCache.snapshot();
+                if (snapshot != null) {
+                    Ln.d(name + ": priming viewer with " + snapshot.getPacketCount() + " cached packets (" + snapshot.getSize() + " bytes)");
+                    viewer.sender.setInitialPackets(snapshot);
+                    viewer.needsConfig = false;
+                    viewer.waitingSyncPoint = false;
+                    primed = true;
+                }
+
+                viewer.sender.start();
+                viewers.add(viewer);
+                started = true;
+            }
+        }
+
+        if (!started) {
+            // No more packets will be forwarded
+            releaseViewer(viewer);
+        } else if (!primed && keyFrameRequester != null) {
+            keyFrameRequester.requestKeyFrame();
+        }
+    }
+
+    @Override
+    public void writeAudioHeader() {
+        onHeader(null);
+    }
+
+    @Override
+    public void writeVideoHeader(Size videoSize) {
+        onHeader(videoSize);
+    }
+
+    private void onHeader(Size videoSize) {
+        List<Viewer> list;
+        synchronized (this) {
+            headerWritten = true;
+            this.videoSize = videoSize;
+            list = new ArrayList<>(pendingViewers);
+            pendingViewers.clear();
+        }
+
+        for (Viewer viewer : list) {
+            try {
+                startViewer(viewer, videoSize);
+            } catch (IOException e) {
+                logViewerError(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onVideoSizeChanged(Size videoSize) {
+        // Written in the header of the viewers joining later
+        this.videoSize = videoSize;
+    }
+
+    @Override
+    public void onOutputFormatChanged(MediaFormat format) {
+        // The viewers configure their decoder from the config packets
+    }
+
+    @Override
+    public void writeDisableStream(boolean error) {
+        List<Viewer> pending;
+        List<Viewer> dropped;
+        synchronized (this) {
+            disableCode = error ? 1 : 0;
+            pending = new ArrayList<>(pendingViewers);
+            pendingViewers.clear();
+            dropped = new ArrayList<>(viewers);
+            viewers.clear();
+            allViewers.removeAll(dropped);
+        }
+
+        for (Viewer viewer : pending) {
+            // The socket is kept open (the client would stop on EOF)
+            try {
+                viewer.streamer.writeDisableStream(error);
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+        for (Viewer viewer : dropped) {
+            dropViewer(viewer);
+        }
+    }
+
+    /**
+     * Forward a packet to the viewers (the buffer position is left unchanged).
+     */
+    @Override
+    public void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+        boolean requestKeyFrame = false;
+        List<Viewer> dropped = null;
+
+        synchronized (this) {
+            gopCache.add(buffer, pts, config, keyFrame);
+
+            // Every audio packet can be decoded independently
+            boolean syncPoint = keyFrame || !isVideo();
+
+            for (int i = viewers.size() - 1; i >= 0; --i) {
+                Viewer viewer = viewers.get(i);
+                PacketSender sender = viewer.sender;
+
+                try {
+                    if (config) {
+                        if (sender.remainingCapacity() == 0) {
+                            // The cached config packet will be sent before the next sync point
+                            viewer.needsConfig = true;
+                            viewer.waitingSyncPoint = true;
+                            requestKeyFrame = true;
+                        } else {
+                            offer(sender, buffer, pts, true, false);
+                            viewer.needsConfig = false;
+                        }
+                        continue;
+                    }
+
+                    if (viewer.waitingSyncPoint && !syncPoint) {
+                        continue;
+                    }
+
+                    ByteBuffer cachedConfig = viewer.needsConfig ? gopCache.getConfig() : null;
+                    boolean sendConfig = cachedConfig != null;
+                    if (sender.remainingCapacity() < (sendConfig ? 2 : 1)) {
+                        // The queue may be full because the sender failed
+                        sender.checkError();
+                        if (!viewer.waitingSyncPoint) {
+                            Ln.v(name + ": viewer queue full, dropping packets until the next key frame");
+                            viewer.waitingSyncPoint = true;
+                            requestKeyFrame = true;
+                        }
+                        continue;
+                    }
+
+                    if (sendConfig) {
+                        offer(sender, cachedConfig, gopCache.getConfigPts(), true, false);
+                    }
+                    viewer.needsConfig = false;
+                    viewer.waitingSyncPoint = false;
+                    offer(sender, buffer, pts, false, keyFrame);
+                } catch (IOException e) {
+                    logViewerError(e);
+                    if (dropped == null) {
+                        dropped = new ArrayList<>();
+                    }
+                    dropped.add(viewers.remove(i));
+                }
+            }
+            if (dropped != null) {
+                allViewers.removeAll(dropped);
+            }
+        }
+
+        if (dropped != null) {
+            for (Viewer viewer : dropped) {
+                dropViewer(viewer);
+            }
+        }
+
+        if (requestKeyFrame && isVideo() && keyFrameRequester != null) {
+            keyFrameRequester.requestKeyFrame();
+        }
+    }
+
+    private static void offer(PacketSender sender, ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
+        int position = buffer.position();
+        try {
+            sender.offer(buffer, pts, config, keyFrame);
+        } finally {
+            buffer.position(position);
+        }
+    }
+
+    private void logViewerError(IOException e) {
+        if (!IO.isBrokenPipe(e)) {
+            Ln.w(name + ": viewer error: " + e.getMessage());
+        }
+        Ln.d(name + ": viewer disconnected");
+    }
+
+    /**
+     * Drop a viewer which is not in {@link #viewers} nor {@link #pendingViewers}.
+     */
+    private void releaseViewer(Viewer viewer) {
+        synchronized (this) {
+            allViewers.remove(viewer);
+        }
+        dropViewer(viewer);
+    }
+
+    /**
+     * Shut down the viewer socket, and close it asynchronously once its sender thread has terminated.
+     */
+    private void dropViewer(Viewer viewer) {
+        viewer.shutdown();
+        try {
+            cleanupExecutor.execute(() -> closeViewer(viewer));
+        } catch (RejectedExecutionException e) {
+            // Already joined
+            closeViewer(viewer);
+        }
+    }
+
+    private static void closeViewer(Viewer viewer) {
+        try {
+            viewer.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(LocalSocket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            viewers.clear();
+            pendingViewers.clear();
+            for (Viewer viewer : allViewers) {
+                viewer.shutdown();
+            }
+        }
+    }
+
+    public void join() throws InterruptedException {
+        List<Viewer> list;
+        synchronized (this) {
+            list = new ArrayList<>(allViewers);
+        }
+        for (Viewer viewer : list) {
+            viewer.close();
+        }
+
+        cleanupExecutor.shutdown();
+        cleanupExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,127 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Codec;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The output of an encoder: forward its packets to the registered {@link PacketSink}s, then to the client.
+ * <p>
+ * The client is written last, so that the other sinks receive every packet even if the client write fails. The sinks must be registered before
+ * the encoder is started.
+ */
+public final class StreamOutput implements PacketSink {
+
+    private final Codec codec;
+    private final List<PacketSink> sinks = new ArrayList<>();
+    private Streamer clientStreamer; // null if the stream is not sent to a client (record-only)
+    private PacketSink clientSink;
+
+    public StreamOutput(Codec codec) {
+        this.codec = codec;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public void addSink(PacketSink sink) {
+        sinks.add(sink);
+    }
+
+    /**
+     * Write the packets to the client socket.
+     */
+    public void setClient(Streamer streamer) {
+        clientStreamer = streamer;
+        clientSink = streamer;
+    }
+
+    /**
+     * Write the packets to the client socket, and keep streaming if the client disconnects.
+     */
+    public void setClient(ResumableSink sink) {
+        clientStreamer = sink.getStreamer();
+        clientSink = sink;
+    }
+
+    /**
+     * Add a listener to monitor the packet writes to the client socket (ignored if there is no client).
+     */
+    public void addWriteListener(Streamer.WriteListener writeListener) {
+        if (clientStreamer != null) {
+            clientStreamer.addWriteListener(writeListener);
+        }
+    }
+
+    private List<PacketSink> getAllSinks() {
+        if (clientSink == null) {
+            return sinks;
+        }
+        List<PacketSink> all = new ArrayList<>(sinks);
+        all.add(clientSink);
+        return all;
+    }
+
+    @Override
+    public void writeAudioHeader() throws IOException {
+        for (PacketSink sink : getAllSinks()) {
+            sink.writeAudioHeader();
+        }
+    }
+
+    @Override
+    public void writeVideoHeader(Size videoSize) throws IOException {
+        for (PacketSink sink : getAllSinks()) {
+            sink.writeVideoHeader(videoSize);
+        }
+    }
+
+    @Override
+    public void onVideoSizeChanged(Size videoSize) {
+        for (PacketSink sink : getAllSinks()) {
+            sink.onVideoSizeChanged(videoSize);
+        }
+    }
+
+    @Override
+    public void onOutputFormatChanged(MediaFormat format) {
+        for (PacketSink sink : getAllSinks()) {
+            sink.onOutputFormatChanged(format);
+        }
+    }
+
+    @Override
+    public void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        for (PacketSink sink : sinks) {
+            sink.writePacket(buffer, pts, config, keyFrame);
+            // Each sink receives the packet unaltered (for example, the client streamer strips the Opus config packet in place)
+            buffer.limit(limit).position(position);
+        }
+        if (clientSink != null) {
+            clientSink.writePacket(buffer, pts, config, keyFrame);
+        }
+    }
+
+    public void writePacket(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
+        long pts = bufferInfo.presentationTimeUs;
+        boolean config = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+        boolean keyFrame = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+        writePacket(codecBuffer, pts, config, keyFrame);
+    }
+
+    @Override
+    public void writeDisableStream(boolean error) throws IOException {
+        for (PacketSink sink : getAllSinks()) {
+            sink.writeDisableStream(error);
+        }
+    }
+}
@@ -5,25 +5,53 @@ import com.genymobile.scrcpy.util.Codec;
 import com.genymobile.scrcpy.util.IO;
 
 import android.media.MediaCodec;
+import android.media.MediaFormat;
 
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
-public final class Streamer {
+/**
+ * Write a stream to a socket, in the scrcpy protocol.
+ */
+public final class Streamer implements PacketSink {
+
+    public interface WriteListener {
+        /**
+         * Called after each packet is written.
+         *
+         * @param pts the packet presentation timestamp, in microseconds
+         * @param size the packet size (excluding the frame header)
+         * @param writeDurationNs the time spent writing the packet to the socket
+         */
+        void onPacketWritten(long pts, int size, long writeDurationNs);
+    }
+
+    public interface KeyFrameRequester {
+        void requestKeyFrame();
+    }
 
     private static final long PACKET_FLAG_CONFIG = 1L << 63;
     private static final long PACKET_FLAG_KEY_FRAME = 1L << 62;
 
-    private final FileDescriptor fd;
+    private FileDescriptor fd; // may only change on session resume
     private final Codec codec;
     private final boolean sendCodecMeta;
     private final boolean sendFrameMeta;
 
     private final ByteBuffer headerBuffer = ByteBuffer.allocate(12);
 
+    // Reused on every packet to write the header and the payload with a single writev() call
+    private final Object[] iovBuffers = {headerBuffer.array(), null};
+    private final int[] iovOffsets = new int[2];
+    private final int[] iovByteCounts = new int[2];
+
+    private final List<WriteListener> writeListeners = new ArrayList<>();
+
     public Streamer(FileDescriptor fd, Codec codec, boolean sendCodecMeta, boolean sendFrameMeta) {
         this.fd = fd;
         this.codec = codec;
@@ -35,6 +63,21 @@ public final class Streamer {
         return codec;
     }
 
+    /**
+     * Replace the socket (on session resume, by the {@link ResumableSink}).
+     */
+    void setFd(FileDescriptor fd) {
+        this.fd = fd;
+    }
+
+    /**
+     * Add a listener to monitor the packet writes (must be called before the first packet is written).
+     */
+    public void addWriteListener(WriteListener writeListener) {
+        writeListeners.add(writeListener);
+    }
+
+    @Override
     public void writeAudioHeader() throws IOException {
         if (sendCodecMeta) {
             ByteBuffer buffer = ByteBuffer.allocate(4);
@@ -44,6 +87,7 @@ public final class Streamer {
         }
     }
 
+    @Override
     public void writeVideoHeader(Size videoSize) throws IOException {
         if (sendCodecMeta) {
             ByteBuffer buffer = ByteBuffer.allocate(12);
@@ -55,6 +99,17 @@ public final class Streamer {
         }
     }
 
+    @Override
+    public void onVideoSizeChanged(Size videoSize) {
+        // The header is only written once per connection
+    }
+
+    @Override
+    public void onOutputFormatChanged(MediaFormat format) {
+        // The client configures its decoder from the config packets
+    }
+
+    @Override
     public void writeDisableStream(boolean error) throws IOException {
         // Writing a specific code as codec-id means that the device disables the stream
         //   code 0: it explicitly disables the stream (because it could not capture audio), scrcpy should continue mirroring video only
@@ -66,20 +121,24 @@ public final class Streamer {
         IO.writeFully(fd, code, 0, code.length);
     }
 
+    @Override
     public void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
         if (config) {
-            if (codec == AudioCodec.OPUS) {
-                fixOpusConfigPacket(buffer);
-            } else if (codec == AudioCodec.FLAC) {
-                fixFlacConfigPacket(buffer);
-            }
+            fixConfigPacket(buffer);
         }
 
-        if (sendFrameMeta) {
-            writeFrameMeta(fd, buffer.remaining(), pts, config, keyFrame);
+        if (writeListeners.isEmpty()) {
+            writePacketData(buffer, pts, config, keyFrame);
+            return;
         }
 
-        IO.writeFully(fd, buffer);
+        int size = buffer.remaining();
+        long start = System.nanoTime();
+        writePacketData(buffer, pts, config, keyFrame);
+        long writeDurationNs = System.nanoTime() - start;
+        for (WriteListener writeListener : writeListeners) {
+            writeListener.onPacketWritten(pts, size, writeDurationNs);
+        }
     }
 
     public void writePacket(ByteBuffer codecBuffer, MediaCodec.BufferInfo bufferInfo) throws IOException {
@@ -89,7 +148,48 @@ public final class Streamer {
         writePacket(codecBuffer, pts, config, keyFrame);
     }
 
-    private void writeFrameMeta(FileDescriptor fd, int packetSize, long pts, boolean config, boolean keyFrame) throws IOException {
+    private void fixConfigPacket(ByteBuffer buffer) throws IOException {
+        if (codec == AudioCodec.OPUS) {
+            fixOpusConfigPacket(buffer);
+        } else if (codec == AudioCodec.FLAC) {
+            fixFlacConfigPacket(buffer);
+        }
+    }
+
+    private void writePacketData(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) throws IOException {
+        if (sendFrameMeta) {
+            fillFrameMeta(buffer.remaining(), pts, config, keyFrame);
+            if (buffer.isDirect()) {
+                // Write the header and the packet at once, to avoid one syscall per packet
+                writeFrameMetaAndPacket(buffer);
+                return;
+            }
+
+            IO.writeFully(fd, headerBuffer);
+        }
+
+        IO.writeFully(fd, buffer);
+    }
+
+    private void writeFrameMetaAndPacket(ByteBuffer buffer) throws IOException {
+        iovBuffers[1] = buffer;
+        iovOffsets[0] = headerBuffer.position();
+        iovByteCounts[0] = headerBuffer.remaining();
+        iovOffsets[1] = buffer.position();
+        iovByteCounts[1] = buffer.remaining();
+        try {
+            IO.writevFully(fd, iovBuffers, iovOffsets, iovByteCounts);
+        } finally {
+            // Do not retain the codec buffer
+            iovBuffers[1] = null;
+        }
+
+        // Os.writev() does not update the buffer position, so do it manually
+        headerBuffer.position(headerBuffer.limit());
+        buffer.position(buffer.limit());
+    }
+
+    private void fillFrameMeta(int packetSize, long pts, boolean config, boolean keyFrame) {
         headerBuffer.clear();
 
         long ptsAndFlags;
@@ -105,7 +205,6 @@ public final class Streamer {
         headerBuffer.putLong(ptsAndFlags);
         headerBuffer.putInt(packetSize);
         headerBuffer.flip();
-        IO.writeFully(fd, headerBuffer);
     }
 
     private static void fixOpusConfigPacket(ByteBuffer buffer) throws IOException {
@@ -0,0 +1,186 @@
+package com.genymobile.scrcpy.device;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.IOException;
+
+/**
+ * Accept additional viewers, which receive the same video and audio streams as the main client (without control).
+ * <p>
+ * A viewer connects to the local abstract socket {@code <socket name>_viewers}, once per enabled stream (video first, then audio), like the
+ * main client in forward tunnel mode.
+ */
+public final class ViewerServer {
+
+    private final String socketName;
+    private final StreamBroadcaster videoBroadcaster;
+    private final StreamBroadcaster audioBroadcaster;
+    private final int maxViewers;
+    private final boolean sendDummyByte;
+    private final String deviceName; // null to not send the device meta
+
+    private LocalServerSocket serverSocket;
+    private Thread thread;
+    private volatile boolean stopped;
+
+    public ViewerServer(int scid, StreamBroadcaster videoBroadcaster, StreamBroadcaster audioBroadcaster, int maxViewers, boolean sendDummyByte,
+            String deviceName) {
+        assert videoBroadcaster != null || audioBroadcaster != null;
+        this.socketName = DesktopConnection.getSocketName(scid) + "_viewers";
+        this.videoBroadcaster = videoBroadcaster;
+        this.audioBroadcaster = audioBroadcaster;
+        this.maxViewers = maxViewers;
+        this.sendDummyByte = sendDummyByte;
+        this.deviceName = deviceName;
+    }
+
+    private int getViewerCount() {
+        StreamBroadcaster broadcaster = videoBroadcaster != null ? videoBroadcaster : audioBroadcaster;
+        return broadcaster.getViewerCount();
+    }
+
+    private void loop() throws IOException {
+        while (!stopped) {
+            try {
+                acceptViewer();
+            } catch (RuntimeException e) {
+                // A failing viewer must not prevent the next ones from connecting
+                Ln.e("Could not accept viewer", e);
+            }
+        }
+    }
+
+    private void acceptViewer() throws IOException {
+        LocalSocket videoSocket = null;
+        LocalSocket audioSocket = null;
+        try {
+            if (videoBroadcaster != null) {
+                videoSocket = serverSocket.accept();
+            }
+            if (audioBroadcaster != null) {
+                audioSocket = serverSocket.accept();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(videoSocket);
+            closeQuietly(audioSocket);
+            if (stopped) {
+                // The server socket has been shut down
+                return;
+            }
+            throw e;
+        }
+
+        if (stopped || getViewerCount() >= maxViewers) {
+            if (!stopped) {
+                Ln.w("Viewer rejected: too many viewers (" + maxViewers + ")");
+            }
+            closeQuietly(videoSocket);
+            closeQuietly(audioSocket);
+            return;
+        }
+
+        try {
+            LocalSocket firstSocket = videoSocket != null ? videoSocket : audioSocket;
+            if (sendDummyByte) {
+                // send one byte so the client may read() to detect a connection error
+                firstSocket.getOutputStream().write(0);
+            }
+            if (deviceName != null) {
+                DesktopConnection.writeDeviceMeta(firstSocket.getFileDescriptor(), deviceName);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Only this viewer is concerned
+            Ln.w("Could not accept viewer: " + e.getMessage());
+            closeQuietly(videoSocket);
+            closeQuietly(audioSocket);
+            return;
+        }
+
+        Ln.i("Viewer connected");
+        // From now on, the sockets are owned by the broadcasters
+        if (videoSocket != null) {
+            addViewer(videoBroadcaster, videoSocket);
+        }
+        if (audioSocket != null) {
+            addViewer(audioBroadcaster, audioSocket);
+        }
+    }
+
+    private static void addViewer(StreamBroadcaster broadcaster, LocalSocket socket) {
+        try {
+            broadcaster.addViewer(socket);
+        } catch (IOException e) {
+            Ln.w("Could not add viewer: " + e.getMessage());
+        } catch (RuntimeException e) {
+            Ln.e("Could not add viewer", e);
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(LocalSocket socket) {
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new LocalServerSocket(socketName);
+        thread = new Thread(() -> {
+            try {
+                loop();
+            } catch (IOException e) {
+                Ln.e("Viewer server error", e);
+            } finally {
+                Ln.d("Viewer server stopped");
+            }
+        }, "viewers");
+        thread.start();
+    }
+
+    public void stop() {
+        stopped = true;
+        if (serverSocket != null) {
+            try {
+                // Closing a LocalServerSocket does not unblock accept(), but shutting down its file descriptor does
+                Os.shutdown(serverSocket.getFileDescriptor(), OsConstants.SHUT_RDWR);
+            } catch (ErrnoException e) {
+                // ignore
+            }
+        }
+        if (videoBroadcaster != null) {
+            videoBroadcaster.stop();
+        }
+        if (audioBroadcaster != null) {
+            audioBroadcaster.stop();
+        }
+    }
+
+    public void join() throws InterruptedException {
+        if (thread != null) {
+            thread.join();
+        }
+        if (videoBroadcaster != null) {
+            videoBroadcaster.join();
+        }
+        if (audioBroadcaster != null) {
+            audioBroadcaster.join();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.genymobile.scrcpy.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations, with power-of-two buckets in microseconds.
+ * <p>
+ * Recording does not allocate and does not lock, so it may be called from any thread, on the hot path.
+ */
+public final class LatencyHistogram {
+
+    // Bucket i contains the durations in [2^(i-1), 2^i) µs (bucket 0 contains 0 µs); the last one also contains all the larger durations
+    static final int BUCKET_COUNT = 24; // up to ~8s
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    static int getBucketIndex(long us) {
+        int index = 64 - Long.numberOfLeadingZeros(us);
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    static long getBucketUpperBound(int index) {
+        // Inclusive upper bound
+        return index == 0 ? 0 : (1L << index) - 1;
+    }
+
+    public void record(long durationNs) {
+        long us = Math.max(0, durationNs / 1000);
+        buckets.incrementAndGet(getBucketIndex(us));
+
+        long current;
+        do {
+            current = max.get();
+        } while (us > current && !max.compareAndSet(current, us));
+    }
+
+    /**
+     * Summarize the durations recorded since the last call, and reset the histogram.
+     */
+    public LatencySummary snapshotAndReset() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            counts[i] = buckets.getAndSet(i, 0);
+            total += counts[i];
+        }
+        long maxUs = max.getAndSet(0);
+
+        if (total == 0) {
+            return new LatencySummary(0, 0, 0, 0);
+        }
+
+        long p50 = Math.min(percentile(counts, total, 50), maxUs);
+        long p99 = Math.min(percentile(counts, total, 99), maxUs);
+        return new LatencySummary(total, p50, p99, maxUs);
+    }
+
+    private static long percentile(long[] counts, long total, int percent) {
+        // Rank of the requested value (1-based)
+        long rank = (total * percent + 99) / 100;
+        long cumulated = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            cumulated += counts[i];
+            if (cumulated >= rank) {
+                return getBucketUpperBound(i);
+            }
+        }
+        return getBucketUpperBound(counts.length - 1);
+    }
+}
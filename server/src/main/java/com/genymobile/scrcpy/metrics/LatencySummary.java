@@ -0,0 +1,37 @@
+package com.genymobile.scrcpy.metrics;
+
+/**
+ * Summary of the durations recorded by a {@link LatencyHistogram} over an interval.
+ * <p>
+ * The percentiles are approximated by the upper bound of their histogram bucket.
+ */
+public final class LatencySummary {
+
+    private final long count;
+    private final long p50Us;
+    private final long p99Us;
+    private final long maxUs;
+
+    public LatencySummary(long count, long p50Us, long p99Us, long maxUs) {
+        this.count = count;
+        this.p50Us = p50Us;
+        this.p99Us = p99Us;
+        this.maxUs = maxUs;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getP50Us() {
+        return p50Us;
+    }
+
+    public long getP99Us() {
+        return p99Us;
+    }
+
+    public long getMaxUs() {
+        return maxUs;
+    }
+}
@@ -0,0 +1,103 @@
+package com.genymobile.scrcpy.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Session-wide performance counters and latency histograms.
+ * <p>
+ * The set of metrics is fixed, so that recording never allocates: it only updates atomic values. If metrics are not enabled, recording does
+ * nothing.
+ */
+public final class Metrics {
+
+    // Counters, accumulated over the interval (keep in sync with the client)
+    public static final int COUNTER_VIDEO_FRAMES = 0;
+    public static final int COUNTER_VIDEO_BYTES = 1;
+    public static final int COUNTER_AUDIO_BYTES = 2;
+    public static final int COUNTER_DEVICE_MESSAGES_DROPPED = 3;
+    // Gauges, maximum value observed over the interval
+    public static final int COUNTER_AUDIO_INPUT_QUEUE_MAX = 4;
+    public static final int COUNTER_AUDIO_OUTPUT_QUEUE_MAX = 5;
+    static final int COUNTER_COUNT = 6;
+
+    public static final int LATENCY_VIDEO_DEQUEUE_TO_WRITE = 0;
+    public static final int LATENCY_INJECTION = 1;
+    // From a capture reset request to the first encoded frame of the new session
+    public static final int LATENCY_VIDEO_RESET_TO_FIRST_FRAME = 2;
+    static final int LATENCY_COUNT = 3;
+
+    private static final AtomicLongArray COUNTERS = new AtomicLongArray(COUNTER_COUNT);
+    private static final LatencyHistogram[] LATENCIES = new LatencyHistogram[LATENCY_COUNT];
+
+    static {
+        for (int i = 0; i < LATENCY_COUNT; ++i) {
+            LATENCIES[i] = new LatencyHistogram();
+        }
+    }
+
+    private static boolean enabled;
+
+    private Metrics() {
+        // not instantiable
+    }
+
+    /**
+     * Enable metrics recording.
+     * <p>
+     * Must be called before starting any new thread.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void add(int counter, long value) {
+        if (enabled) {
+            COUNTERS.addAndGet(counter, value);
+        }
+    }
+
+    public static void increment(int counter) {
+        add(counter, 1);
+    }
+
+    /**
+     * Update a gauge with a new observed value, keeping the maximum.
+     */
+    public static void max(int counter, long value) {
+        if (enabled) {
+            long current;
+            do {
+                current = COUNTERS.get(counter);
+            } while (value > current && !COUNTERS.compareAndSet(counter, current, value));
+        }
+    }
+
+    public static void recordLatency(int latency, long durationNs) {
+        if (enabled) {
+            LATENCIES[latency].record(durationNs);
+        }
+    }
+
+    /**
+     * Collect the values recorded since the previous snapshot, and reset them.
+     *
+     * @param intervalMs the duration covered by the snapshot
+     */
+    static MetricsSnapshot snapshotAndReset(int intervalMs) {
+        long[] counters = new long[COUNTER_COUNT];
+        for (int i = 0; i < COUNTER_COUNT; ++i) {
+            counters[i] = COUNTERS.getAndSet(i, 0);
+        }
+
+        LatencySummary[] latencies = new LatencySummary[LATENCY_COUNT];
+        for (int i = 0; i < LATENCY_COUNT; ++i) {
+            latencies[i] = LATENCIES[i].snapshotAndReset();
+        }
+
+        return new MetricsSnapshot(intervalMs, counters, latencies);
+    }
+}
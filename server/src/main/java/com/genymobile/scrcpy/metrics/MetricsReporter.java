@@ -0,0 +1,63 @@
+package com.genymobile.scrcpy.metrics;
+
+import com.genymobile.scrcpy.control.DeviceMessage;
+import com.genymobile.scrcpy.control.DeviceMessageSender;
+import com.genymobile.scrcpy.util.Ln;
+
+/**
+ * Periodically send a snapshot of the {@link Metrics} to the client.
+ */
+public final class MetricsReporter {
+
+    private final DeviceMessageSender sender;
+    private final int intervalMs;
+
+    private Thread thread;
+
+    public MetricsReporter(DeviceMessageSender sender, int intervalMs) {
+        assert intervalMs > 0;
+        this.sender = sender;
+        this.intervalMs = intervalMs;
+    }
+
+    private void loop() throws InterruptedException {
+        // Discard the values recorded before the first interval
+        long lastSnapshot = System.nanoTime();
+        Metrics.snapshotAndReset(0);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            Thread.sleep(intervalMs);
+            long now = System.nanoTime();
+            int elapsedMs = (int) ((now - lastSnapshot) / 1_000_000);
+            lastSnapshot = now;
+
+            MetricsSnapshot snapshot = Metrics.snapshotAndReset(elapsedMs);
+            sender.send(DeviceMessage.createMetrics(snapshot));
+        }
+    }
+
+    public void start() {
+        thread = new Thread(() -> {
+            try {
+                loop();
+            } catch (InterruptedException e) {
+                // this is expected on close
+            } finally {
+                Ln.d("Metrics reporter stopped");
+            }
+        }, "metrics");
+        thread.start();
+    }
+
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void join() throws InterruptedException {
+        if (thread != null) {
+            thread.join();
+        }
+    }
+}
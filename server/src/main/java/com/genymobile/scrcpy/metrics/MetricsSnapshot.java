@@ -0,0 +1,29 @@
+package com.genymobile.scrcpy.metrics;
+
+/**
+ * Values of all the {@link Metrics} over an interval.
+ */
+public final class MetricsSnapshot {
+
+    private final int intervalMs;
+    private final long[] counters;
+    private final LatencySummary[] latencies;
+
+    public MetricsSnapshot(int intervalMs, long[] counters, LatencySummary[] latencies) {
+        this.intervalMs = intervalMs;
+        this.counters = counters;
+        this.latencies = latencies;
+    }
+
+    public int getIntervalMs() {
+        return intervalMs;
+    }
+
+    public long[] getCounters() {
+        return counters;
+    }
+
+    public LatencySummary[] getLatencies() {
+        return latencies;
+    }
+}
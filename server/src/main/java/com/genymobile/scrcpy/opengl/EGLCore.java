@@ -0,0 +1,107 @@
+package com.genymobile.scrcpy.opengl;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.view.Surface;
+
+/**
+ * An EGL display and an OpenGL ES 2 context, to render to window surfaces (typically encoder input surfaces).
+ * <p>
+ * All the methods must be called from the thread which renders.
+ */
+final class EGLCore {
+
+    private EGLDisplay eglDisplay;
+    private EGLConfig eglConfig;
+    private EGLContext eglContext;
+
+    EGLCore() throws OpenGLException {
+        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
+            throw new OpenGLException("Unable to get EGL14 display");
+        }
+
+        int[] version = new int[2];
+        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
+            throw new OpenGLException("Unable to initialize EGL14");
+        }
+
+        // @formatter:off
+        int[] attribList = {
+                EGL14.EGL_RED_SIZE, 8,
+                EGL14.EGL_GREEN_SIZE, 8,
+                EGL14.EGL_BLUE_SIZE, 8,
+                EGL14.EGL_ALPHA_SIZE, 8,
+                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+                EGL14.EGL_NONE
+        };
+
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] numConfigs = new int[1];
+        EGL14.eglChooseConfig(eglDisplay, attribList, 0, configs, 0, configs.length, numConfigs, 0);
+        if (numConfigs[0] <= 0) {
+            EGL14.eglTerminate(eglDisplay);
+            throw new OpenGLException("Unable to find ES2 EGL config");
+        }
+        eglConfig = configs[0];
+
+        // @formatter:off
+        int[] contextAttribList = {
+                EGL14.EGL_CONTEXT_CLIENT_VERSION, 2,
+                EGL14.EGL_NONE
+        };
+        eglContext = EGL14.eglCreateContext(eglDisplay, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttribList, 0);
+        if (eglContext == null) {
+            EGL14.eglTerminate(eglDisplay);
+            throw new OpenGLException("Failed to create EGL context");
+        }
+    }
+
+    EGLSurface createWindowSurface(Surface surface) throws OpenGLException {
+        int[] surfaceAttribList = {
+                EGL14.EGL_NONE
+        };
+        EGLSurface eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, surface, surfaceAttribList, 0);
+        if (eglSurface == null) {
+            throw new OpenGLException("Failed to create EGL window surface");
+        }
+        return eglSurface;
+    }
+
+    /**
+     * Make the context current, to draw to (and read from) {@code eglSurface}.
+     *
+     * @return {@code true} on success
+     */
+    boolean makeCurrent(EGLSurface eglSurface) {
+        return EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext);
+    }
+
+    /**
+     * Submit the frame drawn to {@code eglSurface}, with its presentation timestamp.
+     */
+    void swapBuffers(EGLSurface eglSurface, long timestampNs) {
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, timestampNs);
+        EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+    }
+
+    void destroySurface(EGLSurface eglSurface) {
+        EGL14.eglDestroySurface(eglDisplay, eglSurface);
+    }
+
+    /**
+     * Release the context and the display (the surfaces must have been destroyed).
+     */
+    void release() {
+        EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+        EGL14.eglDestroyContext(eglDisplay, eglContext);
+        EGL14.eglTerminate(eglDisplay);
+        eglDisplay = EGL14.EGL_NO_DISPLAY;
+        eglConfig = null;
+        eglContext = EGL14.EGL_NO_CONTEXT;
+    }
+}
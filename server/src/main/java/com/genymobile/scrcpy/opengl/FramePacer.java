@@ -0,0 +1,101 @@
+package com.genymobile.scrcpy.opengl;
+
+/**
+ * Select the frames to render to respect a max frame rate, based on their timestamps.
+ * <p>
+ * The frames are paced on a regular grid of deadlines, not relative to the last rendered frame. Otherwise, with input frames produced at the
+ * display refresh rate (every 8.33 ms at 120 Hz), a frame arriving just before the interval would always be skipped, and the actual frame rate
+ * would be lower than requested (24 fps instead of 30 fps).
+ */
+public final class FramePacer {
+
+    // Accept the frames slightly before their deadline, to absorb the timestamps jitter
+    private static final int TOLERANCE_DIVISOR = 8;
+
+    private volatile long intervalNs; // 0 for no limit
+
+    // Accessed only from the rendering thread
+    private long currentIntervalNs;
+    private boolean started;
+    private long nextDeadlineNs;
+
+    /**
+     * Set the max frame rate (may be called from any thread).
+     *
+     * @param maxFps the max frame rate, 0 for no limit
+     */
+    public void setMaxFps(float maxFps) {
+        intervalNs = maxFps > 0 ? (long) (1_000_000_000 / maxFps) : 0;
+    }
+
+    public long getIntervalNs() {
+        return intervalNs;
+    }
+
+    /**
+     * Indicate whether a frame must be rendered, in which case it is considered rendered.
+     *
+     * @param timestampNs the frame timestamp
+     * @return {@code true} if the frame must be rendered, {@code false} if it must be skipped
+     */
+    public boolean accept(long timestampNs) {
+        long interval = updateInterval();
+        if (interval == 0) {
+            return true;
+        }
+
+        if (started && timestampNs < nextDeadlineNs - interval / TOLERANCE_DIVISOR) {
+            return false;
+        }
+
+        advance(timestampNs, interval);
+        return true;
+    }
+
+    /**
+     * Return the delay between a frame (which has not been accepted) and the time it may be rendered.
+     *
+     * @param timestampNs the frame timestamp
+     * @return the delay, in nanoseconds
+     */
+    public long getDelayNs(long timestampNs) {
+        long interval = updateInterval();
+        if (!started || interval == 0) {
+            return 0;
+        }
+        return Math.max(0, nextDeadlineNs - interval / TOLERANCE_DIVISOR - timestampNs);
+    }
+
+    /**
+     * Consider a frame rendered at its deadline, even if it has not been accepted (typically because no more recent frame has been received
+     * meanwhile).
+     *
+     * @param timestampNs the frame timestamp
+     */
+    public void forceAccept(long timestampNs) {
+        long interval = updateInterval();
+        if (interval != 0) {
+            advance(started ? Math.max(timestampNs, nextDeadlineNs) : timestampNs, interval);
+        }
+    }
+
+    private long updateInterval() {
+        long interval = intervalNs;
+        if (interval != currentIntervalNs) {
+            // The max fps changed, restart from the next frame
+            currentIntervalNs = interval;
+            started = false;
+        }
+        return interval;
+    }
+
+    private void advance(long timestampNs, long interval) {
+        if (!started || timestampNs - nextDeadlineNs >= interval) {
+            // First frame, or no frame for a while: restart the grid from this frame
+            nextDeadlineNs = timestampNs + interval;
+            started = true;
+        } else {
+            nextDeadlineNs += interval;
+        }
+    }
+}
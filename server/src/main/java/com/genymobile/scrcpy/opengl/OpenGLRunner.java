@@ -3,38 +3,82 @@ package com.genymobile.scrcpy.opengl;
 import com.genymobile.scrcpy.device.Size;
 
 import android.graphics.SurfaceTexture;
-import android.opengl.EGL14;
-import android.opengl.EGLConfig;
-import android.opengl.EGLContext;
-import android.opengl.EGLDisplay;
-import android.opengl.EGLExt;
 import android.opengl.EGLSurface;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 import android.os.Handler;
 import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.view.Surface;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Semaphore;
 
 public final class OpenGLRunner {
 
+    public interface IdleListener {
+        /**
+         * Called from the OpenGL thread when no new frame has been received for the idle timeout, or when a new frame is received after that.
+         */
+        void onIdleChanged(boolean idle);
+    }
+
+    private static final class SecondaryOutput {
+        private final Surface surface;
+        private final Size size;
+        private final FramePacer pacer = new FramePacer();
+        private EGLSurface eglSurface;
+
+        private SecondaryOutput(Surface surface, Size size) {
+            this.surface = surface;
+            this.size = size;
+        }
+    }
+
     private static HandlerThread handlerThread;
     private static Handler handler;
     private static boolean quit;
 
-    private EGLDisplay eglDisplay;
-    private EGLContext eglContext;
+    private EGLCore egl;
     private EGLSurface eglSurface;
 
-    private final OpenGLFilter filter;
+    private OpenGLFilter filter;
     private final float[] overrideTransformMatrix;
 
     private SurfaceTexture surfaceTexture;
     private Surface inputSurface;
     private int textureId;
 
+    private Size inputSize;
+    private Size outputSize;
     private boolean stopped;
+    private volatile boolean paused;
+
+    private final FramePacer pacer = new FramePacer();
+
+    private final List<SecondaryOutput> secondaryOutputs = new ArrayList<>();
+    private volatile boolean mainOutputEnabled = true;
+
+    // Repeat the last frame while the input is active (0 to disable)
+    private long repeatDelayMs;
+    private long idleTimeoutMs;
+    private long keepaliveIntervalMs;
+    private IdleListener idleListener;
+    private boolean idle;
+    private long lastFrameTime; // uptime in ms
+
+    private final Runnable tickRunnable = this::tick;
+
+    // The frame latched in the texture but not rendered yet (to respect the max fps)
+    private boolean framePending;
+    private float[] frameMatrix;
+    private long frameTimestampNs;
+
+    // The last rendered frame
+    private float[] lastMatrix;
+    private long lastTimestampNs;
+    private long lastRenderTimeNs; // System.nanoTime()
 
     public OpenGLRunner(OpenGLFilter filter, float[] overrideTransformMatrix) {
         this.filter = filter;
@@ -45,6 +89,57 @@ public final class OpenGLRunner {
         this(filter, null);
     }
 
+    /**
+     * Render the last frame again every {@code repeatDelayMs} (like {@code MediaFormat.KEY_REPEAT_PREVIOUS_FRAME_AFTER}), but only until no new
+     * frame has been received for {@code idleTimeoutMs} (if not 0). Once idle, the last frame is only rendered every {@code keepaliveIntervalMs}
+     * (if not 0).
+     * <p>
+     * Must be called before {@link #start(Size, Size, Surface)}.
+     */
+    public void setFrameRepeat(long repeatDelayMs, long idleTimeoutMs, long keepaliveIntervalMs, IdleListener idleListener) {
+        assert repeatDelayMs > 0 && idleTimeoutMs >= 0 && keepaliveIntervalMs >= 0;
+        assert idleTimeoutMs == 0 || idleListener != null;
+        this.repeatDelayMs = repeatDelayMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.keepaliveIntervalMs = keepaliveIntervalMs;
+        this.idleListener = idleListener;
+    }
+
+    /**
+     * Limit the rate of the rendered frames (may be called from any thread).
+     * <p>
+     * The surplus frames are consumed without being rendered (so without any cost for the GPU and the encoder), but the last one is always
+     * rendered (possibly delayed).
+     *
+     * @param maxFps the max frame rate, 0 for no limit
+     */
+    public void setMaxFps(float maxFps) {
+        pacer.setMaxFps(maxFps);
+    }
+
+    /**
+     * Also render the frames to another surface, at another size, limited to {@code maxFps} (0 for no limit).
+     * <p>
+     * The frames are never delayed for this output: a frame rejected by its max fps is just not rendered to it (the last frame is eventually
+     * rendered if the frames are repeated, see {@link #setFrameRepeat(long, long, long, IdleListener)}).
+     * <p>
+     * Must be called before {@link #start(Size, Size, Surface)}.
+     */
+    public void addSecondaryOutput(Surface surface, Size size, float maxFps) {
+        SecondaryOutput output = new SecondaryOutput(surface, size);
+        output.pacer.setMaxFps(maxFps);
+        secondaryOutputs.add(output);
+    }
+
+    /**
+     * Enable or disable the rendering to the main output surface (may be called from any thread).
+     * <p>
+     * The frames are still rendered to the secondary outputs.
+     */
+    public void setMainOutputEnabled(boolean enabled) {
+        mainOutputEnabled = enabled;
+    }
+
     public static synchronized void initOnce() {
         if (handlerThread == null) {
             if (quit) {
@@ -115,62 +210,85 @@ public final class OpenGLRunner {
         return inputSurface;
     }
 
-    private void run(Size inputSize, Size outputSize, Surface outputSurface) throws OpenGLException {
-        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
-        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
-            throw new OpenGLException("Unable to get EGL14 display");
-        }
+    /**
+     * Stop rendering (may be called from any thread) until {@link #restart(Size, Size, OpenGLFilter)}.
+     * <p>
+     * The input frames are still consumed, so that the producer is never blocked.
+     */
+    public void pause() {
+        paused = true;
+    }
 
-        int[] version = new int[2];
-        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
-            throw new OpenGLException("Unable to initialize EGL14");
-        }
+    /**
+     * Apply a new configuration without recreating the EGL context and the surfaces, and resume the rendering.
+     * <p>
+     * The output surface passed to {@link #start(Size, Size, Surface)} must still be valid (typically an encoder persistent input surface,
+     * reconfigured for the new output size). The input surface does not change.
+     */
+    public void restart(Size newInputSize, Size newOutputSize, OpenGLFilter newFilter) throws OpenGLException {
+        final Semaphore sem = new Semaphore(0);
+        Throwable[] throwableRef = new Throwable[1];
 
-        // @formatter:off
-        int[] attribList = {
-                EGL14.EGL_RED_SIZE, 8,
-                EGL14.EGL_GREEN_SIZE, 8,
-                EGL14.EGL_BLUE_SIZE, 8,
-                EGL14.EGL_ALPHA_SIZE, 8,
-                EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
-                EGL14.EGL_NONE
-        };
-
-        EGLConfig[] configs = new EGLConfig[1];
-        int[] numConfigs = new int[1];
-        EGL14.eglChooseConfig(eglDisplay, attribList, 0, configs, 0, configs.length, numConfigs, 0);
-        if (numConfigs[0] <= 0) {
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Unable to find ES2 EGL config");
-        }
-        EGLConfig eglConfig = configs[0];
-
-        // @formatter:off
-        int[] contextAttribList = {
-                EGL14.EGL_CONTEXT_CLIENT_VERSION, 2,
-                EGL14.EGL_NONE
-        };
-        eglContext = EGL14.eglCreateContext(eglDisplay, eglConfig, EGL14.EGL_NO_CONTEXT, contextAttribList, 0);
-        if (eglContext == null) {
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to create EGL context");
+        handler.post(() -> {
+            try {
+                filter.release();
+                filter = newFilter;
+                newFilter.init();
+
+                boolean sameInputSize = newInputSize.equals(inputSize);
+                if (!sameInputSize) {
+                    surfaceTexture.setDefaultBufferSize(newInputSize.getWidth(), newInputSize.getHeight());
+                    inputSize = newInputSize;
+                }
+                outputSize = newOutputSize;
+                paused = false;
+
+                if (sameInputSize && frameMatrix != null) {
+                    // The texture still contains the last input frame, which is valid for the new configuration: render it, so that the new
+                    // session starts even if the input does not change
+                    renderPendingFrame();
+                    schedule();
+                } else {
+                    // The next input frame will be rendered as soon as it is received
+                    framePending = false;
+                }
+            } catch (Throwable throwable) {
+                throwableRef[0] = throwable;
+            } finally {
+                sem.release();
+            }
+        });
+
+        try {
+            sem.acquire();
+        } catch (InterruptedException e) {
+            // Behave as if this method call was synchronous
+            Thread.currentThread().interrupt();
         }
 
-        int[] surfaceAttribList = {
-                EGL14.EGL_NONE
-        };
-        eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, eglConfig, outputSurface, surfaceAttribList, 0);
-        if (eglSurface == null) {
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to create EGL window surface");
+        Throwable throwable = throwableRef[0];
+        if (throwable != null) {
+            if (throwable instanceof OpenGLException) {
+                throw (OpenGLException) throwable;
+            }
+            throw new OpenGLException("Asynchronous OpenGL runner restart failed", throwable);
         }
+    }
 
-        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
-            EGL14.eglDestroySurface(eglDisplay, eglSurface);
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            throw new OpenGLException("Failed to make EGL context current");
+    private void run(Size inputSize, Size outputSize, Surface outputSurface) throws OpenGLException {
+        egl = new EGLCore();
+        try {
+            eglSurface = egl.createWindowSurface(outputSurface);
+            for (SecondaryOutput output : secondaryOutputs) {
+                output.eglSurface = egl.createWindowSurface(output.surface);
+            }
+            if (!egl.makeCurrent(eglSurface)) {
+                throw new OpenGLException("Failed to make EGL context current");
+            }
+        } catch (OpenGLException e) {
+            destroySurfaces();
+            egl.release();
+            throw e;
         }
 
         int[] textures = new int[1];
@@ -193,34 +311,139 @@ public final class OpenGLRunner {
 
         filter.init();
 
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
         surfaceTexture.setOnFrameAvailableListener(surfaceTexture -> {
             if (stopped) {
                 // Make sure to never render after resources have been released
                 return;
             }
 
-            render(outputSize);
+            onFrameAvailable();
         }, handler);
     }
 
-    private void render(Size outputSize) {
-        GLES20.glViewport(0, 0, outputSize.getWidth(), outputSize.getHeight());
-        GLUtils.checkGlError();
-
+    private void onFrameAvailable() {
+        // Always consume the new frame, even if it is not rendered
         surfaceTexture.updateTexImage();
 
-        float[] matrix;
         if (overrideTransformMatrix != null) {
-            matrix = overrideTransformMatrix;
+            frameMatrix = overrideTransformMatrix;
+        } else {
+            frameMatrix = new float[16];
+            surfaceTexture.getTransformMatrix(frameMatrix);
+        }
+        frameTimestampNs = surfaceTexture.getTimestamp();
+        framePending = true;
+
+        if (repeatDelayMs > 0) {
+            lastFrameTime = SystemClock.uptimeMillis();
+            if (idle) {
+                idle = false;
+                idleListener.onIdleChanged(false);
+            }
+        }
+
+        if (pacer.accept(frameTimestampNs)) {
+            renderPendingFrame();
+        }
+
+        schedule();
+    }
+
+    private void schedule() {
+        handler.removeCallbacks(tickRunnable);
+
+        long nextRenderTimeNs;
+        if (framePending) {
+            // Render the skipped frame at its deadline if no more recent frame is received meanwhile (the frame has just been received)
+            nextRenderTimeNs = System.nanoTime() + pacer.getDelayNs(frameTimestampNs);
+        } else if (repeatDelayMs > 0 && (!idle || keepaliveIntervalMs > 0)) {
+            long repeatDelayNs = (idle ? keepaliveIntervalMs : repeatDelayMs) * 1_000_000;
+            nextRenderTimeNs = lastRenderTimeNs + Math.max(repeatDelayNs, pacer.getIntervalNs());
+        } else {
+            // Nothing to render until the next frame
+            return;
+        }
+
+        long delayMs = (nextRenderTimeNs - System.nanoTime() + 999_999) / 1_000_000;
+        handler.postDelayed(tickRunnable, Math.max(0, delayMs));
+    }
+
+    private void tick() {
+        if (stopped) {
+            return;
+        }
+
+        if (framePending) {
+            pacer.forceAccept(frameTimestampNs);
+            renderPendingFrame();
+        } else if (!idle && idleTimeoutMs > 0 && SystemClock.uptimeMillis() - lastFrameTime >= idleTimeoutMs) {
+            // Do not repeat the frame anymore (except for keepalive)
+            idle = true;
+            idleListener.onIdleChanged(true);
         } else {
-            matrix = new float[16];
-            surfaceTexture.getTransformMatrix(matrix);
+            // The texture still contains the last rendered frame
+            draw(lastMatrix, lastTimestampNs + System.nanoTime() - lastRenderTimeNs);
         }
 
+        schedule();
+    }
+
+    private void renderPendingFrame() {
+        framePending = false;
+        draw(frameMatrix, frameTimestampNs);
+    }
+
+    private void draw(float[] matrix, long timestampNs) {
+        if (paused) {
+            return;
+        }
+
+        if (timestampNs <= lastTimestampNs) {
+            // A repeated frame may have been rendered with a later timestamp, but the encoder requires increasing timestamps
+            timestampNs = lastTimestampNs + 1000;
+        }
+
+        if (mainOutputEnabled) {
+            drawToSurface(eglSurface, outputSize, matrix, timestampNs);
+        }
+        for (SecondaryOutput output : secondaryOutputs) {
+            if (output.pacer.accept(timestampNs)) {
+                drawToSurface(output.eglSurface, output.size, matrix, timestampNs);
+            }
+        }
+
+        lastMatrix = matrix;
+        lastTimestampNs = timestampNs;
+        lastRenderTimeNs = System.nanoTime();
+    }
+
+    private void drawToSurface(EGLSurface surface, Size size, float[] matrix, long timestampNs) {
+        if (!secondaryOutputs.isEmpty()) {
+            // All the surfaces share the same context (and texture)
+            egl.makeCurrent(surface);
+        }
+
+        GLES20.glViewport(0, 0, size.getWidth(), size.getHeight());
+        GLUtils.checkGlError();
+
         filter.draw(textureId, matrix);
 
-        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, surfaceTexture.getTimestamp());
-        EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+        egl.swapBuffers(surface, timestampNs);
+    }
+
+    private void destroySurfaces() {
+        if (eglSurface != null) {
+            egl.destroySurface(eglSurface);
+            eglSurface = null;
+        }
+        for (SecondaryOutput output : secondaryOutputs) {
+            if (output.eglSurface != null) {
+                egl.destroySurface(output.eglSurface);
+                output.eglSurface = null;
+            }
+        }
     }
 
     public void stopAndRelease() {
@@ -229,6 +452,7 @@ public final class OpenGLRunner {
         handler.post(() -> {
             stopped = true;
             surfaceTexture.setOnFrameAvailableListener(null, handler);
+            handler.removeCallbacks(tickRunnable);
 
             filter.release();
 
@@ -236,12 +460,8 @@ public final class OpenGLRunner {
             GLES20.glDeleteTextures(1, textures, 0);
             GLUtils.checkGlError();
 
-            EGL14.eglDestroySurface(eglDisplay, eglSurface);
-            EGL14.eglDestroyContext(eglDisplay, eglContext);
-            EGL14.eglTerminate(eglDisplay);
-            eglDisplay = EGL14.EGL_NO_DISPLAY;
-            eglContext = EGL14.EGL_NO_CONTEXT;
-            eglSurface = EGL14.EGL_NO_SURFACE;
+            destroySurfaces();
+            egl.release();
             surfaceTexture.release();
             inputSurface.release();
 
@@ -0,0 +1,80 @@
+package com.genymobile.scrcpy.opengl;
+
+import com.genymobile.scrcpy.device.Size;
+
+import android.opengl.EGLSurface;
+import android.opengl.GLES20;
+import android.view.Surface;
+
+/**
+ * Render a synthetic moving pattern to a surface, from the calling thread (typically to benchmark an encoder).
+ * <p>
+ * The frames are drawn with scissored clears only (no shader), so that the rendering cost is negligible compared to the encoding.
+ */
+public final class SyntheticFrameRenderer {
+
+    private static final int GRID_SIZE = 8;
+
+    private final Size size;
+
+    private final EGLCore egl;
+    private EGLSurface eglSurface;
+
+    public SyntheticFrameRenderer(Surface surface, Size size) throws OpenGLException {
+        this.size = size;
+
+        egl = new EGLCore();
+        try {
+            eglSurface = egl.createWindowSurface(surface);
+            if (!egl.makeCurrent(eglSurface)) {
+                egl.destroySurface(eglSurface);
+                throw new OpenGLException("Failed to make EGL context current");
+            }
+        } catch (OpenGLException e) {
+            egl.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Render the frame {@code index} of the sequence.
+     * <p>
+     * This may block if the consumer of the surface (the encoder) is not fast enough.
+     *
+     * @param index the frame index, which determines the content
+     * @param timestampNs the presentation timestamp of the frame
+     */
+    public void render(int index, long timestampNs) {
+        int width = size.getWidth();
+        int height = size.getHeight();
+
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glDisable(GLES20.GL_SCISSOR_TEST);
+        GLES20.glClearColor(0.1f, 0.1f, 0.1f, 1);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+
+        // A grid of cells whose colors change over time, scrolling horizontally, so that both the intra and inter prediction are exercised
+        GLES20.glEnable(GLES20.GL_SCISSOR_TEST);
+        int cellWidth = width / GRID_SIZE;
+        int cellHeight = height / GRID_SIZE;
+        int offset = (index * 4) % Math.max(1, cellWidth);
+        for (int row = 0; row < GRID_SIZE; ++row) {
+            for (int col = 0; col < GRID_SIZE; ++col) {
+                int seed = row * 31 + col * 17 + index;
+                GLES20.glScissor(col * cellWidth + offset, row * cellHeight, cellWidth / 2, cellHeight / 2);
+                GLES20.glClearColor((seed % 7) / 7f, (seed % 5) / 5f, (seed % 3) / 3f, 1);
+                GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+            }
+        }
+        GLUtils.checkGlError();
+
+        egl.swapBuffers(eglSurface, timestampNs);
+    }
+
+    public void release() {
+        // The surface is actually destroyed once it is no longer current
+        egl.destroySurface(eglSurface);
+        eglSurface = null;
+        egl.release();
+    }
+}
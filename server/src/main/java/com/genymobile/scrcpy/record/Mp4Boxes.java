@@ -0,0 +1,75 @@
+package com.genymobile.scrcpy.record;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Minimal scanner of the top-level boxes of an MP4 file.
+ * <p>
+ * It is used to find the end of the content of a pre-allocated file, which is followed by zeros (read as a box of size 0).
+ */
+public final class Mp4Boxes {
+
+    private static final int TYPE_MOOV = 0x6d6f6f76; // "moov"
+
+    public static final class Layout {
+        private final long end;
+        private final boolean complete;
+
+        private Layout(long end, boolean complete) {
+            this.end = end;
+            this.complete = complete;
+        }
+
+        /**
+         * Return the offset following the last valid top-level box.
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /**
+         * Indicate whether the file has been finalized (the movie box is written on finalization).
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    private Mp4Boxes() {
+        // not instantiable
+    }
+
+    public static Layout scan(RandomAccessFile file) throws IOException {
+        long length = file.length();
+        long offset = 0;
+        boolean complete = false;
+
+        while (length - offset >= 8) {
+            file.seek(offset);
+            long size = file.readInt() & 0xFFFFFFFFL;
+            int type = file.readInt();
+            int headerSize = 8;
+            if (size == 1) {
+                // 64-bit size
+                if (length - offset < 16) {
+                    break;
+                }
+                size = file.readLong();
+                headerSize = 16;
+            }
+
+            // A size of 0 (box extending to the end of the file) is never written by a finalized muxer, so it is pre-allocated space
+            if (type == 0 || size < headerSize || size > length - offset) {
+                break;
+            }
+
+            if (type == TYPE_MOOV) {
+                complete = true;
+            }
+            offset += size;
+        }
+
+        return new Layout(offset, complete);
+    }
+}
@@ -0,0 +1,152 @@
+package com.genymobile.scrcpy.record;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index of the completed segments of a recording, one line per segment.
+ * <p>
+ * A line is appended (and synced to disk) only once its segment is finalized, so the index never references an unreadable segment. If the
+ * process is killed while a line is written, the partial line is discarded when the index is reopened.
+ * <p>
+ * Line format: {@code <index> <start time ms> <duration us> <size> <file name>}
+ */
+public final class RecordIndex implements Closeable {
+
+    public static final class Entry {
+        private final int index;
+        private final long startTimeMs; // wall clock
+        private final long durationUs;
+        private final long size;
+        private final String fileName;
+
+        public Entry(int index, long startTimeMs, long durationUs, long size, String fileName) {
+            this.index = index;
+            this.startTimeMs = startTimeMs;
+            this.durationUs = durationUs;
+            this.size = size;
+            this.fileName = fileName;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public long getStartTimeMs() {
+            return startTimeMs;
+        }
+
+        public long getDurationUs() {
+            return durationUs;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        private String format() {
+            return index + " " + startTimeMs + " " + durationUs + " " + size + " " + fileName + "\n";
+        }
+
+        private static Entry parse(String line) {
+            String[] tokens = line.split(" ", 5);
+            if (tokens.length != 5 || tokens[4].isEmpty()) {
+                return null;
+            }
+            try {
+                int index = Integer.parseInt(tokens[0]);
+                long startTimeMs = Long.parseLong(tokens[1]);
+                long durationUs = Long.parseLong(tokens[2]);
+                long size = Long.parseLong(tokens[3]);
+                if (index < 0 || durationUs < 0 || size < 0) {
+                    return null;
+                }
+                return new Entry(index, startTimeMs, durationUs, size, tokens[4]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private final List<Entry> entries;
+    private final FileOutputStream out;
+
+    private RecordIndex(List<Entry> entries, FileOutputStream out) {
+        this.entries = entries;
+        this.out = out;
+    }
+
+    /**
+     * Open the index, creating it if it does not exist, and drop any trailing partial or invalid line.
+     */
+    public static RecordIndex open(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+
+            int validLength = parse(data, entries);
+            if (validLength < data.length) {
+                raf.setLength(validLength);
+                raf.getFD().sync();
+            }
+        }
+
+        return new RecordIndex(entries, new FileOutputStream(file, true));
+    }
+
+    private static int parse(byte[] data, List<Entry> entries) {
+        int lineStart = 0;
+        for (int i = 0; i < data.length; ++i) {
+            if (data[i] == '\n') {
+                String line = new String(data, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                Entry entry = Entry.parse(line);
+                if (entry == null || (!entries.isEmpty() && entry.index <= entries.get(entries.size() - 1).index)) {
+                    // Corrupted, ignore this line and the following ones
+                    break;
+                }
+                entries.add(entry);
+                lineStart = i + 1;
+            }
+        }
+        // A final line without '\n' has been interrupted
+        return lineStart;
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Return the index of the segment following the last completed segment.
+     */
+    public int getNextSegmentIndex() {
+        return entries.isEmpty() ? 0 : entries.get(entries.size() - 1).index + 1;
+    }
+
+    /**
+     * Append an entry and sync the index to disk.
+     */
+    public void append(Entry entry) throws IOException {
+        // A single write, so that a kill leaves at most one partial line
+        out.write(entry.format().getBytes(StandardCharsets.UTF_8));
+        out.getFD().sync();
+        entries.add(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,546 @@
+package com.genymobile.scrcpy.record;
+
+import com.genymobile.scrcpy.Options;
+import com.genymobile.scrcpy.device.PacketSink;
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.util.Codec;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mux the encoded video and audio packets into a file on the device, using {@link MediaMuxer}.
+ * <p>
+ * The packets are received by a {@link PacketSink} per track, registered on the encoder output, so the recording does not require additional
+ * encoders. The muxer is started once the
+ * output formats of all the expected tracks are known, from the next video key frame (if there is a video track).
+ * <p>
+ * If the encoder is reset, the recording continues in a new file, suffixed by its index (the first file keeps the requested path).
+ * <p>
+ * If a max segment duration or size is set, the recording is split into several files, each starting with a key frame. Each finalized segment
+ * is synced to disk and appended to an index ({@code <path>.index}), so that a crash loses at most the segment being written. A new recording
+ * to the same path continues after the last indexed segment.
+ * <p>
+ * The segment files are pre-allocated to their expected size, to limit fragmentation on long recordings.
+ * <p>
+ * The packets are copied to a bounded queue and muxed on a dedicated thread, so that the file I/O never blocks the encoders. If the queue is
+ * full, the packets of a track are dropped until its next key frame. The completed segments are finalized on another thread, so that the next
+ * segment starts immediately.
+ */
+public final class Recorder {
+
+    private static final int NO_TRACK = -1;
+
+    private static final int QUEUE_CAPACITY = 64; // packets
+    private static final int MIN_BUFFER_SIZE = 1 << 16; // 64k
+
+    private static final int EVENT_PACKET = 0;
+    private static final int EVENT_OUTPUT_FORMAT = 1;
+    private static final int EVENT_STREAM_DISABLED = 2;
+
+    private static final class Event {
+        private final int kind;
+        private final Codec.Type type;
+        private MediaFormat format; // for EVENT_OUTPUT_FORMAT
+        private ByteBuffer buffer; // for EVENT_PACKET, pooled
+        private long pts;
+        private boolean keyFrame;
+
+        Event(int kind, Codec.Type type) {
+            this.kind = kind;
+            this.type = type;
+        }
+    }
+
+    private final String path;
+    private final int outputFormat;
+    private final boolean mp4;
+    private final long segmentDurationUs; // 0 for no limit
+    private final long segmentSize; // 0 for no limit
+    private final long preallocateSize; // 0 to not pre-allocate
+    private final int fsyncInterval; // in milliseconds, 0 to only sync finalized segments
+
+    private Streamer.KeyFrameRequester keyFrameRequester;
+
+    // Only accessed by the recorder thread
+    private boolean videoExpected;
+    private boolean audioExpected;
+    private MediaFormat videoFormat;
+    private MediaFormat audioFormat;
+
+    private RecordIndex index; // null if the recording is not segmented
+    private SegmentFile segmentFile;
+    private MediaMuxer muxer;
+    private int videoTrack = NO_TRACK;
+    private int audioTrack = NO_TRACK;
+    private int segmentIndex;
+    private long segmentStartPts = -1; // -1 until the first packet of the segment is written
+    private long segmentLastPts;
+    private long segmentStartTimeMs;
+    private long segmentBytes;
+    private boolean rotationPending;
+    private long lastSyncTime;
+
+    private final MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+    // Guarded by this (accessed by the producers and the recorder thread)
+    private final ArrayDeque<Event> queue = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> bufferPool = new ArrayDeque<>();
+    private int queuedPackets;
+    private boolean videoDropping;
+    private boolean audioDropping;
+    private boolean failed;
+    private boolean stopped;
+
+    private Thread thread;
+    // Finalize the completed segments in the background (the muxer stop and the file sync may take a while)
+    private final ExecutorService finalizer = Executors.newSingleThreadExecutor();
+
+    public Recorder(Options options, boolean video, boolean audio) throws IOException {
+        assert video || audio;
+        this.path = options.getRecordFile();
+        this.mp4 = !path.toLowerCase(Locale.ROOT).endsWith(".webm");
+        this.outputFormat = mp4 ? MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4 : MediaMuxer.OutputFormat.MUXER_OUTPUT_WEBM;
+        this.videoExpected = video;
+        this.audioExpected = audio;
+        this.segmentDurationUs = options.getRecordSegmentDuration() * 1000L;
+        this.segmentSize = options.getRecordSegmentSize();
+        this.preallocateSize = options.getRecordPreallocate() ? getExpectedSegmentSize(options, video, audio) : 0;
+        this.fsyncInterval = options.getRecordFsyncInterval();
+
+        if (isSegmented()) {
+            index = RecordIndex.open(new File(path + ".index"));
+            // Continue after the last completed segment (a segment not indexed has not been finalized, it is overwritten)
+            segmentIndex = index.getNextSegmentIndex();
+        }
+    }
+
+    private static long getExpectedSegmentSize(Options options, boolean video, boolean audio) {
+        if (options.getRecordSegmentSize() > 0) {
+            return options.getRecordSegmentSize();
+        }
+        if (options.getRecordSegmentDuration() > 0) {
+            long bitRate = (video ? options.getVideoBitRate() : 0) + (audio ? options.getAudioBitRate() : 0);
+            return bitRate / 8 * options.getRecordSegmentDuration() / 1000;
+        }
+        // Unknown
+        return 0;
+    }
+
+    public void setKeyFrameRequester(Streamer.KeyFrameRequester keyFrameRequester) {
+        this.keyFrameRequester = keyFrameRequester;
+    }
+
+    /**
+     * Create the sink receiving the packets of a track.
+     */
+    public PacketSink createSink(Codec.Type type) {
+        return new PacketSink() {
+            @Override
+            public void writeAudioHeader() {
+                // Nothing to do
+            }
+
+            @Override
+            public void writeVideoHeader(Size videoSize) {
+                // The video size is provided by the output format
+            }
+
+            @Override
+            public void onVideoSizeChanged(Size videoSize) {
+                // The video size is provided by the output format
+            }
+
+            @Override
+            public void onOutputFormatChanged(MediaFormat format) {
+                Event event = new Event(EVENT_OUTPUT_FORMAT, type);
+                event.format = format;
+                post(event);
+            }
+
+            @Override
+            public void writePacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+                // The config is provided by the output format
+                if (!config) {
+                    queuePacket(type, buffer, pts, keyFrame);
+                }
+            }
+
+            @Override
+            public void writeDisableStream(boolean error) {
+                post(new Event(EVENT_STREAM_DISABLED, type));
+            }
+        };
+    }
+
+    private synchronized void post(Event event) {
+        if (!stopped) {
+            queue.add(event);
+            notify();
+        }
+    }
+
+    private void queuePacket(Codec.Type type, ByteBuffer codecBuffer, long pts, boolean keyFrame) {
+        boolean video = type == Codec.Type.VIDEO;
+        // Every audio packet can be decoded independently
+        boolean syncPoint = keyFrame || !video;
+
+        ByteBuffer buffer;
+        synchronized (this) {
+            if (failed || stopped) {
+                return;
+            }
+
+            boolean dropping = video ? videoDropping : audioDropping;
+            if (dropping && !syncPoint) {
+                return;
+            }
+
+            if (queuedPackets == QUEUE_CAPACITY) {
+                if (!dropping) {
+                    Ln.v("Recorder queue full, dropping " + (video ? "video" : "audio") + " packets until the next sync point");
+                    setDropping(video, true);
+                    if (video && keyFrameRequester != null) {
+                        keyFrameRequester.requestKeyFrame();
+                    }
+                }
+                return;
+            }
+
+            setDropping(video, false);
+            ++queuedPackets;
+            buffer = bufferPool.poll();
+        }
+
+        // The packet is not queued yet, so the copy is performed without holding the lock
+        int size = codecBuffer.remaining();
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Math.max(MIN_BUFFER_SIZE, size + size / 2));
+        }
+        buffer.clear();
+        buffer.put(codecBuffer);
+        buffer.flip();
+
+        Event event = new Event(EVENT_PACKET, type);
+        event.buffer = buffer;
+        event.pts = pts;
+        event.keyFrame = keyFrame;
+
+        synchronized (this) {
+            queue.add(event);
+            notify();
+        }
+    }
+
+    private void setDropping(boolean video, boolean dropping) {
+        if (video) {
+            videoDropping = dropping;
+        } else {
+            audioDropping = dropping;
+        }
+    }
+
+    public void start() {
+        thread = new Thread(() -> {
+            try {
+                loop();
+            } catch (InterruptedException e) {
+                // The pending packets are lost, but the current segment is still finalized
+            } finally {
+                finishSegment();
+                finalizer.shutdown();
+                awaitFinalization();
+                closeIndex();
+                Ln.d("Recorder stopped");
+            }
+        }, "recorder");
+        thread.start();
+    }
+
+    private void loop() throws InterruptedException {
+        while (true) {
+            Event event;
+            synchronized (this) {
+                while (queue.isEmpty() && !stopped) {
+                    wait();
+                }
+                event = queue.poll();
+                if (event == null) {
+                    // Stopped, and all the pending packets have been written
+                    return;
+                }
+            }
+
+            switch (event.kind) {
+                case EVENT_OUTPUT_FORMAT:
+                    setOutputFormat(event.type, event.format);
+                    break;
+                case EVENT_STREAM_DISABLED:
+                    onStreamDisabled(event.type);
+                    break;
+                default:
+                    writePacket(event.type, event.buffer, event.pts, event.keyFrame);
+                    synchronized (this) {
+                        --queuedPackets;
+                        bufferPool.add(event.buffer);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private boolean isSegmented() {
+        return segmentDurationUs > 0 || segmentSize > 0;
+    }
+
+    /**
+     * Return the path of the file of a segment.
+     * <p>
+     * An unsegmented recording is written to the requested path, but if the encoder is reset, the recording continues in a new file (the format of
+     * a started muxer cannot change), suffixed by its index like a segment, so that the file written so far is never truncated.
+     */
+    static String getSegmentPath(String path, int index, boolean segmented) {
+        if (!segmented && index == 0) {
+            return path;
+        }
+
+        int dot = path.lastIndexOf('.');
+        int slash = path.lastIndexOf('/');
+        String suffix = String.format(Locale.ROOT, "_%03d", index);
+        if (dot <= slash) {
+            // No extension
+            return path + suffix;
+        }
+        return path.substring(0, dot) + suffix + path.substring(dot);
+    }
+
+    /**
+     * Notify the output format of the encoder of a track (received before the first packet of the track).
+     */
+    private void setOutputFormat(Codec.Type type, MediaFormat format) {
+        if (type == Codec.Type.VIDEO) {
+            videoFormat = format;
+        } else {
+            audioFormat = format;
+        }
+
+        if (muxer != null) {
+            // The format of a started muxer cannot change (the encoder has been reset): start a new segment
+            rotationPending = true;
+        }
+    }
+
+    /**
+     * Notify that a stream will not produce any packet (for example if the audio could not be captured).
+     */
+    private void onStreamDisabled(Codec.Type type) {
+        if (type == Codec.Type.VIDEO) {
+            videoExpected = false;
+        } else {
+            audioExpected = false;
+        }
+    }
+
+    private boolean isReady() {
+        return (!videoExpected || videoFormat != null) && (!audioExpected || audioFormat != null) && (videoExpected || audioExpected);
+    }
+
+    private void writePacket(Codec.Type type, ByteBuffer buffer, long pts, boolean keyFrame) {
+        if (isFailed()) {
+            return;
+        }
+
+        boolean video = type == Codec.Type.VIDEO;
+        // With a video track, segments start on a video key frame
+        boolean segmentStartPoint = video ? keyFrame : !videoExpected;
+
+        try {
+            if (segmentStartPoint && (muxer == null || rotationPending) && isReady()) {
+                startSegment(pts);
+            }
+
+            if (muxer == null || segmentStartPts == -1 || pts < segmentStartPts) {
+                // Not started yet
+                return;
+            }
+
+            int track = video ? videoTrack : audioTrack;
+            if (track == NO_TRACK) {
+                return;
+            }
+
+            int size = buffer.remaining();
+            bufferInfo.set(buffer.position(), size, pts - segmentStartPts, keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+            muxer.writeSampleData(track, buffer, bufferInfo);
+
+            segmentBytes += size;
+            segmentLastPts = Math.max(segmentLastPts, pts);
+            if (fsyncInterval > 0) {
+                syncPeriodically();
+            }
+            checkSegmentLimits(pts);
+        } catch (IOException | RuntimeException e) {
+            Ln.e("Recording error: " + e.getMessage());
+            synchronized (this) {
+                failed = true;
+            }
+            finishSegment();
+        }
+    }
+
+    private void syncPeriodically() throws IOException {
+        long now = SystemClock.uptimeMillis();
+        if (now - lastSyncTime >= fsyncInterval) {
+            // The muxer buffers some data internally, so this only bounds the amount of unsynced data written so far
+            segmentFile.sync();
+            lastSyncTime = now;
+        }
+    }
+
+    private void checkSegmentLimits(long pts) {
+        if (!rotationPending && isSegmented()) {
+            boolean durationReached = segmentDurationUs > 0 && pts - segmentStartPts >= segmentDurationUs;
+            boolean sizeReached = segmentSize > 0 && segmentBytes >= segmentSize;
+            if (durationReached || sizeReached) {
+                rotationPending = true;
+                if (videoExpected && keyFrameRequester != null) {
+                    // Do not wait for the next periodic key frame to start the next segment
+                    keyFrameRequester.requestKeyFrame();
+                }
+            }
+        }
+    }
+
+    private void startSegment(long pts) throws IOException {
+        finishSegment();
+
+        String segmentPath = getSegmentPath(path, segmentIndex, isSegmented());
+        segmentFile = SegmentFile.create(segmentPath, mp4, preallocateSize);
+        try {
+            muxer = segmentFile.createMuxer(outputFormat);
+            videoTrack = videoExpected ? muxer.addTrack(videoFormat) : NO_TRACK;
+            audioTrack = audioExpected ? muxer.addTrack(audioFormat) : NO_TRACK;
+            muxer.start();
+        } catch (IOException | RuntimeException e) {
+            if (muxer != null) {
+                muxer.release();
+                muxer = null;
+            }
+            segmentFile.close();
+            segmentFile = null;
+            throw e;
+        }
+
+        segmentStartPts = pts;
+        segmentLastPts = pts;
+        segmentStartTimeMs = System.currentTimeMillis();
+        segmentBytes = 0;
+        rotationPending = false;
+        lastSyncTime = SystemClock.uptimeMillis();
+        Ln.i("Recording to " + segmentPath);
+    }
+
+    private void finishSegment() {
+        if (muxer == null) {
+            return;
+        }
+
+        MediaMuxer finishedMuxer = muxer;
+        SegmentFile finishedFile = segmentFile;
+        int finishedIndex = segmentIndex;
+        long startTimeMs = segmentStartTimeMs;
+        long durationUs = segmentLastPts - segmentStartPts;
+
+        muxer = null;
+        segmentFile = null;
+        videoTrack = NO_TRACK;
+        audioTrack = NO_TRACK;
+        segmentStartPts = -1;
+        ++segmentIndex;
+
+        // The next segment is started without waiting for this one to be written to disk (the segments are finalized and indexed in order)
+        finalizer.execute(() -> finalizeSegment(finishedMuxer, finishedFile, finishedIndex, startTimeMs, durationUs));
+    }
+
+    private void finalizeSegment(MediaMuxer finishedMuxer, SegmentFile file, int fileIndex, long startTimeMs, long durationUs) {
+        boolean complete = true;
+        try {
+            finishedMuxer.stop();
+        } catch (IllegalStateException e) {
+            // The muxer throws if no sample has been written
+            Ln.w("Could not finalize the recording: " + e.getMessage());
+            complete = false;
+        }
+        finishedMuxer.release();
+
+        try {
+            long size = file.finish();
+            if (complete && index != null) {
+                // Only index the segment once it is fully on disk
+                String fileName = new File(file.getPath()).getName();
+                index.append(new RecordIndex.Entry(fileIndex, startTimeMs, durationUs, size, fileName));
+            }
+        } catch (IOException e) {
+            Ln.w("Could not finalize the segment: " + e.getMessage());
+        }
+    }
+
+    private synchronized boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Write the pending packets and finalize the current file (to be called once no more packets are produced).
+     */
+    public void stop() {
+        synchronized (this) {
+            stopped = true;
+            notify();
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            // Never started, nothing has been written
+            finalizer.shutdown();
+            closeIndex();
+        }
+    }
+
+    private void awaitFinalization() {
+        try {
+            // Never give up on the last segment, it would be lost
+            while (!finalizer.awaitTermination(1, TimeUnit.SECONDS)) {
+                Ln.d("Waiting for the recording to be finalized...");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeIndex() {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.genymobile.scrcpy.record;
+
+import com.genymobile.scrcpy.device.GopCache;
+
+import android.media.MediaFormat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * In-memory ring of the last encoded video packets, to save the last seconds of the screen on demand.
+ * <p>
+ * The buffer always starts on a key frame: when the max duration is exceeded or when a new packet does not fit, the oldest GOP is evicted as a
+ * whole. The packets are stored contiguously in a direct buffer allocated once, so that buffering does not allocate.
+ * <p>
+ * The codec config packets are not stored (the output format provides the codec specific data), but a new config means a new encoder session,
+ * so the buffer is cleared.
+ */
+public final class ReplayBuffer {
+
+    private static final int INITIAL_PACKET_CAPACITY = 256;
+
+    private final long maxDurationUs;
+    private final ByteBuffer data;
+
+    private MediaFormat format;
+
+    // Circular arrays of packet metadata, from head (oldest) to head + count
+    private int[] offsets = new int[INITIAL_PACKET_CAPACITY];
+    private int[] sizes = new int[INITIAL_PACKET_CAPACITY];
+    private long[] ptsArray = new long[INITIAL_PACKET_CAPACITY];
+    private boolean[] keyFrames = new boolean[INITIAL_PACKET_CAPACITY];
+    private int head;
+    private int count;
+
+    // Offset in data following the last packet
+    private int writeOffset;
+
+    /**
+     * @param maxDurationUs the duration to keep (at least, since only whole GOPs are evicted)
+     * @param maxSize the max size of the packets, in bytes
+     */
+    public ReplayBuffer(long maxDurationUs, int maxSize) {
+        assert maxDurationUs > 0 && maxSize > 0;
+        this.maxDurationUs = maxDurationUs;
+        this.data = ByteBuffer.allocateDirect(maxSize);
+    }
+
+    /**
+     * Set the output format of the encoder, for the packets received from now on.
+     */
+    public synchronized void setFormat(MediaFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Store a copy of the packet (from its position to its limit), leaving the buffer position unchanged.
+     */
+    public synchronized void add(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+        if (config) {
+            // The next packets belong to a new encoder session
+            clear();
+            return;
+        }
+
+        if (count == 0 && !keyFrame) {
+            // Wait for a key frame
+            return;
+        }
+
+        int size = buffer.remaining();
+        if (size > data.capacity()) {
+            clear();
+            return;
+        }
+
+        int offset;
+        while ((offset = findSpace(size)) == -1) {
+            evictOldestGop();
+            if (count == 0 && !keyFrame) {
+                // The current GOP has been evicted
+                return;
+            }
+        }
+
+        int position = buffer.position();
+        data.limit(offset + size);
+        data.position(offset);
+        data.put(buffer);
+        buffer.position(position);
+
+        ensurePacketCapacity(count + 1);
+        int i = (head + count) % offsets.length;
+        offsets[i] = offset;
+        sizes[i] = size;
+        ptsArray[i] = pts;
+        keyFrames[i] = keyFrame;
+        ++count;
+        writeOffset = offset + size;
+
+        evictExpired(pts);
+    }
+
+    private int findSpace(int size) {
+        if (count == 0) {
+            writeOffset = 0;
+            return 0;
+        }
+
+        int capacity = data.capacity();
+        int tail = offsets[head];
+        if (writeOffset > tail) {
+            // The free space is [writeOffset, capacity) and [0, tail)
+            if (capacity - writeOffset >= size) {
+                return writeOffset;
+            }
+            return tail >= size ? 0 : -1;
+        }
+
+        // Wrapped, the free space is [writeOffset, tail)
+        return tail - writeOffset >= size ? writeOffset : -1;
+    }
+
+    private void evictOldestGop() {
+        do {
+            head = (head + 1) % offsets.length;
+            --count;
+        } while (count > 0 && !keyFrames[head]);
+
+        if (count == 0) {
+            head = 0;
+            writeOffset = 0;
+        }
+    }
+
+    private void evictExpired(long lastPts) {
+        // Evict the oldest GOP as long as the remaining packets still cover the max duration
+        while (lastPts - ptsArray[head] >= maxDurationUs) {
+            int nextKeyFrame = findNextKeyFrame();
+            if (nextKeyFrame == -1 || lastPts - ptsArray[nextKeyFrame] < maxDurationUs) {
+                return;
+            }
+            evictOldestGop();
+        }
+    }
+
+    private int findNextKeyFrame() {
+        for (int k = 1; k < count; ++k) {
+            int i = (head + k) % offsets.length;
+            if (keyFrames[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void ensurePacketCapacity(int packetCapacity) {
+        int length = offsets.length;
+        if (length < packetCapacity) {
+            int newLength = length * 2;
+            // Linearize the circular arrays
+            offsets = copyCircular(offsets, newLength);
+            sizes = copyCircular(sizes, newLength);
+            ptsArray = copyCircular(ptsArray, newLength);
+            keyFrames = copyCircular(keyFrames, newLength);
+            head = 0;
+        }
+    }
+
+    private int[] copyCircular(int[] array, int newLength) {
+        int[] result = new int[newLength];
+        for (int k = 0; k < count; ++k) {
+            result[k] = array[(head + k) % array.length];
+        }
+        return result;
+    }
+
+    private long[] copyCircular(long[] array, int newLength) {
+        long[] result = new long[newLength];
+        for (int k = 0; k < count; ++k) {
+            result[k] = array[(head + k) % array.length];
+        }
+        return result;
+    }
+
+    private boolean[] copyCircular(boolean[] array, int newLength) {
+        boolean[] result = new boolean[newLength];
+        for (int k = 0; k < count; ++k) {
+            result[k] = array[(head + k) % array.length];
+        }
+        return result;
+    }
+
+    private void clear() {
+        head = 0;
+        count = 0;
+        writeOffset = 0;
+    }
+
+    /**
+     * Copy the buffered packets.
+     *
+     * @return the snapshot, or {@code null} if the buffer is empty
+     */
+    public synchronized Snapshot snapshot() {
+        if (count == 0) {
+            return null;
+        }
+
+        int totalSize = 0;
+        for (int k = 0; k < count; ++k) {
+            totalSize += sizes[(head + k) % offsets.length];
+        }
+
+        ByteBuffer copy = ByteBuffer.allocateDirect(totalSize);
+        int[] packetSizes = new int[count];
+        long[] packetPts = new long[count];
+        boolean[] packetKeyFrames = new boolean[count];
+        for (int k = 0; k < count; ++k) {
+            int i = (head + k) % offsets.length;
+            data.limit(offsets[i] + sizes[i]);
+            data.position(offsets[i]);
+            copy.put(data);
+            packetSizes[k] = sizes[i];
+            packetPts[k] = ptsArray[i];
+            packetKeyFrames[k] = keyFrames[i];
+        }
+
+        return new Snapshot(format, copy, packetSizes, packetPts, packetKeyFrames);
+    }
+
+    /**
+     * Immutable copy of the buffered packets, starting with a key frame.
+     */
+    public static final class Snapshot {
+        private final MediaFormat format;
+        private final ByteBuffer data;
+        private final int[] sizes;
+        private final long[] ptsArray;
+        private final boolean[] keyFrames;
+
+        private Snapshot(MediaFormat format, ByteBuffer data, int[] sizes, long[] ptsArray, boolean[] keyFrames) {
+            this.format = format;
+            this.data = data;
+            this.sizes = sizes;
+            this.ptsArray = ptsArray;
+            this.keyFrames = keyFrames;
+        }
+
+        public MediaFormat getFormat() {
+            return format;
+        }
+
+        public int getPacketCount() {
+            return sizes.length;
+        }
+
+        public int getSize() {
+            return data.capacity();
+        }
+
+        public long getStartPts() {
+            return ptsArray[0];
+        }
+
+        public long getDurationUs() {
+            return ptsArray[ptsArray.length - 1] - ptsArray[0];
+        }
+
+        /**
+         * Pass all the packets to the consumer, in order (must not be called concurrently).
+         */
+        public void replay(GopCache.PacketConsumer consumer) throws IOException {
+            int offset = 0;
+            for (int i = 0; i < sizes.length; ++i) {
+                data.limit(offset + sizes[i]);
+                data.position(offset);
+                consumer.accept(data, ptsArray[i], false, keyFrames[i]);
+                offset += sizes[i];
+            }
+        }
+    }
+}
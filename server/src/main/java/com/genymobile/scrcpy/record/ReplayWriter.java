@@ -0,0 +1,48 @@
+package com.genymobile.scrcpy.record;
+
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+import android.media.MediaMuxer;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Write a {@link ReplayBuffer.Snapshot} to a file.
+ */
+public final class ReplayWriter {
+
+    private ReplayWriter() {
+        // not instantiable
+    }
+
+    public static void write(ReplayBuffer.Snapshot snapshot, String path) throws IOException {
+        if (snapshot.getFormat() == null) {
+            throw new IOException("Unknown video format");
+        }
+
+        int outputFormat = path.toLowerCase(Locale.ROOT).endsWith(".webm") ? MediaMuxer.OutputFormat.MUXER_OUTPUT_WEBM
+                : MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+        MediaMuxer muxer = new MediaMuxer(path, outputFormat);
+        try {
+            int track = muxer.addTrack(snapshot.getFormat());
+            muxer.start();
+
+            MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+            long startPts = snapshot.getStartPts();
+            snapshot.replay((buffer, pts, config, keyFrame) -> {
+                bufferInfo.set(buffer.position(), buffer.remaining(), pts - startPts, keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                muxer.writeSampleData(track, buffer, bufferInfo);
+            });
+
+            muxer.stop();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Could not write the replay buffer: " + e.getMessage(), e);
+        } finally {
+            muxer.release();
+        }
+
+        Ln.i("Replay buffer saved to " + path + " (" + snapshot.getDurationUs() / 1000 + " ms)");
+    }
+}
@@ -0,0 +1,119 @@
+package com.genymobile.scrcpy.record;
+
+import com.genymobile.scrcpy.AndroidVersions;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.annotation.TargetApi;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * A recording file, pre-allocated to limit fragmentation, which can be synced to disk while it is written.
+ * <p>
+ * Before Android 8, {@link MediaMuxer} can only open the file by path (and truncates it), so the file is neither pre-allocated nor synced
+ * before it is finished.
+ */
+final class SegmentFile {
+
+    private final String path;
+    private final boolean mp4;
+    private FileDescriptor fd; // null if the muxer opens the file by path
+
+    private SegmentFile(String path, boolean mp4, FileDescriptor fd) {
+        this.path = path;
+        this.mp4 = mp4;
+        this.fd = fd;
+    }
+
+    /**
+     * Create (or truncate) the file.
+     *
+     * @param preallocateSize the number of bytes to reserve, 0 to not pre-allocate
+     */
+    static SegmentFile create(String path, boolean mp4, long preallocateSize) throws IOException {
+        if (Build.VERSION.SDK_INT < AndroidVersions.API_26_ANDROID_8_0) {
+            return new SegmentFile(path, mp4, null);
+        }
+
+        FileDescriptor fd;
+        try {
+            fd = Os.open(path, OsConstants.O_CREAT | OsConstants.O_TRUNC | OsConstants.O_RDWR, 0644);
+        } catch (ErrnoException e) {
+            throw new IOException("Could not open " + path, e);
+        }
+
+        // The unused space is truncated on finish by scanning the MP4 boxes, which is not possible for WebM
+        if (preallocateSize > 0 && mp4) {
+            try {
+                Os.posix_fallocate(fd, 0, preallocateSize);
+            } catch (ErrnoException e) {
+                // Not supported by all file systems
+                Ln.w("Could not pre-allocate the recording file: " + e.getMessage());
+            }
+        }
+
+        return new SegmentFile(path, mp4, fd);
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    @TargetApi(AndroidVersions.API_26_ANDROID_8_0)
+    MediaMuxer createMuxer(int outputFormat) throws IOException {
+        if (fd != null) {
+            return new MediaMuxer(fd, outputFormat);
+        }
+        return new MediaMuxer(path, outputFormat);
+    }
+
+    /**
+     * Flush the data written so far to disk.
+     */
+    void sync() throws IOException {
+        if (fd != null) {
+            try {
+                Os.fsync(fd);
+            } catch (ErrnoException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * Release the unused pre-allocated space and sync the file to disk (to be called once the muxer is stopped).
+     *
+     * @return the final size of the file
+     */
+    long finish() throws IOException {
+        close();
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            if (mp4) {
+                long end = Mp4Boxes.scan(file).getEnd();
+                if (end < file.length()) {
+                    file.setLength(end);
+                }
+            }
+            file.getFD().sync();
+            return file.length();
+        }
+    }
+
+    void close() {
+        if (fd != null) {
+            try {
+                Os.close(fd);
+            } catch (ErrnoException e) {
+                // ignore
+            }
+            fd = null;
+        }
+    }
+}
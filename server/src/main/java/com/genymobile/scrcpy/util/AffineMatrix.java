@@ -84,8 +84,10 @@ public class AffineMatrix {
      * @return the converted point
      */
     public Point apply(Point point) {
-        int x = point.getX();
-        int y = point.getY();
+        return apply(point.getX(), point.getY());
+    }
+
+    public Point apply(int x, int y) {
         int xx = (int) (a * x + c * y + e);
         int yy = (int) (b * x + d * y + f);
         return new Point(xx, yy);
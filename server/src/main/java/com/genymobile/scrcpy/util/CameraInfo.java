@@ -0,0 +1,163 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.device.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * A camera of the device and its stream configurations, as stored in the {@link CapabilityCache}.
+ */
+public final class CameraInfo {
+
+    private static final String ENTRY_SEPARATOR = "|";
+    private static final String FIELD_SEPARATOR = ",";
+    private static final String LIST_SEPARATOR = ";";
+    private static final int FIELD_COUNT = 7;
+
+    private final String id;
+    private final int facing;
+    private final Size activeArraySize;
+    private final SortedSet<Integer> fps; // empty if unknown
+    private final List<Size> sizes;
+    private final List<Size> highSpeedSizes;
+    private final SortedSet<Integer> highSpeedFps;
+
+    public CameraInfo(String id, int facing, Size activeArraySize, SortedSet<Integer> fps, List<Size> sizes, List<Size> highSpeedSizes,
+            SortedSet<Integer> highSpeedFps) {
+        this.id = id;
+        this.facing = facing;
+        this.activeArraySize = activeArraySize;
+        this.fps = Collections.unmodifiableSortedSet(fps);
+        this.sizes = Collections.unmodifiableList(sizes);
+        this.highSpeedSizes = Collections.unmodifiableList(highSpeedSizes);
+        this.highSpeedFps = Collections.unmodifiableSortedSet(highSpeedFps);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Return the lens facing, as a {@code CameraCharacteristics.LENS_FACING_*} value.
+     */
+    public int getFacing() {
+        return facing;
+    }
+
+    public Size getActiveArraySize() {
+        return activeArraySize;
+    }
+
+    public SortedSet<Integer> getFps() {
+        return fps;
+    }
+
+    /**
+     * Return the output sizes for a {@code MediaCodec} surface.
+     */
+    public List<Size> getSizes() {
+        return sizes;
+    }
+
+    public List<Size> getHighSpeedSizes() {
+        return highSpeedSizes;
+    }
+
+    public SortedSet<Integer> getHighSpeedFps() {
+        return highSpeedFps;
+    }
+
+    public static String serialize(List<CameraInfo> cameras) {
+        StringBuilder builder = new StringBuilder();
+        for (CameraInfo camera : cameras) {
+            if (builder.length() > 0) {
+                builder.append(ENTRY_SEPARATOR);
+            }
+            builder.append(camera.id).append(FIELD_SEPARATOR)
+                    .append(camera.facing).append(FIELD_SEPARATOR)
+                    .append(camera.activeArraySize).append(FIELD_SEPARATOR)
+                    .append(joinList(camera.fps)).append(FIELD_SEPARATOR)
+                    .append(joinList(camera.sizes)).append(FIELD_SEPARATOR)
+                    .append(joinList(camera.highSpeedSizes)).append(FIELD_SEPARATOR)
+                    .append(joinList(camera.highSpeedFps));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parse a list of cameras serialized by {@link #serialize(List)}.
+     *
+     * @return the cameras, or {@code null} if the value is malformed
+     */
+    public static List<CameraInfo> parse(String value) {
+        List<CameraInfo> cameras = new ArrayList<>();
+        if (value.isEmpty()) {
+            return cameras;
+        }
+
+        try {
+            for (String entry : value.split("\\" + ENTRY_SEPARATOR)) {
+                String[] fields = entry.split(FIELD_SEPARATOR, -1);
+                if (fields.length != FIELD_COUNT || fields[0].isEmpty()) {
+                    return null;
+                }
+                int facing = Integer.parseInt(fields[1]);
+                Size activeArraySize = parseSize(fields[2]);
+                SortedSet<Integer> fps = parseIntegers(fields[3]);
+                List<Size> sizes = parseSizes(fields[4]);
+                List<Size> highSpeedSizes = parseSizes(fields[5]);
+                SortedSet<Integer> highSpeedFps = parseIntegers(fields[6]);
+                cameras.add(new CameraInfo(fields[0], facing, activeArraySize, fps, sizes, highSpeedSizes, highSpeedFps));
+            }
+        } catch (IllegalArgumentException e) {
+            // Also catches NumberFormatException
+            return null;
+        }
+        return cameras;
+    }
+
+    private static String joinList(Iterable<?> items) {
+        StringBuilder builder = new StringBuilder();
+        for (Object item : items) {
+            if (builder.length() > 0) {
+                builder.append(LIST_SEPARATOR);
+            }
+            builder.append(item);
+        }
+        return builder.toString();
+    }
+
+    private static Size parseSize(String value) {
+        int index = value.indexOf('x');
+        if (index == -1) {
+            throw new IllegalArgumentException("Invalid size: " + value);
+        }
+        int width = Integer.parseInt(value.substring(0, index));
+        int height = Integer.parseInt(value.substring(index + 1));
+        return new Size(width, height);
+    }
+
+    private static List<Size> parseSizes(String value) {
+        List<Size> sizes = new ArrayList<>();
+        if (!value.isEmpty()) {
+            for (String item : value.split(LIST_SEPARATOR)) {
+                sizes.add(parseSize(item));
+            }
+        }
+        return sizes;
+    }
+
+    private static SortedSet<Integer> parseIntegers(String value) {
+        SortedSet<Integer> set = new TreeSet<>();
+        if (!value.isEmpty()) {
+            for (String item : value.split(LIST_SEPARATOR)) {
+                set.add(Integer.parseInt(item));
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,311 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.BuildConfig;
+import com.genymobile.scrcpy.device.Size;
+
+import android.graphics.Rect;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.MediaCodec;
+import android.os.Build;
+import android.os.Process;
+import android.util.Range;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Persistent cache of the device capabilities which are slow to query but do not change between sessions (the encoders, the cameras and
+ * their stream configurations, the display capture API which works).
+ * <p>
+ * The cache is a file on the device, shared by all the server instances. It is keyed by the build fingerprint and the server version: on a
+ * mismatch, all the entries are stale, and they are rebuilt as they are queried again.
+ * <p>
+ * An entry may also have a tag, a cheap-to-compute value which identifies the state it was built from (for example the list of camera ids). A
+ * cached entry is only returned if its tag matches the current one.
+ * <p>
+ * If the cache is not enabled, nothing is read or written.
+ */
+public final class CapabilityCache {
+
+    public static final String KEY_ENCODERS = "encoders";
+    public static final String KEY_CAMERAS = "cameras";
+    public static final String KEY_SCREEN_CAPTURE_API = "capture.screen.api";
+
+    private static final String FILE_PATH = "/data/local/tmp/scrcpy-capabilities";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_VERSION = "version";
+    private static final String TAG_SUFFIX = ".tag";
+
+    private static final Properties PROPERTIES = new Properties();
+
+    private static boolean enabled;
+
+    private CapabilityCache() {
+        // not instantiable
+    }
+
+    /**
+     * Enable the cache, and load it from the device.
+     */
+    public static synchronized void enable() {
+        enabled = true;
+
+        try (InputStream in = new FileInputStream(FILE_PATH)) {
+            PROPERTIES.load(in);
+        } catch (FileNotFoundException e) {
+            // No cache yet
+        } catch (IOException | IllegalArgumentException e) {
+            Ln.w("Could not read the capability cache: " + e.getMessage());
+            PROPERTIES.clear();
+        }
+
+        if (!Build.FINGERPRINT.equals(PROPERTIES.getProperty(KEY_FINGERPRINT))
+                || !BuildConfig.VERSION_NAME.equals(PROPERTIES.getProperty(KEY_VERSION))) {
+            if (!PROPERTIES.isEmpty()) {
+                Ln.d("Capability cache is stale, rebuilding");
+            }
+            PROPERTIES.clear();
+            PROPERTIES.setProperty(KEY_FINGERPRINT, Build.FINGERPRINT);
+            PROPERTIES.setProperty(KEY_VERSION, BuildConfig.VERSION_NAME);
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String get(String key) {
+        return get(key, null);
+    }
+
+    /**
+     * Return the cached value for a key, or {@code null} if there is none or if its tag does not match.
+     */
+    public static synchronized String get(String key, String tag) {
+        if (!enabled) {
+            return null;
+        }
+
+        if (!Objects.equals(tag, PROPERTIES.getProperty(key + TAG_SUFFIX))) {
+            return null;
+        }
+        return PROPERTIES.getProperty(key);
+    }
+
+    public static void put(String key, String value) {
+        put(key, null, value);
+    }
+
+    /**
+     * Store a value, and write the cache to the device if it changed.
+     */
+    public static synchronized void put(String key, String tag, String value) {
+        if (!enabled) {
+            return;
+        }
+
+        String tagKey = key + TAG_SUFFIX;
+        if (value.equals(PROPERTIES.getProperty(key)) && Objects.equals(tag, PROPERTIES.getProperty(tagKey))) {
+            // Up to date
+            return;
+        }
+
+        PROPERTIES.setProperty(key, value);
+        if (tag != null) {
+            PROPERTIES.setProperty(tagKey, tag);
+        } else {
+            PROPERTIES.remove(tagKey);
+        }
+        Ln.d("Capability cache: updated " + key);
+        save();
+    }
+
+    /**
+     * Remove a stale entry, so that it is rebuilt on the next query.
+     */
+    public static synchronized void remove(String key) {
+        if (!enabled || !PROPERTIES.containsKey(key)) {
+            return;
+        }
+
+        PROPERTIES.remove(key);
+        PROPERTIES.remove(key + TAG_SUFFIX);
+        Ln.d("Capability cache: removed " + key);
+        save();
+    }
+
+    /**
+     * Return all the encoders of the device (one entry per supported type), from the cache if possible.
+     */
+    public static List<EncoderInfo> getEncoders() {
+        String value = get(KEY_ENCODERS);
+        if (value != null) {
+            List<EncoderInfo> encoders = EncoderInfo.parse(value);
+            if (encoders != null) {
+                return encoders;
+            }
+        }
+
+        List<EncoderInfo> encoders = CodecUtils.queryEncoders();
+        put(KEY_ENCODERS, EncoderInfo.serialize(encoders));
+        return encoders;
+    }
+
+    /**
+     * Return the encoders supporting a mime type, in the order of the device codec list.
+     */
+    public static List<EncoderInfo> getEncoders(String mimeType) {
+        List<EncoderInfo> result = new ArrayList<>();
+        for (EncoderInfo encoder : getEncoders()) {
+            if (encoder.getMimeType().equals(mimeType)) {
+                result.add(encoder);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the cached default encoder for a mime type (the first one which is not an alias, like {@code MediaCodec.createEncoderByType()}),
+     * or {@code null} if the cache is disabled.
+     */
+    public static String getDefaultEncoderName(String mimeType) {
+        if (!isEnabled()) {
+            // Querying the encoders would be slower than letting the framework select the default one
+            return null;
+        }
+
+        for (EncoderInfo encoder : getEncoders(mimeType)) {
+            if (!encoder.isAlias()) {
+                return encoder.getName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the cached main mime type of an encoder (its first supported type), or {@code null} if the encoder is unknown or the cache is
+     * disabled.
+     */
+    public static String getEncoderMimeType(String encoderName) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        for (EncoderInfo encoder : getEncoders()) {
+            if (encoder.getName().equals(encoderName)) {
+                return encoder.getMimeType();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discard the cached encoders, when they do not match the actual ones (the encoders may change without a system update, for example on a
+     * media module update).
+     */
+    public static void invalidateEncoders() {
+        remove(KEY_ENCODERS);
+    }
+
+    /**
+     * Return the cameras and their stream configurations, from the cache if the camera ids did not change (an external camera may be plugged
+     * in).
+     */
+    public static List<CameraInfo> getCameras(CameraManager cameraManager) throws CameraAccessException {
+        String[] cameraIds = cameraManager.getCameraIdList();
+        String tag = Arrays.toString(cameraIds);
+        String value = get(KEY_CAMERAS, tag);
+        if (value != null) {
+            List<CameraInfo> cameras = CameraInfo.parse(value);
+            if (cameras != null) {
+                return cameras;
+            }
+        }
+
+        List<CameraInfo> cameras = new ArrayList<>();
+        for (String id : cameraIds) {
+            cameras.add(queryCamera(cameraManager, id));
+        }
+        put(KEY_CAMERAS, tag, CameraInfo.serialize(cameras));
+        return cameras;
+    }
+
+    private static CameraInfo queryCamera(CameraManager cameraManager, String id) throws CameraAccessException {
+        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(id);
+
+        int facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        Rect activeArray = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+        Size activeArraySize = new Size(activeArray.width(), activeArray.height());
+
+        SortedSet<Integer> fps = new TreeSet<>();
+        try {
+            // Capture frame rates for low-FPS mode are the same for every resolution
+            fps = getUniqueSet(characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES));
+        } catch (Exception e) {
+            // Some devices may provide invalid ranges, causing an IllegalArgumentException "lower must be less than or equal to upper"
+            Ln.w("Could not get available frame rates for camera " + id, e);
+        }
+
+        List<Size> sizes = new ArrayList<>();
+        List<Size> highSpeedSizes = new ArrayList<>();
+        SortedSet<Integer> highSpeedFps = new TreeSet<>();
+        StreamConfigurationMap configs = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        if (configs != null) {
+            addSizes(sizes, configs.getOutputSizes(MediaCodec.class));
+            addSizes(highSpeedSizes, configs.getHighSpeedVideoSizes());
+            if (!highSpeedSizes.isEmpty()) {
+                highSpeedFps = getUniqueSet(configs.getHighSpeedVideoFpsRanges());
+            }
+        }
+
+        return new CameraInfo(id, facing, activeArraySize, fps, sizes, highSpeedSizes, highSpeedFps);
+    }
+
+    private static void addSizes(List<Size> list, android.util.Size[] sizes) {
+        if (sizes != null) {
+            for (android.util.Size size : sizes) {
+                list.add(new Size(size.getWidth(), size.getHeight()));
+            }
+        }
+    }
+
+    private static SortedSet<Integer> getUniqueSet(Range<Integer>[] ranges) {
+        SortedSet<Integer> set = new TreeSet<>();
+        for (Range<Integer> range : ranges) {
+            set.add(range.getUpper());
+        }
+        return set;
+    }
+
+    private static void save() {
+        // Write to a temporary file then rename it, so that another server instance never reads a partial file. If several instances update
+        // the cache concurrently, an update may be lost (it will be rebuilt on the next query).
+        File file = new File(FILE_PATH);
+        File tmpFile = new File(FILE_PATH + "." + Process.myPid() + ".tmp");
+        try {
+            try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+                PROPERTIES.store(out, null);
+            }
+            if (!tmpFile.renameTo(file)) {
+                throw new IOException("Could not rename " + tmpFile);
+            }
+        } catch (IOException e) {
+            Ln.w("Could not write the capability cache: " + e.getMessage());
+            tmpFile.delete();
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package com.genymobile.scrcpy.util;
 
+import com.genymobile.scrcpy.AndroidVersions;
+
+import android.annotation.TargetApi;
+import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaCodecList;
 import android.media.MediaFormat;
+import android.os.Build;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public final class CodecUtils {
@@ -26,13 +31,57 @@ public final class CodecUtils {
         }
     }
 
-    public static MediaCodecInfo[] getEncoders(MediaCodecList codecs, String mimeType) {
-        List<MediaCodecInfo> result = new ArrayList<>();
+    /**
+     * Create the default encoder for a mime type, selected from the cached encoders if possible.
+     */
+    public static MediaCodec createDefaultEncoder(String mimeType) throws IOException {
+        String encoderName = CapabilityCache.getDefaultEncoderName(mimeType);
+        if (encoderName != null) {
+            try {
+                return MediaCodec.createByCodecName(encoderName);
+            } catch (IOException | IllegalArgumentException e) {
+                Ln.w("Cached default encoder '" + encoderName + "' is not available: " + e.getMessage());
+                CapabilityCache.invalidateEncoders();
+            }
+        }
+        return MediaCodec.createEncoderByType(mimeType);
+    }
+
+    /**
+     * Query all the encoders of the device, one entry per supported type (this is slow, prefer {@link CapabilityCache#getEncoders()}).
+     */
+    public static List<EncoderInfo> queryEncoders() {
+        List<EncoderInfo> result = new ArrayList<>();
+        MediaCodecList codecs = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
         for (MediaCodecInfo codecInfo : codecs.getCodecInfos()) {
-            if (codecInfo.isEncoder() && Arrays.asList(codecInfo.getSupportedTypes()).contains(mimeType)) {
-                result.add(codecInfo);
+            if (!codecInfo.isEncoder()) {
+                continue;
+            }
+            String hwType = null;
+            boolean vendor = false;
+            String canonicalName = null;
+            if (Build.VERSION.SDK_INT >= AndroidVersions.API_29_ANDROID_10) {
+                hwType = getHwCodecType(codecInfo);
+                vendor = codecInfo.isVendor();
+                if (codecInfo.isAlias()) {
+                    canonicalName = codecInfo.getCanonicalName();
+                }
             }
+            for (String mimeType : codecInfo.getSupportedTypes()) {
+                result.add(new EncoderInfo(codecInfo.getName(), mimeType, hwType, vendor, canonicalName));
+            }
+        }
+        return result;
+    }
+
+    @TargetApi(AndroidVersions.API_29_ANDROID_10)
+    private static String getHwCodecType(MediaCodecInfo info) {
+        if (info.isSoftwareOnly()) {
+            return EncoderInfo.HW_TYPE_SW;
+        }
+        if (info.isHardwareAccelerated()) {
+            return EncoderInfo.HW_TYPE_HW;
         }
-        return result.toArray(new MediaCodecInfo[result.size()]);
+        return EncoderInfo.HW_TYPE_HYBRID;
     }
 }
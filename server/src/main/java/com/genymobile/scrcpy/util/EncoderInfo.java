@@ -0,0 +1,95 @@
+package com.genymobile.scrcpy.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An encoder of the device, as stored in the {@link CapabilityCache}.
+ */
+public final class EncoderInfo {
+
+    public static final String HW_TYPE_HW = "hw";
+    public static final String HW_TYPE_SW = "sw";
+    public static final String HW_TYPE_HYBRID = "hybrid";
+
+    private static final String ENTRY_SEPARATOR = "|";
+    private static final String FIELD_SEPARATOR = ",";
+    private static final int FIELD_COUNT = 5;
+
+    private final String name;
+    private final String mimeType;
+    private final String hwType; // null if unknown (before Android 10)
+    private final boolean vendor;
+    private final String canonicalName; // null if not an alias
+
+    public EncoderInfo(String name, String mimeType, String hwType, boolean vendor, String canonicalName) {
+        this.name = name;
+        this.mimeType = mimeType;
+        this.hwType = hwType;
+        this.vendor = vendor;
+        this.canonicalName = canonicalName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getHwType() {
+        return hwType;
+    }
+
+    public boolean isVendor() {
+        return vendor;
+    }
+
+    public boolean isAlias() {
+        return canonicalName != null;
+    }
+
+    public String getCanonicalName() {
+        return canonicalName;
+    }
+
+    public static String serialize(List<EncoderInfo> encoders) {
+        StringBuilder builder = new StringBuilder();
+        for (EncoderInfo encoder : encoders) {
+            if (builder.length() > 0) {
+                builder.append(ENTRY_SEPARATOR);
+            }
+            builder.append(encoder.name).append(FIELD_SEPARATOR)
+                    .append(encoder.mimeType).append(FIELD_SEPARATOR)
+                    .append(encoder.hwType != null ? encoder.hwType : "").append(FIELD_SEPARATOR)
+                    .append(encoder.vendor ? 1 : 0).append(FIELD_SEPARATOR)
+                    .append(encoder.canonicalName != null ? encoder.canonicalName : "");
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parse a list of encoders serialized by {@link #serialize(List)}.
+     *
+     * @return the encoders, or {@code null} if the value is malformed
+     */
+    public static List<EncoderInfo> parse(String value) {
+        List<EncoderInfo> encoders = new ArrayList<>();
+        if (value.isEmpty()) {
+            return encoders;
+        }
+
+        for (String entry : value.split("\\" + ENTRY_SEPARATOR)) {
+            String[] fields = entry.split(FIELD_SEPARATOR, -1);
+            if (fields.length != FIELD_COUNT || fields[0].isEmpty() || fields[1].isEmpty()) {
+                return null;
+            }
+            String hwType = fields[2].isEmpty() ? null : fields[2];
+            boolean vendor = "1".equals(fields[3]);
+            String canonicalName = fields[4].isEmpty() ? null : fields[4];
+            encoders.add(new EncoderInfo(fields[0], fields[1], hwType, vendor, canonicalName));
+        }
+        return encoders;
+    }
+}
@@ -59,6 +59,50 @@ public final class IO {
         writeFully(fd, ByteBuffer.wrap(buffer, offset, len));
     }
 
+    private static int writev(FileDescriptor fd, Object[] buffers, int[] offsets, int[] byteCounts) throws IOException {
+        while (true) {
+            try {
+                return Os.writev(fd, buffers, offsets, byteCounts);
+            } catch (ErrnoException e) {
+                if (e.errno != OsConstants.EINTR) {
+                    throw new IOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write several buffers using as few {@code writev()} calls as possible.
+     * <p>
+     * Each buffer must be either a {@code byte[]} or a direct {@link ByteBuffer} (in that case, the offset is relative to the start of the buffer,
+     * not to its position). On return, {@code offsets} and {@code byteCounts} are consumed: all the byte counts are 0.
+     */
+    public static void writevFully(FileDescriptor fd, Object[] buffers, int[] offsets, int[] byteCounts) throws IOException {
+        assert buffers.length == offsets.length && buffers.length == byteCounts.length;
+
+        long remaining = 0;
+        for (int byteCount : byteCounts) {
+            remaining += byteCount;
+        }
+
+        while (remaining > 0) {
+            int w = writev(fd, buffers, offsets, byteCounts);
+            if (BuildConfig.DEBUG && w < 0) {
+                // w should not be negative, since an exception is thrown on error
+                throw new AssertionError("Os.writev() returned a negative value (" + w + ")");
+            }
+            remaining -= w;
+
+            // Consume the written bytes, so that the next call only writes the remaining ones
+            for (int i = 0; i < byteCounts.length && w > 0; ++i) {
+                int consumed = Math.min(w, byteCounts[i]);
+                offsets[i] += consumed;
+                byteCounts[i] -= consumed;
+                w -= consumed;
+            }
+        }
+    }
+
     public static String toString(InputStream inputStream) {
         StringBuilder builder = new StringBuilder();
         Scanner scanner = new Scanner(inputStream);
@@ -0,0 +1,93 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Streamer;
+
+/**
+ * Adapt the video bit rate to the socket backpressure.
+ * <p>
+ * The time spent blocked in socket writes is measured over fixed windows. If the writer is blocked most of the time, the link is congested and the
+ * bit rate is decreased multiplicatively. After several windows without backpressure, it is increased again, up to the maximum.
+ */
+public final class BitRateController implements Streamer.WriteListener {
+
+    public interface Listener {
+        /**
+         * Called (on the writer thread) when the target bit rate changes.
+         */
+        void onBitRateChanged(int bitRate);
+    }
+
+    private static final long WINDOW_NS = 500_000_000; // 500ms
+    private static final float CONGESTED_BUSY_RATIO = 0.5f;
+    private static final float IDLE_BUSY_RATIO = 0.1f;
+    private static final int IDLE_WINDOWS_BEFORE_INCREASE = 4;
+    private static final float DECREASE_FACTOR = 0.75f;
+    private static final float INCREASE_FACTOR = 1.1f;
+
+    private final int minBitRate;
+    private final int maxBitRate;
+    private final Listener listener;
+
+    private volatile int bitRate;
+
+    // Accessed only from the writer thread
+    private long windowStart = -1;
+    private long windowBusyNs;
+    private int idleWindows;
+
+    public BitRateController(int minBitRate, int maxBitRate, int initialBitRate, Listener listener) {
+        assert minBitRate > 0 && minBitRate <= maxBitRate;
+        this.minBitRate = minBitRate;
+        this.maxBitRate = maxBitRate;
+        this.listener = listener;
+        this.bitRate = clamp(initialBitRate);
+    }
+
+    public int getBitRate() {
+        return bitRate;
+    }
+
+    @Override
+    public void onPacketWritten(long pts, int size, long writeDurationNs) {
+        update(System.nanoTime(), writeDurationNs);
+    }
+
+    void update(long now, long writeDurationNs) {
+        if (windowStart == -1) {
+            windowStart = now;
+        }
+
+        windowBusyNs += writeDurationNs;
+
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_NS) {
+            return;
+        }
+
+        float busyRatio = (float) windowBusyNs / elapsed;
+        windowStart = now;
+        windowBusyNs = 0;
+
+        int newBitRate = bitRate;
+        if (busyRatio >= CONGESTED_BUSY_RATIO) {
+            idleWindows = 0;
+            newBitRate = clamp((int) (bitRate * DECREASE_FACTOR));
+        } else if (busyRatio <= IDLE_BUSY_RATIO) {
+            if (++idleWindows >= IDLE_WINDOWS_BEFORE_INCREASE) {
+                idleWindows = 0;
+                newBitRate = clamp((int) Math.min((long) (bitRate * INCREASE_FACTOR), Integer.MAX_VALUE));
+            }
+        } else {
+            idleWindows = 0;
+        }
+
+        if (newBitRate != bitRate) {
+            bitRate = newBitRate;
+            listener.onBitRateChanged(newBitRate);
+        }
+    }
+
+    private int clamp(int value) {
+        return Math.max(minBitRate, Math.min(maxBitRate, value));
+    }
+}
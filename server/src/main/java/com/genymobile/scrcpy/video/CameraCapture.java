@@ -9,6 +9,8 @@ import com.genymobile.scrcpy.opengl.AffineOpenGLFilter;
 import com.genymobile.scrcpy.opengl.OpenGLFilter;
 import com.genymobile.scrcpy.opengl.OpenGLRunner;
 import com.genymobile.scrcpy.util.AffineMatrix;
+import com.genymobile.scrcpy.util.CameraInfo;
+import com.genymobile.scrcpy.util.CapabilityCache;
 import com.genymobile.scrcpy.util.HandlerExecutor;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
@@ -19,7 +21,6 @@ import android.annotation.TargetApi;
 import android.graphics.Rect;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCaptureSession;
-import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraConstrainedHighSpeedCaptureSession;
 import android.hardware.camera2.CameraDevice;
 import android.hardware.camera2.CameraManager;
@@ -27,8 +28,6 @@ import android.hardware.camera2.CaptureFailure;
 import android.hardware.camera2.CaptureRequest;
 import android.hardware.camera2.params.OutputConfiguration;
 import android.hardware.camera2.params.SessionConfiguration;
-import android.hardware.camera2.params.StreamConfigurationMap;
-import android.media.MediaCodec;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.util.Range;
@@ -142,8 +141,8 @@ public class CameraCapture extends SurfaceCapture {
     private static String selectCamera(String explicitCameraId, CameraFacing cameraFacing) throws CameraAccessException, ConfigurationException {
         CameraManager cameraManager = ServiceManager.getCameraManager();
 
-        String[] cameraIds = cameraManager.getCameraIdList();
         if (explicitCameraId != null) {
+            String[] cameraIds = cameraManager.getCameraIdList();
             if (!Arrays.asList(cameraIds).contains(explicitCameraId)) {
                 Ln.e("Camera with id " + explicitCameraId + " not found\n" + LogUtils.buildCameraListMessage(false));
                 throw new ConfigurationException("Camera id not found");
@@ -153,15 +152,14 @@ public class CameraCapture extends SurfaceCapture {
 
         if (cameraFacing == null) {
             // Use the first one
+            String[] cameraIds = cameraManager.getCameraIdList();
             return cameraIds.length > 0 ? cameraIds[0] : null;
         }
 
-        for (String cameraId : cameraIds) {
-            CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
-
-            int facing = characteristics.get(CameraCharacteristics.LENS_FACING);
-            if (cameraFacing.value() == facing) {
-                return cameraId;
+        // The characteristics are slow to query, use the cached ones
+        for (CameraInfo camera : CapabilityCache.getCameras(cameraManager)) {
+            if (cameraFacing.value() == camera.getFacing()) {
+                return camera.getId();
             }
         }
 
@@ -176,21 +174,19 @@ public class CameraCapture extends SurfaceCapture {
             return explicitSize;
         }
 
-        CameraManager cameraManager = ServiceManager.getCameraManager();
-        CameraCharacteristics characteristics = cameraManager.getCameraCharacteristics(cameraId);
-
-        StreamConfigurationMap configs = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
-        android.util.Size[] sizes = highSpeed ? configs.getHighSpeedVideoSizes() : configs.getOutputSizes(MediaCodec.class);
-        if (sizes == null) {
+        CameraInfo camera = findCamera(cameraId);
+        if (camera == null) {
             return null;
         }
 
-        Stream<android.util.Size> stream = Arrays.stream(sizes);
+        List<Size> sizes = highSpeed ? camera.getHighSpeedSizes() : camera.getSizes();
+
+        Stream<Size> stream = sizes.stream();
         if (maxSize > 0) {
             stream = stream.filter(it -> it.getWidth() <= maxSize && it.getHeight() <= maxSize);
         }
 
-        Float targetAspectRatio = resolveAspectRatio(aspectRatio, characteristics);
+        Float targetAspectRatio = resolveAspectRatio(aspectRatio, camera);
         if (targetAspectRatio != null) {
             stream = stream.filter(it -> {
                 float ar = ((float) it.getWidth() / it.getHeight());
@@ -200,7 +196,7 @@ public class CameraCapture extends SurfaceCapture {
             });
         }
 
-        Optional<android.util.Size> selected = stream.max((s1, s2) -> {
+        Optional<Size> selected = stream.max((s1, s2) -> {
             // Greater width is better
             int cmp = Integer.compare(s1.getWidth(), s2.getWidth());
             if (cmp != 0) {
@@ -228,23 +224,27 @@ public class CameraCapture extends SurfaceCapture {
             return Integer.compare(s1.getHeight(), s2.getHeight());
         });
 
-        if (selected.isPresent()) {
-            android.util.Size size = selected.get();
-            return new Size(size.getWidth(), size.getHeight());
-        }
+        // Not found if empty
+        return selected.orElse(null);
+    }
 
-        // Not found
+    private static CameraInfo findCamera(String cameraId) throws CameraAccessException {
+        for (CameraInfo camera : CapabilityCache.getCameras(ServiceManager.getCameraManager())) {
+            if (camera.getId().equals(cameraId)) {
+                return camera;
+            }
+        }
         return null;
     }
 
-    private static Float resolveAspectRatio(CameraAspectRatio ratio, CameraCharacteristics characteristics) {
+    private static Float resolveAspectRatio(CameraAspectRatio ratio, CameraInfo camera) {
         if (ratio == null) {
             return null;
         }
 
         if (ratio.isSensor()) {
-            Rect activeSize = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-            return (float) activeSize.width() / activeSize.height();
+            Size activeSize = camera.getActiveArraySize();
+            return (float) activeSize.getWidth() / activeSize.getHeight();
         }
 
         return ratio.getAspectRatio();
@@ -257,7 +257,7 @@ public class CameraCapture extends SurfaceCapture {
             OpenGLFilter glFilter = new AffineOpenGLFilter(transform);
             // The transform matrix returned by SurfaceTexture is incorrect for camera capture (it often contains an additional unexpected 90°
             // rotation). Use a vertical flip transform matrix instead.
-            glRunner = new OpenGLRunner(glFilter, VFLIP_MATRIX);
+            glRunner = createOpenGLRunner(glFilter, VFLIP_MATRIX);
             surface = glRunner.start(captureSize, videoSize, surface);
         }
 
@@ -271,6 +271,11 @@ public class CameraCapture extends SurfaceCapture {
         }
     }
 
+    @Override
+    public boolean rendersThroughOpenGL() {
+        return transform != null;
+    }
+
     @Override
     public void stop() {
         if (glRunner != null) {
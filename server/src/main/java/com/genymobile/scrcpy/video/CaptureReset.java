@@ -11,12 +11,18 @@ public class CaptureReset implements SurfaceCapture.CaptureListener {
     // Current instance of MediaCodec to "interrupt" on reset
     private MediaCodec runningMediaCodec;
 
+    // Time of the first reset request not measured yet (System.nanoTime()), 0 if none
+    private long requestTimeNs;
+
     public boolean consumeReset() {
         return reset.getAndSet(false);
     }
 
     public synchronized void reset() {
         reset.set(true);
+        if (requestTimeNs == 0) {
+            requestTimeNs = System.nanoTime();
+        }
         if (runningMediaCodec != null) {
             try {
                 runningMediaCodec.signalEndOfInputStream();
@@ -26,6 +32,15 @@ public class CaptureReset implements SurfaceCapture.CaptureListener {
         }
     }
 
+    /**
+     * Return the time of the first reset request since the last call (to measure the reset duration), or 0 if there is none.
+     */
+    public synchronized long consumeRequestTime() {
+        long time = requestTimeNs;
+        requestTimeNs = 0;
+        return time;
+    }
+
     public synchronized void setRunningMediaCodec(MediaCodec runningMediaCodec) {
         this.runningMediaCodec = runningMediaCodec;
     }
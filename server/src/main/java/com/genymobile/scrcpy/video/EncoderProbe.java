@@ -0,0 +1,207 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.opengl.OpenGLException;
+import com.genymobile.scrcpy.opengl.SyntheticFrameRenderer;
+import com.genymobile.scrcpy.util.CapabilityCache;
+import com.genymobile.scrcpy.util.Codec;
+import com.genymobile.scrcpy.util.EncoderInfo;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmark the encoders available for a codec on a short synthetic sequence, rendered through OpenGL at the target size.
+ * <p>
+ * Each encoder is measured in two phases:
+ * <ol>
+ *     <li>latency: the frames are rendered one by one, each one after the previous one has been output;</li>
+ *     <li>throughput: the frames are rendered as fast as the encoder accepts them.</li>
+ * </ol>
+ */
+public final class EncoderProbe {
+
+    private static final int LATENCY_FRAME_COUNT = 10;
+    private static final int THROUGHPUT_FRAME_COUNT = 60;
+    private static final long FRAME_INTERVAL_NS = 1_000_000_000 / 60; // timestamps at 60 fps
+    private static final long OUTPUT_TIMEOUT_NS = 500_000_000; // per frame in the latency phase, and for the EOS
+
+    private static final class Measures {
+        private final long[] renderTimesNs = new long[LATENCY_FRAME_COUNT + THROUGHPUT_FRAME_COUNT];
+        private final long[] latenciesNs = new long[LATENCY_FRAME_COUNT];
+        private int lastIndex = -1; // index of the last output frame
+        private long lastOutputTimeNs;
+        private int frameCount;
+        private long totalSize;
+        private boolean eos;
+
+        private Measures() {
+            Arrays.fill(latenciesNs, OUTPUT_TIMEOUT_NS);
+        }
+    }
+
+    private EncoderProbe() {
+        // not instantiable
+    }
+
+    /**
+     * Probe all the encoders for the codec (this may take a few seconds).
+     *
+     * @param codec the video codec
+     * @param size the video size
+     * @param bitRate the video bit rate
+     * @return the results, in the order of the encoders list
+     */
+    public static List<EncoderProbeResult> run(Codec codec, Size size, int bitRate) {
+        List<EncoderInfo> encoders = CapabilityCache.getEncoders(codec.getMimeType());
+
+        List<EncoderProbeResult> results = new ArrayList<>();
+        for (EncoderInfo info : encoders) {
+            if (info.isAlias()) {
+                // Same encoder as its canonical name
+                continue;
+            }
+            EncoderProbeResult result = probe(codec, info.getName(), size, bitRate);
+            Ln.d("Encoder probe: " + result);
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static EncoderProbeResult probe(Codec codec, String encoderName, Size size, int bitRate) {
+        MediaCodec mediaCodec = null;
+        Surface surface = null;
+        SyntheticFrameRenderer renderer = null;
+        boolean started = false;
+        try {
+            mediaCodec = MediaCodec.createByCodecName(encoderName);
+            MediaFormat format = SurfaceEncoder.createFormat(codec.getMimeType(), bitRate, false, 0, null);
+            format.setInteger(MediaFormat.KEY_WIDTH, size.getWidth());
+            format.setInteger(MediaFormat.KEY_HEIGHT, size.getHeight());
+            mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            surface = mediaCodec.createInputSurface();
+            mediaCodec.start();
+            started = true;
+
+            renderer = new SyntheticFrameRenderer(surface, size);
+            return measure(mediaCodec, renderer, encoderName);
+        } catch (Exception e) {
+            // Any failure just disqualifies the encoder
+            Ln.w("Could not probe encoder " + encoderName + ": " + e.getMessage());
+            return EncoderProbeResult.failed(encoderName);
+        } finally {
+            if (renderer != null) {
+                renderer.release();
+            }
+            if (mediaCodec != null) {
+                if (started) {
+                    try {
+                        mediaCodec.stop();
+                    } catch (IllegalStateException e) {
+                        // ignore
+                    }
+                }
+                mediaCodec.release();
+            }
+            if (surface != null) {
+                surface.release();
+            }
+        }
+    }
+
+    private static EncoderProbeResult measure(MediaCodec codec, SyntheticFrameRenderer renderer, String encoderName) {
+        Measures measures = new Measures();
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+        for (int i = 0; i < LATENCY_FRAME_COUNT; ++i) {
+            render(renderer, measures, i);
+            long deadline = System.nanoTime() + OUTPUT_TIMEOUT_NS;
+            while (measures.lastIndex < i && !measures.eos) {
+                long remainingNs = deadline - System.nanoTime();
+                if (remainingNs <= 0) {
+                    // The encoder may need more input frames to output this one (its latency will be measured later)
+                    break;
+                }
+                drain(codec, bufferInfo, remainingNs / 1000, measures);
+            }
+        }
+
+        long throughputStartNs = System.nanoTime();
+        int throughputStartFrameCount = measures.frameCount;
+        for (int i = LATENCY_FRAME_COUNT; i < LATENCY_FRAME_COUNT + THROUGHPUT_FRAME_COUNT; ++i) {
+            render(renderer, measures, i);
+            // Do not wait, just release the available output buffers
+            while (drain(codec, bufferInfo, 0, measures)) {
+                // continue
+            }
+        }
+
+        codec.signalEndOfInputStream();
+        long deadline = System.nanoTime() + OUTPUT_TIMEOUT_NS;
+        while (!measures.eos) {
+            long remainingNs = deadline - System.nanoTime();
+            if (remainingNs <= 0) {
+                break;
+            }
+            drain(codec, bufferInfo, remainingNs / 1000, measures);
+        }
+
+        int throughputFrameCount = measures.frameCount - throughputStartFrameCount;
+        if (throughputFrameCount <= 0) {
+            Ln.w("Encoder " + encoderName + " produced no frame");
+            return EncoderProbeResult.failed(encoderName);
+        }
+
+        long[] latencies = measures.latenciesNs.clone();
+        Arrays.sort(latencies);
+        long latencyUs = latencies[latencies.length / 2] / 1000;
+        long frameTimeUs = (measures.lastOutputTimeNs - throughputStartNs) / throughputFrameCount / 1000;
+        long frameSize = measures.totalSize / measures.frameCount;
+        return new EncoderProbeResult(encoderName, latencyUs, frameTimeUs, frameSize);
+    }
+
+    private static void render(SyntheticFrameRenderer renderer, Measures measures, int index) {
+        renderer.render(index, index * FRAME_INTERVAL_NS);
+        measures.renderTimesNs[index] = System.nanoTime();
+    }
+
+    /**
+     * Dequeue and release one output buffer, if any is available within the timeout.
+     *
+     * @return {@code true} if a buffer has been dequeued, {@code false} otherwise
+     */
+    private static boolean drain(MediaCodec codec, MediaCodec.BufferInfo bufferInfo, long timeoutUs, Measures measures) {
+        int outputBufferId = codec.dequeueOutputBuffer(bufferInfo, timeoutUs);
+        if (outputBufferId < 0) {
+            // INFO_TRY_AGAIN_LATER or INFO_OUTPUT_FORMAT_CHANGED
+            return outputBufferId != MediaCodec.INFO_TRY_AGAIN_LATER;
+        }
+
+        try {
+            long now = System.nanoTime();
+            measures.eos = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            boolean isConfig = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+            if (!isConfig && bufferInfo.size > 0) {
+                int index = (int) ((bufferInfo.presentationTimeUs * 1000 + FRAME_INTERVAL_NS / 2) / FRAME_INTERVAL_NS);
+                if (index >= 0 && index < measures.renderTimesNs.length) {
+                    if (index < LATENCY_FRAME_COUNT) {
+                        measures.latenciesNs[index] = now - measures.renderTimesNs[index];
+                    }
+                    measures.lastIndex = Math.max(measures.lastIndex, index);
+                }
+                measures.lastOutputTimeNs = now;
+                ++measures.frameCount;
+                measures.totalSize += bufferInfo.size;
+            }
+        } finally {
+            codec.releaseOutputBuffer(outputBufferId, false);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+package com.genymobile.scrcpy.video;
+
+import java.util.List;
+
+/**
+ * The criterion to select the best encoder from the results of an {@link EncoderProbe}.
+ */
+public enum EncoderProbeObjective {
+    // Lowest median latency per frame
+    LATENCY("latency"),
+    // Highest frame rate when the frames are rendered as fast as possible
+    THROUGHPUT("throughput");
+
+    private final String name;
+
+    EncoderProbeObjective(String name) {
+        this.name = name;
+    }
+
+    public static EncoderProbeObjective findByName(String name) {
+        for (EncoderProbeObjective objective : EncoderProbeObjective.values()) {
+            if (name.equals(objective.name)) {
+                return objective;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Select the best encoder for this objective.
+     *
+     * @param results the probe results
+     * @return the index of the best result, or -1 if no encoder could be probed
+     */
+    public int selectBest(List<EncoderProbeResult> results) {
+        int best = -1;
+        for (int i = 0; i < results.size(); ++i) {
+            EncoderProbeResult result = results.get(i);
+            if (result.isOk() && (best == -1 || compare(result, results.get(best)) < 0)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private int compare(EncoderProbeResult a, EncoderProbeResult b) {
+        // On equality, prefer the encoder listed first (the platform lists the preferred encoders first)
+        switch (this) {
+            case LATENCY:
+                return Long.compare(a.getLatencyUs(), b.getLatencyUs());
+            case THROUGHPUT:
+                return Long.compare(a.getFrameTimeUs(), b.getFrameTimeUs());
+            default:
+                throw new AssertionError("Unexpected objective: " + this);
+        }
+    }
+}
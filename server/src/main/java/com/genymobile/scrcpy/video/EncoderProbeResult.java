@@ -0,0 +1,60 @@
+package com.genymobile.scrcpy.video;
+
+/**
+ * The measures of an encoder on the synthetic sequence of {@link EncoderProbe}.
+ */
+public final class EncoderProbeResult {
+
+    private final String name;
+    private final boolean ok;
+    private final long latencyUs; // median time between the rendering of a frame and its output
+    private final long frameTimeUs; // mean time per frame when the frames are rendered as fast as possible
+    private final long frameSize; // mean size of the output frames, in bytes
+
+    public EncoderProbeResult(String name, long latencyUs, long frameTimeUs, long frameSize) {
+        this(name, true, latencyUs, frameTimeUs, frameSize);
+    }
+
+    private EncoderProbeResult(String name, boolean ok, long latencyUs, long frameTimeUs, long frameSize) {
+        this.name = name;
+        this.ok = ok;
+        this.latencyUs = latencyUs;
+        this.frameTimeUs = frameTimeUs;
+        this.frameSize = frameSize;
+    }
+
+    /**
+     * Create the result of an encoder which could not be probed (it is never selected).
+     */
+    public static EncoderProbeResult failed(String name) {
+        return new EncoderProbeResult(name, false, 0, 0, 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isOk() {
+        return ok;
+    }
+
+    public long getLatencyUs() {
+        return latencyUs;
+    }
+
+    public long getFrameTimeUs() {
+        return frameTimeUs;
+    }
+
+    public long getFrameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public String toString() {
+        if (!ok) {
+            return name + ": failed";
+        }
+        return name + ": latency=" + latencyUs + "us frame_time=" + frameTimeUs + "us frame_size=" + frameSize + "B";
+    }
+}
@@ -0,0 +1,40 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.metrics.LatencySummary;
+
+/**
+ * Per-frame latencies, computed by a {@link FrameTracer} over its sliding window.
+ */
+public final class FrameLatency {
+
+    public static final FrameLatency EMPTY = new FrameLatency(new LatencySummary(0, 0, 0, 0), new LatencySummary(0, 0, 0, 0),
+            new LatencySummary(0, 0, 0, 0));
+
+    private final LatencySummary captureToDequeue;
+    private final LatencySummary dequeueToWrite;
+    private final LatencySummary captureToWrite;
+
+    public FrameLatency(LatencySummary captureToDequeue, LatencySummary dequeueToWrite, LatencySummary captureToWrite) {
+        this.captureToDequeue = captureToDequeue;
+        this.dequeueToWrite = dequeueToWrite;
+        this.captureToWrite = captureToWrite;
+    }
+
+    /**
+     * Time spent in the capture (SurfaceFlinger) and the encoder.
+     */
+    public LatencySummary getCaptureToDequeue() {
+        return captureToDequeue;
+    }
+
+    /**
+     * Time spent to write the encoded frame to the socket (including the send queue, if any).
+     */
+    public LatencySummary getDequeueToWrite() {
+        return dequeueToWrite;
+    }
+
+    public LatencySummary getCaptureToWrite() {
+        return captureToWrite;
+    }
+}
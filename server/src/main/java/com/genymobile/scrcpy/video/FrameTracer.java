@@ -0,0 +1,139 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.metrics.LatencySummary;
+
+import java.util.Arrays;
+
+/**
+ * Trace the timestamps of the last encoded frames, to measure where the latency comes from.
+ * <p>
+ * For each frame, it records:
+ * <ul>
+ *     <li>the capture time (the presentation timestamp of the frame, in the {@link System#nanoTime()} time base for display capture);</li>
+ *     <li>the time the encoded frame was dequeued from the encoder;</li>
+ *     <li>the time it was completely written to the socket.</li>
+ * </ul>
+ * The records are stored in a preallocated ring, so tracing does not allocate. The latency percentiles are computed on demand over the frames
+ * in the ring (a sliding window of the last frames).
+ */
+public final class FrameTracer implements Streamer.WriteListener {
+
+    private final long[] captureTimesUs;
+    private final long[] dequeueTimesNs;
+    private final long[] writeTimesNs; // 0 if the frame is not written yet
+
+    // Ring of frames: [head, head + count)
+    private int head;
+    private int count;
+    // Offset (from head) of the oldest frame which may still be written
+    private int nextWritten;
+
+    // Preallocated to compute the percentiles
+    private final long[] scratch;
+
+    public FrameTracer(int capacity) {
+        assert capacity > 0;
+        captureTimesUs = new long[capacity];
+        dequeueTimesNs = new long[capacity];
+        writeTimesNs = new long[capacity];
+        scratch = new long[capacity];
+    }
+
+    public synchronized void onFrameDequeued(long ptsUs, long dequeueTimeNs) {
+        int index;
+        if (count == captureTimesUs.length) {
+            // Overwrite the oldest frame
+            index = head;
+            head = (head + 1) % captureTimesUs.length;
+            if (nextWritten > 0) {
+                --nextWritten;
+            }
+        } else {
+            index = (head + count) % captureTimesUs.length;
+            ++count;
+        }
+
+        captureTimesUs[index] = ptsUs;
+        dequeueTimesNs[index] = dequeueTimeNs;
+        writeTimesNs[index] = 0;
+    }
+
+    public synchronized void onFrameWritten(long ptsUs, long writeTimeNs) {
+        // Frames are written in order, so the frame is normally the first one searched (the search only goes further if some frames have been
+        // dropped before being written)
+        for (int i = nextWritten; i < count; ++i) {
+            int index = (head + i) % captureTimesUs.length;
+            if (captureTimesUs[index] == ptsUs) {
+                writeTimesNs[index] = writeTimeNs;
+                // The older frames not written yet have been dropped, they will never be written
+                nextWritten = i + 1;
+                return;
+            }
+        }
+        // Not traced (for example a config packet), ignore
+    }
+
+    @Override
+    public void onPacketWritten(long pts, int size, long writeDurationNs) {
+        onFrameWritten(pts, System.nanoTime());
+    }
+
+    /**
+     * Compute the latency percentiles over the traced frames written to the socket.
+     */
+    public synchronized FrameLatency computeLatency() {
+        LatencySummary capture = summarize(Step.CAPTURE_TO_DEQUEUE);
+        LatencySummary socket = summarize(Step.DEQUEUE_TO_WRITE);
+        LatencySummary total = summarize(Step.CAPTURE_TO_WRITE);
+        return new FrameLatency(capture, socket, total);
+    }
+
+    private enum Step {
+        CAPTURE_TO_DEQUEUE,
+        DEQUEUE_TO_WRITE,
+        CAPTURE_TO_WRITE,
+    }
+
+    private LatencySummary summarize(Step step) {
+        int n = 0;
+        for (int i = 0; i < count; ++i) {
+            int index = (head + i) % captureTimesUs.length;
+            long writeTimeNs = writeTimesNs[index];
+            if (writeTimeNs == 0) {
+                continue;
+            }
+
+            long us;
+            switch (step) {
+                case CAPTURE_TO_DEQUEUE:
+                    us = dequeueTimesNs[index] / 1000 - captureTimesUs[index];
+                    break;
+                case DEQUEUE_TO_WRITE:
+                    us = (writeTimeNs - dequeueTimesNs[index]) / 1000;
+                    break;
+                default:
+                    us = writeTimeNs / 1000 - captureTimesUs[index];
+                    break;
+            }
+
+            // A negative value means that the capture timestamps are not in the System.nanoTime() time base (possible for cameras)
+            if (us >= 0) {
+                scratch[n++] = us;
+            }
+        }
+
+        if (n == 0) {
+            return new LatencySummary(0, 0, 0, 0);
+        }
+
+        Arrays.sort(scratch, 0, n);
+        return new LatencySummary(n, percentile(n, 50), percentile(n, 99), scratch[n - 1]);
+    }
+
+    private long percentile(int n, int percent) {
+        // Nearest-rank method
+        int rank = (n * percent + 99) / 100;
+        return scratch[Math.max(rank, 1) - 1];
+    }
+}
@@ -57,6 +57,11 @@ public class NewDisplayCapture extends SurfaceCapture {
     private final boolean vdSystemDecorations;
 
     private VirtualDisplay virtualDisplay;
+    private Surface displaySurface; // the surface the display renders to (the encoder surface, or the input surface of the OpenGL runner)
+
+    private Surface surface; // the target surface of the current capture
+    private boolean suspended;
+
     private Size videoSize;
     private Size displaySize; // the logical size of the display (including rotation)
     private Size physicalSize; // the physical size of the display (without rotation)
@@ -200,25 +205,79 @@ public class NewDisplayCapture extends SurfaceCapture {
 
     @Override
     public void start(Surface surface) throws IOException {
+        if (suspended) {
+            suspended = false;
+            if (surface == this.surface && restart()) {
+                return;
+            }
+            // The OpenGL runner cannot be reused, detach the display from its surface before releasing it (the display itself is always kept)
+            virtualDisplay.setSurface(null);
+            stop();
+        }
+        this.surface = surface;
+
         if (displayTransform != null) {
             assert glRunner == null;
             OpenGLFilter glFilter = new AffineOpenGLFilter(displayTransform);
-            glRunner = new OpenGLRunner(glFilter);
-            surface = glRunner.start(physicalSize, videoSize, surface);
+            glRunner = createOpenGLRunner(glFilter, null);
+            displaySurface = glRunner.start(physicalSize, videoSize, surface);
+        } else {
+            displaySurface = surface;
         }
 
         if (virtualDisplay == null) {
-            startNew(surface);
+            startNew(displaySurface);
         } else {
-            virtualDisplay.setSurface(surface);
+            virtualDisplay.setSurface(displaySurface);
+        }
+
+        notifyVirtualDisplay();
+    }
+
+    /**
+     * Restart the suspended capture to the same surface, reconfiguring the OpenGL runner in place instead of recreating it.
+     *
+     * @return {@code true} on success, {@code false} if the capture must be started from scratch
+     */
+    private boolean restart() {
+        if ((displayTransform != null) != (glRunner != null)) {
+            // The filter has been added or removed
+            return false;
+        }
+
+        try {
+            if (glRunner != null) {
+                // The display kept rendering to the runner while suspended
+                glRunner.restart(physicalSize, videoSize, new AffineOpenGLFilter(displayTransform));
+            } else {
+                virtualDisplay.setSurface(displaySurface);
+            }
+            notifyVirtualDisplay();
+        } catch (Exception | AssertionError e) {
+            Ln.w("Could not restart the capture in place", e);
+            if (glRunner != null) {
+                // The runner may have been restarted already, do not render anything until it is released
+                glRunner.pause();
+            }
+            return false;
         }
 
+        Ln.d("New display: capture restarted in place");
+        return true;
+    }
+
+    private void notifyVirtualDisplay() {
         if (vdListener != null) {
             PositionMapper positionMapper = PositionMapper.create(videoSize, eventTransform, displaySize);
             vdListener.onNewVirtualDisplay(virtualDisplay.getDisplay().getDisplayId(), positionMapper);
         }
     }
 
+    @Override
+    public boolean rendersThroughOpenGL() {
+        return displayTransform != null;
+    }
+
     @Override
     public void stop() {
         if (glRunner != null) {
@@ -227,10 +286,29 @@ public class NewDisplayCapture extends SurfaceCapture {
         }
     }
 
+    @Override
+    public void suspend() {
+        // Keep the OpenGL runner, but stop rendering to the surface while the encoder is reconfigured
+        if (glRunner != null) {
+            // The display keeps rendering to the runner, which consumes the frames without rendering them
+            glRunner.pause();
+        } else {
+            virtualDisplay.setSurface(null);
+        }
+        suspended = true;
+    }
+
     @Override
     public void release() {
         displaySizeMonitor.stopAndRelease();
 
+        if (virtualDisplay != null) {
+            // The capture may have been suspended instead of stopped
+            virtualDisplay.setSurface(null);
+        }
+        stop();
+        suspended = false;
+
         if (virtualDisplay != null) {
             virtualDisplay.release();
             virtualDisplay = null;
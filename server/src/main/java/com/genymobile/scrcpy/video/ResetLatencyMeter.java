@@ -0,0 +1,37 @@
+package com.genymobile.scrcpy.video;
+
+/**
+ * Measure the time from a capture reset request to the first frame encoded after it.
+ * <p>
+ * If several resets are requested before a frame is encoded, the latency is measured from the first request.
+ */
+final class ResetLatencyMeter {
+
+    // Time of the reset request being fulfilled (System.nanoTime()), 0 if none
+    private long requestTimeNs;
+
+    /**
+     * Notify that a new encoding session starts.
+     *
+     * @param resetRequestTimeNs the time of the reset request fulfilled by the new session, or 0 if none
+     */
+    void onSessionStarted(long resetRequestTimeNs) {
+        if (resetRequestTimeNs != 0 && requestTimeNs == 0) {
+            requestTimeNs = resetRequestTimeNs;
+        }
+    }
+
+    /**
+     * Notify that a frame has been encoded.
+     *
+     * @return the reset latency, in nanoseconds, if this is the first frame after a reset, or -1 otherwise
+     */
+    long onFrameEncoded(long timeNs) {
+        if (requestTimeNs == 0) {
+            return -1;
+        }
+        long latencyNs = timeNs - requestTimeNs;
+        requestTimeNs = 0;
+        return latencyNs;
+    }
+}
@@ -12,6 +12,7 @@ import com.genymobile.scrcpy.opengl.AffineOpenGLFilter;
 import com.genymobile.scrcpy.opengl.OpenGLFilter;
 import com.genymobile.scrcpy.opengl.OpenGLRunner;
 import com.genymobile.scrcpy.util.AffineMatrix;
+import com.genymobile.scrcpy.util.CapabilityCache;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
 import com.genymobile.scrcpy.wrappers.ServiceManager;
@@ -27,6 +28,13 @@ import java.io.IOException;
 
 public class ScreenCapture extends SurfaceCapture {
 
+    // Values of the capability cache entry (a DisplayManager failure is stored with its time, as "surface_control@<ms since epoch>")
+    private static final String CAPTURE_API_DISPLAY_MANAGER = "display_manager";
+    private static final String CAPTURE_API_SURFACE_CONTROL = "surface_control@";
+
+    // A DisplayManager failure may be transient, so it must not switch to SurfaceControl permanently
+    private static final long DISPLAY_MANAGER_FAILURE_EXPIRY_MS = 24 * 60 * 60 * 1000;
+
     private final VirtualDisplayListener vdListener;
     private final int displayId;
     private int maxSize;
@@ -42,6 +50,10 @@ public class ScreenCapture extends SurfaceCapture {
 
     private IBinder display;
     private VirtualDisplay virtualDisplay;
+    private Surface displaySurface; // the surface the display renders to (the encoder surface, or the input surface of the OpenGL runner)
+
+    private Surface surface; // the target surface of the current capture
+    private boolean suspended;
 
     private AffineMatrix transform;
     private OpenGLRunner glRunner;
@@ -102,14 +114,18 @@ public class ScreenCapture extends SurfaceCapture {
 
     @Override
     public void start(Surface surface) throws IOException {
-        if (display != null) {
-            SurfaceControl.destroyDisplay(display);
-            display = null;
-        }
-        if (virtualDisplay != null) {
-            virtualDisplay.release();
-            virtualDisplay = null;
+        if (suspended) {
+            suspended = false;
+            if (surface == this.surface && restart()) {
+                return;
+            }
+            // The kept resources cannot be reused (release the display first, it may render to the surface of the OpenGL runner)
+            releaseDisplay();
+            stop();
         }
+        this.surface = surface;
+
+        releaseDisplay();
 
         Size inputSize;
         if (transform != null) {
@@ -117,32 +133,99 @@ public class ScreenCapture extends SurfaceCapture {
             inputSize = displayInfo.getSize();
             assert glRunner == null;
             OpenGLFilter glFilter = new AffineOpenGLFilter(transform);
-            glRunner = new OpenGLRunner(glFilter);
-            surface = glRunner.start(inputSize, videoSize, surface);
+            glRunner = createOpenGLRunner(glFilter, null);
+            displaySurface = glRunner.start(inputSize, videoSize, surface);
         } else {
             // If there is no filter, the display must be rendered at target video size directly
             inputSize = videoSize;
+            displaySurface = surface;
         }
 
+        // Try SurfaceControl first if DisplayManager failed recently, to avoid the cost of a failing attempt on every start
+        boolean surfaceControlFirst = isDisplayManagerFailureCached();
+        boolean surfaceControl = surfaceControlFirst;
         try {
-            virtualDisplay = ServiceManager.getDisplayManager()
-                    .createVirtualDisplay("scrcpy", inputSize.getWidth(), inputSize.getHeight(), displayId, surface);
-            Ln.d("Display: using DisplayManager API");
-        } catch (Exception displayManagerException) {
+            startDisplay(surfaceControl, inputSize, displaySurface);
+        } catch (Exception firstException) {
+            surfaceControl = !surfaceControl;
             try {
-                display = createDisplay();
-
-                Size deviceSize = displayInfo.getSize();
-                int layerStack = displayInfo.getLayerStack();
-                setDisplaySurface(display, surface, deviceSize.toRect(), inputSize.toRect(), layerStack);
-                Ln.d("Display: using SurfaceControl API");
-            } catch (Exception surfaceControlException) {
+                startDisplay(surfaceControl, inputSize, displaySurface);
+            } catch (Exception secondException) {
+                Exception displayManagerException = surfaceControlFirst ? secondException : firstException;
+                Exception surfaceControlException = surfaceControlFirst ? firstException : secondException;
                 Ln.e("Could not create display using DisplayManager", displayManagerException);
                 Ln.e("Could not create display using SurfaceControl", surfaceControlException);
                 throw new AssertionError("Could not create display");
             }
         }
+        if (!surfaceControl) {
+            CapabilityCache.put(CapabilityCache.KEY_SCREEN_CAPTURE_API, CAPTURE_API_DISPLAY_MANAGER);
+        } else if (!surfaceControlFirst) {
+            // Only a DisplayManager failure which just happened is stored, so that the cached failure expires even if SurfaceControl keeps
+            // working
+            CapabilityCache.put(CapabilityCache.KEY_SCREEN_CAPTURE_API, CAPTURE_API_SURFACE_CONTROL + System.currentTimeMillis());
+        }
+
+        notifyVirtualDisplay(inputSize);
+    }
+
+    private static boolean isDisplayManagerFailureCached() {
+        String value = CapabilityCache.get(CapabilityCache.KEY_SCREEN_CAPTURE_API);
+        if (value == null || !value.startsWith(CAPTURE_API_SURFACE_CONTROL)) {
+            return false;
+        }
+
+        try {
+            long age = System.currentTimeMillis() - Long.parseLong(value.substring(CAPTURE_API_SURFACE_CONTROL.length()));
+            return age >= 0 && age < DISPLAY_MANAGER_FAILURE_EXPIRY_MS;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Restart the suspended capture to the same surface, reconfiguring the display and the OpenGL runner in place instead of recreating them.
+     *
+     * @return {@code true} on success, {@code false} if the capture must be started from scratch
+     */
+    private boolean restart() {
+        if ((transform != null) != (glRunner != null)) {
+            // The filter has been added or removed
+            return false;
+        }
+
+        try {
+            Size inputSize;
+            if (glRunner != null) {
+                inputSize = displayInfo.getSize();
+                glRunner.restart(inputSize, videoSize, new AffineOpenGLFilter(transform));
+            } else {
+                inputSize = videoSize;
+            }
+
+            if (virtualDisplay != null) {
+                virtualDisplay.resize(inputSize.getWidth(), inputSize.getHeight(), displayInfo.getDpi());
+                virtualDisplay.setSurface(displaySurface);
+            } else {
+                Size deviceSize = displayInfo.getSize();
+                setDisplaySurface(display, displaySurface, deviceSize.toRect(), inputSize.toRect(), displayInfo.getLayerStack());
+            }
+
+            notifyVirtualDisplay(inputSize);
+        } catch (Exception | AssertionError e) {
+            Ln.w("Could not restart the capture in place", e);
+            if (glRunner != null) {
+                // The runner may have been restarted already, do not render anything until it is released
+                glRunner.pause();
+            }
+            return false;
+        }
 
+        Ln.d("Display: capture restarted in place");
+        return true;
+    }
+
+    private void notifyVirtualDisplay(Size inputSize) {
         if (vdListener != null) {
             int virtualDisplayId;
             PositionMapper positionMapper;
@@ -160,6 +243,31 @@ public class ScreenCapture extends SurfaceCapture {
         }
     }
 
+    private void startDisplay(boolean surfaceControl, Size inputSize, Surface surface) throws Exception {
+        if (surfaceControl) {
+            display = createDisplay();
+            try {
+                Size deviceSize = displayInfo.getSize();
+                int layerStack = displayInfo.getLayerStack();
+                setDisplaySurface(display, surface, deviceSize.toRect(), inputSize.toRect(), layerStack);
+            } catch (Exception e) {
+                SurfaceControl.destroyDisplay(display);
+                display = null;
+                throw e;
+            }
+            Ln.d("Display: using SurfaceControl API");
+        } else {
+            virtualDisplay = ServiceManager.getDisplayManager()
+                    .createVirtualDisplay("scrcpy", inputSize.getWidth(), inputSize.getHeight(), displayId, surface);
+            Ln.d("Display: using DisplayManager API");
+        }
+    }
+
+    @Override
+    public boolean rendersThroughOpenGL() {
+        return transform != null;
+    }
+
     @Override
     public void stop() {
         if (glRunner != null) {
@@ -168,10 +276,36 @@ public class ScreenCapture extends SurfaceCapture {
         }
     }
 
+    @Override
+    public void suspend() {
+        // Keep the display and the OpenGL runner, but stop rendering to the surface while the encoder is reconfigured
+        if (glRunner != null) {
+            // The display keeps rendering to the runner, which consumes the frames without rendering them
+            glRunner.pause();
+        } else if (virtualDisplay != null) {
+            virtualDisplay.setSurface(null);
+        } else if (display != null) {
+            SurfaceControl.openTransaction();
+            try {
+                SurfaceControl.setDisplaySurface(display, null);
+            } finally {
+                SurfaceControl.closeTransaction();
+            }
+        }
+        suspended = true;
+    }
+
     @Override
     public void release() {
         displaySizeMonitor.stopAndRelease();
 
+        // The capture may have been suspended instead of stopped
+        releaseDisplay();
+        stop();
+        suspended = false;
+    }
+
+    private void releaseDisplay() {
         if (display != null) {
             SurfaceControl.destroyDisplay(display);
             display = null;
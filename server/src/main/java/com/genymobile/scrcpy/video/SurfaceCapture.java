@@ -2,6 +2,8 @@ package com.genymobile.scrcpy.video;
 
 import com.genymobile.scrcpy.device.ConfigurationException;
 import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.opengl.OpenGLFilter;
+import com.genymobile.scrcpy.opengl.OpenGLRunner;
 
 import android.view.Surface;
 
@@ -16,7 +18,18 @@ public abstract class SurfaceCapture {
         void onInvalidated();
     }
 
+    public interface OutputConfigurator {
+        /**
+         * Configure the OpenGL runner created by the capture, before it is started.
+         */
+        void configure(OpenGLRunner runner);
+    }
+
     private CaptureListener listener;
+    private volatile float maxFps;
+    // The last runner created by the capture, to apply the max fps changes (a released runner just ignores them)
+    private volatile OpenGLRunner openGLRunner;
+    private OutputConfigurator outputConfigurator;
 
     /**
      * Notify the listener that the capture has been invalidated (for example, because its size changed).
@@ -64,6 +77,17 @@ public abstract class SurfaceCapture {
         // Do nothing by default
     }
 
+    /**
+     * Stop rendering to the surface, but keep the capture resources if possible, because the next {@link #start(Surface)} will receive the same
+     * surface (an encoder persistent input surface), so that the capture restarts faster.
+     * <p>
+     * The kept resources are released by the next {@link #start(Surface)} if they cannot be reused, or by {@link #release()}. By default, just
+     * stop the capture.
+     */
+    public void suspend() {
+        stop();
+    }
+
     /**
      * Return the video size
      *
@@ -78,6 +102,50 @@ public abstract class SurfaceCapture {
      */
     public abstract boolean setMaxSize(int maxSize);
 
+    /**
+     * Limit the frame rate of the frames rendered through OpenGL by the capture, if any (may be called from any thread).
+     *
+     * @param maxFps the max frame rate, 0 for no limit
+     */
+    public void setMaxFps(float maxFps) {
+        this.maxFps = maxFps;
+        OpenGLRunner runner = openGLRunner;
+        if (runner != null) {
+            runner.setMaxFps(maxFps);
+        }
+    }
+
+    /**
+     * Indicate whether the next {@link #start(Surface)} renders through an OpenGL runner created by {@link #createOpenGLRunner(OpenGLFilter,
+     * float[])} (valid after {@link #prepare()}).
+     */
+    public boolean rendersThroughOpenGL() {
+        return false;
+    }
+
+    /**
+     * Set the configurator applied to the OpenGL runners created by the capture, so that the encoder output features (frame repetition,
+     * secondary outputs) are handled in the same rendering pass as the capture filter.
+     *
+     * @param outputConfigurator the configurator, or {@code null}
+     */
+    public void setOutputConfigurator(OutputConfigurator outputConfigurator) {
+        this.outputConfigurator = outputConfigurator;
+    }
+
+    /**
+     * Create the OpenGL runner rendering the capture to the encoder surface (not started).
+     */
+    protected OpenGLRunner createOpenGLRunner(OpenGLFilter filter, float[] overrideTransformMatrix) {
+        OpenGLRunner runner = new OpenGLRunner(filter, overrideTransformMatrix);
+        runner.setMaxFps(maxFps);
+        if (outputConfigurator != null) {
+            outputConfigurator.configure(runner);
+        }
+        openGLRunner = runner;
+        return runner;
+    }
+
     /**
      * Indicate if the capture has been closed internally.
      *
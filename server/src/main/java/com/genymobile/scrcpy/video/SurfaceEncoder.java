@@ -3,9 +3,19 @@ package com.genymobile.scrcpy.video;
 import com.genymobile.scrcpy.AndroidVersions;
 import com.genymobile.scrcpy.AsyncProcessor;
 import com.genymobile.scrcpy.Options;
+import com.genymobile.scrcpy.control.DeviceMessage;
+import com.genymobile.scrcpy.control.DeviceMessageSender;
 import com.genymobile.scrcpy.device.ConfigurationException;
+import com.genymobile.scrcpy.device.PacketSender;
+import com.genymobile.scrcpy.device.SendQueuePolicy;
 import com.genymobile.scrcpy.device.Size;
-import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.device.StreamOutput;
+import com.genymobile.scrcpy.metrics.Metrics;
+import com.genymobile.scrcpy.opengl.AffineOpenGLFilter;
+import com.genymobile.scrcpy.opengl.OpenGLRunner;
+import com.genymobile.scrcpy.record.ReplayBuffer;
+import com.genymobile.scrcpy.util.AffineMatrix;
+import com.genymobile.scrcpy.util.CapabilityCache;
 import com.genymobile.scrcpy.util.Codec;
 import com.genymobile.scrcpy.util.CodecOption;
 import com.genymobile.scrcpy.util.CodecUtils;
@@ -13,10 +23,12 @@ import com.genymobile.scrcpy.util.IO;
 import com.genymobile.scrcpy.util.Ln;
 import com.genymobile.scrcpy.util.LogUtils;
 
+import android.annotation.TargetApi;
 import android.media.MediaCodec;
 import android.media.MediaCodecInfo;
 import android.media.MediaFormat;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Looper;
 import android.os.SystemClock;
 import android.view.Surface;
@@ -31,68 +43,187 @@ public class SurfaceEncoder implements AsyncProcessor {
     private static final int DEFAULT_I_FRAME_INTERVAL = 10; // seconds
     private static final int REPEAT_FRAME_DELAY_US = 100_000; // repeat after 100ms
     private static final String KEY_MAX_FPS_TO_ENCODER = "max-fps-to-encoder";
+    private static final float NO_MAX_FPS = -1; // the default value of the encoder
 
     // Keep the values in descending order
     private static final int[] MAX_SIZE_FALLBACK = {2560, 1920, 1600, 1280, 1024, 800};
     private static final int MAX_CONSECUTIVE_ERRORS = 3;
 
     private final SurfaceCapture capture;
-    private final Streamer streamer;
+    private final StreamOutput output;
+    private final DeviceMessageSender deviceMessageSender;
     private final String encoderName;
+    private final EncoderProbeObjective encoderProbeObjective;
     private final List<CodecOption> codecOptions;
+    private final boolean maxFpsCodecOption; // the encoder max fps is forced by a codec option
     private final int videoBitRate;
-    private final float maxFps;
+    private final int minVideoBitRate;
+    private final int maxVideoBitRate;
+    private volatile float maxFps; // may be changed at runtime
     private final boolean downsizeOnError;
+    private final int sendQueueSize;
+    private final SendQueuePolicy sendQueuePolicy;
+    private final FrameTracer frameTracer;
+    private final int idleTimeout;
+    private final int idleKeepalive;
+    private ReplayBuffer replayBuffer;
+    private ThumbnailEncoder thumbnailEncoder;
+    private volatile boolean mainVideoEnabled; // may be changed at runtime if there is a thumbnail stream
+
+    // Repeats the frames and/or renders the thumbnails: either the OpenGL runner of the capture, or a runner interposed between the capture
+    // and the encoder if the capture renders directly to the encoder surface
+    private volatile OpenGLRunner outputRunner;
+    private boolean idle;
 
     private boolean firstFrameSent;
     private int consecutiveErrors;
+    private final ResetLatencyMeter resetLatencyMeter = new ResetLatencyMeter();
 
     private Thread thread;
     private final AtomicBoolean stopped = new AtomicBoolean();
 
     private final CaptureReset reset = new CaptureReset();
 
-    public SurfaceEncoder(SurfaceCapture capture, Streamer streamer, Options options) {
+    // Current instance of MediaCodec to request key frames from
+    private MediaCodec runningMediaCodec;
+
+    public SurfaceEncoder(SurfaceCapture capture, StreamOutput output, DeviceMessageSender deviceMessageSender, Options options) {
         this.capture = capture;
-        this.streamer = streamer;
+        this.output = output;
+        this.deviceMessageSender = deviceMessageSender;
         this.videoBitRate = options.getVideoBitRate();
+        this.minVideoBitRate = options.getMinVideoBitRate();
+        this.maxVideoBitRate = options.getMaxVideoBitRate();
         this.maxFps = options.getMaxFps();
         this.codecOptions = options.getVideoCodecOptions();
+        this.maxFpsCodecOption = hasCodecOption(codecOptions, KEY_MAX_FPS_TO_ENCODER);
         this.encoderName = options.getVideoEncoder();
+        this.encoderProbeObjective = options.getVideoEncoderProbe();
         this.downsizeOnError = options.getDownsizeOnError();
+        this.sendQueueSize = options.getVideoSendQueueSize();
+        this.sendQueuePolicy = options.getVideoSendQueuePolicy();
+        int frameTraceSize = options.getVideoFrameTraceSize();
+        this.frameTracer = frameTraceSize > 0 ? new FrameTracer(frameTraceSize) : null;
+        this.idleTimeout = options.getVideoIdleTimeout();
+        this.idleKeepalive = options.getVideoIdleKeepalive();
+        this.mainVideoEnabled = options.getVideoMainEnabled();
     }
 
     private void streamCapture() throws IOException, ConfigurationException {
-        Codec codec = streamer.getCodec();
-        MediaCodec mediaCodec = createMediaCodec(codec, encoderName);
-        MediaFormat format = createFormat(codec.getMimeType(), videoBitRate, maxFps, codecOptions);
+        Codec codec = output.getCodec();
 
+        // Also drop the surplus frames before they reach the encoder if they are rendered through OpenGL
+        capture.setMaxFps(maxFps);
         capture.init(reset);
 
+        MediaCodec mediaCodec;
+        try {
+            mediaCodec = createMediaCodec(codec, selectEncoder(codec));
+        } catch (IOException | ConfigurationException | RuntimeException e) {
+            capture.release();
+            throw e;
+        }
+
+        // With an idle timeout or a thumbnail stream, the frames are repeated by an OpenGLRunner instead of the encoder
+        boolean useOutputRunner = idleTimeout > 0 || thumbnailEncoder != null;
+        MediaFormat format = createFormat(codec.getMimeType(), videoBitRate, !useOutputRunner, maxFps, codecOptions);
+
+        // Keep the same encoder input surface across the sessions, so that the capture is restarted in place on reset (an output runner
+        // provides a new input surface to the capture for each session, so it would not benefit)
+        Surface persistentSurface = useOutputRunner ? null : createPersistentInputSurface();
+
+        BitRateController bitRateController = null;
+        if (minVideoBitRate > 0) {
+            bitRateController = new BitRateController(minVideoBitRate, maxVideoBitRate, videoBitRate, (bitRate) -> {
+                setBitRate(mediaCodec, bitRate);
+            });
+        }
+
+        if (bitRateController != null) {
+            output.addWriteListener(bitRateController);
+        }
+        if (frameTracer != null) {
+            output.addWriteListener(frameTracer);
+        }
+
+        PacketSender sender = null;
+        if (sendQueueSize > 0) {
+            // Write the packets from a separate thread, so that a slow client does not block the encoder
+            sender = new PacketSender(output, sendQueueSize, sendQueuePolicy, "video");
+            if (sendQueuePolicy == SendQueuePolicy.SYNC) {
+                sender.setDropListener(() -> requestSyncFrame(mediaCodec));
+            }
+        }
+
         try {
             boolean alive;
             boolean headerWritten = false;
 
             do {
                 reset.consumeReset(); // If a capture reset was requested, it is implicitly fulfilled
+                resetLatencyMeter.onSessionStarted(reset.consumeRequestTime());
                 capture.prepare();
                 Size size = capture.getSize();
                 if (!headerWritten) {
-                    streamer.writeVideoHeader(size);
+                    output.writeVideoHeader(size);
                     headerWritten = true;
+                    if (sender != null) {
+                        // Start the sender only once the header is written, to never write concurrently to the socket
+                        sender.start();
+                    }
+                } else {
+                    output.onVideoSizeChanged(size);
                 }
 
+                if (bitRateController != null) {
+                    // Keep the current adaptive bit rate across resets
+                    format.setInteger(MediaFormat.KEY_BIT_RATE, bitRateController.getBitRate());
+                }
+                if (!maxFpsCodecOption) {
+                    // Apply the current max fps (it may have been changed at runtime)
+                    setMaxFps(format, maxFps);
+                }
                 format.setInteger(MediaFormat.KEY_WIDTH, size.getWidth());
                 format.setInteger(MediaFormat.KEY_HEIGHT, size.getHeight());
 
                 Surface surface = null;
+                boolean ownOutputRunner = false;
                 boolean mediaCodecStarted = false;
                 boolean captureStarted = false;
                 try {
                     mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
-                    surface = mediaCodec.createInputSurface();
+                    if (persistentSurface != null) {
+                        try {
+                            setInputSurface(mediaCodec, persistentSurface);
+                            surface = persistentSurface;
+                        } catch (IllegalArgumentException e) {
+                            Ln.w("The encoder does not support a persistent input surface, the capture will be restarted on reset");
+                            persistentSurface.release();
+                            persistentSurface = null;
+                        }
+                    }
+                    if (surface == null) {
+                        surface = mediaCodec.createInputSurface();
+                    }
+
+                    Surface captureSurface = surface;
+                    if (useOutputRunner) {
+                        // A new session always produces a new frame
+                        setIdle(false);
+                        Surface thumbnailSurface = thumbnailEncoder != null ? thumbnailEncoder.startSession(size) : null;
+                        if (capture.rendersThroughOpenGL()) {
+                            // Configure the capture runner rather than adding a second rendering pass
+                            capture.setOutputConfigurator(runner -> configureOutputRunner(runner, thumbnailSurface));
+                        } else {
+                            capture.setOutputConfigurator(null);
+                            OpenGLRunner runner = new OpenGLRunner(new AffineOpenGLFilter(AffineMatrix.IDENTITY));
+                            configureOutputRunner(runner, thumbnailSurface);
+                            ownOutputRunner = true;
+                            captureSurface = runner.start(size, size, surface);
+                        }
+                    }
 
-                    capture.start(surface);
+                    capture.start(captureSurface);
                     captureStarted = true;
 
                     mediaCodec.start();
@@ -100,6 +231,7 @@ public class SurfaceEncoder implements AsyncProcessor {
 
                     // Set the MediaCodec instance to "interrupt" (by signaling an EOS) on reset
                     reset.setRunningMediaCodec(mediaCodec);
+                    setRunningMediaCodec(mediaCodec);
 
                     if (stopped.get()) {
                         alive = false;
@@ -107,7 +239,7 @@ public class SurfaceEncoder implements AsyncProcessor {
                         boolean resetRequested = reset.consumeReset();
                         if (!resetRequested) {
                             // If a reset is requested during encode(), it will interrupt the encoding by an EOS
-                            encode(mediaCodec, streamer);
+                            encode(mediaCodec, sender);
                         }
                         // The capture might have been closed internally (for example if the camera is disconnected)
                         alive = !stopped.get() && !capture.isClosed();
@@ -124,8 +256,25 @@ public class SurfaceEncoder implements AsyncProcessor {
                     alive = true;
                 } finally {
                     reset.setRunningMediaCodec(null);
+                    setRunningMediaCodec(null);
                     if (captureStarted) {
-                        capture.stop();
+                        if (persistentSurface != null && surface == persistentSurface) {
+                            // The next session will use the same surface, keep the capture resources
+                            capture.suspend();
+                        } else {
+                            capture.stop();
+                        }
+                    }
+                    if (outputRunner != null) {
+                        // A runner created by the capture has been released by the capture itself
+                        if (ownOutputRunner) {
+                            outputRunner.stopAndRelease();
+                        }
+                        outputRunner = null;
+                    }
+                    if (thumbnailEncoder != null) {
+                        // After the runner is released, so that no frame is rendered to its surface anymore
+                        thumbnailEncoder.stopSession();
                     }
                     if (mediaCodecStarted) {
                         try {
@@ -135,15 +284,71 @@ public class SurfaceEncoder implements AsyncProcessor {
                         }
                     }
                     mediaCodec.reset();
-                    if (surface != null) {
+                    if (surface != null && surface != persistentSurface) {
                         surface.release();
                     }
                 }
             } while (alive);
         } finally {
+            if (sender != null) {
+                sender.stop();
+                try {
+                    sender.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
             mediaCodec.release();
+            if (thumbnailEncoder != null) {
+                thumbnailEncoder.release();
+            }
             capture.release();
+            if (persistentSurface != null) {
+                // After the capture is released, so that nothing renders to it anymore
+                persistentSurface.release();
+            }
+        }
+    }
+
+    private static Surface createPersistentInputSurface() {
+        if (Build.VERSION.SDK_INT < AndroidVersions.API_23_ANDROID_6_0) {
+            return null;
+        }
+        return MediaCodec.createPersistentInputSurface();
+    }
+
+    @TargetApi(AndroidVersions.API_23_ANDROID_6_0)
+    private static void setInputSurface(MediaCodec mediaCodec, Surface surface) {
+        mediaCodec.setInputSurface(surface);
+    }
+
+    /**
+     * Return the name of the encoder to use, or {@code null} for the default encoder.
+     */
+    private String selectEncoder(Codec codec) throws IOException, ConfigurationException {
+        if (encoderProbeObjective == null) {
+            return encoderName;
+        }
+
+        // Probe at the size of the first capture session (the capture must be initialized)
+        capture.prepare();
+        Size size = capture.getSize();
+        Ln.i("Probing the " + codec.getName() + " encoders at " + size + "... (this may take a few seconds)");
+        List<EncoderProbeResult> results = EncoderProbe.run(codec, size, videoBitRate);
+        int selected = encoderProbeObjective.selectBest(results);
+
+        if (deviceMessageSender != null) {
+            deviceMessageSender.send(DeviceMessage.createEncoderProbe(results, selected));
+        }
+
+        if (selected == -1) {
+            Ln.w("No video encoder could be probed, using the default encoder");
+            return null;
         }
+
+        EncoderProbeResult result = results.get(selected);
+        Ln.i("Selected video encoder: " + result);
+        return result.getName();
     }
 
     private boolean prepareRetry(Size currentSize) {
@@ -194,13 +399,23 @@ public class SurfaceEncoder implements AsyncProcessor {
         return 0;
     }
 
-    private void encode(MediaCodec codec, Streamer streamer) throws IOException {
+    private void encode(MediaCodec codec, PacketSender sender) throws IOException {
         MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
 
         boolean eos;
         do {
             int outputBufferId = codec.dequeueOutputBuffer(bufferInfo, -1);
+            long dequeueTime = Metrics.isEnabled() || frameTracer != null ? System.nanoTime() : 0;
             try {
+                if (outputBufferId == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    // Always dequeued before the first packet of the encoder session
+                    MediaFormat outputFormat = codec.getOutputFormat();
+                    output.onOutputFormatChanged(outputFormat);
+                    if (replayBuffer != null) {
+                        replayBuffer.setFormat(outputFormat);
+                    }
+                }
+
                 eos = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
                 // On EOS, there might be data or not, depending on bufferInfo.size
                 if (outputBufferId >= 0 && bufferInfo.size > 0) {
@@ -211,9 +426,33 @@ public class SurfaceEncoder implements AsyncProcessor {
                         // If this is not a config packet, then it contains a frame
                         firstFrameSent = true;
                         consecutiveErrors = 0;
+                        long resetDurationNs = resetLatencyMeter.onFrameEncoded(System.nanoTime());
+                        if (resetDurationNs != -1) {
+                            Metrics.recordLatency(Metrics.LATENCY_VIDEO_RESET_TO_FIRST_FRAME, resetDurationNs);
+                            Ln.d("Video reset to first frame: " + resetDurationNs / 1_000_000 + " ms");
+                        }
+                        Metrics.increment(Metrics.COUNTER_VIDEO_FRAMES);
+                        if (frameTracer != null) {
+                            frameTracer.onFrameDequeued(bufferInfo.presentationTimeUs, dequeueTime);
+                        }
+                    }
+
+                    if (replayBuffer != null) {
+                        boolean keyFrame = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+                        replayBuffer.add(codecBuffer, bufferInfo.presentationTimeUs, isConfig, keyFrame);
+                    }
+
+                    if (sender != null) {
+                        // The packet is copied, so the output buffer is released without waiting for the socket
+                        sender.offer(codecBuffer, bufferInfo);
+                    } else {
+                        output.writePacket(codecBuffer, bufferInfo);
                     }
 
-                    streamer.writePacket(codecBuffer, bufferInfo);
+                    if (Metrics.isEnabled()) {
+                        // With a send queue, this only measures the time to queue the packet
+                        Metrics.recordLatency(Metrics.LATENCY_VIDEO_DEQUEUE_TO_WRITE, System.nanoTime() - dequeueTime);
+                    }
                 }
             } finally {
                 if (outputBufferId >= 0) {
@@ -223,18 +462,167 @@ public class SurfaceEncoder implements AsyncProcessor {
         } while (!eos);
     }
 
+    private synchronized void setRunningMediaCodec(MediaCodec runningMediaCodec) {
+        this.runningMediaCodec = runningMediaCodec;
+    }
+
+    /**
+     * Request the encoder to produce a key frame as soon as possible, without resetting the capture.
+     * <p>
+     * This allows the client to recover from a lost or corrupted packet in one frame.
+     */
+    public synchronized void requestKeyFrame() {
+        if (runningMediaCodec != null) {
+            requestSyncFrame(runningMediaCodec);
+        }
+    }
+
+    /**
+     * Change the max frame rate at runtime, without resetting the capture.
+     * <p>
+     * The encoder may ignore the new value until it is reconfigured, so the frames are also dropped by the OpenGL runners, if any.
+     *
+     * @param maxFps the max frame rate, 0 for no limit
+     */
+    public void setMaxFps(float maxFps) {
+        Ln.d("Video max fps: " + (maxFps > 0 ? maxFps : "unlimited"));
+        this.maxFps = maxFps;
+        synchronized (this) {
+            // A max fps forced by a codec option is never overridden
+            if (runningMediaCodec != null && !maxFpsCodecOption) {
+                Bundle params = new Bundle();
+                params.putFloat(KEY_MAX_FPS_TO_ENCODER, maxFps > 0 ? maxFps : NO_MAX_FPS);
+                try {
+                    runningMediaCodec.setParameters(params);
+                } catch (IllegalStateException e) {
+                    // The codec is not running, the new value will be applied on the next configure()
+                }
+            }
+        }
+
+        capture.setMaxFps(maxFps);
+        OpenGLRunner runner = outputRunner;
+        if (runner != null) {
+            runner.setMaxFps(maxFps);
+        }
+    }
+
+    private void configureOutputRunner(OpenGLRunner runner, Surface thumbnailSurface) {
+        runner.setFrameRepeat(REPEAT_FRAME_DELAY_US / 1000, idleTimeout, idleKeepalive, idleTimeout > 0 ? this::setIdle : null);
+        runner.setMaxFps(maxFps);
+        if (thumbnailSurface != null) {
+            runner.addSecondaryOutput(thumbnailSurface, thumbnailEncoder.getSize(), thumbnailEncoder.getMaxFps());
+            runner.setMainOutputEnabled(mainVideoEnabled);
+        }
+        outputRunner = runner;
+    }
+
+    /**
+     * Enable or disable the main video stream at runtime, without resetting the capture (the thumbnail stream is not affected).
+     * <p>
+     * While disabled, no frame is rendered to the main encoder, so it produces no packets. On enable, a key frame is requested, so that the
+     * client may decode immediately.
+     */
+    public void setMainVideoEnabled(boolean enabled) {
+        if (thumbnailEncoder == null) {
+            Ln.w("The main video stream may only be disabled if there is a thumbnail stream");
+            return;
+        }
+
+        Ln.d("Main video stream " + (enabled ? "enabled" : "disabled"));
+        mainVideoEnabled = enabled;
+        OpenGLRunner runner = outputRunner;
+        if (runner != null) {
+            runner.setMainOutputEnabled(enabled);
+        }
+        if (enabled) {
+            requestKeyFrame();
+        }
+    }
+
+    /**
+     * Keep the last encoded packets in memory (must be called before the encoder is started).
+     */
+    public void setReplayBuffer(ReplayBuffer replayBuffer) {
+        this.replayBuffer = replayBuffer;
+    }
+
+    /**
+     * Also encode a low-resolution copy of the frames to a separate stream (must be called before the encoder is started).
+     */
+    public void setThumbnailEncoder(ThumbnailEncoder thumbnailEncoder) {
+        this.thumbnailEncoder = thumbnailEncoder;
+    }
+
+    /**
+     * Return the latencies of the last frames, or {@code null} if frame tracing is disabled.
+     */
+    public FrameLatency getFrameLatency() {
+        return frameTracer != null ? frameTracer.computeLatency() : null;
+    }
+
+    private synchronized void setIdle(boolean idle) {
+        if (this.idle == idle) {
+            return;
+        }
+        this.idle = idle;
+
+        Ln.d("Video " + (idle ? "idle" : "active"));
+        if (deviceMessageSender != null) {
+            deviceMessageSender.send(DeviceMessage.createIdle(idle));
+        }
+    }
+
+    private void setBitRate(MediaCodec codec, int bitRate) {
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_VIDEO_BITRATE, bitRate);
+        try {
+            codec.setParameters(params);
+        } catch (IllegalStateException e) {
+            // The codec is not running, the new bit rate will be applied on the next configure()
+        }
+
+        Ln.d("Video bit rate: " + bitRate);
+        if (deviceMessageSender != null) {
+            deviceMessageSender.send(DeviceMessage.createVideoBitRate(bitRate));
+        }
+    }
+
+    static void requestSyncFrame(MediaCodec codec) {
+        Bundle params = new Bundle();
+        params.putInt(MediaCodec.PARAMETER_KEY_REQUEST_SYNC_FRAME, 0);
+        try {
+            codec.setParameters(params);
+        } catch (IllegalStateException e) {
+            // The codec is not running (anymore), a key frame will be produced on start anyway
+            Ln.w("Could not request a sync frame: " + e.getMessage());
+        }
+    }
+
     private static MediaCodec createMediaCodec(Codec codec, String encoderName) throws IOException, ConfigurationException {
         if (encoderName != null) {
             Ln.d("Creating encoder by name: '" + encoderName + "'");
+            // The cached encoders avoid creating an encoder of the wrong type
+            String cachedMimeType = CapabilityCache.getEncoderMimeType(encoderName);
             try {
+                if (cachedMimeType != null) {
+                    checkEncoderType(codec, encoderName, cachedMimeType);
+                }
                 MediaCodec mediaCodec = MediaCodec.createByCodecName(encoderName);
-                String mimeType = Codec.getMimeType(mediaCodec);
-                if (!codec.getMimeType().equals(mimeType)) {
-                    Ln.e("Video encoder type for \"" + encoderName + "\" (" + mimeType + ") does not match codec type (" + codec.getMimeType() + ")");
-                    throw new ConfigurationException("Incorrect encoder type: " + encoderName);
+                if (cachedMimeType == null) {
+                    try {
+                        checkEncoderType(codec, encoderName, Codec.getMimeType(mediaCodec));
+                    } catch (ConfigurationException e) {
+                        mediaCodec.release();
+                        throw e;
+                    }
                 }
                 return mediaCodec;
             } catch (IllegalArgumentException e) {
+                if (cachedMimeType != null) {
+                    // The cached encoders are stale
+                    CapabilityCache.invalidateEncoders();
+                }
                 Ln.e("Video encoder '" + encoderName + "' for " + codec.getName() + " not found\n" + LogUtils.buildVideoEncoderListMessage());
                 throw new ConfigurationException("Unknown encoder: " + encoderName);
             } catch (IOException e) {
@@ -244,7 +632,7 @@ public class SurfaceEncoder implements AsyncProcessor {
         }
 
         try {
-            MediaCodec mediaCodec = MediaCodec.createEncoderByType(codec.getMimeType());
+            MediaCodec mediaCodec = CodecUtils.createDefaultEncoder(codec.getMimeType());
             Ln.d("Using video encoder: '" + mediaCodec.getName() + "'");
             return mediaCodec;
         } catch (IOException | IllegalArgumentException e) {
@@ -253,7 +641,14 @@ public class SurfaceEncoder implements AsyncProcessor {
         }
     }
 
-    private static MediaFormat createFormat(String videoMimeType, int bitRate, float maxFps, List<CodecOption> codecOptions) {
+    private static void checkEncoderType(Codec codec, String encoderName, String mimeType) throws ConfigurationException {
+        if (!codec.getMimeType().equals(mimeType)) {
+            Ln.e("Video encoder type for \"" + encoderName + "\" (" + mimeType + ") does not match codec type (" + codec.getMimeType() + ")");
+            throw new ConfigurationException("Incorrect encoder type: " + encoderName);
+        }
+    }
+
+    static MediaFormat createFormat(String videoMimeType, int bitRate, boolean repeatFrames, float maxFps, List<CodecOption> codecOptions) {
         MediaFormat format = new MediaFormat();
         format.setString(MediaFormat.KEY_MIME, videoMimeType);
         format.setInteger(MediaFormat.KEY_BIT_RATE, bitRate);
@@ -264,14 +659,12 @@ public class SurfaceEncoder implements AsyncProcessor {
             format.setInteger(MediaFormat.KEY_COLOR_RANGE, MediaFormat.COLOR_RANGE_LIMITED);
         }
         format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, DEFAULT_I_FRAME_INTERVAL);
-        // display the very first frame, and recover from bad quality when no new frames
-        format.setLong(MediaFormat.KEY_REPEAT_PREVIOUS_FRAME_AFTER, REPEAT_FRAME_DELAY_US); // µs
-        if (maxFps > 0) {
-            // The key existed privately before Android 10:
-            // <https://android.googlesource.com/platform/frameworks/base/+/625f0aad9f7a259b6881006ad8710adce57d1384%5E%21/>
-            // <https://github.com/Genymobile/scrcpy/issues/488#issuecomment-567321437>
-            format.setFloat(KEY_MAX_FPS_TO_ENCODER, maxFps);
+        if (repeatFrames) {
+            // display the very first frame, and recover from bad quality when no new frames
+            format.setLong(MediaFormat.KEY_REPEAT_PREVIOUS_FRAME_AFTER, REPEAT_FRAME_DELAY_US); // µs
         }
+        // Before the codec options, so that a "max-fps-to-encoder" option takes precedence
+        setMaxFps(format, maxFps);
 
         if (codecOptions != null) {
             for (CodecOption option : codecOptions) {
@@ -285,6 +678,29 @@ public class SurfaceEncoder implements AsyncProcessor {
         return format;
     }
 
+    private static boolean hasCodecOption(List<CodecOption> codecOptions, String key) {
+        if (codecOptions != null) {
+            for (CodecOption option : codecOptions) {
+                if (option.getKey().equals(key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void setMaxFps(MediaFormat format, float maxFps) {
+        if (maxFps > 0) {
+            // The key existed privately before Android 10:
+            // <https://android.googlesource.com/platform/frameworks/base/+/625f0aad9f7a259b6881006ad8710adce57d1384%5E%21/>
+            // <https://github.com/Genymobile/scrcpy/issues/488#issuecomment-567321437>
+            format.setFloat(KEY_MAX_FPS_TO_ENCODER, maxFps);
+        } else if (format.containsKey(KEY_MAX_FPS_TO_ENCODER)) {
+            // The key cannot be removed before Android 10
+            format.setFloat(KEY_MAX_FPS_TO_ENCODER, NO_MAX_FPS);
+        }
+    }
+
     @Override
     public void start(TerminationListener listener) {
         thread = new Thread(() -> {
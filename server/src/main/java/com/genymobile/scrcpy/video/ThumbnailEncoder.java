@@ -0,0 +1,189 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.Options;
+import com.genymobile.scrcpy.device.Size;
+import com.genymobile.scrcpy.device.Streamer;
+import com.genymobile.scrcpy.util.Codec;
+import com.genymobile.scrcpy.util.IO;
+import com.genymobile.scrcpy.util.Ln;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encode a low-resolution copy of the captured frames to a separate stream (simulcast).
+ * <p>
+ * The frames are rendered by the {@link com.genymobile.scrcpy.opengl.OpenGLRunner} of the {@link SurfaceEncoder}, which drives the sessions:
+ * the thumbnail encoder is reconfigured on every capture reset, along with the main encoder.
+ */
+public class ThumbnailEncoder {
+
+    private final Streamer streamer;
+    private final int maxSize;
+    private final float maxFps;
+    private final int bitRate;
+
+    private MediaCodec mediaCodec;
+    private Size size;
+    private Surface surface;
+    private Thread thread;
+    private boolean headerWritten;
+
+    // Once the socket is broken, the packets are still dequeued (so that the rendering never blocks), but not written anymore
+    private boolean broken;
+
+    // Current instance of MediaCodec to request key frames from
+    private MediaCodec runningMediaCodec;
+
+    public ThumbnailEncoder(Streamer streamer, Options options) {
+        this.streamer = streamer;
+        this.maxSize = options.getVideoThumbnailSize();
+        this.maxFps = options.getVideoThumbnailMaxFps();
+        this.bitRate = options.getVideoThumbnailBitRate();
+    }
+
+    /**
+     * Start an encoding session for the given capture size.
+     *
+     * @return the surface to render the thumbnail frames to
+     */
+    Surface startSession(Size captureSize) throws IOException {
+        if (mediaCodec == null) {
+            Codec codec = streamer.getCodec();
+            mediaCodec = MediaCodec.createEncoderByType(codec.getMimeType());
+            Ln.d("Using thumbnail video encoder: '" + mediaCodec.getName() + "'");
+        }
+
+        size = captureSize.limit(maxSize).round8();
+        if (!headerWritten) {
+            streamer.writeVideoHeader(size);
+            headerWritten = true;
+        } else {
+            streamer.onVideoSizeChanged(size);
+        }
+
+        // The frames are repeated by the OpenGLRunner
+        MediaFormat format = SurfaceEncoder.createFormat(streamer.getCodec().getMimeType(), bitRate, false, maxFps, null);
+        format.setInteger(MediaFormat.KEY_WIDTH, size.getWidth());
+        format.setInteger(MediaFormat.KEY_HEIGHT, size.getHeight());
+
+        mediaCodec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        surface = mediaCodec.createInputSurface();
+        mediaCodec.start();
+        setRunningMediaCodec(mediaCodec);
+
+        MediaCodec codec = mediaCodec;
+        thread = new Thread(() -> encode(codec), "video-thumbnail");
+        thread.start();
+
+        return surface;
+    }
+
+    /**
+     * Stop the current session, if any (the frames must not be rendered to its surface anymore).
+     */
+    void stopSession() {
+        if (surface == null) {
+            // Not started, or the session failed before createInputSurface()
+            if (mediaCodec != null) {
+                mediaCodec.reset();
+            }
+            return;
+        }
+
+        setRunningMediaCodec(null);
+        try {
+            mediaCodec.signalEndOfInputStream();
+        } catch (IllegalStateException e) {
+            // ignore
+        }
+
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+
+        try {
+            mediaCodec.stop();
+        } catch (IllegalStateException e) {
+            // ignore (just in case)
+        }
+        mediaCodec.reset();
+        surface.release();
+        surface = null;
+    }
+
+    void release() {
+        if (mediaCodec != null) {
+            mediaCodec.release();
+            mediaCodec = null;
+        }
+    }
+
+    Size getSize() {
+        return size;
+    }
+
+    float getMaxFps() {
+        return maxFps;
+    }
+
+    private void encode(MediaCodec codec) {
+        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
+
+        boolean eos;
+        do {
+            int outputBufferId;
+            try {
+                outputBufferId = codec.dequeueOutputBuffer(bufferInfo, -1);
+            } catch (IllegalStateException e) {
+                Ln.e("Thumbnail encoding error: " + e.getMessage());
+                return;
+            }
+
+            eos = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+            try {
+                if (outputBufferId == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED && !broken) {
+                    streamer.onOutputFormatChanged(codec.getOutputFormat());
+                }
+
+                // On EOS, there might be data or not, depending on bufferInfo.size
+                if (outputBufferId >= 0 && bufferInfo.size > 0 && !broken) {
+                    ByteBuffer codecBuffer = codec.getOutputBuffer(outputBufferId);
+                    streamer.writePacket(codecBuffer, bufferInfo);
+                }
+            } catch (IOException e) {
+                broken = true;
+                // Broken pipe is expected on close, because the socket is closed by the client
+                if (!IO.isBrokenPipe(e)) {
+                    Ln.e("Thumbnail streaming error", e);
+                }
+            } finally {
+                if (outputBufferId >= 0) {
+                    codec.releaseOutputBuffer(outputBufferId, false);
+                }
+            }
+        } while (!eos);
+    }
+
+    private synchronized void setRunningMediaCodec(MediaCodec runningMediaCodec) {
+        this.runningMediaCodec = runningMediaCodec;
+    }
+
+    /**
+     * Request the thumbnail encoder to produce a key frame as soon as possible.
+     */
+    public synchronized void requestKeyFrame() {
+        if (runningMediaCodec != null) {
+            SurfaceEncoder.requestSyncFrame(runningMediaCodec);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+public class AudioRawBatchTest {
+
+    private static final long CHUNK_DURATION_US = AudioRawBatch.durationUs(AudioConfig.MAX_READ_SIZE);
+
+    private static ByteBuffer createChunk(byte value) {
+        ByteBuffer chunk = ByteBuffer.allocate(AudioConfig.MAX_READ_SIZE);
+        for (int i = 0; i < AudioConfig.MAX_READ_SIZE; ++i) {
+            chunk.put(value);
+        }
+        chunk.flip();
+        return chunk;
+    }
+
+    @Test
+    public void testDuration() {
+        // 1024 samples at 48kHz
+        Assert.assertEquals(21333, CHUNK_DURATION_US);
+    }
+
+    @Test
+    public void testBatchUntilMaxDelay() {
+        long maxDelayUs = 50_000;
+        AudioRawBatch batch = new AudioRawBatch(maxDelayUs);
+        long pts = 1_000_000;
+
+        Assert.assertTrue(batch.isEmpty());
+        Assert.assertFalse(batch.append(createChunk((byte) 1), pts));
+        // A 3rd chunk would delay the first sample by more than 50 ms
+        Assert.assertTrue(batch.append(createChunk((byte) 2), pts + CHUNK_DURATION_US));
+
+        Assert.assertEquals(pts, batch.getPts());
+        ByteBuffer buffer = batch.getBuffer();
+        Assert.assertEquals(2 * AudioConfig.MAX_READ_SIZE, buffer.remaining());
+        Assert.assertTrue(AudioRawBatch.durationUs(buffer.remaining()) <= maxDelayUs);
+        Assert.assertEquals(1, buffer.get(0));
+        Assert.assertEquals(2, buffer.get(2 * AudioConfig.MAX_READ_SIZE - 1));
+
+        batch.reset();
+        Assert.assertTrue(batch.isEmpty());
+    }
+
+    @Test
+    public void testMaxDelayBound() {
+        for (long maxDelayUs = CHUNK_DURATION_US; maxDelayUs <= 200_000; maxDelayUs += 1000) {
+            AudioRawBatch batch = new AudioRawBatch(maxDelayUs);
+            long pts = 0;
+            while (!batch.append(createChunk((byte) 0), pts)) {
+                pts += CHUNK_DURATION_US;
+            }
+            long durationUs = AudioRawBatch.durationUs(batch.getBuffer().remaining());
+            Assert.assertTrue("max delay: " + maxDelayUs + ", batch: " + durationUs, durationUs <= maxDelayUs);
+            // One more chunk would have reached the max delay
+            Assert.assertTrue(durationUs + CHUNK_DURATION_US >= maxDelayUs);
+        }
+    }
+
+    @Test
+    public void testSmallDelay() {
+        AudioRawBatch batch = new AudioRawBatch(1000);
+        // A single chunk per batch
+        Assert.assertTrue(batch.append(createChunk((byte) 1), 0));
+    }
+
+    @Test
+    public void testGap() {
+        AudioRawBatch batch = new AudioRawBatch(100_000);
+        long pts = 1_000_000;
+        batch.append(createChunk((byte) 1), pts);
+
+        // Some jitter is tolerated
+        Assert.assertTrue(batch.canAppend(pts + CHUNK_DURATION_US + 500, AudioConfig.MAX_READ_SIZE));
+        // But not a missing chunk
+        Assert.assertFalse(batch.canAppend(pts + 2 * CHUNK_DURATION_US, AudioConfig.MAX_READ_SIZE));
+
+        batch.getBuffer();
+        batch.reset();
+        Assert.assertTrue(batch.canAppend(pts + 2 * CHUNK_DURATION_US, AudioConfig.MAX_READ_SIZE));
+    }
+}
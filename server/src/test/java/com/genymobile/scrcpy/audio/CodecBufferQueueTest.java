@@ -0,0 +1,84 @@
+package com.genymobile.scrcpy.audio;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CodecBufferQueueTest {
+
+    @Test
+    public void testPutTake() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(4);
+        queue.put(2, 10, 100, 1000, 1);
+        queue.put(3, 20, 200, 2000, 0);
+        Assert.assertEquals(2, queue.size());
+
+        Assert.assertEquals(2, queue.take());
+        Assert.assertEquals(10, queue.getOffset());
+        Assert.assertEquals(100, queue.getSize());
+        Assert.assertEquals(1000, queue.getPts());
+        Assert.assertEquals(1, queue.getFlags());
+
+        Assert.assertEquals(3, queue.take());
+        Assert.assertEquals(20, queue.getOffset());
+        Assert.assertEquals(200, queue.getSize());
+        Assert.assertEquals(2000, queue.getPts());
+        Assert.assertEquals(0, queue.getFlags());
+
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testWrapAround() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(4);
+        for (int i = 0; i < 10; ++i) {
+            queue.put(i, 0, i, i * 1000, 0);
+            queue.put(i + 100, 0, 0, 0, 0);
+            Assert.assertEquals(i, queue.take());
+            Assert.assertEquals(i * 1000, queue.getPts());
+            Assert.assertEquals(i + 100, queue.take());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new CodecBufferQueue(5);
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final int count = 100_000;
+        CodecBufferQueue queue = new CodecBufferQueue(8);
+
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < count; ++i) {
+                    queue.put(i, 0, i, i, 0);
+                }
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; ++i) {
+            Assert.assertEquals(i, queue.take());
+            Assert.assertEquals(i, queue.getSize());
+            Assert.assertEquals(i, queue.getPts());
+        }
+
+        producer.join();
+        Assert.assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testInterruptTake() throws InterruptedException {
+        CodecBufferQueue queue = new CodecBufferQueue(4);
+        Thread.currentThread().interrupt();
+        try {
+            queue.take();
+            Assert.fail();
+        } catch (InterruptedException e) {
+            // expected
+        }
+    }
+}
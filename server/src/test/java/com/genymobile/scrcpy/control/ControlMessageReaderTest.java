@@ -94,6 +94,7 @@ public class ControlMessageReaderTest {
         dos.writeShort(0xffff); // pressure
         dos.writeInt(MotionEvent.BUTTON_PRIMARY); // action button
         dos.writeInt(MotionEvent.BUTTON_PRIMARY); // buttons
+        dos.writeInt(123456); // timestamp
 
         byte[] packet = bos.toByteArray();
 
@@ -111,6 +112,7 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(1f, event.getPressure(), 0f); // must be exact
         Assert.assertEquals(MotionEvent.BUTTON_PRIMARY, event.getActionButton());
         Assert.assertEquals(MotionEvent.BUTTON_PRIMARY, event.getButtons());
+        Assert.assertEquals(123456, event.getTimestamp());
 
         Assert.assertEquals(-1, bis.read()); // EOS
     }
@@ -422,6 +424,150 @@ public class ControlMessageReaderTest {
         Assert.assertEquals(-1, bis.read()); // EOS
     }
 
+    @Test
+    public void testParseRequestKeyFrame() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_REQUEST_KEY_FRAME);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_REQUEST_KEY_FRAME, event.getType());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseGetFrameLatency() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_GET_FRAME_LATENCY);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_GET_FRAME_LATENCY, event.getType());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseSaveReplayBuffer() throws IOException {
+        byte[] path = "/sdcard/replay.mp4".getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SAVE_REPLAY_BUFFER);
+        dos.writeByte(path.length);
+        dos.write(path);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SAVE_REPLAY_BUFFER, event.getType());
+        Assert.assertEquals("/sdcard/replay.mp4", event.getText());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseSaveReplayBufferToClient() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SAVE_REPLAY_BUFFER);
+        dos.writeByte(0); // empty path
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SAVE_REPLAY_BUFFER, event.getType());
+        Assert.assertEquals("", event.getText());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseSetMaxFps() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_MAX_FPS);
+        dos.writeFloat(7.5f);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_MAX_FPS, event.getType());
+        Assert.assertEquals(7.5f, event.getMaxFps(), 0f);
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseSetMaxFpsInvalid() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_MAX_FPS);
+        dos.writeFloat(Float.NaN);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        try {
+            reader.read();
+            Assert.fail("Invalid max fps accepted");
+        } catch (ControlProtocolException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testParseSetInputStream() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_INPUT_STREAM);
+        dos.writeByte(2);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_INPUT_STREAM, event.getType());
+        Assert.assertEquals(2, event.getStreamId());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
+    @Test
+    public void testParseSetMainVideo() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(ControlMessage.TYPE_SET_MAIN_VIDEO);
+        dos.writeBoolean(false);
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(ControlMessage.TYPE_SET_MAIN_VIDEO, event.getType());
+        Assert.assertFalse(event.getOn());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
+
     @Test
     public void testMultiEvents() throws IOException {
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -493,4 +639,44 @@ public class ControlMessageReaderTest {
             // expected
         }
     }
+
+    @Test
+    public void testRecycledTouchEvents() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        for (int i = 0; i < 2; ++i) {
+            dos.writeByte(ControlMessage.TYPE_INJECT_TOUCH_EVENT);
+            dos.writeByte(i == 0 ? MotionEvent.ACTION_DOWN : MotionEvent.ACTION_MOVE);
+            dos.writeLong(-42); // pointerId
+            dos.writeInt(100 + i);
+            dos.writeInt(200);
+            dos.writeShort(1080);
+            dos.writeShort(1920);
+            dos.writeShort(0xffff); // pressure
+            dos.writeInt(MotionEvent.BUTTON_PRIMARY); // action button
+            dos.writeInt(MotionEvent.BUTTON_PRIMARY); // buttons
+            dos.writeInt(i); // timestamp
+        }
+
+        byte[] packet = bos.toByteArray();
+
+        ByteArrayInputStream bis = new ByteArrayInputStream(packet);
+        ControlMessageReader reader = new ControlMessageReader(bis);
+
+        ControlMessage event = reader.read();
+        Assert.assertEquals(MotionEvent.ACTION_DOWN, event.getAction());
+        Assert.assertEquals(100, event.getPosition().getPoint().getX());
+
+        ControlMessage event2 = reader.read();
+        // The instance is reused, but its content must be updated
+        Assert.assertSame(event, event2);
+        Assert.assertEquals(MotionEvent.ACTION_MOVE, event2.getAction());
+        Assert.assertEquals(101, event2.getPosition().getPoint().getX());
+        Assert.assertEquals(200, event2.getPosition().getPoint().getY());
+        // The injection path reads the raw values, without allocating a Position
+        Assert.assertEquals(101, event2.getX());
+        Assert.assertEquals(200, event2.getY());
+
+        Assert.assertEquals(-1, bis.read()); // EOS
+    }
 }
@@ -1,5 +1,10 @@
 package com.genymobile.scrcpy.control;
 
+import com.genymobile.scrcpy.metrics.LatencySummary;
+import com.genymobile.scrcpy.metrics.MetricsSnapshot;
+import com.genymobile.scrcpy.video.EncoderProbeResult;
+import com.genymobile.scrcpy.video.FrameLatency;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -7,6 +12,8 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
 
 public class DeviceMessageWriterTest {
 
@@ -72,4 +79,153 @@ public class DeviceMessageWriterTest {
 
         Assert.assertArrayEquals(expected, actual);
     }
+
+    @Test
+    public void testSerializeVideoBitRate() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_VIDEO_BIT_RATE);
+        dos.writeInt(4000000);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        DeviceMessage msg = DeviceMessage.createVideoBitRate(4000000);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeMetrics() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_METRICS);
+        dos.writeInt(1000);
+        dos.writeByte(2);
+        dos.writeLong(60);
+        dos.writeLong(1L << 32);
+        dos.writeByte(1);
+        dos.writeInt(60);
+        dos.writeInt(1023);
+        dos.writeInt(2047);
+        dos.writeInt(0xFFFFFFFF); // saturated
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        long[] counters = {60, 1L << 32};
+        LatencySummary[] latencies = {new LatencySummary(60, 1023, 2047, 1L << 40)};
+        DeviceMessage msg = DeviceMessage.createMetrics(new MetricsSnapshot(1000, counters, latencies));
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeFrameLatency() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_FRAME_LATENCY);
+        int[] values = {120, 8000, 12000, 15000, 120, 500, 2000, 3000, 120, 8500, 14000, 18000};
+        for (int value : values) {
+            dos.writeInt(value);
+        }
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        FrameLatency latency = new FrameLatency(new LatencySummary(120, 8000, 12000, 15000), new LatencySummary(120, 500, 2000, 3000),
+                new LatencySummary(120, 8500, 14000, 18000));
+        DeviceMessage msg = DeviceMessage.createFrameLatency(latency);
+        writer.write(msg);
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeReplayData() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_REPLAY_DATA);
+        byte[] data = {1, 2, 3, 4, 5};
+        dos.writeInt(data.length);
+        dos.write(data);
+        // end marker
+        dos.writeByte(DeviceMessage.TYPE_REPLAY_DATA);
+        dos.writeInt(0);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        writer.write(DeviceMessage.createReplayData(data));
+        writer.write(DeviceMessage.createReplayData(new byte[0]));
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeIdle() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_IDLE);
+        dos.writeBoolean(true);
+        dos.writeByte(DeviceMessage.TYPE_IDLE);
+        dos.writeBoolean(false);
+        byte[] expected = bos.toByteArray();
+
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+
+        writer.write(DeviceMessage.createIdle(true));
+        writer.write(DeviceMessage.createIdle(false));
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testSerializeEncoderProbe() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bos);
+        dos.writeByte(DeviceMessage.TYPE_ENCODER_PROBE);
+        dos.writeByte(1); // selected
+        dos.writeByte(2); // count
+        dos.writeByte(7);
+        dos.write("c2.hw.a".getBytes(StandardCharsets.UTF_8));
+        dos.writeBoolean(false);
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeInt(0);
+        dos.writeByte(7);
+        dos.write("c2.hw.b".getBytes(StandardCharsets.UTF_8));
+        dos.writeBoolean(true);
+        dos.writeInt(12000);
+        dos.writeInt(4000);
+        dos.writeInt(25000);
+        byte[] expected = bos.toByteArray();
+
+        List<EncoderProbeResult> results = Arrays.asList(EncoderProbeResult.failed("c2.hw.a"), new EncoderProbeResult("c2.hw.b", 12000, 4000,
+                25000));
+        bos = new ByteArrayOutputStream();
+        DeviceMessageWriter writer = new DeviceMessageWriter(bos);
+        writer.write(DeviceMessage.createEncoderProbe(results, 1));
+
+        byte[] actual = bos.toByteArray();
+
+        Assert.assertArrayEquals(expected, actual);
+    }
 }
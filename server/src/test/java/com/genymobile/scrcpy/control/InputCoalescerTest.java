@@ -0,0 +1,177 @@
+package com.genymobile.scrcpy.control;
+
+import com.genymobile.scrcpy.device.Position;
+
+import android.view.MotionEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class InputCoalescerTest {
+
+    private final List<String> injected = new ArrayList<>();
+
+    private void flush(InputCoalescer coalescer) {
+        coalescer.flush(batch -> {
+            StringBuilder builder = new StringBuilder("touch");
+            for (int i = 0; i < batch.size(); ++i) {
+                builder.append(' ').append(batch.getAction(i)).append(' ').append(batch.getPointerId(i)).append(' ')
+                        .append(batch.getX(i));
+            }
+            injected.add(builder.toString());
+        }, (x, y, screenWidth, screenHeight, hScroll, vScroll, buttons) -> {
+            injected.add("scroll " + x + " " + hScroll + " " + vScroll);
+        });
+    }
+
+    private static ControlMessage touch(int action, long pointerId, int x) {
+        return touch(action, pointerId, x, 0);
+    }
+
+    private static ControlMessage touch(int action, long pointerId, int x, int timestamp) {
+        return ControlMessage.createInjectTouchEvent(action, pointerId, new Position(x, 0, 1080, 1920), 1f, 0, 0, timestamp);
+    }
+
+    private static ControlMessage scroll(int x, float hScroll, float vScroll, int buttons) {
+        return ControlMessage.createInjectScrollEvent(new Position(x, 0, 1080, 1920), hScroll, vScroll, buttons);
+    }
+
+    @Test
+    public void testTransitionsAreNotCoalescable() {
+        Assert.assertFalse(InputCoalescer.isCoalescable(touch(MotionEvent.ACTION_DOWN, 1, 0)));
+        Assert.assertFalse(InputCoalescer.isCoalescable(touch(MotionEvent.ACTION_UP, 1, 0)));
+        Assert.assertTrue(InputCoalescer.isCoalescable(touch(MotionEvent.ACTION_MOVE, 1, 0)));
+        Assert.assertTrue(InputCoalescer.isCoalescable(touch(MotionEvent.ACTION_HOVER_MOVE, -1, 0)));
+        Assert.assertTrue(InputCoalescer.isCoalescable(scroll(0, 1, 0, 0)));
+        Assert.assertFalse(InputCoalescer.isCoalescable(ControlMessage.createInjectKeycode(0, 0, 0, 0)));
+    }
+
+    @Test
+    public void testBatchMoves() {
+        InputCoalescer coalescer = new InputCoalescer();
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 10, 0), 0));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 2, 20, 1), 1));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 11, 2), 2));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 2, 21, 3), 3));
+        flush(coalescer);
+
+        Assert.assertTrue(coalescer.isEmpty());
+        // All the samples are kept, in order, in a single batch
+        int move = MotionEvent.ACTION_MOVE;
+        Assert.assertEquals(1, injected.size());
+        Assert.assertEquals("touch " + move + " 1 10 " + move + " 2 20 " + move + " 1 11 " + move + " 2 21", injected.get(0));
+    }
+
+    @Test
+    public void testTouchMoveBatch() {
+        TouchMoveBatch batch = new TouchMoveBatch(2);
+        batch.add(MotionEvent.ACTION_MOVE, 1, 10, 0, 1080, 1920, 1f, 0, 0, 5000, 100);
+        batch.add(MotionEvent.ACTION_MOVE, 1, 11, 20, 1080, 1920, 0.5f, 0, 0, 5008, 108);
+        Assert.assertTrue(batch.isFull());
+        Assert.assertEquals(1, batch.lastIndexOf(1));
+        Assert.assertEquals(-1, batch.lastIndexOf(2));
+        Assert.assertEquals(100, batch.getEventTime(0));
+        Assert.assertEquals(108, batch.getEventTime(1));
+        Assert.assertEquals(5008, batch.getTimestamp(1));
+        Assert.assertEquals(0.5f, batch.getPressure(1), 0f);
+        Assert.assertEquals(11, batch.getX(1));
+        Assert.assertEquals(20, batch.getY(1));
+        Assert.assertEquals(1080, batch.getScreenWidth(1));
+        Assert.assertEquals(1920, batch.getScreenHeight(1));
+
+        batch.clear();
+        Assert.assertEquals(0, batch.size());
+    }
+
+    @Test
+    public void testAccumulateScroll() {
+        InputCoalescer coalescer = new InputCoalescer();
+        Assert.assertTrue(coalescer.add(scroll(10, 0.5f, 0, 0), 0));
+        Assert.assertTrue(coalescer.add(scroll(11, 0.25f, -1, 0), 0));
+        flush(coalescer);
+
+        Assert.assertEquals(1, injected.size());
+        Assert.assertEquals("scroll 11 0.75 -1.0", injected.get(0));
+    }
+
+    @Test
+    public void testDoNotMix() {
+        InputCoalescer coalescer = new InputCoalescer();
+        Assert.assertTrue(coalescer.add(scroll(10, 1, 0, 0), 0));
+        // Different buttons
+        Assert.assertFalse(coalescer.add(scroll(10, 1, 0, MotionEvent.BUTTON_PRIMARY), 0));
+        // Do not reorder touch and scroll events
+        Assert.assertFalse(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 10), 0));
+        flush(coalescer);
+
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, -1, 10), 0));
+        Assert.assertFalse(coalescer.add(touch(MotionEvent.ACTION_HOVER_MOVE, -1, 10), 0));
+        Assert.assertFalse(coalescer.add(scroll(10, 1, 0, 0), 0));
+    }
+
+    @Test
+    public void testFrameWindow() {
+        InputCoalescer coalescer = new InputCoalescer();
+        // Received in a burst, but generated in different input frames on the client
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 10, 100), 500));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 11, 100 + InputCoalescer.FRAME_WINDOW_MS - 1), 500));
+        // The sample belongs to the next input frame
+        Assert.assertFalse(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 12, 100 + InputCoalescer.FRAME_WINDOW_MS), 500));
+        flush(coalescer);
+
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 12, 100 + InputCoalescer.FRAME_WINDOW_MS), 500));
+    }
+
+    @Test
+    public void testFrameWindowTimestampWrap() {
+        InputCoalescer coalescer = new InputCoalescer();
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 10, Integer.MAX_VALUE), 0));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 11, Integer.MIN_VALUE), 0));
+        Assert.assertFalse(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 12, Integer.MIN_VALUE + InputCoalescer.FRAME_WINDOW_MS), 0));
+    }
+
+    @Test
+    public void testReplaceSampleWithSameTimestamp() {
+        InputCoalescer coalescer = new InputCoalescer();
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 10, 100), 0));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 11, 101), 0));
+        // Same timestamp as the previous sample of the same pointer: the latest position is kept
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 12, 101), 0));
+        Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 2, 20, 101), 0));
+        flush(coalescer);
+
+        int move = MotionEvent.ACTION_MOVE;
+        Assert.assertEquals("touch " + move + " 1 10 " + move + " 1 12 " + move + " 2 20", injected.get(0));
+    }
+
+    @Test
+    public void testResolveEventTimes() {
+        TouchMoveBatch batch = new TouchMoveBatch(4);
+        // Generated 4 ms apart on the client, but received at the same time
+        batch.add(MotionEvent.ACTION_MOVE, 1, 10, 0, 1080, 1920, 1f, 0, 0, 1000, 500);
+        batch.add(MotionEvent.ACTION_MOVE, 1, 11, 0, 1080, 1920, 1f, 0, 0, 1004, 500);
+        batch.add(MotionEvent.ACTION_MOVE, 1, 12, 0, 1080, 1920, 1f, 0, 0, 1008, 501);
+        batch.resolveEventTimes(0);
+        Assert.assertEquals(493, batch.getEventTime(0));
+        Assert.assertEquals(497, batch.getEventTime(1));
+        Assert.assertEquals(501, batch.getEventTime(2));
+
+        // Never before the previous event
+        batch.resolveEventTimes(495);
+        Assert.assertEquals(495, batch.getEventTime(0));
+        Assert.assertEquals(497, batch.getEventTime(1));
+        Assert.assertEquals(501, batch.getEventTime(2));
+    }
+
+    @Test
+    public void testBounded() {
+        InputCoalescer coalescer = new InputCoalescer();
+        for (int i = 0; i < InputCoalescer.MAX_COALESCED_MESSAGES; ++i) {
+            Assert.assertTrue(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, i), 0));
+        }
+        Assert.assertTrue(coalescer.isFull());
+        Assert.assertFalse(coalescer.add(touch(MotionEvent.ACTION_MOVE, 1, 0), 0));
+    }
+}
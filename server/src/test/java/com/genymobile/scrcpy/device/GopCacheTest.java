@@ -0,0 +1,181 @@
+package com.genymobile.scrcpy.device;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GopCacheTest {
+
+    private static final class Packet {
+        private final byte[] data;
+        private final long pts;
+        private final boolean config;
+        private final boolean keyFrame;
+
+        Packet(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+            data = new byte[buffer.remaining()];
+            buffer.get(data);
+            this.pts = pts;
+            this.config = config;
+            this.keyFrame = keyFrame;
+        }
+    }
+
+    private static ByteBuffer createPacket(int size, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; ++i) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<Packet> replay(GopCache.Snapshot snapshot) throws IOException {
+        List<Packet> packets = new ArrayList<>();
+        snapshot.replay((buffer, pts, config, keyFrame) -> packets.add(new Packet(buffer, pts, config, keyFrame)));
+        return packets;
+    }
+
+    @Test
+    public void testNotValidBeforeKeyFrame() {
+        GopCache cache = new GopCache(1000, true);
+        Assert.assertNull(cache.snapshot());
+
+        cache.add(createPacket(10, 1), 0, true, false);
+        cache.add(createPacket(10, 2), 1000, false, false);
+        Assert.assertFalse(cache.isValid());
+        Assert.assertNull(cache.snapshot());
+    }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        GopCache cache = new GopCache(1000, true);
+        cache.add(createPacket(10, 1), 0, true, false);
+        cache.add(createPacket(100, 2), 1000, false, true);
+        cache.add(createPacket(20, 3), 2000, false, false);
+
+        ByteBuffer packet = createPacket(30, 4);
+        cache.add(packet, 3000, false, false);
+        // The buffer position must not be changed
+        Assert.assertEquals(30, packet.remaining());
+
+        GopCache.Snapshot snapshot = cache.snapshot();
+        Assert.assertEquals(4, snapshot.getPacketCount());
+        Assert.assertEquals(160, snapshot.getSize());
+
+        List<Packet> packets = replay(snapshot);
+        Assert.assertEquals(4, packets.size());
+
+        Assert.assertTrue(packets.get(0).config);
+        Assert.assertEquals(10, packets.get(0).data.length);
+        Assert.assertEquals(1, packets.get(0).data[0]);
+
+        Assert.assertTrue(packets.get(1).keyFrame);
+        Assert.assertEquals(1000, packets.get(1).pts);
+        Assert.assertEquals(100, packets.get(1).data.length);
+        Assert.assertEquals(2, packets.get(1).data[99]);
+
+        Assert.assertFalse(packets.get(3).keyFrame);
+        Assert.assertEquals(3000, packets.get(3).pts);
+        Assert.assertEquals(4, packets.get(3).data[0]);
+
+        // A snapshot may be replayed several times
+        Assert.assertEquals(4, replay(snapshot).size());
+    }
+
+    @Test
+    public void testSnapshotTwice() throws IOException {
+        GopCache cache = new GopCache(1000, true);
+        cache.add(createPacket(10, 1), 0, true, false);
+        cache.add(createPacket(100, 2), 1000, false, true);
+
+        // Each snapshot must contain the config packet
+        for (int i = 0; i < 2; ++i) {
+            GopCache.Snapshot snapshot = cache.snapshot();
+            Assert.assertEquals(2, snapshot.getPacketCount());
+            Assert.assertEquals(110, snapshot.getSize());
+
+            List<Packet> packets = replay(snapshot);
+            Assert.assertTrue(packets.get(0).config);
+            Assert.assertEquals(10, packets.get(0).data.length);
+            Assert.assertEquals(1, packets.get(0).data[0]);
+        }
+
+        // The config is still available
+        Assert.assertEquals(10, cache.getConfig().remaining());
+    }
+
+    @Test
+    public void testNewGopOnKeyFrame() throws IOException {
+        GopCache cache = new GopCache(1000, true);
+        cache.add(createPacket(100, 1), 0, false, true);
+        cache.add(createPacket(20, 2), 1000, false, false);
+        cache.add(createPacket(100, 3), 2000, false, true);
+
+        List<Packet> packets = replay(cache.snapshot());
+        Assert.assertEquals(1, packets.size());
+        Assert.assertEquals(2000, packets.get(0).pts);
+        Assert.assertEquals(3, packets.get(0).data[0]);
+    }
+
+    @Test
+    public void testMaxSize() throws IOException {
+        GopCache cache = new GopCache(100, true);
+        cache.add(createPacket(60, 1), 0, false, true);
+        cache.add(createPacket(60, 2), 1000, false, false);
+        Assert.assertFalse(cache.isValid());
+
+        // Still invalid until the next key frame
+        cache.add(createPacket(10, 3), 2000, false, false);
+        Assert.assertNull(cache.snapshot());
+
+        cache.add(createPacket(60, 4), 3000, false, true);
+        Assert.assertEquals(1, replay(cache.snapshot()).size());
+    }
+
+    @Test
+    public void testConfigInvalidatesGop() {
+        GopCache cache = new GopCache(1000, true);
+        cache.add(createPacket(100, 1), 0, false, true);
+        cache.add(createPacket(10, 2), 1000, true, false);
+        Assert.assertFalse(cache.isValid());
+
+        ByteBuffer config = cache.getConfig();
+        Assert.assertEquals(10, config.remaining());
+        Assert.assertEquals(1000, cache.getConfigPts());
+    }
+
+    @Test
+    public void testAudio() throws IOException {
+        GopCache cache = new GopCache(1000, false);
+        cache.add(createPacket(10, 1), 0, true, false);
+        cache.add(createPacket(20, 2), 1000, false, false);
+        cache.add(createPacket(20, 3), 2000, false, false);
+
+        // Every audio packet is a sync point, only the last one is kept
+        List<Packet> packets = replay(cache.snapshot());
+        Assert.assertEquals(2, packets.size());
+        Assert.assertTrue(packets.get(0).config);
+        Assert.assertEquals(2000, packets.get(1).pts);
+    }
+
+    @Test
+    public void testGrow() throws IOException {
+        GopCache cache = new GopCache(1 << 20, true);
+        cache.add(createPacket(1000, 0), 0, false, true);
+        for (int i = 1; i < 500; ++i) {
+            cache.add(createPacket(1000, i), i, false, false);
+        }
+
+        List<Packet> packets = replay(cache.snapshot());
+        Assert.assertEquals(500, packets.size());
+        for (int i = 0; i < 500; ++i) {
+            Assert.assertEquals(i, packets.get(i).pts);
+            Assert.assertEquals((byte) i, packets.get(i).data[999]);
+        }
+    }
+}
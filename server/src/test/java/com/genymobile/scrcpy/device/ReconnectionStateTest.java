@@ -0,0 +1,56 @@
+package com.genymobile.scrcpy.device;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ReconnectionStateTest {
+
+    @Test
+    public void testIgnoreStaleGeneration() {
+        ReconnectionState state = new ReconnectionState();
+        Assert.assertTrue(state.onDisconnected(0));
+        Assert.assertEquals(1, state.onReconnected());
+
+        // Late error on the previous connection
+        Assert.assertFalse(state.onDisconnected(0));
+
+        Assert.assertTrue(state.onDisconnected(1));
+    }
+
+    @Test
+    public void testIgnoreWhileReconnecting() {
+        ReconnectionState state = new ReconnectionState();
+        Assert.assertTrue(state.onDisconnected(0));
+        // Reported by another component of the same connection
+        Assert.assertFalse(state.onDisconnected(0));
+    }
+
+    @Test
+    public void testReconnectTwice() {
+        ReconnectionState state = new ReconnectionState();
+        Assert.assertTrue(state.onDisconnected(0));
+        Assert.assertEquals(1, state.onReconnected());
+        Assert.assertTrue(state.onDisconnected(1));
+        Assert.assertEquals(2, state.onReconnected());
+        Assert.assertFalse(state.onDisconnected(1));
+        Assert.assertTrue(state.onDisconnected(2));
+    }
+
+    @Test
+    public void testExpired() {
+        ReconnectionState state = new ReconnectionState();
+        Assert.assertTrue(state.onDisconnected(0));
+        state.expire();
+        Assert.assertTrue(state.isExpired());
+        Assert.assertFalse(state.onDisconnected(0));
+    }
+
+    @Test
+    public void testStoppedWhileReconnecting() {
+        ReconnectionState state = new ReconnectionState();
+        Assert.assertTrue(state.onDisconnected(0));
+        state.stop();
+        Assert.assertEquals(-1, state.onReconnected());
+        Assert.assertFalse(state.onDisconnected(0));
+    }
+}
@@ -0,0 +1,124 @@
+package com.genymobile.scrcpy.device;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResumableStreamTest {
+
+    private static final class RecordingOutput implements ResumableStream.Output {
+        private final List<String> events = new ArrayList<>();
+        private boolean fail;
+
+        @Override
+        public void writeHeader() throws IOException {
+            if (fail) {
+                throw new IOException("Broken pipe");
+            }
+            events.add("header");
+        }
+
+        @Override
+        public void writeCachedPacket(ByteBuffer buffer, long pts, boolean config, boolean keyFrame) {
+            // Consume the buffer, as a socket write does
+            buffer.position(buffer.limit());
+            events.add(config ? "config" : (keyFrame ? "key:" : "frame:") + pts);
+        }
+
+        @Override
+        public void requestKeyFrame() {
+            events.add("request");
+        }
+    }
+
+    private static ByteBuffer createPacket(int size) {
+        return ByteBuffer.allocate(size);
+    }
+
+    private static ResumableStream createPrimedStream() throws IOException {
+        ResumableStream stream = new ResumableStream(1000, true);
+        Assert.assertTrue(stream.prepareWrite(createPacket(10), 0, true, false, false));
+        Assert.assertTrue(stream.prepareWrite(createPacket(100), 1000, false, true, false));
+        Assert.assertTrue(stream.prepareWrite(createPacket(20), 2000, false, false, false));
+        return stream;
+    }
+
+    @Test
+    public void testResumeTwice() throws IOException {
+        ResumableStream stream = createPrimedStream();
+
+        Assert.assertEquals(0, stream.disconnect(new IOException("Broken pipe")));
+        RecordingOutput output = new RecordingOutput();
+        stream.resume(1, output);
+        Assert.assertFalse(stream.isDisconnected());
+
+        Assert.assertEquals(1, stream.disconnect(new IOException("Broken pipe")));
+        stream.resume(2, output);
+
+        String[] expected = {"header", "config", "key:1000", "frame:2000"};
+        Assert.assertEquals(2 * expected.length, output.events.size());
+        for (int i = 0; i < output.events.size(); ++i) {
+            Assert.assertEquals(expected[i % expected.length], output.events.get(i));
+        }
+    }
+
+    @Test
+    public void testDropWhileDisconnected() throws IOException {
+        ResumableStream stream = createPrimedStream();
+        IOException error = new IOException("Broken pipe");
+        stream.disconnect(error);
+
+        Assert.assertFalse(stream.prepareWrite(createPacket(20), 3000, false, false, false));
+
+        try {
+            stream.prepareWrite(createPacket(20), 4000, false, false, true);
+            Assert.fail("The disconnection error must be thrown once the session expired");
+        } catch (IOException e) {
+            Assert.assertSame(error, e);
+        }
+    }
+
+    @Test
+    public void testResumeWithoutKeyFrame() throws IOException {
+        ResumableStream stream = new ResumableStream(1000, true);
+        Assert.assertTrue(stream.prepareWrite(createPacket(10), 0, true, false, false));
+        stream.disconnect(new IOException("Broken pipe"));
+
+        RecordingOutput output = new RecordingOutput();
+        stream.resume(1, output);
+        Assert.assertEquals(3, output.events.size());
+        Assert.assertEquals("header", output.events.get(0));
+        Assert.assertEquals("config", output.events.get(1));
+        Assert.assertEquals("request", output.events.get(2));
+
+        // Wait for the next key frame
+        Assert.assertFalse(stream.prepareWrite(createPacket(20), 1000, false, false, false));
+        Assert.assertTrue(stream.prepareWrite(createPacket(100), 2000, false, true, false));
+        Assert.assertTrue(stream.prepareWrite(createPacket(20), 3000, false, false, false));
+    }
+
+    @Test
+    public void testFailedResume() throws IOException {
+        ResumableStream stream = createPrimedStream();
+        stream.disconnect(new IOException("Broken pipe"));
+
+        RecordingOutput output = new RecordingOutput();
+        output.fail = true;
+        try {
+            stream.resume(1, output);
+            Assert.fail("The write error must be reported to the caller");
+        } catch (IOException e) {
+            // The caller disconnects the new connection
+            Assert.assertEquals(1, stream.disconnect(e));
+        }
+        Assert.assertTrue(stream.isDisconnected());
+
+        output.fail = false;
+        stream.resume(2, output);
+        Assert.assertEquals(4, output.events.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.genymobile.scrcpy.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    private static final long US = 1000;
+
+    @Test
+    public void testBucketIndex() {
+        Assert.assertEquals(0, LatencyHistogram.getBucketIndex(0));
+        Assert.assertEquals(1, LatencyHistogram.getBucketIndex(1));
+        Assert.assertEquals(2, LatencyHistogram.getBucketIndex(2));
+        Assert.assertEquals(2, LatencyHistogram.getBucketIndex(3));
+        Assert.assertEquals(11, LatencyHistogram.getBucketIndex(1024));
+        Assert.assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.getBucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 98; ++i) {
+            histogram.record(1000 * US); // bucket [512, 1023] µs
+        }
+        histogram.record(5000 * US); // bucket [4096, 8191] µs
+        histogram.record(20_000 * US); // bucket [16384, 32767] µs
+
+        LatencySummary summary = histogram.snapshotAndReset();
+        Assert.assertEquals(100, summary.getCount());
+        Assert.assertEquals(1023, summary.getP50Us());
+        Assert.assertEquals(8191, summary.getP99Us());
+        Assert.assertEquals(20_000, summary.getMaxUs());
+    }
+
+    @Test
+    public void testPercentilesBoundedByMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(600 * US);
+
+        LatencySummary summary = histogram.snapshotAndReset();
+        Assert.assertEquals(600, summary.getP50Us());
+        Assert.assertEquals(600, summary.getP99Us());
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(600 * US);
+        histogram.snapshotAndReset();
+
+        LatencySummary summary = histogram.snapshotAndReset();
+        Assert.assertEquals(0, summary.getCount());
+        Assert.assertEquals(0, summary.getMaxUs());
+    }
+}
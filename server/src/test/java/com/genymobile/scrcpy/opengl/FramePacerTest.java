@@ -0,0 +1,102 @@
+package com.genymobile.scrcpy.opengl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FramePacerTest {
+
+    private static final long MS = 1_000_000;
+
+    private static int countAccepted(FramePacer pacer, long startNs, long frameIntervalNs, int frameCount) {
+        int accepted = 0;
+        for (int i = 0; i < frameCount; ++i) {
+            if (pacer.accept(startNs + i * frameIntervalNs)) {
+                ++accepted;
+            }
+        }
+        return accepted;
+    }
+
+    @Test
+    public void testNoLimit() {
+        FramePacer pacer = new FramePacer();
+        Assert.assertEquals(120, countAccepted(pacer, 0, 8_333_333, 120));
+    }
+
+    @Test
+    public void test30FpsFrom120Hz() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMaxFps(30);
+
+        // 1 second at 120 Hz
+        Assert.assertEquals(30, countAccepted(pacer, 0, 8_333_333, 120));
+    }
+
+    @Test
+    public void test50FpsFrom60Hz() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMaxFps(50);
+
+        // 1 second at 60 Hz
+        Assert.assertEquals(50, countAccepted(pacer, 0, 16_666_667, 60));
+    }
+
+    @Test
+    public void testJitter() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMaxFps(30);
+
+        Assert.assertTrue(pacer.accept(0));
+        Assert.assertFalse(pacer.accept(17 * MS));
+        // Slightly before the deadline
+        Assert.assertTrue(pacer.accept(33 * MS));
+        // The next deadline is on the grid (67ms), not relative to the last frame
+        Assert.assertFalse(pacer.accept(60 * MS));
+        Assert.assertTrue(pacer.accept(66 * MS));
+    }
+
+    @Test
+    public void testRestartAfterPause() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMaxFps(10);
+
+        Assert.assertTrue(pacer.accept(0));
+        // No frame for a while
+        Assert.assertTrue(pacer.accept(1000 * MS));
+        Assert.assertFalse(pacer.accept(1050 * MS));
+        Assert.assertTrue(pacer.accept(1100 * MS));
+    }
+
+    @Test
+    public void testDeferredFrame() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMaxFps(10);
+
+        Assert.assertTrue(pacer.accept(0));
+        Assert.assertFalse(pacer.accept(20 * MS));
+        long delay = pacer.getDelayNs(20 * MS);
+        Assert.assertTrue(delay > 60 * MS && delay <= 80 * MS);
+
+        // No more recent frame, render it at its deadline
+        pacer.forceAccept(20 * MS);
+        Assert.assertFalse(pacer.accept(150 * MS));
+        Assert.assertTrue(pacer.accept(200 * MS));
+    }
+
+    @Test
+    public void testChangeMaxFps() {
+        FramePacer pacer = new FramePacer();
+        pacer.setMaxFps(5);
+
+        Assert.assertTrue(pacer.accept(0));
+        Assert.assertFalse(pacer.accept(50 * MS));
+
+        // Apply the new value immediately, without waiting for the previous deadline
+        pacer.setMaxFps(60);
+        Assert.assertTrue(pacer.accept(67 * MS));
+        Assert.assertTrue(pacer.accept(84 * MS));
+
+        pacer.setMaxFps(0);
+        Assert.assertTrue(pacer.accept(85 * MS));
+    }
+}
@@ -0,0 +1,80 @@
+package com.genymobile.scrcpy.record;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+public class Mp4BoxesTest {
+
+    private static File createTempFile() throws IOException {
+        File file = File.createTempFile("segment", ".mp4");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void writeBox(RandomAccessFile file, String type, int payloadSize) throws IOException {
+        file.writeInt(8 + payloadSize);
+        file.write(type.getBytes(StandardCharsets.US_ASCII));
+        file.write(new byte[payloadSize]);
+    }
+
+    private static void writeLargeBox(RandomAccessFile file, String type, int payloadSize) throws IOException {
+        file.writeInt(1);
+        file.write(type.getBytes(StandardCharsets.US_ASCII));
+        file.writeLong(16 + payloadSize);
+        file.write(new byte[payloadSize]);
+    }
+
+    @Test
+    public void testFinalizedPreallocatedFile() throws IOException {
+        File f = createTempFile();
+        try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            writeBox(file, "ftyp", 16);
+            writeLargeBox(file, "mdat", 1000);
+            writeBox(file, "moov", 200);
+            long end = file.getFilePointer();
+            // Pre-allocated space
+            file.setLength(end + 4096);
+
+            Mp4Boxes.Layout layout = Mp4Boxes.scan(file);
+            Assert.assertEquals(end, layout.getEnd());
+            Assert.assertTrue(layout.isComplete());
+        }
+    }
+
+    @Test
+    public void testKilledBeforeFinalization() throws IOException {
+        File f = createTempFile();
+        try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            writeBox(file, "ftyp", 16);
+            // The size of the media data box is only written on finalization
+            file.writeInt(0);
+            file.write("mdat".getBytes(StandardCharsets.US_ASCII));
+            file.write(new byte[1000]);
+            file.setLength(file.getFilePointer() + 4096);
+
+            Mp4Boxes.Layout layout = Mp4Boxes.scan(file);
+            Assert.assertEquals(24, layout.getEnd());
+            Assert.assertFalse(layout.isComplete());
+        }
+    }
+
+    @Test
+    public void testTruncatedBox() throws IOException {
+        File f = createTempFile();
+        try (RandomAccessFile file = new RandomAccessFile(f, "rw")) {
+            writeBox(file, "ftyp", 16);
+            file.writeInt(1000);
+            file.write("moov".getBytes(StandardCharsets.US_ASCII));
+            file.write(new byte[10]);
+
+            Mp4Boxes.Layout layout = Mp4Boxes.scan(file);
+            Assert.assertEquals(24, layout.getEnd());
+            Assert.assertFalse(layout.isComplete());
+        }
+    }
+}
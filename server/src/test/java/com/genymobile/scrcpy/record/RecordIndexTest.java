@@ -0,0 +1,107 @@
+package com.genymobile.scrcpy.record;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class RecordIndexTest {
+
+    private static File createTempIndex() throws IOException {
+        File file = File.createTempFile("record", ".index");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void appendRaw(File file, String data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        File file = createTempIndex();
+        try (RecordIndex index = RecordIndex.open(file)) {
+            Assert.assertTrue(index.getEntries().isEmpty());
+            Assert.assertEquals(0, index.getNextSegmentIndex());
+        }
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        File file = createTempIndex();
+        try (RecordIndex index = RecordIndex.open(file)) {
+            index.append(new RecordIndex.Entry(0, 1000, 60_000_000, 12345, "rec_000.mp4"));
+            index.append(new RecordIndex.Entry(1, 61000, 59_500_000, 23456, "rec_001.mp4"));
+        }
+
+        try (RecordIndex index = RecordIndex.open(file)) {
+            List<RecordIndex.Entry> entries = index.getEntries();
+            Assert.assertEquals(2, entries.size());
+
+            RecordIndex.Entry entry = entries.get(1);
+            Assert.assertEquals(1, entry.getIndex());
+            Assert.assertEquals(61000, entry.getStartTimeMs());
+            Assert.assertEquals(59_500_000, entry.getDurationUs());
+            Assert.assertEquals(23456, entry.getSize());
+            Assert.assertEquals("rec_001.mp4", entry.getFileName());
+
+            Assert.assertEquals(2, index.getNextSegmentIndex());
+        }
+    }
+
+    @Test
+    public void testFileNameWithSpaces() throws IOException {
+        File file = createTempIndex();
+        try (RecordIndex index = RecordIndex.open(file)) {
+            index.append(new RecordIndex.Entry(0, 1000, 1000, 10, "my record_000.mp4"));
+        }
+
+        try (RecordIndex index = RecordIndex.open(file)) {
+            Assert.assertEquals("my record_000.mp4", index.getEntries().get(0).getFileName());
+        }
+    }
+
+    @Test
+    public void testKilledWhileAppending() throws IOException {
+        File file = createTempIndex();
+        try (RecordIndex index = RecordIndex.open(file)) {
+            index.append(new RecordIndex.Entry(0, 1000, 60_000_000, 12345, "rec_000.mp4"));
+        }
+        long validLength = file.length();
+
+        // Simulate a kill in the middle of writing the second line
+        appendRaw(file, "1 61000 59500");
+
+        try (RecordIndex index = RecordIndex.open(file)) {
+            Assert.assertEquals(1, index.getEntries().size());
+            Assert.assertEquals(1, index.getNextSegmentIndex());
+            // The partial line is removed, so that the next entry is not appended to it
+            Assert.assertEquals(validLength, file.length());
+
+            index.append(new RecordIndex.Entry(1, 61000, 59_500_000, 23456, "rec_001.mp4"));
+        }
+
+        try (RecordIndex index = RecordIndex.open(file)) {
+            Assert.assertEquals(2, index.getEntries().size());
+            Assert.assertEquals("rec_001.mp4", index.getEntries().get(1).getFileName());
+        }
+    }
+
+    @Test
+    public void testCorruptedLine() throws IOException {
+        File file = createTempIndex();
+        appendRaw(file, "0 1000 60000000 12345 rec_000.mp4\n\0\0\0\0\n1 61000 59500000 23456 rec_001.mp4\n");
+
+        try (RecordIndex index = RecordIndex.open(file)) {
+            // The lines following a corrupted line are not trusted
+            Assert.assertEquals(1, index.getEntries().size());
+            Assert.assertEquals(1, index.getNextSegmentIndex());
+        }
+    }
+}
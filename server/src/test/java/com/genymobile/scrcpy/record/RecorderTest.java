@@ -0,0 +1,23 @@
+package com.genymobile.scrcpy.record;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RecorderTest {
+
+    @Test
+    public void testSegmentPath() {
+        Assert.assertEquals("/sdcard/rec_000.mp4", Recorder.getSegmentPath("/sdcard/rec.mp4", 0, true));
+        Assert.assertEquals("/sdcard/rec_012.mp4", Recorder.getSegmentPath("/sdcard/rec.mp4", 12, true));
+        Assert.assertEquals("/sdcard/rec_001", Recorder.getSegmentPath("/sdcard/rec", 1, true));
+        Assert.assertEquals("/sdcard/dir.d/rec_001", Recorder.getSegmentPath("/sdcard/dir.d/rec", 1, true));
+    }
+
+    @Test
+    public void testUnsegmentedPathAfterFormatChange() {
+        Assert.assertEquals("/sdcard/rec.mp4", Recorder.getSegmentPath("/sdcard/rec.mp4", 0, false));
+        // After an encoder reset, the file already written must not be reopened
+        Assert.assertEquals("/sdcard/rec_001.mp4", Recorder.getSegmentPath("/sdcard/rec.mp4", 1, false));
+        Assert.assertEquals("/sdcard/rec_002.mp4", Recorder.getSegmentPath("/sdcard/rec.mp4", 2, false));
+    }
+}
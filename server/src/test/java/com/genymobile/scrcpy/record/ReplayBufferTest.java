@@ -0,0 +1,159 @@
+package com.genymobile.scrcpy.record;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplayBufferTest {
+
+    private static final class Packet {
+        private final byte[] data;
+        private final long pts;
+        private final boolean keyFrame;
+
+        Packet(ByteBuffer buffer, long pts, boolean keyFrame) {
+            data = new byte[buffer.remaining()];
+            buffer.get(data);
+            this.pts = pts;
+            this.keyFrame = keyFrame;
+        }
+    }
+
+    private static ByteBuffer createPacket(int size, int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; ++i) {
+            buffer.put((byte) value);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static List<Packet> replay(ReplayBuffer.Snapshot snapshot) throws IOException {
+        List<Packet> packets = new ArrayList<>();
+        snapshot.replay((buffer, pts, config, keyFrame) -> packets.add(new Packet(buffer, pts, keyFrame)));
+        return packets;
+    }
+
+    @Test
+    public void testWaitKeyFrame() throws IOException {
+        ReplayBuffer replayBuffer = new ReplayBuffer(10_000_000, 1000);
+        replayBuffer.add(createPacket(10, 1), 0, false, false);
+        Assert.assertNull(replayBuffer.snapshot());
+
+        replayBuffer.add(createPacket(10, 2), 1000, false, true);
+        replayBuffer.add(createPacket(10, 3), 2000, false, false);
+
+        List<Packet> packets = replay(replayBuffer.snapshot());
+        Assert.assertEquals(2, packets.size());
+        Assert.assertTrue(packets.get(0).keyFrame);
+        Assert.assertEquals(1000, packets.get(0).pts);
+        Assert.assertEquals(2, packets.get(0).data[0]);
+    }
+
+    @Test
+    public void testBufferPositionUnchanged() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(10_000_000, 1000);
+        ByteBuffer buffer = createPacket(10, 1);
+        replayBuffer.add(buffer, 0, false, true);
+        Assert.assertEquals(0, buffer.position());
+        Assert.assertEquals(10, buffer.remaining());
+    }
+
+    @Test
+    public void testEvictWholeGopsByDuration() throws IOException {
+        // 1 packet every 100 ms, a key frame every 10 packets
+        ReplayBuffer replayBuffer = new ReplayBuffer(1_500_000, 1 << 16);
+        for (int i = 0; i < 50; ++i) {
+            replayBuffer.add(createPacket(10, i), i * 100_000L, false, i % 10 == 0);
+        }
+
+        ReplayBuffer.Snapshot snapshot = replayBuffer.snapshot();
+        List<Packet> packets = replay(snapshot);
+        // The last packet is at 4.9s: the GOP starting at 3s is the latest one covering 1.5s
+        Assert.assertEquals(20, packets.size());
+        Assert.assertTrue(packets.get(0).keyFrame);
+        Assert.assertEquals(3_000_000, snapshot.getStartPts());
+        Assert.assertEquals(1_900_000, snapshot.getDurationUs());
+        for (int i = 0; i < packets.size(); ++i) {
+            Assert.assertEquals(30 + i, packets.get(i).data[0]);
+        }
+    }
+
+    @Test
+    public void testEvictWholeGopsBySize() throws IOException {
+        // Room for 25 packets of 10 bytes, a key frame every 10 packets
+        ReplayBuffer replayBuffer = new ReplayBuffer(100_000_000, 250);
+        for (int i = 0; i < 47; ++i) {
+            replayBuffer.add(createPacket(10, i), i * 1000L, false, i % 10 == 0);
+        }
+
+        // Packets 47 - 25 = 22 and following do not fit with the older ones, only whole GOPs are kept
+        List<Packet> packets = replay(replayBuffer.snapshot());
+        Assert.assertEquals(17, packets.size());
+        Assert.assertTrue(packets.get(0).keyFrame);
+        for (int i = 0; i < packets.size(); ++i) {
+            Assert.assertEquals(30 + i, packets.get(i).data[0]);
+            Assert.assertEquals((30 + i) * 1000L, packets.get(i).pts);
+        }
+    }
+
+    @Test
+    public void testWrapAroundWithVariableSizes() throws IOException {
+        ReplayBuffer replayBuffer = new ReplayBuffer(100_000_000, 100);
+        replayBuffer.add(createPacket(40, 0), 0, false, true);
+        replayBuffer.add(createPacket(40, 1), 1, false, false);
+        replayBuffer.add(createPacket(30, 2), 2, false, true);
+        // Does not fit at the end (80 + 30 > 100), the first GOP is evicted to store it at the start
+        replayBuffer.add(createPacket(30, 3), 3, false, false);
+        replayBuffer.add(createPacket(20, 4), 4, false, false);
+
+        List<Packet> packets = replay(replayBuffer.snapshot());
+        Assert.assertEquals(3, packets.size());
+        Assert.assertEquals(2, packets.get(0).data[0]);
+        Assert.assertEquals(30, packets.get(0).data.length);
+        Assert.assertEquals(3, packets.get(1).data[0]);
+        Assert.assertEquals(4, packets.get(2).data[0]);
+        Assert.assertEquals(20, packets.get(2).data.length);
+    }
+
+    @Test
+    public void testCurrentGopDoesNotFit() throws IOException {
+        ReplayBuffer replayBuffer = new ReplayBuffer(100_000_000, 100);
+        replayBuffer.add(createPacket(60, 0), 0, false, true);
+        // The GOP would exceed the buffer: it is evicted, and the buffer waits for the next key frame
+        replayBuffer.add(createPacket(60, 1), 1, false, false);
+        Assert.assertNull(replayBuffer.snapshot());
+
+        replayBuffer.add(createPacket(60, 2), 2, false, true);
+        List<Packet> packets = replay(replayBuffer.snapshot());
+        Assert.assertEquals(1, packets.size());
+        Assert.assertEquals(2, packets.get(0).data[0]);
+    }
+
+    @Test
+    public void testConfigClears() {
+        ReplayBuffer replayBuffer = new ReplayBuffer(100_000_000, 1000);
+        replayBuffer.add(createPacket(10, 0), 0, false, true);
+        replayBuffer.add(createPacket(10, 1), 1, true, false);
+        Assert.assertNull(replayBuffer.snapshot());
+    }
+
+    @Test
+    public void testManyPackets() throws IOException {
+        // More packets than the initial metadata capacity
+        ReplayBuffer replayBuffer = new ReplayBuffer(100_000_000, 1 << 20);
+        for (int i = 0; i < 1000; ++i) {
+            replayBuffer.add(createPacket(4, i), i, false, i % 100 == 0);
+        }
+
+        List<Packet> packets = replay(replayBuffer.snapshot());
+        Assert.assertEquals(1000, packets.size());
+        for (int i = 0; i < packets.size(); ++i) {
+            Assert.assertEquals((byte) i, packets.get(i).data[0]);
+        }
+    }
+}
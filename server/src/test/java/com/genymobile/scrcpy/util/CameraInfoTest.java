@@ -0,0 +1,57 @@
+package com.genymobile.scrcpy.util;
+
+import com.genymobile.scrcpy.device.Size;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+public class CameraInfoTest {
+
+    @Test
+    public void testSerializeAndParse() {
+        CameraInfo back = new CameraInfo("0", 1, new Size(4000, 3000), new TreeSet<>(Arrays.asList(15, 30)),
+                Arrays.asList(new Size(1920, 1080), new Size(1280, 720)), Collections.singletonList(new Size(1280, 720)),
+                new TreeSet<>(Arrays.asList(120, 240)));
+        CameraInfo front = new CameraInfo("1", 0, new Size(3264, 2448), new TreeSet<>(), Collections.singletonList(new Size(640, 480)),
+                Collections.emptyList(), new TreeSet<>());
+
+        List<CameraInfo> parsed = CameraInfo.parse(CameraInfo.serialize(Arrays.asList(back, front)));
+        Assert.assertNotNull(parsed);
+        Assert.assertEquals(2, parsed.size());
+
+        CameraInfo camera = parsed.get(0);
+        Assert.assertEquals("0", camera.getId());
+        Assert.assertEquals(1, camera.getFacing());
+        Assert.assertEquals(new Size(4000, 3000), camera.getActiveArraySize());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList(15, 30)), camera.getFps());
+        Assert.assertEquals(Arrays.asList(new Size(1920, 1080), new Size(1280, 720)), camera.getSizes());
+        Assert.assertEquals(Collections.singletonList(new Size(1280, 720)), camera.getHighSpeedSizes());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList(120, 240)), camera.getHighSpeedFps());
+
+        camera = parsed.get(1);
+        Assert.assertEquals("1", camera.getId());
+        Assert.assertTrue(camera.getFps().isEmpty());
+        Assert.assertEquals(Collections.singletonList(new Size(640, 480)), camera.getSizes());
+        Assert.assertTrue(camera.getHighSpeedSizes().isEmpty());
+        Assert.assertTrue(camera.getHighSpeedFps().isEmpty());
+    }
+
+    @Test
+    public void testParseEmpty() {
+        List<CameraInfo> parsed = CameraInfo.parse("");
+        Assert.assertNotNull(parsed);
+        Assert.assertTrue(parsed.isEmpty());
+    }
+
+    @Test
+    public void testParseMalformed() {
+        // The value cached by a previous version was a text listing
+        Assert.assertNull(CameraInfo.parse("List of cameras:\n    --camera-id=0    (back, 4000x3000, fps=[15, 30])"));
+        Assert.assertNull(CameraInfo.parse("0,1,4000x3000,15;30,1920x1080,,x"));
+    }
+}
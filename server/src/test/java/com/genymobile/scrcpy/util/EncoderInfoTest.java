@@ -0,0 +1,52 @@
+package com.genymobile.scrcpy.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class EncoderInfoTest {
+
+    @Test
+    public void testSerializeAndParse() {
+        List<EncoderInfo> encoders = Arrays.asList(
+                new EncoderInfo("c2.qti.avc.encoder", "video/avc", EncoderInfo.HW_TYPE_HW, true, null),
+                new EncoderInfo("OMX.qcom.video.encoder.avc", "video/avc", EncoderInfo.HW_TYPE_HW, true, "c2.qti.avc.encoder"),
+                new EncoderInfo("c2.android.opus.encoder", "audio/opus", null, false, null));
+
+        List<EncoderInfo> parsed = EncoderInfo.parse(EncoderInfo.serialize(encoders));
+        Assert.assertNotNull(parsed);
+        Assert.assertEquals(3, parsed.size());
+
+        EncoderInfo avc = parsed.get(0);
+        Assert.assertEquals("c2.qti.avc.encoder", avc.getName());
+        Assert.assertEquals("video/avc", avc.getMimeType());
+        Assert.assertEquals(EncoderInfo.HW_TYPE_HW, avc.getHwType());
+        Assert.assertTrue(avc.isVendor());
+        Assert.assertFalse(avc.isAlias());
+
+        EncoderInfo alias = parsed.get(1);
+        Assert.assertTrue(alias.isAlias());
+        Assert.assertEquals("c2.qti.avc.encoder", alias.getCanonicalName());
+
+        EncoderInfo opus = parsed.get(2);
+        Assert.assertEquals("audio/opus", opus.getMimeType());
+        Assert.assertNull(opus.getHwType());
+        Assert.assertFalse(opus.isVendor());
+    }
+
+    @Test
+    public void testParseEmpty() {
+        List<EncoderInfo> parsed = EncoderInfo.parse("");
+        Assert.assertNotNull(parsed);
+        Assert.assertTrue(parsed.isEmpty());
+    }
+
+    @Test
+    public void testParseMalformed() {
+        // The value cached by a previous version was a text listing
+        Assert.assertNull(EncoderInfo.parse("List of video encoders:\n    --video-codec=h264 --video-encoder=c2.qti.avc.encoder"));
+        Assert.assertNull(EncoderInfo.parse("c2.qti.avc.encoder,video/avc"));
+    }
+}
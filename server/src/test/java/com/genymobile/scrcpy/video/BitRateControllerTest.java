@@ -0,0 +1,73 @@
+package com.genymobile.scrcpy.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BitRateControllerTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void testDecreaseOnCongestion() {
+        List<Integer> changes = new ArrayList<>();
+        BitRateController controller = new BitRateController(1000000, 8000000, 8000000, changes::add);
+
+        // blocked 80% of the time
+        for (long t = 0; t <= 500; t += 10) {
+            controller.update(t * MS, 8 * MS);
+        }
+
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(6000000, (int) changes.get(0));
+        Assert.assertEquals(6000000, controller.getBitRate());
+    }
+
+    @Test
+    public void testNeverBelowMin() {
+        BitRateController controller = new BitRateController(1000000, 8000000, 8000000, bitRate -> { });
+
+        for (long t = 0; t <= 60_000; t += 10) {
+            controller.update(t * MS, 10 * MS);
+        }
+
+        Assert.assertEquals(1000000, controller.getBitRate());
+    }
+
+    @Test
+    public void testIncreaseWhenIdle() {
+        List<Integer> changes = new ArrayList<>();
+        BitRateController controller = new BitRateController(1000000, 8000000, 4000000, changes::add);
+
+        // 4 idle windows are necessary before increasing
+        for (long t = 0; t <= 1500; t += 10) {
+            controller.update(t * MS, 0);
+        }
+        Assert.assertTrue(changes.isEmpty());
+
+        for (long t = 1510; t <= 2000; t += 10) {
+            controller.update(t * MS, 0);
+        }
+        Assert.assertEquals(1, changes.size());
+        Assert.assertEquals(4400000, (int) changes.get(0));
+    }
+
+    @Test
+    public void testNeverAboveMax() {
+        BitRateController controller = new BitRateController(1000000, 8000000, 7500000, bitRate -> { });
+
+        for (long t = 0; t <= 60_000; t += 10) {
+            controller.update(t * MS, 0);
+        }
+
+        Assert.assertEquals(8000000, controller.getBitRate());
+    }
+
+    @Test
+    public void testInitialBitRateClamped() {
+        BitRateController controller = new BitRateController(1000000, 4000000, 8000000, bitRate -> { });
+        Assert.assertEquals(4000000, controller.getBitRate());
+    }
+}
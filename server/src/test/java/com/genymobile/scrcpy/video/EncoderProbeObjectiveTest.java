@@ -0,0 +1,45 @@
+package com.genymobile.scrcpy.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class EncoderProbeObjectiveTest {
+
+    private static final List<EncoderProbeResult> RESULTS = Arrays.asList(
+            new EncoderProbeResult("vendor.hw", 30000, 4000, 20000),
+            EncoderProbeResult.failed("broken"),
+            new EncoderProbeResult("c2.android", 10000, 9000, 30000),
+            new EncoderProbeResult("other.hw", 20000, 3000, 15000));
+
+    @Test
+    public void testSelectBest() {
+        Assert.assertEquals(2, EncoderProbeObjective.LATENCY.selectBest(RESULTS));
+        Assert.assertEquals(3, EncoderProbeObjective.THROUGHPUT.selectBest(RESULTS));
+    }
+
+    @Test
+    public void testSelectFirstOnEquality() {
+        List<EncoderProbeResult> results = Arrays.asList(
+                new EncoderProbeResult("a", 10000, 4000, 20000),
+                new EncoderProbeResult("b", 10000, 4000, 20000));
+        Assert.assertEquals(0, EncoderProbeObjective.LATENCY.selectBest(results));
+    }
+
+    @Test
+    public void testNoEncoder() {
+        Assert.assertEquals(-1, EncoderProbeObjective.LATENCY.selectBest(Collections.emptyList()));
+        Assert.assertEquals(-1, EncoderProbeObjective.THROUGHPUT.selectBest(Collections.singletonList(EncoderProbeResult.failed("broken"))));
+    }
+
+    @Test
+    public void testFindByName() {
+        Assert.assertEquals(EncoderProbeObjective.THROUGHPUT, EncoderProbeObjective.findByName("throughput"));
+        Assert.assertNull(EncoderProbeObjective.findByName("fast"));
+        // All the encoders are configured at the same bit rate, so the output size does not measure the efficiency
+        Assert.assertNull(EncoderProbeObjective.findByName("size"));
+    }
+}
@@ -0,0 +1,90 @@
+package com.genymobile.scrcpy.video;
+
+import com.genymobile.scrcpy.metrics.LatencySummary;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrameTracerTest {
+
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void testLatency() {
+        FrameTracer tracer = new FrameTracer(16);
+        for (int i = 1; i <= 10; ++i) {
+            long captureNs = i * 100 * MS;
+            // encoded in i ms, written 1 ms later
+            tracer.onFrameDequeued(captureNs / 1000, captureNs + i * MS);
+            tracer.onFrameWritten(captureNs / 1000, captureNs + (i + 1) * MS);
+        }
+
+        FrameLatency latency = tracer.computeLatency();
+
+        LatencySummary captureToDequeue = latency.getCaptureToDequeue();
+        Assert.assertEquals(10, captureToDequeue.getCount());
+        Assert.assertEquals(5000, captureToDequeue.getP50Us());
+        Assert.assertEquals(10000, captureToDequeue.getP99Us());
+        Assert.assertEquals(10000, captureToDequeue.getMaxUs());
+
+        LatencySummary dequeueToWrite = latency.getDequeueToWrite();
+        Assert.assertEquals(1000, dequeueToWrite.getP50Us());
+        Assert.assertEquals(1000, dequeueToWrite.getMaxUs());
+
+        LatencySummary captureToWrite = latency.getCaptureToWrite();
+        Assert.assertEquals(6000, captureToWrite.getP50Us());
+        Assert.assertEquals(11000, captureToWrite.getMaxUs());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        FrameTracer tracer = new FrameTracer(4);
+        // A very slow frame, then 4 fast frames
+        tracer.onFrameDequeued(0, 500 * MS);
+        tracer.onFrameWritten(0, 500 * MS);
+        for (int i = 1; i <= 4; ++i) {
+            long captureNs = i * 1000 * MS;
+            tracer.onFrameDequeued(captureNs / 1000, captureNs + MS);
+            tracer.onFrameWritten(captureNs / 1000, captureNs + MS);
+        }
+
+        LatencySummary captureToWrite = tracer.computeLatency().getCaptureToWrite();
+        Assert.assertEquals(4, captureToWrite.getCount());
+        Assert.assertEquals(1000, captureToWrite.getMaxUs());
+    }
+
+    @Test
+    public void testIgnoreFramesNotWritten() {
+        FrameTracer tracer = new FrameTracer(4);
+        tracer.onFrameDequeued(1000, 2 * MS);
+        tracer.onFrameDequeued(2000, 3 * MS);
+        tracer.onFrameWritten(1000, 4 * MS);
+        // Unknown frame, ignored
+        tracer.onFrameWritten(42, 5 * MS);
+
+        LatencySummary dequeueToWrite = tracer.computeLatency().getDequeueToWrite();
+        Assert.assertEquals(1, dequeueToWrite.getCount());
+        Assert.assertEquals(2000, dequeueToWrite.getMaxUs());
+    }
+
+    @Test
+    public void testDroppedFrames() {
+        FrameTracer tracer = new FrameTracer(4);
+        tracer.onFrameDequeued(1000, 2 * MS);
+        tracer.onFrameDequeued(2000, 3 * MS);
+        tracer.onFrameDequeued(3000, 4 * MS);
+        // The frame 2000 has been dropped
+        tracer.onFrameWritten(1000, 5 * MS);
+        tracer.onFrameWritten(3000, 6 * MS);
+        // The ring wraps around
+        tracer.onFrameDequeued(4000, 7 * MS);
+        tracer.onFrameDequeued(5000, 8 * MS);
+        tracer.onFrameWritten(4000, 9 * MS);
+        tracer.onFrameWritten(5000, 10 * MS);
+
+        // Frames 2000 (dropped), 3000, 4000 and 5000 are in the ring
+        LatencySummary dequeueToWrite = tracer.computeLatency().getDequeueToWrite();
+        Assert.assertEquals(3, dequeueToWrite.getCount());
+        Assert.assertEquals(2000, dequeueToWrite.getMaxUs());
+    }
+}
@@ -0,0 +1,52 @@
+package com.genymobile.scrcpy.video;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResetLatencyMeterTest {
+
+    @Test
+    public void testNoReset() {
+        ResetLatencyMeter meter = new ResetLatencyMeter();
+        meter.onSessionStarted(0);
+        Assert.assertEquals(-1, meter.onFrameEncoded(1000));
+    }
+
+    @Test
+    public void testFirstFrameOnly() {
+        ResetLatencyMeter meter = new ResetLatencyMeter();
+        meter.onSessionStarted(1_000_000);
+        Assert.assertEquals(4_000_000, meter.onFrameEncoded(5_000_000));
+        // Only the first frame after the reset is measured
+        Assert.assertEquals(-1, meter.onFrameEncoded(6_000_000));
+    }
+
+    @Test
+    public void testResetBeforeFirstFrame() {
+        ResetLatencyMeter meter = new ResetLatencyMeter();
+        meter.onSessionStarted(1_000_000);
+        // The session is reset again before producing any frame
+        meter.onSessionStarted(3_000_000);
+        Assert.assertEquals(9_000_000, meter.onFrameEncoded(10_000_000));
+    }
+
+    @Test
+    public void testCaptureResetRequestTime() {
+        CaptureReset reset = new CaptureReset();
+        Assert.assertEquals(0, reset.consumeRequestTime());
+
+        long before = System.nanoTime();
+        reset.reset();
+        reset.reset();
+        long requestTimeNs = reset.consumeRequestTime();
+        Assert.assertTrue(requestTimeNs >= before);
+        Assert.assertTrue(reset.consumeReset());
+
+        // Consumed
+        Assert.assertEquals(0, reset.consumeRequestTime());
+
+        ResetLatencyMeter meter = new ResetLatencyMeter();
+        meter.onSessionStarted(requestTimeNs);
+        Assert.assertTrue(meter.onFrameEncoded(System.nanoTime()) >= 0);
+    }
+}